@@ -16,16 +16,30 @@
  */
 package com.gzoltar.agent.rt;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import com.gzoltar.agent.rt.output.ConsoleOutput;
 import com.gzoltar.agent.rt.output.FileOutput;
 import com.gzoltar.agent.rt.output.IAgentOutput;
 import com.gzoltar.agent.rt.output.NoneOutput;
+import com.gzoltar.agent.rt.output.StreamOutput;
 import com.gzoltar.core.AgentConfigs;
 import com.gzoltar.core.AgentOutput;
+import com.gzoltar.core.events.IEventListener;
 import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.RuntimeStatistics;
 import com.gzoltar.core.spectrum.ISpectrum;
+import com.gzoltar.core.spectrum.SpectrumJournal;
 
-public class Agent implements IAgent {
+public class Agent implements IAgent, IAgentMXBean {
+
+  private static final String JMX_NAME = "com.gzoltar:type=Agent";
 
   private static Agent singleton;
 
@@ -33,6 +47,10 @@ public class Agent implements IAgent {
 
   private IAgentOutput output;
 
+  private SpectrumJournal journal = null;
+
+  private ObjectName objectName = null;
+
   public static synchronized Agent getInstance(final AgentConfigs agentConfigs) {
     if (singleton == null) {
       final Agent agent = new Agent(agentConfigs);
@@ -64,6 +82,8 @@ public class Agent implements IAgent {
     switch (controllerType) {
       case FILE:
         return new FileOutput(this.agentConfigs);
+      case STREAM:
+        return new StreamOutput(this.agentConfigs);
       case CONSOLE:
         return new ConsoleOutput();
       case NONE:
@@ -75,11 +95,49 @@ public class Agent implements IAgent {
 
   public void startup() {
     Collector.instance().addListener(this.agentConfigs.getEventListener());
+    if (this.output instanceof IEventListener) {
+      // transactions are persisted as they end, there is no need to keep them in memory
+      Collector.instance().addListener((IEventListener) this.output);
+      Collector.instance().setKeepTransactions(false);
+    }
+
+    if (this.agentConfigs.getJournal()
+        && AgentOutput.FILE.equals(this.agentConfigs.getOutput())) {
+      try {
+        this.journal = new SpectrumJournal(new File(this.agentConfigs.getDestfile()));
+        Collector.instance().addListener(this.journal);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    if (this.agentConfigs.getJmx()) {
+      try {
+        this.objectName = new ObjectName(JMX_NAME);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+            new StandardMBean(this, IAgentMXBean.class, true), this.objectName);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
   }
 
   public synchronized void shutdown() {
+    try {
+      if (this.objectName != null) {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+        this.objectName = null;
+      }
+    } catch (final Exception e) {
+      e.printStackTrace();
+    }
+
     try {
       this.output.writeSpectrum(this.getData());
+      if (this.journal != null) {
+        // all transactions have been written, there is nothing to recover
+        this.journal.delete();
+      }
     } catch (final Exception e) {
       e.printStackTrace();
     }
@@ -88,4 +146,83 @@ public class Agent implements IAgent {
   public ISpectrum getData() {
     return Collector.instance().getSpectrum();
   }
+
+  // === JMX ===
+
+  private static RuntimeStatistics getStatistics() {
+    return Collector.instance().getStatistics();
+  }
+
+  @Override
+  public long getNumberOfInstrumentedClasses() {
+    return getStatistics().getNumberOfInstrumentedClasses();
+  }
+
+  @Override
+  public long getNumberOfProbes() {
+    return getStatistics().getNumberOfProbes();
+  }
+
+  @Override
+  public long getNumberOfTransactions() {
+    return getStatistics().getNumberOfTransactions();
+  }
+
+  @Override
+  public long getBufferedBytes() {
+    return getStatistics().getBufferedBytes();
+  }
+
+  @Override
+  public long getTransformTime() {
+    return getStatistics().getTransformTime();
+  }
+
+  @Override
+  public String[] getMostExpensiveClassesToInstrument() {
+    return getStatistics().getMostExpensiveClassesToInstrument().toArray(new String[0]);
+  }
+
+  @Override
+  public long getEndTransactionTime() {
+    return getStatistics().getEndTransactionTime();
+  }
+
+  @Override
+  public void dump(final String file) throws IOException {
+    if (this.output instanceof IEventListener) {
+      throw new IllegalStateException("Transactions are not kept in memory with output="
+          + this.agentConfigs.getOutput() + ", they have already been written to "
+          + this.agentConfigs.getDestfile() + " as they ended");
+    }
+
+    final File dumpFile = new File(file).getAbsoluteFile();
+    final File folder = dumpFile.getParentFile();
+    if (folder != null) {
+      folder.mkdirs();
+    }
+    final OutputStream output = new BufferedOutputStream(new FileOutputStream(dumpFile));
+    try {
+      Collector.instance().dump(output);
+    } finally {
+      output.close();
+    }
+  }
+
+  @Override
+  public void reset() {
+    final Collector collector = Collector.instance();
+    // transactions end while holding the lock of the collector, therefore no transaction is
+    // discarded by the collector but committed to the journal, or the other way around
+    synchronized (collector) {
+      collector.reset();
+      if (this.journal != null) {
+        try {
+          this.journal.reset();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
 }
@@ -20,51 +20,67 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.lang.instrument.ClassFileTransformer;
 import java.security.ProtectionDomain;
+import java.util.Map;
+import java.util.WeakHashMap;
 import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.instr.BoundedClassPool;
+import com.gzoltar.core.instr.InstrumentationCache;
 import com.gzoltar.core.instr.Instrumenter;
-import com.gzoltar.core.instr.Outcome;
-import com.gzoltar.core.instr.actions.BlackList;
-import com.gzoltar.core.instr.actions.WhiteList;
-import com.gzoltar.core.instr.filter.Filter;
 import com.gzoltar.core.instr.matchers.ClassNameMatcher;
-import com.gzoltar.core.instr.matchers.PrefixMatcher;
 import com.gzoltar.core.instr.matchers.SourceLocationMatcher;
+import com.gzoltar.core.runtime.Collector;
 import javassist.ClassPool;
 import javassist.CtClass;
+import javassist.LoaderClassPath;
 
 public class CoverageTransformer implements ClassFileTransformer {
 
   private final Instrumenter instrumenter;
 
-  private final String buildLocation;
+  private final ClassNameMatcher excludeGZoltarClasses;
 
-  private final boolean inclNoLocationClasses;
+  private final ClassNameMatcher includeClasses;
 
-  private final Filter filter;
+  private final ClassNameMatcher excludeClasses;
+
+  private final ClassNameMatcher excludeClassLoaders;
+
+  private final SourceLocationMatcher includeClassesInBuildLocation;
+
+  /** Whether the time spent instrumenting classes is recorded, i.e., whether JMX is enabled */
+  private final boolean statistics;
+
+  /**
+   * Pool of each class loader, which reads classes from the class loader itself (after the pool
+   * shared by all instrumenters), so that the classes of a class loader are resolved by the class
+   * loader that defined them. A pool is discarded once its class loader has been collected.
+   */
+  private final Map<ClassLoader, ClassPool> classPools = new WeakHashMap<ClassLoader, ClassPool>();
 
   public CoverageTransformer(final AgentConfigs agentConfigs) throws Exception {
+    this.statistics = agentConfigs.getJmx();
     this.instrumenter = new Instrumenter(agentConfigs);
-
-    this.buildLocation = new File(agentConfigs.getBuildLocation()).getCanonicalPath();
-    this.inclNoLocationClasses = agentConfigs.getInclNoLocationClasses();
+    if (!agentConfigs.getCacheDir().isEmpty()) {
+      this.instrumenter.setCache(
+          new InstrumentationCache(new File(agentConfigs.getCacheDir()), agentConfigs));
+    }
 
     // exclude *all* GZoltar's runtime classes from instrumentation
-    BlackList excludeGZoltarClasses = new BlackList(new PrefixMatcher("com.gzoltar.internal."));
+    this.excludeGZoltarClasses = new ClassNameMatcher("com.gzoltar.internal.*");
 
     // instrument some classes
-    WhiteList includeClasses =
-        new WhiteList(new ClassNameMatcher(agentConfigs.getIncludes()));
+    this.includeClasses = new ClassNameMatcher(agentConfigs.getIncludes());
 
     // do not instrument some classes
-    BlackList excludeClasses =
-        new BlackList(new ClassNameMatcher(agentConfigs.getExcludes()));
+    this.excludeClasses = new ClassNameMatcher(agentConfigs.getExcludes());
 
     // do not instrument some classloaders
-    BlackList excludeClassLoaders =
-        new BlackList(new ClassNameMatcher(agentConfigs.getExclClassloader()));
+    this.excludeClassLoaders = new ClassNameMatcher(agentConfigs.getExclClassloader());
 
-    this.filter =
-        new Filter(excludeGZoltarClasses, includeClasses, excludeClasses, excludeClassLoaders);
+    // only instrument classes under a build location, e.g., target/classes/ or build/classes/
+    this.includeClassesInBuildLocation = new SourceLocationMatcher(
+        agentConfigs.getInclNoLocationClasses(),
+        new File(agentConfigs.getBuildLocation()).getCanonicalPath());
   }
 
   public byte[] transform(final ClassLoader loader, final String className,
@@ -81,27 +97,90 @@ public class CoverageTransformer implements ClassFileTransformer {
       return null;
     }
 
+    final long start = this.statistics ? System.nanoTime() : 0L;
     try {
-      ClassPool cp = ClassPool.getDefault();
-      CtClass cc = cp.makeClassIfNew(new ByteArrayInputStream(classfileBuffer));
-
-      // only instrument classes under a build location, e.g., target/classes/ or build/classes/
-      SourceLocationMatcher excludeClassesNotInBuildLocation = new SourceLocationMatcher(
-          this.inclNoLocationClasses, this.buildLocation, protectionDomain);
-      if (!excludeClassesNotInBuildLocation.matches(cc)) {
+      // check whether this class should be instrumented before parsing it, as most classes loaded
+      // by a JVM are not
+      if (!this.accept(className, protectionDomain)) {
         return null;
       }
 
-      // check whether this class should be instrumented
-      if (this.filter.filter(cc) == Outcome.REJECT) {
+      // a class that has already been instrumented (e.g., by a previous run) is loaded from the
+      // cache without being parsed
+      if (className != null) {
+        byte[] bytecode = this.instrumenter.instrumentFromCache(classfileBuffer);
+        if (bytecode != null) {
+          if (this.statistics) {
+            Collector.instance().getStatistics().classInstrumented(className.replace('/', '.'),
+                System.nanoTime() - start);
+          }
+          return bytecode;
+        }
+      }
+
+      ClassPool cp = this.getClassPool(loader);
+      // the class is parsed into a pool of its own, rather than shared by the pool of its loader,
+      // so that it is not modified by any concurrent transformation, e.g., of a class with the same
+      // name defined by another class loader, or of a class that has already been read as the
+      // superclass of another one. any other class is still resolved by the pool of the loader
+      CtClass cc = new ClassPool(cp).makeClass(new ByteArrayInputStream(classfileBuffer), false);
+      if (className == null && !this.accept(cc.getName(), protectionDomain)) {
         return null;
       }
 
-      return this.instrumenter.instrument(cc);
+      // unless the name of the class was not known, the cache has already been looked up
+      byte[] bytecode = className != null
+          ? this.instrumenter.instrumentAndCache(classfileBuffer, cc)
+          : this.instrumenter.instrument(classfileBuffer, cc);
+      if (this.statistics && bytecode != null) {
+        Collector.instance().getStatistics().classInstrumented(cc.getName(),
+            System.nanoTime() - start);
+      }
+      return bytecode;
     } catch (Exception e) {
       e.printStackTrace();
       return null;
     }
   }
 
+  /**
+   * Returns the pool of a class loader, which is created the first time.
+   * 
+   * @param loader class loader
+   * @return the pool of the class loader
+   */
+  private ClassPool getClassPool(final ClassLoader loader) {
+    synchronized (this.classPools) {
+      ClassPool cp = this.classPools.get(loader);
+      if (cp == null) {
+        cp = new BoundedClassPool(BoundedClassPool.getInstance(),
+            BoundedClassPool.DEFAULT_CAPACITY);
+        // the class path only keeps a weak reference to the class loader
+        cp.appendClassPath(new LoaderClassPath(loader));
+        this.classPools.put(loader, cp);
+      }
+      return cp;
+    }
+  }
+
+  /**
+   * Checks, by name and location only, whether a class should be instrumented.
+   * 
+   * @param className binary or JVM internal name of the class (or <code>null</code> if it is
+   *        unknown, e.g., for classes defined by {@code Unsafe.defineAnonymousClass}, in which
+   *        case it is checked again once the class has been parsed)
+   * @param protectionDomain protection domain of the class
+   * @return <code>true</code> if the class should be instrumented
+   */
+  private boolean accept(final String className, final ProtectionDomain protectionDomain) {
+    // the exclclassloader expressions are matched against the name of the class being loaded, as
+    // they always have been
+    if (className != null && (this.excludeGZoltarClasses.matches(className)
+        || !this.includeClasses.matches(className) || this.excludeClasses.matches(className)
+        || this.excludeClassLoaders.matches(className))) {
+      return false;
+    }
+    return this.includeClassesInBuildLocation.matches(protectionDomain);
+  }
+
 }
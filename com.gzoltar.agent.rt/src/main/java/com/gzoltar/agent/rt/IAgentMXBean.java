@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.agent.rt;
+
+import java.io.IOException;
+
+/**
+ * Runtime statistics and operations of the GZoltar agent, exposed through JMX as
+ * <code>com.gzoltar:type=Agent</code> when the agent option <code>jmx</code> is set.
+ */
+public interface IAgentMXBean {
+
+  /**
+   * Returns the number of classes instrumented so far.
+   */
+  public long getNumberOfInstrumentedClasses();
+
+  /**
+   * Returns the number of probes of all classes instrumented so far.
+   */
+  public long getNumberOfProbes();
+
+  /**
+   * Returns the number of transactions (i.e., test cases) recorded so far.
+   */
+  public long getNumberOfTransactions();
+
+  /**
+   * Returns an estimation of the number of bytes of coverage data buffered in memory.
+   */
+  public long getBufferedBytes();
+
+  /**
+   * Returns the time (in milliseconds) spent instrumenting classes.
+   */
+  public long getTransformTime();
+
+  /**
+   * Returns the classes that took the longest to instrument, the most expensive one first.
+   */
+  public String[] getMostExpensiveClassesToInstrument();
+
+  /**
+   * Returns the time (in milliseconds) spent ending transactions.
+   */
+  public long getEndTransactionTime();
+
+  /**
+   * Writes the current spectrum to a file. Not supported with <code>output=stream</code>, as
+   * transactions are not kept in memory but written to the output file as they end.
+   * 
+   * @param file
+   * @throws IOException
+   * @throws IllegalStateException if transactions are not kept in memory
+   */
+  public void dump(String file) throws IOException;
+
+  /**
+   * Discards the coverage collected so far, and the transactions committed to the journal (if
+   * any), so that they are not recovered afterwards. Transactions that have already been written to
+   * the output file (with <code>output=stream</code>) are kept.
+   */
+  public void reset();
+}
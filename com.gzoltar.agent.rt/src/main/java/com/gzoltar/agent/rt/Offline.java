@@ -41,8 +41,18 @@ public final class Offline {
    * 
    * @param args
    */
-  public synchronized static void getHitArray(final Object[] args) {
+  public static void getHitArray(final Object[] args) {
     Collector.instance().getHitArray(args);
   }
 
+  /**
+   * API for offline instrumented classes, called the first time a class is executed in a
+   * transaction.
+   * 
+   * @param args
+   */
+  public static void touchProbeGroup(final Object[] args) {
+    Collector.instance().touchProbeGroup(args);
+  }
+
 }
@@ -56,10 +56,16 @@ public class FileOutput implements IAgentOutput {
     }
   }
 
-  private OutputStream openFile() throws IOException {
-    final FileOutputStream file = new FileOutputStream(this.destFile, true);
-    // Avoid concurrent writes from different agents running in parallel:
-    file.getChannel().lock();
-    return file;
+  protected FileOutputStream openFile() throws IOException {
+    while (true) {
+      final FileOutputStream file = new FileOutputStream(this.destFile, true);
+      // Avoid concurrent writes from different agents running in parallel:
+      file.getChannel().lock();
+      // a data file that has been replaced by a merge (while waiting for its lock) is left empty
+      if (file.getChannel().size() > 0 || this.destFile.length() == 0) {
+        return file;
+      }
+      file.close();
+    }
   }
 }
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.agent.rt.output;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.events.IEventListener;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.spectrum.ISpectrum;
+import com.gzoltar.core.spectrum.Spectrum;
+import com.gzoltar.core.spectrum.SpectrumWriter;
+
+/**
+ * Appends each transaction to the output file as soon as it ends. Transactions are handed to a
+ * dedicated writer thread, which writes all pending ones at once, so that test cases do not wait
+ * for any I/O (unless the writer thread falls too far behind).
+ */
+public class StreamOutput extends FileOutput implements IEventListener {
+
+  /** Marks the end of the stream */
+  private static final Object END_OF_STREAM = new Object();
+
+  /**
+   * Maximum number of pending probeGroups and transactions, after which test cases wait for the
+   * writer thread
+   */
+  private static final int QUEUE_CAPACITY = 1 << 12;
+
+  /** ProbeGroups and transactions, in the order they have been reported */
+  private final BlockingQueue<Object> events = new LinkedBlockingQueue<Object>(QUEUE_CAPACITY);
+
+  /** ProbeGroups reported so far, only accessed by the writer thread */
+  private final ISpectrum probeGroups = new Spectrum();
+
+  /** Output file of the current batch, which the spectrum writer writes to */
+  private final BatchOutputStream batchOutput = new BatchOutputStream();
+
+  /**
+   * Writer of all batches, which keeps the segment (and therefore its dictionaries and shared
+   * activities) open from one batch to the next one
+   */
+  private SpectrumWriter spectrumWriter = null;
+
+  /** Size of the output file after the last batch has been written */
+  private long endOfLastBatch = -1L;
+
+  private final Thread writer;
+
+  public StreamOutput(final AgentConfigs agentConfigs) {
+    super(agentConfigs);
+    this.writer = new Thread("gzoltar-stream-output") {
+      @Override
+      public void run() {
+        writeEvents();
+      }
+    };
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void regiterProbeGroup(final ProbeGroup probeGroup) {
+    this.put(probeGroup);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void endTransaction(final Transaction transaction) {
+    if (transaction.hasActivations()) {
+      this.put(transaction);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void endSession() {
+    // NO-OP, transactions are written as they end
+  }
+
+  /**
+   * Writes all pending transactions and stops the writer thread. Any other transaction has already
+   * been written, therefore the given spectrum is ignored.
+   */
+  @Override
+  public void writeSpectrum(final ISpectrum spectrum) throws Exception {
+    this.put(END_OF_STREAM);
+    this.writer.join();
+  }
+
+  /**
+   * Hands an event to the writer thread, waiting for it if there are too many pending events. The
+   * event is never dropped, even if the current thread is interrupted meanwhile.
+   */
+  private void put(final Object event) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        this.events.put(event);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeEvents() {
+    List<Object> batch = new ArrayList<Object>();
+    try {
+      boolean endOfStream = false;
+      while (!endOfStream) {
+        batch.add(this.events.take());
+        this.events.drainTo(batch);
+        endOfStream = this.writeBatch(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Appends a batch of transactions to the output file, while holding the lock of the file, so that
+   * several agents could share the same file. A batch continues the segment of the previous one,
+   * unless another agent has appended to the file in the meantime, in which case it starts a new
+   * segment (and therefore writes again the dictionary entries it refers to).
+   * 
+   * A batch that fails to be written, whatever the reason, is dropped, and the writer thread keeps
+   * writing the following ones. Otherwise, test cases would wait forever for a writer thread that
+   * is no longer running, once too many transactions are pending. Whatever has been written of a
+   * dropped batch is truncated from the file (before its lock is released), as no block could be
+   * read after an incomplete one, and the following batch starts a new segment with a new writer,
+   * which writes again any dictionary entry or probes the dropped batch may have written.
+   * 
+   * @param batch
+   * @return true if the end of the stream has been reached, false otherwise
+   */
+  private boolean writeBatch(final List<Object> batch) {
+    boolean endOfStream = false;
+    FileOutputStream file = null;
+    long startOfBatch = -1L;
+    try {
+      for (Object event : batch) {
+        if (event == END_OF_STREAM) {
+          endOfStream = true;
+        } else if (event instanceof ProbeGroup) {
+          this.probeGroups.addProbeGroup((ProbeGroup) event);
+        } else {
+          if (file == null) {
+            file = this.openFile();
+            startOfBatch = file.getChannel().size();
+            this.batchOutput.output = new BufferedOutputStream(file);
+            if (this.spectrumWriter == null) {
+              this.spectrumWriter = new SpectrumWriter(this.batchOutput);
+            } else if (file.getChannel().size() != this.endOfLastBatch) {
+              this.spectrumWriter.startSegment();
+            }
+          }
+          this.spectrumWriter.writeTransaction(this.probeGroups, (Transaction) event);
+        }
+      }
+      if (file != null) {
+        this.spectrumWriter.flush();
+        this.endOfLastBatch = file.getChannel().size();
+      }
+    } catch (Throwable t) {
+      t.printStackTrace();
+      if (file != null && startOfBatch != -1L) {
+        // the batch may have left an incomplete block
+        try {
+          file.getChannel().truncate(startOfBatch);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+      // the dictionary entries and probes the writer has written so far may have been truncated
+      this.spectrumWriter = null;
+      // the end of the stream may not have been reached before the failure
+      for (Object event : batch) {
+        endOfStream |= event == END_OF_STREAM;
+      }
+    } finally {
+      if (file != null) {
+        try {
+          file.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+      this.batchOutput.output = null;
+    }
+    return endOfStream;
+  }
+
+  /**
+   * Forwards the bytes written by the spectrum writer to the output file of the current batch.
+   */
+  private static final class BatchOutputStream extends OutputStream {
+
+    private OutputStream output = null;
+
+    @Override
+    public void write(final int b) throws IOException {
+      this.output.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      this.output.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      this.output.flush();
+    }
+  }
+}
@@ -128,6 +128,98 @@ public class AbstractCoverageTask extends Task {
     this.agentConfigs.setOutput(output);
   }
 
+  /**
+   * Sets whether probes should be recorded per thread, i.e., whether test cases are executed in
+   * parallel. Default is <code>false</code>.
+   * 
+   * @param perThread <code>true</code> if probes should be recorded per thread
+   */
+  public void setPerThread(final boolean perThread) {
+    this.agentConfigs.setPerThread(perThread);
+  }
+
+  /**
+   * Sets whether probes should count the number of times they have been executed. Default is
+   * <code>false</code>.
+   * 
+   * @param hitCounts <code>true</code> if probes should count the number of times they have been
+   *        executed
+   */
+  public void setHitCounts(final boolean hitCounts) {
+    this.agentConfigs.setHitCounts(hitCounts);
+  }
+
+  /**
+   * Sets whether test cases should also be recorded in a memory-mapped journal, so that they can be
+   * recovered if the JVM is killed before writing the output file. Default is <code>false</code>.
+   * 
+   * @param journal <code>true</code> if test cases should be recorded in a memory-mapped journal
+   */
+  public void setJournal(final boolean journal) {
+    this.agentConfigs.setJournal(journal);
+  }
+
+  /**
+   * Sets whether the agent should expose runtime statistics, and operations to dump or reset the
+   * collected coverage, through JMX. Default is <code>false</code>.
+   * 
+   * @param jmx <code>true</code> if the agent should be exposed through JMX
+   */
+  public void setJmx(final boolean jmx) {
+    this.agentConfigs.setJmx(jmx);
+  }
+
+  /**
+   * Sets the directory in which instrumented classes are cached, so that test JVMs do not
+   * instrument unchanged classes again. By default there is no cache.
+   * 
+   * @param cacheDir directory in which instrumented classes are cached
+   */
+  public void setCachedir(final File cacheDir) {
+    this.agentConfigs.setCacheDir(cacheDir.getAbsolutePath());
+  }
+
+  /**
+   * Sets the granularity level at which probes are placed, e.g., at each line or only at the
+   * beginning of each method. The fault localization report must be created with the same
+   * granularity level.
+   * 
+   * @param granularity granularity level
+   */
+  public void setGranularity(final String granularity) {
+    this.agentConfigs.setGranularity(granularity);
+  }
+
+  /**
+   * Sets whether public methods of each class under test should be instrumented. Default is
+   * <code>true</code>.
+   * 
+   * @param inclPublicMethods <code>true</code> if public methods should be instrumented
+   */
+  public void setInclPublicMethods(final boolean inclPublicMethods) {
+    this.agentConfigs.setInclPublicMethods(inclPublicMethods);
+  }
+
+  /**
+   * Sets whether static constructors of each class under test should be instrumented. Default is
+   * <code>true</code>.
+   * 
+   * @param inclStaticConstructors <code>true</code> if static constructors should be instrumented
+   */
+  public void setInclStaticConstructors(final boolean inclStaticConstructors) {
+    this.agentConfigs.setInclStaticConstructors(inclStaticConstructors);
+  }
+
+  /**
+   * Sets whether methods annotated with @deprecated of each class under test should be
+   * instrumented. Default is <code>true</code>.
+   * 
+   * @param inclDeprecatedMethods <code>true</code> if deprecated methods should be instrumented
+   */
+  public void setInclDeprecatedMethods(final boolean inclDeprecatedMethods) {
+    this.agentConfigs.setInclDeprecatedMethods(inclDeprecatedMethods);
+  }
+
   /**
    * Creates JVM argument to launch with the specified GZoltar agent jar and the current options
    * 
@@ -138,7 +230,8 @@ public class AbstractCoverageTask extends Task {
   }
 
   private AgentConfigs prepareAgentOptions() {
-    if (AgentOutput.FILE.equals(this.agentConfigs.getOutput())) {
+    if (AgentOutput.FILE.equals(this.agentConfigs.getOutput())
+        || AgentOutput.STREAM.equals(this.agentConfigs.getOutput())) {
       this.agentConfigs.setDestfile(this.destfile.getAbsolutePath());
     }
     return this.agentConfigs;
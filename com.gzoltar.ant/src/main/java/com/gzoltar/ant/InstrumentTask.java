@@ -26,9 +26,9 @@ import org.apache.tools.ant.types.Path;
 import org.apache.tools.ant.types.Resource;
 import org.apache.tools.ant.types.ResourceCollection;
 import org.apache.tools.ant.types.resources.Union;
+import com.gzoltar.core.instr.BoundedClassPool;
 import com.gzoltar.core.instr.InstrumentationLevel;
 import com.gzoltar.core.instr.Instrumenter;
-import javassist.ClassPool;
 import javassist.NotFoundException;
 
 /**
@@ -40,6 +40,8 @@ public class InstrumentTask extends AbstractCoverageTask {
 
   private boolean removesignatures = true;
 
+  private int threads = 1;
+
   private final Union files = new Union();
 
   private Path classpath = null;
@@ -62,6 +64,16 @@ public class InstrumentTask extends AbstractCoverageTask {
     this.removesignatures = removesignatures;
   }
 
+  /**
+   * Sets the number of threads used to instrument entries of JAR files concurrently. Default is
+   * <code>1</code>.
+   * 
+   * @param threads number of threads
+   */
+  public void setThreads(final int threads) {
+    this.threads = threads;
+  }
+
   /**
    * This task accepts any number of class file resources.
    * 
@@ -83,7 +95,7 @@ public class InstrumentTask extends AbstractCoverageTask {
 
   private void updateClasspath(final String path) throws BuildException {
     try {
-      ClassPool.getDefault().appendClassPath(path);
+      BoundedClassPool.getInstance().appendClassPath(path);
     } catch (NotFoundException e) {
       throw new BuildException(e);
     }
@@ -104,6 +116,11 @@ public class InstrumentTask extends AbstractCoverageTask {
     this.agentConfigs.setInstrumentationLevel(InstrumentationLevel.OFFLINE);
     Instrumenter instrumenter = new Instrumenter(this.agentConfigs);
     instrumenter.setRemoveSignatures(this.removesignatures);
+    try {
+      instrumenter.setParallelism(this.threads);
+    } catch (IllegalArgumentException e) {
+      throw new BuildException(e.getMessage(), getLocation());
+    }
 
     // update classpath
     final Iterator<?> resourcePathIterator = this.classpath.iterator();
@@ -114,6 +131,7 @@ public class InstrumentTask extends AbstractCoverageTask {
 
     // instrument
     int numInstrumentedClasses = 0;
+    final long start = System.currentTimeMillis();
     log("* Processing");
     final Iterator<?> resourceIterator = this.files.iterator();
     while (resourceIterator.hasNext()) {
@@ -130,8 +148,10 @@ public class InstrumentTask extends AbstractCoverageTask {
       }
     }
 
+    final long elapsed = Math.max(1L, System.currentTimeMillis() - start);
     log("* " + numInstrumentedClasses + " classes instrumented to "
-        + this.destdir.getAbsoluteFile());
+        + this.destdir.getAbsoluteFile() + " in " + elapsed + " ms ("
+        + (numInstrumentedClasses * 1000L / elapsed) + " classes/s)");
     log("* Done!");
   }
 
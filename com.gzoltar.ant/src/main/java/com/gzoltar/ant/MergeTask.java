@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.ant;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+import org.apache.tools.ant.types.resources.FileResource;
+import org.apache.tools.ant.types.resources.Union;
+import com.gzoltar.core.spectrum.SpectrumMerger;
+
+/**
+ * Task for merging multiple spectrum data files (and their journals) into one.
+ */
+public class MergeTask extends Task {
+
+  private File destfile = null;
+
+  private int threads = 1;
+
+  private final Union files = new Union();
+
+  /**
+   * Sets the location of the merged spectrum data file, which may also be one of the data files to
+   * merge.
+   * 
+   * @param destfile merged data file
+   */
+  public void setDestfile(final File destfile) {
+    this.destfile = destfile;
+  }
+
+  /**
+   * Sets the number of threads used to read data files concurrently. Default is <code>1</code>.
+   * 
+   * @param threads number of threads
+   */
+  public void setThreads(final int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * This task accepts any number of spectrum data file resources.
+   * 
+   * @param resources Execution data resources
+   */
+  public void addConfigured(final ResourceCollection resources) {
+    this.files.add(resources);
+  }
+
+  /**
+   * Executes merge task
+   */
+  @Override
+  public void execute() throws BuildException {
+    log("* Merging spectrum data files");
+
+    if (this.destfile == null) {
+      throw new BuildException("Destination file must be supplied", getLocation());
+    }
+
+    SpectrumMerger merger = new SpectrumMerger();
+    try {
+      merger.setParallelism(this.threads);
+    } catch (IllegalArgumentException e) {
+      throw new BuildException(e.getMessage(), getLocation());
+    }
+
+    final List<File> dataFiles = new ArrayList<File>();
+    final Iterator<?> resourceIterator = this.files.iterator();
+    while (resourceIterator.hasNext()) {
+      final Resource resource = (Resource) resourceIterator.next();
+      if (resource.isDirectory()) {
+        continue;
+      }
+      if (!(resource instanceof FileResource)) {
+        throw new BuildException("Only file resources are supported: " + resource, getLocation());
+      }
+      log("  - " + resource.getName());
+      dataFiles.add(((FileResource) resource).getFile());
+    }
+
+    try {
+      final long start = System.currentTimeMillis();
+      final int numberOfTransactions = merger.merge(dataFiles, this.destfile);
+      final long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+      log("* " + numberOfTransactions + " transactions of " + dataFiles.size()
+          + " files merged to " + this.destfile.getAbsoluteFile() + " in " + elapsed + " ms");
+    } catch (Exception e) {
+      throw new BuildException(e, getLocation());
+    }
+    log("* Done!");
+  }
+}
@@ -44,6 +44,11 @@ public class Instrument extends AbstractAgent implements Serializable {
       required = true)
   private File outputDirectory;
 
+  @Option(name = "--threads",
+      usage = "number of threads used to instrument files and entries of jar files concurrently",
+      metaVar = "<n>")
+  private int threads = 1;
+
   @Override
   public String description() {
     return "Off-line instrumentation of Java class files and jar files.";
@@ -53,21 +58,31 @@ public class Instrument extends AbstractAgent implements Serializable {
   public int execute(PrintStream out, PrintStream err) throws Exception {
     out.println("* " + this.description());
 
+    // configure instrumentation
+    AgentConfigs agentConfigs = this.prepareAgentOptions();
+    agentConfigs.setInstrumentationLevel(InstrumentationLevel.OFFLINE);
+    Instrumenter instrumenter = new Instrumenter(agentConfigs);
+    try {
+      instrumenter.setParallelism(this.threads);
+    } catch (IllegalArgumentException e) {
+      // an invalid --threads value is a usage error, as any other invalid option
+      this.printHelp(err);
+      err.println();
+      err.println(e.getMessage());
+      return -1;
+    }
+
     // create a brand new output directory
     if (this.outputDirectory.exists()) {
       FileUtils.deleteDirectory(this.outputDirectory);
     }
     this.outputDirectory.mkdirs();
 
-    // configure instrumentation
-    AgentConfigs agentConfigs = this.prepareAgentOptions();
-    agentConfigs.setInstrumentationLevel(InstrumentationLevel.OFFLINE);
-    Instrumenter instrumenter = new Instrumenter(agentConfigs);
-
     final File absoluteOut = this.outputDirectory.getAbsoluteFile();
 
     // instrument recursively
     int numInstrumentedClasses = 0;
+    final long start = System.currentTimeMillis();
     out.println("* Processing");
     for (File source : this.sources) {
       out.println("  - " + source.getAbsolutePath());
@@ -78,7 +93,9 @@ public class Instrument extends AbstractAgent implements Serializable {
       }
     }
 
-    out.println("* " + numInstrumentedClasses + " classes instrumented to " + absoluteOut);
+    final long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+    out.println("* " + numInstrumentedClasses + " classes instrumented to " + absoluteOut + " in "
+        + elapsed + " ms (" + (numInstrumentedClasses * 1000L / elapsed) + " classes/s)");
     out.println("* Done!");
 
     return 0;
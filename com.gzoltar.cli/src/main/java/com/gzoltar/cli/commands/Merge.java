@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.cli.commands;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+import com.gzoltar.cli.Command;
+import com.gzoltar.core.spectrum.SpectrumMerger;
+
+/**
+ * The <code>merge</code> command.
+ */
+public class Merge extends Command {
+
+  @Argument(usage = "list of spectrum data files to merge", metaVar = "<datafiles>",
+      required = true)
+  private List<File> dataFiles = new ArrayList<File>();
+
+  @Option(name = "--destfile", usage = "file to write the merged spectrum data to",
+      metaVar = "<path>", required = true)
+  private File destFile;
+
+  @Option(name = "--threads", usage = "number of threads used to read data files concurrently",
+      metaVar = "<n>")
+  private int threads = 1;
+
+  @Override
+  public String description() {
+    return "Merges multiple spectrum data files (and their journals) into one.";
+  }
+
+  @Override
+  public int execute(final PrintStream out, final PrintStream err) throws Exception {
+    out.println("* " + this.description());
+
+    SpectrumMerger merger = new SpectrumMerger();
+    try {
+      merger.setParallelism(this.threads);
+    } catch (IllegalArgumentException e) {
+      // an invalid --threads value is a usage error, as any other invalid option
+      this.printHelp(err);
+      err.println();
+      err.println(e.getMessage());
+      return -1;
+    }
+
+    out.println("* Processing");
+    for (File dataFile : this.dataFiles) {
+      out.println("  - " + dataFile.getAbsolutePath());
+    }
+
+    final long start = System.currentTimeMillis();
+    final int numberOfTransactions = merger.merge(this.dataFiles, this.destFile);
+
+    final long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+    out.println("* " + numberOfTransactions + " transactions of " + this.dataFiles.size()
+        + " files merged to " + this.destFile.getAbsolutePath() + " in " + elapsed + " ms");
+    out.println("* Done!");
+
+    return 0;
+  }
+
+}
@@ -28,6 +28,7 @@ import java.util.jar.JarFile;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import com.gzoltar.core.instr.BoundedClassPool;
 import com.gzoltar.core.instr.Outcome;
 import com.gzoltar.core.instr.actions.BlackList;
 import com.gzoltar.core.instr.actions.WhiteList;
@@ -41,7 +42,7 @@ import javassist.CtClass;
 
 public class ClasspathHandler {
 
-  private static ClassPool classPool = ClassPool.getDefault();
+  private static ClassPool classPool = BoundedClassPool.getInstance();
 
   private Filter filter;
 
@@ -125,6 +126,7 @@ public class ClasspathHandler {
               ClassType type = this.getClassType(cc);
               classes.add(new ImmutablePair<String, ClassType>(cc.getName(), type));
             }
+            cc.detach();
 
             in.close();
           } else if (entryName.endsWith(".jar")) {
@@ -141,6 +143,7 @@ public class ClasspathHandler {
           ClassType type = this.getClassType(cc);
           classes.add(new ImmutablePair<String, ClassType>(cc.getName(), type));
         }
+        cc.detach();
 
         fin.close();
       }
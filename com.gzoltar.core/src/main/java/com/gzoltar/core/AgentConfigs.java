@@ -112,6 +112,7 @@ public final class AgentConfigs {
    * Specifies the output mode. Default is {@link OutputMode#file}.
    * 
    * @see OutputMode#file
+   * @see OutputMode#stream
    * @see OutputMode#console
    * @see OutputMode#none
    */
@@ -157,12 +158,59 @@ public final class AgentConfigs {
 
   public static final InstrumentationLevel DEFAULT_INSTRUMENTATION_LEVEL = InstrumentationLevel.FULL;
 
+  /**
+   * Specifies whether probes should be recorded per thread (i.e., per transaction context) instead
+   * of in a single hit array shared by all threads. This allows test cases to run in parallel and
+   * still get correct per-test spectra. Default is <code>false</code>.
+   */
+  public static final String PERTHREAD_KEY = "perthread";
+
+  public static final boolean DEFAULT_PERTHREAD = false;
+
+  /**
+   * Specifies whether each probe should count how many times it has been executed (saturating at
+   * {@link Integer#MAX_VALUE}) instead of only recording whether it has been executed. Default is
+   * <code>false</code>.
+   */
+  public static final String HITCOUNTS_KEY = "hitcounts";
+
+  public static final boolean DEFAULT_HITCOUNTS = false;
+
+  /**
+   * Specifies whether each transaction should also be recorded, as soon as it ends, in a
+   * memory-mapped journal next to the output file, so that it survives the JVM being killed before
+   * the output file is written. Only applies to the {@link AgentOutput#FILE} output. Default is
+   * <code>false</code>.
+   */
+  public static final String JOURNAL_KEY = "journal";
+
+  public static final boolean DEFAULT_JOURNAL = false;
+
+  /**
+   * Specifies whether the agent should expose runtime statistics and operations (e.g., to dump or
+   * reset the spectrum) through the JMX MBean <code>com.gzoltar:type=Agent</code>. Default is
+   * <code>false</code>.
+   */
+  public static final String JMX_KEY = "jmx";
+
+  public static final boolean DEFAULT_JMX = false;
+
+  /**
+   * Directory in which instrumented classes are cached, so that JVMs started afterwards with the
+   * same instrumentation options do not instrument unchanged classes again. Default is empty, i.e.,
+   * no cache.
+   */
+  public static final String CACHEDIR_KEY = "cachedir";
+
+  public static final String DEFAULT_CACHEDIR = "";
+
   private final Map<String, String> configs;
 
   private static final Collection<String> VALID_CONFIGS =
       Arrays.asList(BUILDLOCATION_KEY, DESTFILE_KEY, INCLUDES_KEY, EXCLUDES_KEY,
           EXCLCLASSLOADER_KEY, INCLNOLOCATIONCLASSES_KEY, OUTPUT_KEY, GRANULARITY_KEY,
-          INCLPUBLICMETHODS_KEY, INCLSTATICCONSTRUCTORS_KEY, INCLDEPRECATEDMETHODS_KEY);
+          INCLPUBLICMETHODS_KEY, INCLSTATICCONSTRUCTORS_KEY, INCLDEPRECATEDMETHODS_KEY,
+          PERTHREAD_KEY, HITCOUNTS_KEY, JOURNAL_KEY, JMX_KEY, CACHEDIR_KEY);
 
   private static final Pattern CONFIG_SPLIT = Pattern.compile(",(?=[a-zA-Z0-9_\\-]+=)");
 
@@ -496,6 +544,98 @@ public final class AgentConfigs {
     this.setConfig(INSTRUMENTATION_LEVEL_KEY, instrumentationLevel.name());
   }
 
+  /**
+   * Returns whether probes should be recorded per thread.
+   * 
+   * @return <code>true</code> if probes should be recorded per thread
+   */
+  public boolean getPerThread() {
+    return this.getConfig(PERTHREAD_KEY, DEFAULT_PERTHREAD);
+  }
+
+  /**
+   * Sets whether probes should be recorded per thread.
+   * 
+   * @param perThread <code>true</code> if probes should be recorded per thread
+   */
+  public void setPerThread(final boolean perThread) {
+    this.setConfig(PERTHREAD_KEY, perThread);
+  }
+
+  /**
+   * Returns whether probes should count the number of times they have been executed.
+   * 
+   * @return <code>true</code> if probes should count the number of times they have been executed
+   */
+  public boolean getHitCounts() {
+    return this.getConfig(HITCOUNTS_KEY, DEFAULT_HITCOUNTS);
+  }
+
+  /**
+   * Sets whether probes should count the number of times they have been executed.
+   * 
+   * @param hitCounts <code>true</code> if probes should count the number of times they have been
+   *        executed
+   */
+  public void setHitCounts(final boolean hitCounts) {
+    this.setConfig(HITCOUNTS_KEY, hitCounts);
+  }
+
+  /**
+   * Returns whether transactions should be recorded in a memory-mapped journal.
+   * 
+   * @return <code>true</code> if transactions should be recorded in a memory-mapped journal
+   */
+  public boolean getJournal() {
+    return this.getConfig(JOURNAL_KEY, DEFAULT_JOURNAL);
+  }
+
+  /**
+   * Sets whether transactions should be recorded in a memory-mapped journal.
+   * 
+   * @param journal <code>true</code> if transactions should be recorded in a memory-mapped journal
+   */
+  public void setJournal(final boolean journal) {
+    this.setConfig(JOURNAL_KEY, journal);
+  }
+
+  /**
+   * Returns whether the agent should be exposed through JMX.
+   * 
+   * @return <code>true</code> if the agent should be exposed through JMX
+   */
+  public boolean getJmx() {
+    return this.getConfig(JMX_KEY, DEFAULT_JMX);
+  }
+
+  /**
+   * Sets whether the agent should be exposed through JMX.
+   * 
+   * @param jmx <code>true</code> if the agent should be exposed through JMX
+   */
+  public void setJmx(final boolean jmx) {
+    this.setConfig(JMX_KEY, jmx);
+  }
+
+  /**
+   * Returns the directory in which instrumented classes are cached.
+   * 
+   * @return directory in which instrumented classes are cached, or an empty string if there is no
+   *         cache
+   */
+  public String getCacheDir() {
+    return this.getConfig(CACHEDIR_KEY, DEFAULT_CACHEDIR);
+  }
+
+  /**
+   * Sets the directory in which instrumented classes are cached.
+   * 
+   * @param cacheDir directory in which instrumented classes are cached
+   */
+  public void setCacheDir(final String cacheDir) {
+    this.setConfig(CACHEDIR_KEY, cacheDir);
+  }
+
   /**
    * Returns an instance of an {@link com.gzoltar.core.events.EmptyEventListener}. TODO we might
    * want to allow user to configure other listeners.
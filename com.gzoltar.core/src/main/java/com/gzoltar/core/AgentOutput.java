@@ -24,6 +24,13 @@ public enum AgentOutput {
    */
   FILE,
 
+  /**
+   * Value for the {@link AgentConfigs#OUTPUT} parameter: Execution data of each transaction is
+   * appended to the file specified by {@link AgentConfigs#DESTFILE} as soon as the transaction
+   * ends, and it is not kept in memory afterwards.
+   */
+  STREAM,
+
   /**
    * Value for the {@link AgentConfigs#OUTPUT} parameter: At VM termination execution data is
    * written to the console.
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javassist.ClassPool;
+import javassist.CtClass;
+
+/**
+ * A {@link javassist.ClassPool} that only keeps a bounded number of classes, evicting the least
+ * recently used ones. An evicted class is read again from the class path if it is ever needed
+ * again, e.g., to resolve the type hierarchy of a class being instrumented. Therefore, classes that
+ * are not in the class path of the pool must not be evicted while they are still needed.
+ */
+public class BoundedClassPool extends ClassPool {
+
+  /** Default maximum number of classes kept by the pool */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private static BoundedClassPool instance = null;
+
+  /** <Class name, class>, in access order */
+  private final Map<String, CtClass> cache;
+
+  /**
+   * Returns the pool shared by all instrumenters, whose class path includes the system class path.
+   */
+  public static synchronized BoundedClassPool getInstance() {
+    if (instance == null) {
+      instance = new BoundedClassPool(DEFAULT_CAPACITY);
+      instance.appendSystemPath();
+    }
+    return instance;
+  }
+
+  /**
+   * Creates a pool with an empty class path.
+   * 
+   * @param capacity maximum number of classes kept by the pool
+   */
+  public BoundedClassPool(final int capacity) {
+    this(null, capacity);
+  }
+
+  /**
+   * Creates a pool with an empty class path, which looks classes up in its parent pool first.
+   * 
+   * @param parent parent pool (or <code>null</code>)
+   * @param capacity maximum number of classes kept by the pool
+   */
+  public BoundedClassPool(final ClassPool parent, final int capacity) {
+    super(parent);
+    this.cache = new LinkedHashMap<String, CtClass>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, CtClass> eldest) {
+        return this.size() > capacity;
+      }
+    };
+  }
+
+  // primitive types are cached by the constructor of ClassPool, before this.cache is initialised,
+  // and therefore are never evicted
+
+  @Override
+  protected CtClass getCached(final String classname) {
+    CtClass ctClass = super.getCached(classname);
+    if (ctClass != null || this.cache == null) {
+      return ctClass;
+    }
+    synchronized (this.cache) {
+      return this.cache.get(classname);
+    }
+  }
+
+  @Override
+  protected void cacheCtClass(final String classname, final CtClass c, final boolean dynamic) {
+    if (this.cache == null) {
+      super.cacheCtClass(classname, c, dynamic);
+      return;
+    }
+    synchronized (this.cache) {
+      this.cache.put(classname, c);
+    }
+  }
+
+  @Override
+  protected CtClass removeCached(final String classname) {
+    if (this.cache != null) {
+      synchronized (this.cache) {
+        CtClass ctClass = this.cache.remove(classname);
+        if (ctClass != null) {
+          return ctClass;
+        }
+      }
+    }
+    return super.removeCached(classname);
+  }
+
+  /**
+   * Returns the number of classes (other than primitive types) kept by the pool.
+   */
+  public int size() {
+    synchronized (this.cache) {
+      return this.cache.size();
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.Charset;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import org.jacoco.core.internal.data.CompactDataInput;
+import org.jacoco.core.internal.data.CompactDataOutput;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.runtime.ProbeSerialisation;
+import com.gzoltar.core.util.MD5;
+
+/**
+ * On-disk cache of instrumented classes, shared by all JVMs that instrument classes with the same
+ * options. Each entry is keyed by the hash of the original bytecode of a class and of the options
+ * that affect its instrumentation, and holds the instrumented bytecode of the class and its
+ * {@link ProbeGroup}.
+ */
+public class InstrumentationCache {
+
+  /** Version of the format of each entry, to be increased whenever the format changes */
+  private static final int FORMAT_VERSION = 4;
+
+  private static final String ENTRY_SUFFIX = ".gzclass";
+
+  private final File directory;
+
+  /** Options that affect the instrumentation of a class */
+  private final String optionsKey;
+
+  /**
+   * 
+   * @param directory
+   * @param agentConfigs
+   */
+  public InstrumentationCache(final File directory, final AgentConfigs agentConfigs) {
+    this.directory = directory;
+    this.directory.mkdirs();
+
+    // classes instrumented by a different version of GZoltar may not be compatible with its
+    // runtime
+    final String version = InstrumentationCache.class.getPackage().getImplementationVersion();
+    this.optionsKey = FORMAT_VERSION + "|" + version + "|"
+        + agentConfigs.getInstrumentationLevel() + "|" + agentConfigs.getGranularity() + "|"
+        + agentConfigs.getInclPublicMethods() + "|" + agentConfigs.getInclStaticConstructors() + "|"
+        + agentConfigs.getInclDeprecatedMethods() + "|" + agentConfigs.getPerThread() + "|"
+        + agentConfigs.getHitCounts();
+  }
+
+  private File getEntryFile(final byte[] classfileBuffer) throws NoSuchAlgorithmException {
+    final String classHash = MD5.calculateHash(classfileBuffer);
+    final String key =
+        MD5.calculateHash((this.optionsKey + "|" + classHash).getBytes(Charset.forName("UTF-8")));
+    return new File(this.directory, key + ENTRY_SUFFIX);
+  }
+
+  /**
+   * Returns the cached instrumented version of a class, or null if it has not been cached.
+   * 
+   * @param classfileBuffer original bytecode of the class
+   * @return
+   */
+  public CachedClass get(final byte[] classfileBuffer) {
+    try {
+      final File entryFile = this.getEntryFile(classfileBuffer);
+      if (!entryFile.isFile()) {
+        return null;
+      }
+
+      final CompactDataInput in =
+          new CompactDataInput(new BufferedInputStream(new FileInputStream(entryFile)));
+      try {
+        if (in.readInt() != FORMAT_VERSION) {
+          return null;
+        }
+
+        final String hash = in.readUTF();
+        final String name = in.readUTF();
+
+        final List<Probe> probes = ProbeSerialisation.read(in);
+
+        final byte[] bytecode = new byte[in.readInt()];
+        in.readFully(bytecode);
+
+        return new CachedClass(new ProbeGroup(hash, name, probes), bytecode);
+      } finally {
+        in.close();
+      }
+    } catch (Exception e) {
+      // e.g., a truncated entry, which is instrumented (and cached) again
+      return null;
+    }
+  }
+
+  /**
+   * Caches the instrumented version of a class. The entry is written to a temporary file which is
+   * then renamed, so that concurrent JVMs never read a partial entry.
+   * 
+   * @param classfileBuffer original bytecode of the class
+   * @param bytecode instrumented bytecode of the class
+   * @param probeGroup probeGroup of the class
+   */
+  public void put(final byte[] classfileBuffer, final byte[] bytecode,
+      final ProbeGroup probeGroup) {
+    File tmpFile = null;
+    try {
+      final File entryFile = this.getEntryFile(classfileBuffer);
+      tmpFile = File.createTempFile(entryFile.getName(), ".tmp", this.directory);
+
+      final CompactDataOutput out =
+          new CompactDataOutput(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(probeGroup.getHash());
+        out.writeUTF(probeGroup.getName());
+
+        ProbeSerialisation.write(out, probeGroup);
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+      } finally {
+        out.close();
+      }
+
+      if (tmpFile.renameTo(entryFile)) {
+        tmpFile = null;
+      }
+    } catch (Exception e) {
+      // the class is instrumented again next time
+      e.printStackTrace();
+    } finally {
+      if (tmpFile != null) {
+        tmpFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Instrumented version of a class, as cached.
+   */
+  public static final class CachedClass {
+
+    private final ProbeGroup probeGroup;
+
+    private final byte[] bytecode;
+
+    private CachedClass(final ProbeGroup probeGroup, final byte[] bytecode) {
+      this.probeGroup = probeGroup;
+      this.bytecode = bytecode;
+    }
+
+    /**
+     * Returns the probeGroup of the class.
+     */
+    public ProbeGroup getProbeGroup() {
+      return this.probeGroup;
+    }
+
+    /**
+     * Returns the instrumented bytecode of the class.
+     */
+    public byte[] getBytecode() {
+      return this.bytecode;
+    }
+  }
+}
@@ -54,6 +54,18 @@ public final class InstrumentationConstants {
   public static final int FIELD_INTF_ACC =
       AccessFlag.PUBLIC | AccessFlag.STATIC | AccessFlag.FINAL | AccessFlag.SYNTHETIC;
 
+  // === Per-thread Data Field ===
+
+  public static final String FIELD_PERTHREAD_DESC_BYTECODE = "Ljava/lang/ThreadLocal;";
+
+  public static final String FIELD_PERTHREAD_DESC_HUMAN = "java.lang.ThreadLocal ";
+
+  // === Hit counts Data Field ===
+
+  public static final String FIELD_HITCOUNTS_DESC_BYTECODE = "[I";
+
+  public static final String FIELD_HITCOUNTS_DESC_HUMAN = "int[] ";
+
   // === Init method ===
 
   public static final String INIT_METHOD_NAME = "$gzoltarInit";
@@ -24,6 +24,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
@@ -33,8 +40,12 @@ import org.jacoco.core.internal.ContentTypeDetector;
 import org.jacoco.core.internal.Pack200Streams;
 import org.jacoco.core.internal.instr.SignatureRemover;
 import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.instr.InstrumentationCache.CachedClass;
 import com.gzoltar.core.instr.pass.IPass;
 import com.gzoltar.core.instr.pass.CoveragePass;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.util.MD5;
 import javassist.ClassPool;
 import javassist.CtClass;
 
@@ -47,6 +58,10 @@ public class Instrumenter {
 
   private final SignatureRemover signatureRemover;
 
+  private int parallelism = 1;
+
+  private InstrumentationCache cache = null;
+
   /**
    * 
    * @param agentConfigs
@@ -70,6 +85,31 @@ public class Instrumenter {
     this.signatureRemover.setActive(flag);
   }
 
+  /**
+   * Sets the number of threads used to instrument directories, files, and entries of archive files
+   * concurrently. Archive files are always written in the same entry order as the original ones.
+   * Default is <code>1</code>, i.e., everything is instrumented by the calling thread.
+   * 
+   * @param parallelism number of threads
+   */
+  public void setParallelism(final int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Sets the cache of instrumented classes used by {@link #instrumentFromCache(byte[])} and
+   * {@link #instrumentAndCache(byte[], CtClass)}, or null if classes should always be instrumented.
+   * Default is <code>null</code>.
+   * 
+   * @param cache
+   */
+  public void setCache(final InstrumentationCache cache) {
+    this.cache = cache;
+  }
+
   /**
    * 
    * @param classfileBuffer
@@ -77,7 +117,83 @@ public class Instrumenter {
    * @throws Exception
    */
   public byte[] instrument(final byte[] classfileBuffer) throws Exception {
-    return this.instrument(new ByteArrayInputStream(classfileBuffer));
+    final byte[] cachedBytecode = this.instrumentFromCache(classfileBuffer);
+    if (cachedBytecode != null) {
+      return cachedBytecode;
+    }
+    return this.instrumentAndCache(classfileBuffer,
+        parseClass(new ByteArrayInputStream(classfileBuffer)));
+  }
+
+  /**
+   * Loads the instrumented version of a class from the cache, without parsing the class. The
+   * class' probeGroup is registered as if the class had been instrumented.
+   * 
+   * @param classfileBuffer original bytecode of the class
+   * @return the instrumented bytecode of the class, or null if it has not been cached (or there is
+   *         not any cache)
+   */
+  public byte[] instrumentFromCache(final byte[] classfileBuffer) {
+    if (this.cache == null) {
+      return null;
+    }
+
+    final CachedClass cachedClass = this.cache.get(classfileBuffer);
+    if (cachedClass == null) {
+      return null;
+    }
+    Collector.instance().regiterProbeGroup(cachedClass.getProbeGroup());
+    return cachedClass.getBytecode();
+  }
+
+  /**
+   * Instruments a class, or loads its instrumented version from the cache (if any). In the latter
+   * case, the class' probeGroup is registered as if the class had been instrumented.
+   * 
+   * @param classfileBuffer original bytecode of the class
+   * @param cc the class
+   * @return
+   * @throws Exception
+   */
+  public byte[] instrument(final byte[] classfileBuffer, final CtClass cc) throws Exception {
+    final byte[] cachedBytecode = this.instrumentFromCache(classfileBuffer);
+    if (cachedBytecode != null) {
+      cc.detach();
+      return cachedBytecode;
+    }
+    return this.instrumentAndCache(classfileBuffer, cc);
+  }
+
+  /**
+   * Instruments a class that has not been found in the cache (see
+   * {@link #instrumentFromCache(byte[])}), and caches its instrumented version (if there is any
+   * cache).
+   * 
+   * @param classfileBuffer original bytecode of the class
+   * @param cc the class
+   * @return
+   * @throws Exception
+   */
+  public byte[] instrumentAndCache(final byte[] classfileBuffer, final CtClass cc)
+      throws Exception {
+    if (this.cache == null) {
+      return this.instrument(cc);
+    }
+
+    // the hash that identifies the class' probeGroup, as computed by the coverage pass
+    final String hash = MD5.calculateHash(cc.toBytecode());
+    cc.defrost();
+
+    final byte[] bytecode = this.instrument(cc);
+    if (bytecode != null) {
+      ProbeGroup probeGroup = Collector.instance().getProbeGroupByHash(hash);
+      if (probeGroup == null) {
+        // classes without any probe are not registered
+        probeGroup = new ProbeGroup(hash, cc.getName());
+      }
+      this.cache.put(classfileBuffer, bytecode, probeGroup);
+    }
+    return bytecode;
   }
 
   /**
@@ -87,8 +203,16 @@ public class Instrumenter {
    * @throws Exception
    */
   public byte[] instrument(final InputStream sourceStream) throws Exception {
-    CtClass cc = ClassPool.getDefault().makeClassIfNew(sourceStream);
-    return this.instrument(cc);
+    return this.instrument(parseClass(sourceStream));
+  }
+
+  /**
+   * Parses a class into a pool of its own, rather than into the pool shared by all classes, so
+   * that it is not modified by any concurrent instrumentation, e.g., of a class with the same name
+   * in another archive file. Any other class is still resolved by the shared pool.
+   */
+  private static CtClass parseClass(final InputStream sourceStream) throws IOException {
+    return new ClassPool(BoundedClassPool.getInstance()).makeClass(sourceStream, false);
   }
 
   /**
@@ -110,6 +234,9 @@ public class Instrumenter {
     }
 
     byte[] bytecode = cc.toBytecode();
+    // the instrumented class is not needed anymore, if it is ever needed again (e.g., as the
+    // superclass of another class) it is read again from the class path
+    cc.detach();
     return bytecode;
   }
 
@@ -124,6 +251,16 @@ public class Instrumenter {
    * @throws Exception if reading data from the stream fails or a class cannot be instrumented
    */
   public int instrumentToFile(final InputStream input, final OutputStream output) throws Exception {
+    return this.invoke(new InstrumentationTask() {
+      @Override
+      protected int instrument() throws Exception {
+        return instrumentContent(input, output);
+      }
+    });
+  }
+
+  private int instrumentContent(final InputStream input, final OutputStream output)
+      throws Exception {
     final ContentTypeDetector detector = new ContentTypeDetector(input);
     switch (detector.getType()) {
       case ContentTypeDetector.CLASSFILE:
@@ -142,13 +279,22 @@ public class Instrumenter {
     }
   }
 
-  public int instrument(File source, File dest) throws Exception {
+  public int instrument(final File source, final File dest) throws Exception {
+    return this.invoke(new InstrumentationTask() {
+      @Override
+      protected int instrument() throws Exception {
+        return instrumentFile(source, dest);
+      }
+    });
+  }
+
+  private int instrumentFile(final File source, final File dest) throws Exception {
     dest.getParentFile().mkdirs();
     final InputStream input = new FileInputStream(source);
     try {
       final OutputStream output = new FileOutputStream(dest);
       try {
-        return this.instrumentToFile(input, output);
+        return this.instrumentContent(input, output);
       } finally {
         output.close();
       }
@@ -159,26 +305,14 @@ public class Instrumenter {
     }
   }
 
-  public int instrumentRecursively(File source, File dest)
-      throws Exception {
-    int numInstrumentedClasses = 0;
-
-    if (source.isDirectory()) {
-      ClassPool.getDefault().appendClassPath(source.getAbsolutePath());
-      for (final File child : source.listFiles()) {
-        numInstrumentedClasses += this.instrumentRecursively(child, new File(dest, child.getName()));
-      }
-    } else {
-      numInstrumentedClasses += this.instrument(source, dest);
-    }
-
-    return numInstrumentedClasses;
+  public int instrumentRecursively(final File source, final File dest) throws Exception {
+    return this.invoke(new RecursiveInstrumentationTask(source, dest));
   }
 
   private int instrumentGzip(final InputStream input, final OutputStream output) throws Exception {
     final GZIPInputStream gzipInputStream = new GZIPInputStream(input);
     final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(output);
-    final int count = this.instrumentToFile(gzipInputStream, gzipOutputStream);
+    final int count = this.instrumentContent(gzipInputStream, gzipOutputStream);
     gzipOutputStream.finish();
     return count;
   }
@@ -187,7 +321,7 @@ public class Instrumenter {
       throws Exception {
     final InputStream unpackedInput = Pack200Streams.unpack(input);
     final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-    final int count = this.instrumentToFile(unpackedInput, buffer);
+    final int count = this.instrumentContent(unpackedInput, buffer);
     Pack200Streams.pack(buffer.toByteArray(), output);
     return count;
   }
@@ -198,18 +332,40 @@ public class Instrumenter {
     ZipEntry entry;
     int count = 0;
 
+    // entries are read (and written) sequentially, but instrumented concurrently if possible. only a
+    // bounded number of entries are kept in memory, waiting to be written in their original order
+    final boolean concurrent = ForkJoinTask.inForkJoinPool();
+    final int maxPendingEntries = concurrent ? 4 * ForkJoinTask.getPool().getParallelism() : 0;
+    final Queue<ZipEntryTask> pendingEntries = new ArrayDeque<ZipEntryTask>();
+
     while ((entry = zipInputStream.getNextEntry()) != null) {
       final String entryName = entry.getName();
       if (this.signatureRemover.removeEntry(entryName)) {
         continue;
       }
 
+      if (concurrent) {
+        if (pendingEntries.size() >= maxPendingEntries) {
+          count += pendingEntries.poll().write(zipOutputStream);
+        }
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        this.copy(zipInputStream, content);
+        final ZipEntryTask task = new ZipEntryTask(entryName, content.toByteArray());
+        task.fork();
+        pendingEntries.add(task);
+        continue;
+      }
+
       zipOutputStream.putNextEntry(new ZipEntry(entryName));
       if (!this.signatureRemover.filterEntry(entryName, zipInputStream, zipOutputStream)) {
-        count += this.instrumentToFile(zipInputStream, zipOutputStream);
+        count += this.instrumentContent(zipInputStream, zipOutputStream);
       }
       zipOutputStream.closeEntry();
     }
+
+    while (!pendingEntries.isEmpty()) {
+      count += pendingEntries.poll().write(zipOutputStream);
+    }
     zipOutputStream.finish();
 
     return count;
@@ -222,4 +378,152 @@ public class Instrumenter {
       output.write(buffer, 0, len);
     }
   }
+
+  // === Concurrent instrumentation ===
+
+  /**
+   * Runs a task in a new pool of {@link #parallelism} threads, or in the calling thread if there is
+   * no parallelism or if it is already running in a pool.
+   */
+  private int invoke(final InstrumentationTask task) throws Exception {
+    if (this.parallelism == 1 || ForkJoinTask.inForkJoinPool()) {
+      return task.instrument();
+    }
+
+    final ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+    try {
+      return pool.invoke(task);
+    } catch (TaskException e) {
+      throw e.getException();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Instrumentation task that returns the number of instrumented classes.
+   */
+  private static abstract class InstrumentationTask extends RecursiveTask<Integer> {
+
+    private static final long serialVersionUID = 1L;
+
+    protected abstract int instrument() throws Exception;
+
+    @Override
+    protected final Integer compute() {
+      try {
+        return this.instrument();
+      } catch (Exception e) {
+        throw new TaskException(e);
+      }
+    }
+  }
+
+  /**
+   * Instruments a file, or all files of a directory concurrently.
+   */
+  private final class RecursiveInstrumentationTask extends InstrumentationTask {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File source;
+
+    private final File dest;
+
+    private RecursiveInstrumentationTask(final File source, final File dest) {
+      this.source = source;
+      this.dest = dest;
+    }
+
+    @Override
+    protected int instrument() throws Exception {
+      if (!this.source.isDirectory()) {
+        return instrumentFile(this.source, this.dest);
+      }
+
+      BoundedClassPool.getInstance().appendClassPath(this.source.getAbsolutePath());
+      final List<RecursiveInstrumentationTask> tasks =
+          new ArrayList<RecursiveInstrumentationTask>();
+      for (final File child : this.source.listFiles()) {
+        tasks.add(new RecursiveInstrumentationTask(child, new File(this.dest, child.getName())));
+      }
+
+      if (!ForkJoinTask.inForkJoinPool()) {
+        int numInstrumentedClasses = 0;
+        for (RecursiveInstrumentationTask task : tasks) {
+          numInstrumentedClasses += task.instrument();
+        }
+        return numInstrumentedClasses;
+      }
+
+      invokeAll(tasks);
+      int numInstrumentedClasses = 0;
+      for (RecursiveInstrumentationTask task : tasks) {
+        numInstrumentedClasses += task.join();
+      }
+      return numInstrumentedClasses;
+    }
+  }
+
+  /**
+   * Instruments the content of an entry of an archive file in memory.
+   */
+  private final class ZipEntryTask extends InstrumentationTask {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String entryName;
+
+    private final byte[] content;
+
+    private final ByteArrayOutputStream instrumentedContent = new ByteArrayOutputStream();
+
+    private ZipEntryTask(final String entryName, final byte[] content) {
+      this.entryName = entryName;
+      this.content = content;
+    }
+
+    @Override
+    protected int instrument() throws Exception {
+      final InputStream input = new ByteArrayInputStream(this.content);
+      if (signatureRemover.filterEntry(this.entryName, input, this.instrumentedContent)) {
+        return 0;
+      }
+      return instrumentContent(input, this.instrumentedContent);
+    }
+
+    /**
+     * Waits for the entry to be instrumented, and writes it.
+     * 
+     * @return number of instrumented classes
+     */
+    private int write(final ZipOutputStream zipOutputStream) throws IOException {
+      final int count = this.join();
+      zipOutputStream.putNextEntry(new ZipEntry(this.entryName));
+      this.instrumentedContent.writeTo(zipOutputStream);
+      zipOutputStream.closeEntry();
+      return count;
+    }
+  }
+
+  /**
+   * Unchecked wrapper of the exceptions thrown by instrumentation tasks.
+   */
+  private static final class TaskException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private TaskException(final Exception cause) {
+      super(cause);
+    }
+
+    private Exception getException() {
+      // exceptions thrown by nested tasks may have been wrapped several times
+      Throwable cause = this.getCause();
+      while (cause instanceof TaskException) {
+        cause = cause.getCause();
+      }
+      return (Exception) cause;
+    }
+  }
 }
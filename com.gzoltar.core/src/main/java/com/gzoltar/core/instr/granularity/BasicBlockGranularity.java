@@ -23,6 +23,9 @@ import javassist.bytecode.MethodInfo;
 import javassist.bytecode.analysis.ControlFlow;
 import javassist.bytecode.analysis.ControlFlow.Block;
 
+/**
+ * Places a probe at the first instruction of each basic block.
+ */
 public class BasicBlockGranularity extends AbstractGranularity {
 
   private Queue<Integer> blocks = new LinkedList<Integer>();
@@ -27,6 +27,8 @@ public class GranularityFactory {
       case LINE:
         return new LineGranularity(ctClass, methodInfo);
       case METHOD:
+      case CLASS:
+        // a single probe per class would not tell whether any other method has been executed
         return new MethodGranularity(ctClass, methodInfo);
       case BASICBLOCK:
       default:
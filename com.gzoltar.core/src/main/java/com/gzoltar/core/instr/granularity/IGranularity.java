@@ -16,19 +16,25 @@
  */
 package com.gzoltar.core.instr.granularity;
 
+/**
+ * Decides where probes are placed in a method. Instructions are visited in order, and an instance
+ * is only used to instrument a single method.
+ */
 public interface IGranularity {
 
   /**
    * 
-   * @param index
-   * @param instrumentationSize
-   * @return
+   * @param index index of the current instruction
+   * @param instrumentationSize number of bytes injected so far
+   * @return <code>true</code> if a probe should be placed before the current instruction,
+   *         <code>false</code> otherwise
    */
   public boolean instrumentAtIndex(final int index, final int instrumentationSize);
 
   /**
    * 
-   * @return
+   * @return <code>true</code> if no other probe should be placed in the method,
+   *         <code>false</code> otherwise
    */
   public boolean stopInstrumenting();
 
@@ -19,19 +19,28 @@ package com.gzoltar.core.instr.granularity;
 import javassist.CtClass;
 import javassist.bytecode.MethodInfo;
 
+/**
+ * Places a probe at the first instruction of each line, and at the first instruction of each basic
+ * block that starts in the middle of a line (e.g., the condition of a loop), so that a line is
+ * covered whenever any of its blocks is executed.
+ */
 public class LineGranularity extends AbstractGranularity {
 
+  private final BasicBlockGranularity basicBlockGranularity;
+
   private int currentLine = -1;
 
   public LineGranularity(final CtClass ctClass, final MethodInfo methodInfo) {
     super(ctClass, methodInfo);
+    this.basicBlockGranularity = new BasicBlockGranularity(ctClass, methodInfo);
   }
 
   @Override
   public boolean instrumentAtIndex(final int index, final int instrumentationSize) {
     int previousLine = this.currentLine;
     this.currentLine = this.methodInfo.getLineNumber(index);
-    return this.currentLine != previousLine;
+    boolean isNewBlock = this.basicBlockGranularity.instrumentAtIndex(index, instrumentationSize);
+    return this.currentLine != previousLine || isNewBlock;
   }
 
   @Override
@@ -19,6 +19,9 @@ package com.gzoltar.core.instr.granularity;
 import javassist.CtClass;
 import javassist.bytecode.MethodInfo;
 
+/**
+ * Places a single probe at the first instruction of a method.
+ */
 public class MethodGranularity extends AbstractGranularity {
 
   public MethodGranularity(final CtClass ctClass, final MethodInfo methodInfo) {
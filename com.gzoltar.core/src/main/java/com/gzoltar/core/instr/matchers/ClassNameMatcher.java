@@ -20,15 +20,27 @@ import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.CtField;
 
-public class ClassNameMatcher extends AbstractWildcardMatcher {
+public class ClassNameMatcher implements IMatcher {
+
+  private final WildcardTrie trie;
 
   public ClassNameMatcher(final String expression) {
-    super(expression);
+    this.trie = new WildcardTrie(expression);
+  }
+
+  /**
+   * Matches the given class name, which does not require to parse the class.
+   * 
+   * @param name binary or JVM internal name of a class
+   * @return <code>true</code> if the class name matches
+   */
+  public boolean matches(final String name) {
+    return this.trie.matches(name);
   }
 
   @Override
   public boolean matches(final CtClass ctClass) {
-    return super.matches(ctClass.getName());
+    return this.matches(ctClass.getName());
   }
 
   @Override
@@ -30,6 +30,10 @@ public class SourceLocationMatcher implements IMatcher {
 
   private final ProtectionDomain protectionDomain;
 
+  public SourceLocationMatcher(final boolean inclNoLocationClasses, final String buildLocation) {
+    this(inclNoLocationClasses, buildLocation, null);
+  }
+
   public SourceLocationMatcher(final boolean inclNoLocationClasses, final String buildLocation,
       final ProtectionDomain protectionDomain) {
     this.inclNoLocationClasses = inclNoLocationClasses;
@@ -39,7 +43,17 @@ public class SourceLocationMatcher implements IMatcher {
 
   @Override
   public boolean matches(final CtClass ctClass) {
-    if (!this.inclNoLocationClasses && !this.hasSourceLocation(this.protectionDomain)) {
+    return this.matches(this.protectionDomain);
+  }
+
+  /**
+   * Matches the classes of the given protection domain, which does not require to parse any class.
+   * 
+   * @param protectionDomain protection domain of the classes to check (or <code>null</code>)
+   * @return <code>true</code> if the classes should be instrumented
+   */
+  public boolean matches(final ProtectionDomain protectionDomain) {
+    if (!this.inclNoLocationClasses && !this.hasSourceLocation(protectionDomain)) {
       return false;
     }
     return true;
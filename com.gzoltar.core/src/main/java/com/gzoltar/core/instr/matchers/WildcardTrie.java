@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr.matchers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Set of wildcard expressions (as supported by {@link org.jacoco.core.runtime.WildcardMatcher},
+ * i.e., '?' matches any character and '*' any sequence of characters, possibly empty) compiled into
+ * a trie of their literal prefixes.
+ * 
+ * Names are matched without any allocation, by walking the trie character by character, and only
+ * the expressions whose literal prefix matches the beginning of a name are ever evaluated. As
+ * package separators '.' and '/' are considered to be the same character, the same trie matches
+ * both binary names (e.g., {@code java.util.Map$Entry}) and JVM internal names (e.g.,
+ * {@code java/util/Map$Entry}) of classes.
+ */
+public final class WildcardTrie {
+
+  private static final char[] NO_LABELS = new char[0];
+
+  private static final Node[] NO_CHILDREN = new Node[0];
+
+  private final Node root = new Node();
+
+  /**
+   * Creates a new trie for the given expression.
+   * 
+   * @param expression wildcard expressions separated by ':'
+   */
+  public WildcardTrie(final String expression) {
+    for (String pattern : expression.split("\\:")) {
+      this.add(normalise(pattern));
+    }
+  }
+
+  private void add(final String pattern) {
+    Node node = this.root;
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '*' || c == '?') {
+        String suffix = pattern.substring(i);
+        if (isAnySequence(suffix)) {
+          node.anySuffix = true;
+        } else if (!node.suffixes.contains(suffix)) {
+          node.suffixes.add(suffix);
+        }
+        return;
+      }
+      node = node.getOrAddChild(c);
+    }
+    node.terminal = true;
+  }
+
+  /**
+   * Checks whether a name matches any of the expressions of this trie.
+   * 
+   * @param name binary or JVM internal name
+   * @return <code>true</code> if the name matches
+   */
+  public boolean matches(final String name) {
+    Node node = this.root;
+    int i = 0;
+    while (true) {
+      if (node.anySuffix) {
+        return true;
+      }
+      for (String suffix : node.suffixes) {
+        if (matches(suffix, name, i)) {
+          return true;
+        }
+      }
+      if (i == name.length()) {
+        return node.terminal;
+      }
+      node = node.getChild(normalise(name.charAt(i++)));
+      if (node == null) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Checks whether the characters of a name, from a given position onwards, match a wildcard
+   * pattern. Backtracks to the last '*' seen on a mismatch, which is enough as any sequence matched
+   * by an earlier '*' could also be matched by the last one.
+   */
+  private static boolean matches(final String pattern, final String name, final int start) {
+    int p = 0;
+    int n = start;
+    int star = -1;
+    int mark = start;
+    while (n < name.length()) {
+      if (p < pattern.length()
+          && (pattern.charAt(p) == '?' || pattern.charAt(p) == normalise(name.charAt(n)))) {
+        p++;
+        n++;
+      } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+        star = p++;
+        mark = n;
+      } else if (star != -1) {
+        p = star + 1;
+        n = ++mark;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length() && pattern.charAt(p) == '*') {
+      p++;
+    }
+    return p == pattern.length();
+  }
+
+  private static boolean isAnySequence(final String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      if (pattern.charAt(i) != '*') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String normalise(final String pattern) {
+    return pattern.replace('/', '.');
+  }
+
+  private static char normalise(final char c) {
+    return c == '/' ? '.' : c;
+  }
+
+  private static final class Node {
+
+    private char[] labels = NO_LABELS;
+
+    private Node[] children = NO_CHILDREN;
+
+    /** Whether an expression ends at this node */
+    private boolean terminal = false;
+
+    /** Whether an expression ends with '*' at this node, i.e., any name reaching it matches */
+    private boolean anySuffix = false;
+
+    /** Remaining parts, starting with a wildcard, of the expressions that reach this node */
+    private final List<String> suffixes = new ArrayList<String>(0);
+
+    private Node getChild(final char label) {
+      for (int i = 0; i < this.labels.length; i++) {
+        if (this.labels[i] == label) {
+          return this.children[i];
+        }
+      }
+      return null;
+    }
+
+    private Node getOrAddChild(final char label) {
+      Node child = this.getChild(label);
+      if (child == null) {
+        child = new Node();
+        this.labels = Arrays.copyOf(this.labels, this.labels.length + 1);
+        this.labels[this.labels.length - 1] = label;
+        this.children = Arrays.copyOf(this.children, this.children.length + 1);
+        this.children[this.children.length - 1] = child;
+      }
+      return child;
+    }
+  }
+
+}
@@ -19,7 +19,7 @@ package com.gzoltar.core.instr.pass;
 import com.gzoltar.core.instr.InstrumentationConstants;
 import com.gzoltar.core.instr.Outcome;
 import com.gzoltar.core.instr.filter.EmptyMethodFilter;
-import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.ProbeGroup;
 import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.CtMethod;
@@ -30,32 +30,77 @@ public abstract class AbstractInitMethodPass implements IPass {
 
   protected static final String ARRAY_OBJECT_NAME = "$tmpGZoltarData";
 
+  private static final String HIT_ARRAY_NAME = "$tmpGZoltarHitArray";
+
   private final EmptyMethodFilter emptyMethodFilter = new EmptyMethodFilter();
 
-  private String classHash = null;
+  private final ProbeGroup probeGroup;
+
+  private final boolean perThread;
+
+  private final boolean hitCounts;
 
   protected String collectorCall = null;
 
+  protected String touchCall = null;
+
   static {
+    // the method is declared static upfront, so that javassist does not reserve a local variable
+    // for 'this'. with per-thread hit arrays, it returns the hit array of the current thread, so
+    // that an instrumented method looks it up only once per invocation
     METHOD_STR = 
-        InstrumentationConstants.INIT_METHOD_DESC_HUMAN + InstrumentationConstants.INIT_METHOD_NAME_WITH_ARGS + " { "
+        "static %13$s" + InstrumentationConstants.INIT_METHOD_NAME_WITH_ARGS + " { "
+              + "Object[] " + ARRAY_OBJECT_NAME + " = null; "
               + "if (" + InstrumentationConstants.FIELD_NAME + " == " + InstrumentationConstants.FIELD_INIT_VALUE + ") { "
-                + "Object[] " + ARRAY_OBJECT_NAME + " = new Object[] { \"%s\",\"%s\",\"%d\" }; "
-                + "%s "
-                + InstrumentationConstants.FIELD_NAME + " = (" + InstrumentationConstants.FIELD_DESC_HUMAN + ") " + ARRAY_OBJECT_NAME + "[0]; "
+                + ARRAY_OBJECT_NAME + " = new Object[] { \"%1$s\",\"%2$s\",\"%3$d\",\"%4$b\",\"%5$b\" }; "
+                + "%6$s "
+                + InstrumentationConstants.FIELD_NAME + " = (%7$s) " + ARRAY_OBJECT_NAME + "[0]; "
               + "}"
+              // the last slot of the hit array tells whether the class has already been executed in
+              // the current transaction
+              + "%8$s" + HIT_ARRAY_NAME + " = %9$s; "
+              + "if (" + HIT_ARRAY_NAME + "[%3$d] == %10$s) { "
+                + HIT_ARRAY_NAME + "[%3$d] = %11$s; "
+                + ARRAY_OBJECT_NAME + " = new Object[] { \"%1$s\",\"%4$b\" }; "
+                + "%12$s "
+              + "}"
+              + "%14$s"
             + "}";
   }
 
   /**
-   * {@inheritDoc}
+   * 
+   * @param probeGroup probeGroup of the class whose init method is made by this pass
+   * @param perThread whether GZoltar's field should hold a per-thread hit array
+   * @param hitCounts whether GZoltar's field should hold hit counts instead of a boolean hit array
+   */
+  protected AbstractInitMethodPass(final ProbeGroup probeGroup, final boolean perThread,
+      final boolean hitCounts) {
+    this.probeGroup = probeGroup;
+    this.perThread = perThread;
+    this.hitCounts = hitCounts;
+  }
+
+  /**
+   * Makes the method that initialises GZoltar's field of a class.
    */
   @Override
   public Outcome transform(CtClass ctClass) throws Exception {
+    String hitArrayDesc = this.hitCounts ? InstrumentationConstants.FIELD_HITCOUNTS_DESC_HUMAN
+        : InstrumentationConstants.FIELD_DESC_HUMAN;
     CtMethod gzoltarInit =
-        CtMethod.make(String.format(METHOD_STR, this.classHash, ctClass.getName(),
-            Collector.instance().getProbeGroupByHash(this.classHash).getNumberOfProbes(),
-            this.collectorCall), ctClass);
+        CtMethod.make(String.format(METHOD_STR, this.probeGroup.getHash(), ctClass.getName(),
+            this.probeGroup.getHitArrayLength(),
+            this.perThread, this.hitCounts, this.collectorCall,
+            this.perThread ? InstrumentationConstants.FIELD_PERTHREAD_DESC_HUMAN : hitArrayDesc,
+            hitArrayDesc,
+            this.perThread
+                ? "(" + hitArrayDesc + ") " + InstrumentationConstants.FIELD_NAME + ".get()"
+                : InstrumentationConstants.FIELD_NAME,
+            this.hitCounts ? "0" : "false", this.hitCounts ? "1" : "true", this.touchCall,
+            this.perThread ? hitArrayDesc : InstrumentationConstants.INIT_METHOD_DESC_HUMAN,
+            this.perThread ? "return " + HIT_ARRAY_NAME + "; " : ""),
+        ctClass);
     gzoltarInit.setModifiers(gzoltarInit.getModifiers() | InstrumentationConstants.INIT_METHOD_ACC);
     ctClass.addMethod(gzoltarInit);
     return Outcome.ACCEPT;
@@ -75,12 +120,4 @@ public abstract class AbstractInitMethodPass implements IPass {
     return Outcome.ACCEPT;
   }
 
-  /**
-   * 
-   * @param hash
-   */
-  public void setHash(String hash) {
-    this.classHash = hash;
-  }
-
 }
@@ -17,44 +17,56 @@
 package com.gzoltar.core.instr.pass;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Queue;
+import java.util.Set;
 import com.gzoltar.core.AgentConfigs;
 import com.gzoltar.core.instr.InstrumentationConstants;
 import com.gzoltar.core.instr.InstrumentationLevel;
 import com.gzoltar.core.instr.Outcome;
 import com.gzoltar.core.instr.actions.AnonymousClassConstructorFilter;
+import com.gzoltar.core.instr.actions.BlackList;
 import com.gzoltar.core.instr.filter.DuplicateCollectorReferenceFilter;
 import com.gzoltar.core.instr.filter.EmptyMethodFilter;
 import com.gzoltar.core.instr.filter.EnumFilter;
+import com.gzoltar.core.instr.filter.Filter;
 import com.gzoltar.core.instr.filter.IFilter;
 import com.gzoltar.core.instr.filter.SyntheticFilter;
-import com.gzoltar.core.model.Node;
-import com.gzoltar.core.model.NodeFactory;
+import com.gzoltar.core.instr.granularity.GranularityLevel;
+import com.gzoltar.core.instr.matchers.MethodAnnotationMatcher;
+import com.gzoltar.core.instr.matchers.MethodModifierMatcher;
+import com.gzoltar.core.instr.matchers.MethodNameMatcher;
 import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.MethodDescriptor;
 import com.gzoltar.core.runtime.Probe;
 import com.gzoltar.core.runtime.ProbeGroup;
 import com.gzoltar.core.util.MD5;
 import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.CtConstructor;
+import javassist.Modifier;
+import javassist.bytecode.AnnotationsAttribute;
 import javassist.bytecode.Bytecode;
 import javassist.bytecode.CodeAttribute;
 import javassist.bytecode.CodeIterator;
 import javassist.bytecode.ConstPool;
 import javassist.bytecode.MethodInfo;
 import javassist.bytecode.Opcode;
-import javassist.bytecode.analysis.ControlFlow;
-import javassist.bytecode.analysis.ControlFlow.Block;
+import javassist.bytecode.annotation.Annotation;
 
 public class CoveragePass implements IPass {
 
   private final InstrumentationLevel instrumentationLevel;
 
-  private final FieldPass fieldPass = new FieldPass();
+  private final GranularityLevel granularity;
 
-  private AbstractInitMethodPass initMethodPass = null;
+  private final boolean perThread;
+
+  private final boolean hitCounts;
+
+  private final String hitArrayDesc;
+
+  private final FieldPass fieldPass;
 
   private final StackSizePass stackSizePass = new StackSizePass();
 
@@ -63,22 +75,19 @@ public class CoveragePass implements IPass {
 
   private final List<IFilter> filters = new ArrayList<IFilter>();
 
-  private ProbeGroup probeGroup;
-
   public CoveragePass(final AgentConfigs agentConfigs) {
 
     this.instrumentationLevel = agentConfigs.getInstrumentationLevel();
-    switch (this.instrumentationLevel) {
-      case FULL:
-      default:
-        this.initMethodPass = new InitMethodPass();
-        break;
-      case OFFLINE:
-        this.initMethodPass = new OfflineInitMethodPass();
-        break;
-      case NONE:
-        break;
-    }
+    this.granularity = agentConfigs.getGranularity();
+
+    this.perThread = agentConfigs.getPerThread();
+    this.hitCounts = agentConfigs.getHitCounts();
+    this.hitArrayDesc = this.hitCounts ? InstrumentationConstants.FIELD_HITCOUNTS_DESC_BYTECODE
+        : InstrumentationConstants.FIELD_DESC_BYTECODE;
+    this.fieldPass = new FieldPass(this.perThread
+        ? InstrumentationConstants.FIELD_PERTHREAD_DESC_HUMAN
+        : this.hitCounts ? InstrumentationConstants.FIELD_HITCOUNTS_DESC_HUMAN
+            : InstrumentationConstants.FIELD_DESC_HUMAN);
 
     // exclude synthetic methods
     this.filters.add(new SyntheticFilter());
@@ -92,10 +101,43 @@ public class CoveragePass implements IPass {
     // exclude constructor of an Anonymous class as the same line number is handled by the
     // superclass
     this.filters.add(new AnonymousClassConstructorFilter());
+
+    // exclude methods the user is not interested in, so that they do not carry any probe
+    Filter methodFilter = new Filter();
+    if (!agentConfigs.getInclPublicMethods()) {
+      methodFilter.add(new BlackList(new MethodModifierMatcher(Modifier.PUBLIC)));
+    }
+    if (!agentConfigs.getInclStaticConstructors()) {
+      methodFilter.add(new BlackList(new MethodNameMatcher("<clinit>*")));
+    }
+    if (!agentConfigs.getInclDeprecatedMethods()) {
+      methodFilter
+          .add(new BlackList(new MethodAnnotationMatcher(Deprecated.class.getCanonicalName())));
+    }
+    this.filters.add(methodFilter);
   }
 
+  /**
+   * Instruments a class. All state of an instrumentation is local to each invocation, therefore
+   * several classes may be instrumented concurrently by the same pass.
+   */
   @Override
-  public synchronized Outcome transform(final CtClass ctClass) throws Exception {
+  public Outcome transform(final CtClass ctClass) throws Exception {
+    // register class' probes
+    Collector.instance().regiterProbeGroup(this.instrument(ctClass));
+    return Outcome.ACCEPT;
+  }
+
+  /**
+   * Instruments a class as {@link #transform(CtClass)} does, but returns its probes rather than
+   * registering them in the {@link Collector}, e.g., to find out the probes of a class without
+   * touching the spectrum of the running JVM.
+   * 
+   * @param ctClass
+   * @return the probeGroup of the class
+   * @throws Exception
+   */
+  public ProbeGroup instrument(final CtClass ctClass) throws Exception {
     boolean instrumented = false;
 
     byte[] originalBytes = ctClass.toBytecode(); // toBytecode() method frozens the class
@@ -103,11 +145,14 @@ public class CoveragePass implements IPass {
     ctClass.defrost();
 
     String hash = MD5.calculateHash(originalBytes);
-    this.probeGroup = new ProbeGroup(hash, ctClass);
+    ProbeGroup probeGroup = new ProbeGroup(hash, ctClass.getName());
+    // methods that already call the init method, to look up the hit array of the current thread
+    Set<CtBehavior> initialisedBehaviors = new HashSet<CtBehavior>();
 
     for (CtBehavior ctBehavior : ctClass.getDeclaredBehaviors()) {
-      boolean behaviorInstrumented =
-          this.transform(ctClass, ctBehavior).equals(Outcome.REJECT) ? false : true;
+      boolean behaviorInstrumented = this
+          .transform(ctClass, ctBehavior, probeGroup, initialisedBehaviors)
+          .equals(Outcome.REJECT) ? false : true;
       instrumented = instrumented || behaviorInstrumented;
 
       if (behaviorInstrumented) {
@@ -116,16 +161,25 @@ public class CoveragePass implements IPass {
       }
     }
 
-    // register class' probes
-    Collector.instance().regiterProbeGroup(this.probeGroup);
+    AbstractInitMethodPass initMethodPass = null;
+    switch (this.instrumentationLevel) {
+      case FULL:
+      default:
+        initMethodPass = new InitMethodPass(probeGroup, this.perThread, this.hitCounts);
+        break;
+      case OFFLINE:
+        initMethodPass = new OfflineInitMethodPass(probeGroup, this.perThread, this.hitCounts);
+        break;
+      case NONE:
+        break;
+    }
 
-    if (instrumented && this.initMethodPass != null) {
+    if (instrumented && initMethodPass != null) {
       // make GZoltar's field
       this.fieldPass.transform(ctClass);
 
       // make method to init GZoltar's field
-      this.initMethodPass.setHash(hash);
-      this.initMethodPass.transform(ctClass);
+      initMethodPass.transform(ctClass);
 
       // make sure GZoltar's field is initialised. note: the following code requires the init method
       // to be in the instrumented class, otherwise a compilation error is thrown
@@ -139,7 +193,9 @@ public class CoveragePass implements IPass {
 
         // before executing the code of every single method, check whether FIELD_NAME has been
         // initialised. if not, init method should initialise the field
-        this.initMethodPass.transform(ctClass, ctBehavior);
+        if (!initialisedBehaviors.contains(ctBehavior)) {
+          initMethodPass.transform(ctClass, ctBehavior);
+        }
 
         if (hasAnyStaticInitializerBeenInstrumented == false
             && ctBehavior.getMethodInfo2().isStaticInitializer()) {
@@ -149,15 +205,28 @@ public class CoveragePass implements IPass {
 
       if (!hasAnyStaticInitializerBeenInstrumented) {
         CtConstructor clinit = ctClass.makeClassInitializer();
-        this.initMethodPass.transform(ctClass, clinit);
+        initMethodPass.transform(ctClass, clinit);
       }
     }
 
-    return Outcome.ACCEPT;
+    return probeGroup;
   }
 
+  /**
+   * Instruments a single method of a class, whose probes are registered in a new probeGroup that is
+   * not registered in the {@link Collector}. Use {@link #transform(CtClass)} to instrument a class.
+   */
   @Override
   public Outcome transform(final CtClass ctClass, final CtBehavior ctBehavior) throws Exception {
+    byte[] originalBytes = ctClass.toBytecode();
+    ctClass.defrost();
+    return this.transform(ctClass, ctBehavior,
+        new ProbeGroup(MD5.calculateHash(originalBytes), ctClass.getName()),
+        new HashSet<CtBehavior>());
+  }
+
+  private Outcome transform(final CtClass ctClass, final CtBehavior ctBehavior,
+      final ProbeGroup probeGroup, final Set<CtBehavior> initialisedBehaviors) throws Exception {
     Outcome instrumented = Outcome.REJECT;
 
     // check whether this method should be instrumented
@@ -181,62 +250,99 @@ public class CoveragePass implements IPass {
     assert ca != null;
     CodeIterator ci = ca.iterator();
 
-    Queue<Integer> blocks = new LinkedList<Integer>();
-    try {
-      ControlFlow cf = new ControlFlow(ctClass, methodInfo);
-      for (Block block : cf.basicBlocks()) {
-        blocks.add(block.position());
-      }
-    } catch (Exception e) {
-      e.printStackTrace();
+    // shared by all probes of the method
+    MethodDescriptor method = describe(methodInfo);
+
+    // where probes are placed, e.g., at each line or only at the beginning of the method
+    ProbePlacement placement =
+        new ProbePlacement(ctClass, ctBehavior, method, this.granularity, this.hitCounts,
+            probeGroup);
+    if (!injectBytecode) {
+      return instrumented;
     }
 
-    int index = 0, prevLine = -1, curLine = -1, instrSize = 0;
-    while (ci.hasNext()) {
-      index = ci.next();
-      curLine = methodInfo.getLineNumber(index);
+    // with per-thread hit arrays, the hit array of the current thread is looked up once, at the
+    // beginning of the method, and kept in a local variable of its own
+    int hitArrayLocal = -1;
+    if (this.perThread) {
+      hitArrayLocal = ca.getMaxLocals();
+    }
 
-      if (curLine == -1) {
+    // probes are injected from the last to the first one, so that the index of each instruction
+    // in the original bytecode is still valid when a probe is injected before it
+    for (int i = placement.size() - 1; i >= 0; i--) {
+      Probe probe = placement.getProbe(i);
+      if (probe == null) {
+        // its coverage is inferred from another probe
         continue;
       }
 
-      boolean isNewBlock = !blocks.isEmpty() && index >= instrSize + blocks.peek();
-      if (isNewBlock) {
-        blocks.poll();
-      }
-
-      if (prevLine != curLine || isNewBlock) {
-        // a line is always considered for instrumentation if and only if: 1) it's line number has
-        // not been instrumented; 2) or, if it's in a different block
-
-        Node node = NodeFactory.createNode(ctClass, ctBehavior, curLine);
-        assert node != null;
-        Probe probe = this.probeGroup.registerProbe(node, ctBehavior);
-        assert probe != null;
-
-        if (injectBytecode) {
-          Bytecode bc = this.getInstrumentationCode(ctClass, probe, methodInfo.getConstPool());
-          ci.insert(index, bc.get());
-          instrSize += bc.length();
-          instrumented = Outcome.ACCEPT;
-        } else {
-          instrumented = Outcome.REJECT;
-        }
+      Bytecode bc = this.getInstrumentationCode(ctClass, probe, methodInfo.getConstPool(),
+          hitArrayLocal);
+      ci.insert(placement.getIndex(i), bc.get());
+      instrumented = Outcome.ACCEPT;
+    }
 
-        prevLine = curLine;
-      }
+    if (this.perThread && instrumented == Outcome.ACCEPT) {
+      // e.g., $tmp = $gzoltarInit(), which initialises GZoltar's field as any other method does,
+      // and returns the hit array of the current thread
+      Bytecode bc = new Bytecode(methodInfo.getConstPool());
+      bc.addInvokestatic(ctClass, InstrumentationConstants.INIT_METHOD_NAME,
+          "()" + this.hitArrayDesc);
+      bc.addAstore(hitArrayLocal);
+      ci.insert(0, bc.get());
+      ca.setMaxLocals(hitArrayLocal + 1);
+      initialisedBehaviors.add(ctBehavior);
     }
 
     return instrumented;
   }
 
-  private Bytecode getInstrumentationCode(CtClass ctClass, Probe probe, ConstPool constPool) {
+  /**
+   * Captures the {@link MethodDescriptor} of a method, i.e., everything filters and reports require
+   * to know about a method once it has been instrumented.
+   */
+  private static MethodDescriptor describe(final MethodInfo methodInfo) {
+    List<String> annotations = new ArrayList<String>();
+    for (String tag : new String[] {AnnotationsAttribute.visibleTag,
+        AnnotationsAttribute.invisibleTag}) {
+      AnnotationsAttribute attribute = (AnnotationsAttribute) methodInfo.getAttribute(tag);
+      if (attribute != null) {
+        for (Annotation annotation : attribute.getAnnotations()) {
+          annotations.add(annotation.getTypeName());
+        }
+      }
+    }
+    return new MethodDescriptor(methodInfo.getName(), methodInfo.getDescriptor(),
+        methodInfo.getAccessFlags(), annotations.toArray(new String[annotations.size()]));
+  }
+
+  private Bytecode getInstrumentationCode(CtClass ctClass, Probe probe, ConstPool constPool,
+      int hitArrayLocal) {
     Bytecode b = new Bytecode(constPool);
-    b.addGetstatic(ctClass, InstrumentationConstants.FIELD_NAME,
-        InstrumentationConstants.FIELD_DESC_BYTECODE);
-    b.addIconst(probe.getArrayIndex());
-    b.addOpcode(Opcode.ICONST_1);
-    b.addOpcode(Opcode.BASTORE);
+    if (this.perThread) {
+      // hit array of the current thread, looked up at the beginning of the method
+      b.addAload(hitArrayLocal);
+    } else {
+      b.addGetstatic(ctClass, InstrumentationConstants.FIELD_NAME, this.hitArrayDesc);
+    }
+    b.addIconst(probe.getHitArrayIndex());
+    if (this.hitCounts) {
+      // $gzoltarData[i] = c - (c >>> 31), where c = $gzoltarData[i] + 1. i.e., a branch-free
+      // increment that saturates at Integer.MAX_VALUE instead of overflowing
+      b.addOpcode(Opcode.DUP2);
+      b.addOpcode(Opcode.IALOAD);
+      b.addOpcode(Opcode.ICONST_1);
+      b.addOpcode(Opcode.IADD);
+      b.addOpcode(Opcode.DUP);
+      b.addIconst(31);
+      b.addOpcode(Opcode.IUSHR);
+      b.addOpcode(Opcode.ISUB);
+      b.addOpcode(Opcode.IASTORE);
+    } else {
+      b.addOpcode(Opcode.ICONST_1);
+      b.addOpcode(Opcode.BASTORE);
+    }
 
     return b;
   }
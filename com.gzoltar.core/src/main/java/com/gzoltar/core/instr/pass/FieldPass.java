@@ -24,13 +24,24 @@ import javassist.CtField;
 
 public class FieldPass implements IPass {
 
-  private static final String fieldStr =
-      InstrumentationConstants.FIELD_DESC_HUMAN + InstrumentationConstants.FIELD_NAME + " = "
-          + InstrumentationConstants.FIELD_INIT_VALUE + InstrumentationConstants.EOL;
+  private final String fieldStr;
+
+  public FieldPass() {
+    this(InstrumentationConstants.FIELD_DESC_HUMAN);
+  }
+
+  /**
+   * 
+   * @param fieldDesc human readable type of GZoltar's field
+   */
+  public FieldPass(final String fieldDesc) {
+    this.fieldStr = fieldDesc + InstrumentationConstants.FIELD_NAME + " = "
+        + InstrumentationConstants.FIELD_INIT_VALUE + InstrumentationConstants.EOL;
+  }
 
   @Override
   public Outcome transform(CtClass ctClass) throws Exception {
-    CtField f = CtField.make(fieldStr, ctClass);
+    CtField f = CtField.make(this.fieldStr, ctClass);
     f.setModifiers(f.getModifiers() | InstrumentationConstants.FIELD_ACC);
     ctClass.addField(f);
 
@@ -17,14 +17,18 @@
 package com.gzoltar.core.instr.pass;
 
 import com.gzoltar.core.instr.InstrumentationConstants;
+import com.gzoltar.core.runtime.ProbeGroup;
 
 public class InitMethodPass extends AbstractInitMethodPass {
 
   private static final String call = InstrumentationConstants.SYSTEM_CLASS_NAME_JVM + "."
       + InstrumentationConstants.SYSTEM_CLASS_FIELD_NAME + ".equals(" + ARRAY_OBJECT_NAME + "); ";
 
-  public InitMethodPass() {
+  public InitMethodPass(final ProbeGroup probeGroup, final boolean perThread,
+      final boolean hitCounts) {
+    super(probeGroup, perThread, hitCounts);
     this.collectorCall = call;
+    this.touchCall = call;
   }
 
 }
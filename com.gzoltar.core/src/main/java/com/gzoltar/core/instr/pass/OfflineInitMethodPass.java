@@ -16,11 +16,17 @@
  */
 package com.gzoltar.core.instr.pass;
 
+import com.gzoltar.core.runtime.ProbeGroup;
+
 public class OfflineInitMethodPass extends AbstractInitMethodPass {
 
-  public OfflineInitMethodPass() {
+  public OfflineInitMethodPass(final ProbeGroup probeGroup, final boolean perThread,
+      final boolean hitCounts) {
+    super(probeGroup, perThread, hitCounts);
     this.collectorCall =
         "com.gzoltar.internal.agent.rt.Offline.getHitArray(" + ARRAY_OBJECT_NAME + "); ";
+    this.touchCall =
+        "com.gzoltar.internal.agent.rt.Offline.touchProbeGroup(" + ARRAY_OBJECT_NAME + "); ";
   }
 
 }
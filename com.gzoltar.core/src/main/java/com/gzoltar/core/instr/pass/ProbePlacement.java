@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr.pass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.gzoltar.core.instr.granularity.GranularityFactory;
+import com.gzoltar.core.instr.granularity.GranularityLevel;
+import com.gzoltar.core.instr.granularity.IGranularity;
+import com.gzoltar.core.model.Node;
+import com.gzoltar.core.model.NodeFactory;
+import com.gzoltar.core.runtime.MethodDescriptor;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.ExceptionTable;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import javassist.bytecode.analysis.ControlFlow;
+import javassist.bytecode.analysis.ControlFlow.Block;
+
+/**
+ * Decides where the probes of a method are injected. A granularity level tells which instructions
+ * a probe is placed at, however, at line level, a line whose instructions cannot throw any
+ * exception, and that is followed by another line of the same basic block, is always executed
+ * together with the next line. Therefore its coverage is inferred from the probe of the next line
+ * (both share the same slot of the hit array), and no probe is injected at its first instruction.
+ * 
+ * Likewise, a location that is always executed together with the entry of its method (i.e., in the
+ * same basic block as the first instruction of the method, and such that no instruction in between
+ * may throw an exception) shares the slot of the entry probe, and no probe is injected at it
+ * either. Unless probes count the number of times they are executed, this also applies to a line
+ * that is placed at several locations (e.g., a conditional expression), as it is covered whenever
+ * the method is entered, therefore none of its other locations is probed.
+ */
+final class ProbePlacement {
+
+  /** Index of each instruction a probe is placed at, in the original bytecode of the method */
+  private final int[] indexes;
+
+  /** Probe to inject at each instruction, or null if its coverage is inferred */
+  private final Probe[] probes;
+
+  /**
+   * Places the probes of a method, and registers them in a probeGroup.
+   * 
+   * @param ctClass class of the method
+   * @param ctBehavior the method
+   * @param method descriptor of the method
+   * @param granularity granularity level
+   * @param hitCounts whether probes count the number of times they are executed
+   * @param probeGroup probeGroup of the class
+   * @throws BadBytecode
+   */
+  ProbePlacement(final CtClass ctClass, final CtBehavior ctBehavior, final MethodDescriptor method,
+      final GranularityLevel granularity, final boolean hitCounts, final ProbeGroup probeGroup)
+      throws BadBytecode {
+    final MethodInfo methodInfo = ctBehavior.getMethodInfo();
+
+    // === Instructions a probe is placed at ===
+
+    final List<Integer> locations = new ArrayList<Integer>();
+    final List<Node> nodes = new ArrayList<Node>();
+    final IGranularity iGranularity =
+        GranularityFactory.getGranularity(ctClass, methodInfo, granularity);
+    CodeIterator ci = methodInfo.getCodeAttribute().iterator();
+    while (ci.hasNext()) {
+      int index = ci.next();
+      int line = methodInfo.getLineNumber(index);
+      if (line == -1) {
+        continue;
+      }
+
+      if (iGranularity.instrumentAtIndex(index, 0)) {
+        locations.add(index);
+        nodes.add(NodeFactory.createNode(ctClass, ctBehavior, line));
+        if (iGranularity.stopInstrumenting()) {
+          break;
+        }
+      }
+    }
+
+    final int n = locations.size();
+    this.indexes = new int[n];
+    for (int i = 0; i < n; i++) {
+      this.indexes[i] = locations.get(i);
+    }
+    this.probes = new Probe[n];
+
+    // locations whose line has not been registered by any other method of the class
+    final boolean[] ownNodes = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      ownNodes[i] = probeGroup.findProbeByNode(nodes.get(i)) == null;
+    }
+
+    // locations whose line is not placed at any other location (e.g., a loop condition), and has
+    // not been registered by any other method of the class
+    final Map<Node, Integer> occurrences = new HashMap<Node, Integer>();
+    for (Node node : nodes) {
+      Integer count = occurrences.get(node);
+      occurrences.put(node, count == null ? 1 : count + 1);
+    }
+    final boolean[] unique = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      unique[i] = occurrences.get(nodes.get(i)) == 1 && ownNodes[i];
+    }
+
+    // instructions that may be executed without executing the previous one, or null if the control
+    // flow of the method is not known
+    final Set<Integer> blockStarts = n > 1 ? findBlockStarts(ctClass, methodInfo) : null;
+
+    // === Probes whose coverage can be inferred from the next one ===
+
+    final boolean[] inferred = granularity == GranularityLevel.LINE && blockStarts != null
+        ? this.findInferredLocations(methodInfo, unique, blockStarts) : new boolean[n];
+
+    // === Probes whose coverage is the same as the one of the entry probe ===
+
+    // the entry probe is placed at the first location that is not inferred
+    int entry = 0;
+    while (entry < n - 1 && inferred[entry]) {
+      entry++;
+    }
+    // only if the first location is the first instruction of the method, and the slot of the entry
+    // probe is not shared with any other method
+    final boolean[] entryEquivalent =
+        blockStarts != null && this.indexes[0] == 0 && ownNodes[entry]
+            ? this.findEntryEquivalentLocations(methodInfo, blockStarts) : new boolean[n];
+
+    // a location shares the slot of the first next location that is not inferred, or the one of the
+    // entry probe
+    final int[] target = new int[n];
+    for (int i = n - 1; i >= 0; i--) {
+      if (inferred[i]) {
+        target[i] = target[i + 1];
+      } else if (i > entry && entryEquivalent[i] && (hitCounts ? unique[i] : ownNodes[i])) {
+        target[i] = entry;
+      } else {
+        target[i] = i;
+      }
+    }
+
+    final int[] hitArrayIndexes = new int[n];
+    Arrays.fill(hitArrayIndexes, -1);
+    for (int i = 0; i < n; i++) {
+      if (target[i] == i) {
+        Probe probe = hitArrayIndexes[i] == -1 ? probeGroup.registerProbe(nodes.get(i), method)
+            : probeGroup.registerProbe(nodes.get(i), method, hitArrayIndexes[i]);
+        hitArrayIndexes[i] = probe.getHitArrayIndex();
+        // a line that shares the slot of the entry probe is covered whenever the method is entered
+        this.probes[i] = !hitCounts && i > entry && entryEquivalent[entry]
+            && probe.getHitArrayIndex() == hitArrayIndexes[entry] ? null : probe;
+      } else {
+        if (hitArrayIndexes[target[i]] == -1) {
+          hitArrayIndexes[target[i]] = probeGroup.newHitArrayIndex();
+        }
+        probeGroup.registerProbe(nodes.get(i), method, hitArrayIndexes[target[i]]);
+      }
+    }
+  }
+
+  /**
+   * Returns the instructions of a method that may be executed without executing the previous one,
+   * i.e., the first instruction of each basic block and of each exception handler, or null if the
+   * control flow of the method cannot be analysed.
+   */
+  private static Set<Integer> findBlockStarts(final CtClass ctClass,
+      final MethodInfo methodInfo) {
+    final Set<Integer> blockStarts = new HashSet<Integer>();
+    try {
+      ControlFlow cf = new ControlFlow(ctClass, methodInfo);
+      for (Block block : cf.basicBlocks()) {
+        blockStarts.add(block.position());
+      }
+    } catch (Exception e) {
+      return null;
+    }
+    final ExceptionTable exceptionTable = methodInfo.getCodeAttribute().getExceptionTable();
+    for (int i = 0; i < exceptionTable.size(); i++) {
+      blockStarts.add(exceptionTable.handlerPc(i));
+    }
+    return blockStarts;
+  }
+
+  /**
+   * Returns, for each location, whether its coverage is the same as the one of the next location,
+   * i.e., whether 1) both are in the same basic block, 2) the instructions in between cannot throw
+   * any exception, and 3) neither of their lines is placed at any other location.
+   */
+  private boolean[] findInferredLocations(final MethodInfo methodInfo, final boolean[] unique,
+      final Set<Integer> blockStarts) throws BadBytecode {
+    final int n = this.indexes.length;
+    final boolean[] inferred = new boolean[n];
+
+    // lines placed at several locations (e.g., a loop condition) are covered by any of them
+    for (int i = 0; i < n - 1; i++) {
+      inferred[i] = unique[i] && unique[i + 1];
+    }
+
+    final ConstPool constPool = methodInfo.getConstPool();
+    final CodeIterator ci = methodInfo.getCodeAttribute().iterator();
+    int location = -1;
+    while (ci.hasNext()) {
+      int index = ci.next();
+      if (location + 1 < n && index == this.indexes[location + 1]) {
+        location++;
+        if (location > 0 && blockStarts.contains(index)) {
+          inferred[location - 1] = false;
+        }
+      } else if (location >= 0 && blockStarts.contains(index)) {
+        inferred[location] = false;
+      }
+
+      if (location >= 0 && mayThrow(ci, index, constPool)) {
+        inferred[location] = false;
+      }
+    }
+
+    return inferred;
+  }
+
+  /**
+   * Returns, for each location, whether its coverage is the same as the one of the first location
+   * of the method, i.e., whether both are in the same basic block and the instructions in between
+   * cannot throw any exception. As the first location is the first instruction of the method, such
+   * a location is executed if and only if the method is entered.
+   */
+  private boolean[] findEntryEquivalentLocations(final MethodInfo methodInfo,
+      final Set<Integer> blockStarts) throws BadBytecode {
+    final int n = this.indexes.length;
+    final boolean[] entryEquivalent = new boolean[n];
+
+    final ConstPool constPool = methodInfo.getConstPool();
+    final CodeIterator ci = methodInfo.getCodeAttribute().iterator();
+    int location = -1;
+    while (ci.hasNext()) {
+      int index = ci.next();
+      if (location + 1 < n && index == this.indexes[location + 1]) {
+        location++;
+        if (location > 0 && blockStarts.contains(index)) {
+          break;
+        }
+        entryEquivalent[location] = true;
+      } else if (location >= 0 && blockStarts.contains(index)) {
+        break;
+      }
+
+      if (location >= 0 && mayThrow(ci, index, constPool)) {
+        break;
+      }
+    }
+
+    return entryEquivalent;
+  }
+
+  /**
+   * Returns true unless an instruction certainly does not throw any exception, e.g., loads and
+   * stores of local variables, constants, or arithmetic other than integer division.
+   */
+  private static boolean mayThrow(final CodeIterator ci, final int index,
+      final ConstPool constPool) {
+    final int opcode = ci.byteAt(index);
+    switch (opcode) {
+      case Opcode.LDC:
+        return isResolvedAtRuntime(constPool.getTag(ci.byteAt(index + 1)));
+      case Opcode.LDC_W:
+      case Opcode.LDC2_W:
+        return isResolvedAtRuntime(constPool.getTag(ci.u16bitAt(index + 1)));
+      case Opcode.IDIV:
+      case Opcode.LDIV:
+      case Opcode.IREM:
+      case Opcode.LREM:
+        return true;
+      case Opcode.WIDE:
+      case Opcode.IFNULL:
+      case Opcode.IFNONNULL:
+      case Opcode.GOTO_W:
+        return false;
+      default:
+        // constants, loads and stores of local variables, stack manipulation, arithmetic,
+        // conversions, comparisons, and branches
+        return !((opcode >= Opcode.NOP && opcode <= Opcode.SIPUSH)
+            || (opcode >= Opcode.ILOAD && opcode <= Opcode.ALOAD_3)
+            || (opcode >= Opcode.ISTORE && opcode <= Opcode.ASTORE_3)
+            || (opcode >= Opcode.POP && opcode <= Opcode.LOOKUPSWITCH));
+    }
+  }
+
+  private static boolean isResolvedAtRuntime(final int tag) {
+    return tag != ConstPool.CONST_Integer && tag != ConstPool.CONST_Float
+        && tag != ConstPool.CONST_Long && tag != ConstPool.CONST_Double
+        && tag != ConstPool.CONST_String;
+  }
+
+  /**
+   * Returns the number of instructions a probe is placed at.
+   */
+  int size() {
+    return this.indexes.length;
+  }
+
+  /**
+   * Returns the index, in the original bytecode of the method, of the i-th instruction a probe is
+   * placed at.
+   */
+  int getIndex(final int i) {
+    return this.indexes[i];
+  }
+
+  /**
+   * Returns the probe to inject before the i-th instruction a probe is placed at, or null if its
+   * coverage is inferred from another probe.
+   */
+  Probe getProbe(final int i) {
+    return this.probes[i];
+  }
+}
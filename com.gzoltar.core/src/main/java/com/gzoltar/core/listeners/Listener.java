@@ -29,11 +29,17 @@ public class Listener extends RunListener {
 
   public static final String TEST_CLASS_NAME_SEPARATOR = "#";
 
-  private boolean hasFailed = false;
-
-  private long startTime;
-
-  protected String stackTrace;
+  /**
+   * State of the test case running in the current thread. Test cases executed in parallel (e.g.,
+   * by a parallel JUnit runner or by TestNG's <code>parallel="methods"</code>) are notified in
+   * their own threads, therefore each transaction is bound to the thread it has been started on.
+   */
+  private final ThreadLocal<TestState> testState = new ThreadLocal<TestState>() {
+    @Override
+    protected TestState initialValue() {
+      return new TestState();
+    }
+  };
 
   /**
    * Called before any tests have been run.
@@ -53,9 +59,11 @@ public class Listener extends RunListener {
    * Called when an atomic test is about to be started.
    */
   public final void onTestStart() {
-    this.hasFailed = false;
-    this.startTime = System.nanoTime();
-    this.stackTrace = "";
+    TestState state = this.testState.get();
+    state.hasFailed = false;
+    state.startTime = System.nanoTime();
+    state.stackTrace = "";
+    Collector.instance().startTransaction();
   }
 
   /**
@@ -64,17 +72,19 @@ public class Listener extends RunListener {
    * @param testName
    */
   public final void onTestFinish(final String testName) {
+    TestState state = this.testState.get();
     Collector.instance().endTransaction(testName,
-        this.hasFailed ? TransactionOutcome.FAIL : TransactionOutcome.PASS,
-        System.nanoTime() - this.startTime, this.stackTrace);
+        state.hasFailed ? TransactionOutcome.FAIL : TransactionOutcome.PASS,
+        System.nanoTime() - state.startTime, state.stackTrace);
   }
 
   /**
    * Called when an atomic test fails.
    */
   public final void onTestFailure(String trace) {
-    this.hasFailed = true;
-    this.stackTrace = trace;
+    TestState state = this.testState.get();
+    state.hasFailed = true;
+    state.stackTrace = trace;
   }
 
   /**
@@ -97,4 +107,13 @@ public class Listener extends RunListener {
     exception.printStackTrace(writer);
     return stringWriter.toString();
   }
+
+  private static final class TestState {
+
+    private boolean hasFailed = false;
+
+    private long startTime;
+
+    private String stackTrace;
+  }
 }
@@ -0,0 +1,311 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.model;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-length vector of bits, packed in 64-bit words, that tells which probes of a probeGroup have
+ * been executed by a {@link com.gzoltar.core.model.Transaction}. Bit <code>i</code> is stored in
+ * bit <code>i % 64</code> of word <code>i / 64</code>. Once a transaction has been registered in a
+ * spectrum, its hit vectors may be shared with other transactions and must not be modified.
+ */
+public final class HitVector {
+
+  private static final int ADDRESS_BITS_PER_WORD = 6;
+
+  private static final int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+
+  private final int length;
+
+  private final long[] words;
+
+  /**
+   * Creates a vector of a given number of bits, all of them unset.
+   * 
+   * @param length number of bits
+   */
+  public HitVector(final int length) {
+    this(length, new long[getNumberOfWords(length)]);
+  }
+
+  private HitVector(final int length, final long[] words) {
+    this.length = length;
+    this.words = words;
+  }
+
+  /**
+   * Creates a vector with the bits set in a boolean hit array.
+   * 
+   * @param hitArray
+   * @return
+   */
+  public static HitVector valueOf(final boolean[] hitArray) {
+    return valueOf(hitArray, hitArray.length);
+  }
+
+  /**
+   * Creates a vector with the bits set in the first <code>length</code> elements of a boolean hit
+   * array.
+   * 
+   * @param hitArray
+   * @param length number of bits
+   * @return
+   */
+  public static HitVector valueOf(final boolean[] hitArray, final int length) {
+    HitVector hitVector = new HitVector(length);
+    for (int i = 0; i < length; i++) {
+      if (hitArray[i]) {
+        hitVector.set(i);
+      }
+    }
+    return hitVector;
+  }
+
+  /**
+   * Creates a vector with the bits of the probes executed at least once, according to the first
+   * <code>length</code> elements of an array of hit counts.
+   * 
+   * @param hitCounts
+   * @param length number of bits
+   * @return
+   */
+  public static HitVector valueOf(final int[] hitCounts, final int length) {
+    HitVector hitVector = new HitVector(length);
+    for (int i = 0; i < length; i++) {
+      if (hitCounts[i] > 0) {
+        hitVector.set(i);
+      }
+    }
+    return hitVector;
+  }
+
+  /**
+   * Creates a vector from its words. The array is not copied.
+   * 
+   * @param length number of bits
+   * @param words
+   * @return
+   */
+  public static HitVector valueOf(final int length, final long[] words) {
+    if (words.length != getNumberOfWords(length)) {
+      throw new IllegalArgumentException(
+          words.length + " words cannot hold exactly " + length + " bits");
+    }
+    if (words.length > 0) {
+      // bits beyond the length of the vector are never set
+      words[words.length - 1] &= -1L >>> -length;
+    }
+    return new HitVector(length, words);
+  }
+
+  /**
+   * Returns the number of words required to hold a given number of bits.
+   * 
+   * @param length number of bits
+   * @return
+   */
+  public static int getNumberOfWords(final int length) {
+    return (length + BITS_PER_WORD - 1) >>> ADDRESS_BITS_PER_WORD;
+  }
+
+  /**
+   * Returns the number of bits of the vector.
+   */
+  public int length() {
+    return this.length;
+  }
+
+  /**
+   * Returns the number of words of the vector.
+   */
+  public int getNumberOfWords() {
+    return this.words.length;
+  }
+
+  /**
+   * Returns a word of the vector.
+   */
+  public long getWord(final int wordIndex) {
+    return this.words[wordIndex];
+  }
+
+  /**
+   * Returns true if a bit is set, false otherwise.
+   */
+  public boolean get(final int bitIndex) {
+    this.checkIndex(bitIndex);
+    return (this.words[bitIndex >>> ADDRESS_BITS_PER_WORD] & (1L << bitIndex)) != 0;
+  }
+
+  /**
+   * Sets a bit.
+   */
+  public void set(final int bitIndex) {
+    this.checkIndex(bitIndex);
+    this.words[bitIndex >>> ADDRESS_BITS_PER_WORD] |= 1L << bitIndex;
+  }
+
+  /**
+   * Returns the index of the first set bit at or after a given index, or -1 if there is not any.
+   */
+  public int nextSetBit(final int fromIndex) {
+    if (fromIndex >= this.length) {
+      return -1;
+    }
+
+    int wordIndex = fromIndex >>> ADDRESS_BITS_PER_WORD;
+    long word = this.words[wordIndex] & (-1L << fromIndex);
+    while (true) {
+      if (word != 0) {
+        return (wordIndex << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+      }
+      if (++wordIndex == this.words.length) {
+        return -1;
+      }
+      word = this.words[wordIndex];
+    }
+  }
+
+  /**
+   * Returns the number of set bits.
+   */
+  public int cardinality() {
+    int cardinality = 0;
+    for (long word : this.words) {
+      cardinality += Long.bitCount(word);
+    }
+    return cardinality;
+  }
+
+  /**
+   * Returns true if no bit is set, false otherwise.
+   */
+  public boolean isEmpty() {
+    for (long word : this.words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Performs a logical AND of this vector with another vector of the same length. This vector is
+   * modified.
+   */
+  public void and(final HitVector other) {
+    this.checkLength(other);
+    for (int i = 0; i < this.words.length; i++) {
+      this.words[i] &= other.words[i];
+    }
+  }
+
+  /**
+   * Performs a logical OR of this vector with another vector of the same length. This vector is
+   * modified.
+   */
+  public void or(final HitVector other) {
+    this.checkLength(other);
+    for (int i = 0; i < this.words.length; i++) {
+      this.words[i] |= other.words[i];
+    }
+  }
+
+  /**
+   * Returns the number of bits set in both this vector and another vector of the same length,
+   * without modifying any of them.
+   */
+  public int andCardinality(final HitVector other) {
+    this.checkLength(other);
+    int cardinality = 0;
+    for (int i = 0; i < this.words.length; i++) {
+      cardinality += Long.bitCount(this.words[i] & other.words[i]);
+    }
+    return cardinality;
+  }
+
+  /**
+   * Returns a copy of this vector.
+   */
+  public HitVector copy() {
+    return new HitVector(this.length, this.words.clone());
+  }
+
+  /**
+   * Returns a boolean hit array with the bits of this vector.
+   */
+  public boolean[] toBooleanArray() {
+    boolean[] hitArray = new boolean[this.length];
+    for (int i = this.nextSetBit(0); i >= 0; i = this.nextSetBit(i + 1)) {
+      hitArray[i] = true;
+    }
+    return hitArray;
+  }
+
+  private void checkIndex(final int bitIndex) {
+    if (bitIndex < 0 || bitIndex >= this.length) {
+      throw new IndexOutOfBoundsException("bitIndex: " + bitIndex + ", length: " + this.length);
+    }
+  }
+
+  private void checkLength(final HitVector other) {
+    if (other.length != this.length) {
+      throw new IllegalArgumentException(
+          "HitVectors of different lengths: " + this.length + " and " + other.length);
+    }
+  }
+
+  // === Overrides ===
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < this.length; i++) {
+      sb.append(this.get(i) ? '1' : '0');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return 31 * this.length + Arrays.hashCode(this.words);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof HitVector)) {
+      return false;
+    }
+
+    HitVector hitVector = (HitVector) obj;
+    return this.length == hitVector.length && Arrays.equals(this.words, hitVector.words);
+  }
+
+}
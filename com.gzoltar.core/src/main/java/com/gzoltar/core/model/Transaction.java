@@ -27,15 +27,17 @@ import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
-import org.apache.commons.lang3.tuple.Pair;
 import com.gzoltar.core.runtime.ProbeGroup;
 
 public class Transaction {
 
   private final String name;
 
-  /** <ProbeGroup hash, hitArray> */
-  private final Map<String, Pair<String, boolean[]>> activity;
+  /** <ProbeGroup id, hitVector> */
+  private final Map<Integer, HitVector> activity;
+
+  /** <ProbeGroup id, hitCounts>, only available if probes count their executions */
+  private final Map<Integer, int[]> hitCounts;
 
   private final TransactionOutcome outcome;
 
@@ -52,7 +54,7 @@ public class Transaction {
    */
   public Transaction(final String name, final TransactionOutcome outcome, final long runtime,
       final String stackTrace) {
-    this(name, new LinkedHashMap<String, Pair<String, boolean[]>>(), outcome, runtime, stackTrace);
+    this(name, new LinkedHashMap<Integer, HitVector>(), outcome, runtime, stackTrace);
   }
 
   /**
@@ -63,10 +65,26 @@ public class Transaction {
    * @param runtime
    * @param stackTrace
    */
-  public Transaction(final String name, final Map<String, Pair<String, boolean[]>> activity,
+  public Transaction(final String name, final Map<Integer, HitVector> activity,
       final TransactionOutcome outcome, final long runtime, final String stackTrace) {
+    this(name, activity, new LinkedHashMap<Integer, int[]>(), outcome, runtime, stackTrace);
+  }
+
+  /**
+   * 
+   * @param name
+   * @param activity
+   * @param hitCounts
+   * @param outcome
+   * @param runtime
+   * @param stackTrace
+   */
+  public Transaction(final String name, final Map<Integer, HitVector> activity,
+      final Map<Integer, int[]> hitCounts, final TransactionOutcome outcome, final long runtime,
+      final String stackTrace) {
     this.name = name;
     this.activity = activity;
+    this.hitCounts = hitCounts;
     this.outcome = outcome;
     this.runtime = runtime;
     this.stackTrace = this.getNormalizedStackTrace(stackTrace);
@@ -82,9 +100,9 @@ public class Transaction {
   // === ProbeGroups ===
 
   /**
-   * Returns all probeGroups hash.
+   * Returns the identifiers of all probeGroups executed by a transaction.
    */
-  public Set<String> getProbeGroupsHash() {
+  public Set<Integer> getProbeGroupsId() {
     return this.activity.keySet();
   }
 
@@ -98,39 +116,94 @@ public class Transaction {
   /**
    * Returns the activities of a transaction.
    */
-  public Map<String, Pair<String, boolean[]>> getActivity() {
+  public Map<Integer, HitVector> getActivity() {
     return this.activity;
   }
 
   /**
    * Adds an activity to a transaction.
    */
-  public void addActivity(final String hash, final Pair<String, boolean[]> hitArray) {
-    this.activity.put(hash, hitArray);
+  public void addActivity(final int probeGroupId, final HitVector hitVector) {
+    this.activity.put(probeGroupId, hitVector);
   }
 
   /**
-   * Returns a boolean hit array of a probeGroup.
+   * Returns the hit vector of a probeGroup, or null if the probeGroup has not been executed.
    */
-  public boolean[] getHitArray(final ProbeGroup probeGroup) {
-    return this.activity.get(probeGroup.getHash()).getRight();
+  public HitVector getHitVector(final ProbeGroup probeGroup) {
+    return this.activity.get(probeGroup.getId());
   }
 
   /**
-   * Returns a boolean hit array of a probeGroup.
+   * Returns the hit vector of a probeGroup, or null if the probeGroup has not been executed.
    */
-  public boolean[] getHitArrayByProbeGroupHash(final String hash) {
-    return this.activity.get(hash).getRight();
+  public HitVector getHitVectorByProbeGroupId(final int probeGroupId) {
+    return this.activity.get(probeGroupId);
   }
 
   /**
    * Returns true if a specific probe of a probeGroup has been executed, false otherwise.
    */
   public boolean isProbeActived(final ProbeGroup probeGroup, final int probeIndex) {
-    if (!this.activity.containsKey(probeGroup.getHash())) {
+    HitVector hitVector = this.activity.get(probeGroup.getId());
+    if (hitVector == null) {
       return false;
     }
-    return this.activity.get(probeGroup.getHash()).getRight()[probeIndex];
+    return hitVector.get(probeIndex);
+  }
+
+  /**
+   * Returns the number of probes executed by a transaction.
+   */
+  public int getNumberOfActivatedProbes() {
+    int numberOfActivatedProbes = 0;
+    for (HitVector hitVector : this.activity.values()) {
+      numberOfActivatedProbes += hitVector.cardinality();
+    }
+    return numberOfActivatedProbes;
+  }
+
+  // === Hit counts ===
+
+  /**
+   * Returns true if a transaction knows how many times each probe has been executed, false
+   * otherwise.
+   */
+  public boolean hasHitCounts() {
+    return !this.hitCounts.isEmpty();
+  }
+
+  /**
+   * Returns the hit counts of a transaction.
+   */
+  public Map<Integer, int[]> getHitCounts() {
+    return this.hitCounts;
+  }
+
+  /**
+   * Adds the hit counts of a probeGroup to a transaction.
+   */
+  public void addHitCounts(final int probeGroupId, final int[] hitCounts) {
+    this.hitCounts.put(probeGroupId, hitCounts);
+  }
+
+  /**
+   * Returns the hit counts of a probeGroup, or null if they are not available.
+   */
+  public int[] getHitCountsByProbeGroupId(final int probeGroupId) {
+    return this.hitCounts.get(probeGroupId);
+  }
+
+  /**
+   * Returns the number of times a specific probe of a probeGroup has been executed. If hit counts
+   * are not available, it returns 1 if the probe has been executed, 0 otherwise.
+   */
+  public int getProbeHitCount(final ProbeGroup probeGroup, final int probeIndex) {
+    int[] counts = this.hitCounts.get(probeGroup.getId());
+    if (counts != null) {
+      return counts[probeIndex];
+    }
+    return this.isProbeActived(probeGroup, probeIndex) ? 1 : 0;
   }
 
   // === Outcome ===
@@ -246,6 +319,7 @@ public class Transaction {
     HashCodeBuilder builder = new HashCodeBuilder();
     builder.append(this.name);
     builder.append(this.activity);
+    builder.append(this.hitCounts);
     builder.append(this.outcome);
     builder.append(this.runtime);
     builder.append(this.stackTrace);
@@ -269,6 +343,7 @@ public class Transaction {
     EqualsBuilder builder = new EqualsBuilder();
     builder.append(this.name, transaction.name);
     builder.append(this.activity, transaction.activity);
+    builder.append(this.hitCounts, transaction.hitCounts);
     builder.append(this.runtime, transaction.runtime);
     builder.append(this.outcome, transaction.outcome);
     builder.append(this.stackTrace, transaction.stackTrace);
@@ -16,47 +16,94 @@
  */
 package com.gzoltar.core.runtime;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Map.Entry;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import com.gzoltar.core.events.IEventListener;
 import com.gzoltar.core.events.MultiEventListener;
+import com.gzoltar.core.model.HitVector;
 import com.gzoltar.core.model.Transaction;
 import com.gzoltar.core.model.TransactionOutcome;
 import com.gzoltar.core.spectrum.Spectrum;
-import com.gzoltar.core.util.ArrayUtils;
+import com.gzoltar.core.spectrum.SpectrumWriter;
 
 public class Collector {
 
-  private static Collector collector;
+  private static volatile Collector collector;
 
   private MultiEventListener listener;
 
+  /**
+   * Whether ended transactions are kept in the spectrum, or only handed to the listeners (e.g., one
+   * that persists them as they end)
+   */
+  private boolean keepTransactions = true;
+
   private final Spectrum spectrum;
 
-  /** <ProbeGroup hash, hitArray> */
-  private final Map<String, Pair<String, boolean[]>> hitArrays;
+  private final RuntimeStatistics statistics;
+
+  /**
+   * <ProbeGroup hash, ProbeGroup> of all probeGroups registered in the spectrum, which assigns each
+   * one a dense identifier. Transactions and hit arrays address probeGroups by that identifier, the
+   * hash is only used to find out the identifier of an instrumented class.
+   */
+  private final ConcurrentMap<String, ProbeGroup> probeGroups;
+
+  /** Hit arrays shared by all threads */
+  private final TransactionContext sharedContext;
+
+  /** <ProbeGroup id, per-thread hitArray> */
+  private final ConcurrentMap<Integer, PerThreadHitArray> perThreadHitArrays;
+
+  /**
+   * Per-thread hit arrays of each transaction context. A thread started during a transaction shares
+   * the context (and therefore the hit arrays) of the thread that started it, until it starts a
+   * transaction of its own.
+   */
+  private final InheritableThreadLocal<TransactionContext> threadContexts =
+      new InheritableThreadLocal<TransactionContext>() {
+        @Override
+        protected TransactionContext initialValue() {
+          return new TransactionContext(statistics);
+        }
+      };
 
   /**
    * 
    * @return
    */
   public static Collector instance() {
-    if (collector == null) {
-      collector = new Collector();
+    Collector instance = collector;
+    if (instance == null) {
+      // classes may be instrumented (and therefore registered) concurrently
+      synchronized (Collector.class) {
+        instance = collector;
+        if (instance == null) {
+          instance = collector = new Collector();
+        }
+      }
     }
-    return collector;
+    return instance;
   }
 
   /**
    * 
    */
-  public static void restart() {
+  public static synchronized void restart() {
     if (collector != null) {
       Collector newCollector = new Collector();
       newCollector.listener = collector.listener;
+      newCollector.keepTransactions = collector.keepTransactions;
       collector = newCollector;
     }
   }
@@ -68,7 +115,10 @@ public class Collector {
   private Collector() {
     this.listener = new MultiEventListener();
     this.spectrum = new Spectrum();
-    this.hitArrays = new LinkedHashMap<String, Pair<String, boolean[]>>();
+    this.statistics = new RuntimeStatistics();
+    this.probeGroups = new ConcurrentHashMap<String, ProbeGroup>();
+    this.sharedContext = new TransactionContext(this.statistics);
+    this.perThreadHitArrays = new ConcurrentHashMap<Integer, PerThreadHitArray>();
   }
 
   /**
@@ -81,6 +131,17 @@ public class Collector {
     }
   }
 
+  /**
+   * Sets whether ended transactions should be kept in the spectrum. If not, transactions are only
+   * handed to the listeners, and the memory used by the collector does not grow with the number of
+   * transactions.
+   * 
+   * @param keepTransactions
+   */
+  public void setKeepTransactions(final boolean keepTransactions) {
+    this.keepTransactions = keepTransactions;
+  }
+
   /**
    * 
    * @return
@@ -89,17 +150,46 @@ public class Collector {
     return this.spectrum;
   }
 
+  /**
+   * 
+   * @return
+   */
+  public RuntimeStatistics getStatistics() {
+    return this.statistics;
+  }
+
   /**
    * 
    * @param probeGroup
    */
-  public synchronized void regiterProbeGroup(final ProbeGroup probeGroup) {
+  public void regiterProbeGroup(final ProbeGroup probeGroup) {
     if (probeGroup.isEmpty()) {
       return;
     }
+    this.addProbeGroup(probeGroup, probeGroup.getHitArrayLength());
+  }
+
+  private ProbeGroup addProbeGroup(final ProbeGroup probeGroup, final int numberOfProbes) {
+    // mocking frameworks, application servers, or persistence frameworks may cause GZoltar to see
+    // the same class several times, only the first one is registered
+    ProbeGroup registeredProbeGroup = this.probeGroups.get(probeGroup.getHash());
+    if (registeredProbeGroup != null) {
+      return registeredProbeGroup;
+    }
 
-    this.spectrum.addProbeGroup(probeGroup);
-    this.listener.regiterProbeGroup(probeGroup);
+    synchronized (this) {
+      registeredProbeGroup = this.probeGroups.get(probeGroup.getHash());
+      if (registeredProbeGroup != null) {
+        return registeredProbeGroup;
+      }
+
+      // the probeGroup gets its identifier from the spectrum, and only then it is published
+      this.spectrum.addProbeGroup(probeGroup);
+      this.probeGroups.put(probeGroup.getHash(), probeGroup);
+      this.statistics.probeGroupRegistered(numberOfProbes);
+      this.listener.regiterProbeGroup(probeGroup);
+      return probeGroup;
+    }
   }
 
   /**
@@ -107,8 +197,8 @@ public class Collector {
    * @param probeGroup
    * @return
    */
-  public synchronized ProbeGroup getProbeGroup(final ProbeGroup probeGroup) {
-    return this.spectrum.getProbeGroup(probeGroup);
+  public ProbeGroup getProbeGroup(final ProbeGroup probeGroup) {
+    return this.probeGroups.get(probeGroup.getHash());
   }
 
   /**
@@ -116,8 +206,20 @@ public class Collector {
    * @param probeGroupHash
    * @return
    */
-  public synchronized ProbeGroup getProbeGroupByHash(final String probeGroupHash) {
-    return this.spectrum.getProbeGroupByHash(probeGroupHash);
+  public ProbeGroup getProbeGroupByHash(final String probeGroupHash) {
+    return this.probeGroups.get(probeGroupHash);
+  }
+
+  /**
+   * Binds a transaction context to the current thread. Any thread started afterwards by the current
+   * thread shares the same per-thread hit arrays.
+   */
+  public void startTransaction() {
+    if (this.threadContexts.get().owner != Thread.currentThread()) {
+      // the context has been inherited from the thread that started the current one, which may be
+      // running a transaction of its own
+      this.threadContexts.set(new TransactionContext(this.statistics));
+    }
   }
 
   /**
@@ -127,40 +229,74 @@ public class Collector {
    * @param runtime
    * @param stackTrace
    */
-  public synchronized void endTransaction(final String transactionName,
-      final TransactionOutcome outcome, final long runtime, final String stackTrace) {
+  public void endTransaction(final String transactionName, final TransactionOutcome outcome,
+      final long runtime, final String stackTrace) {
+    final long start = System.nanoTime();
 
     // collect coverage
-    Map<String, Pair<String, boolean[]>> activity =
-        new LinkedHashMap<String, Pair<String, boolean[]>>();
-    for (Entry<String, Pair<String, boolean[]>> entry : this.hitArrays.entrySet()) {
-
-      String hash = entry.getKey();
-      boolean[] hitArray = entry.getValue().getRight();
-
-      if (!ArrayUtils.containsValue(hitArray, true)) {
-        // although the class has been loaded and instrumented, no line has been covered
-        activity.put(hash,
-            new ImmutablePair<String, boolean[]>(entry.getValue().getLeft(), hitArray));
-        continue;
-      }
+    Map<Integer, HitVector> activity = new LinkedHashMap<Integer, HitVector>();
+    Map<Integer, int[]> hitCounts = new LinkedHashMap<Integer, int[]>();
 
-      boolean[] cloneHitArray = new boolean[hitArray.length];
-      System.arraycopy(hitArray, 0, cloneHitArray, 0, hitArray.length);
-      activity.put(hash,
-          new ImmutablePair<String, boolean[]>(entry.getValue().getLeft(), cloneHitArray));
+    // only the probeGroups executed since the last transaction ended are visited. each context is
+    // guarded by its own lock, therefore there is no need to hold the collector's lock to collect
+    // them
+    this.threadContexts.get().collectActivity(activity, hitCounts);
+    this.sharedContext.collectActivity(activity, hitCounts);
 
-      // reset probes
-      for (int i = 0; i < hitArray.length; i++) {
-        hitArray[i] = false;
+    synchronized (this) {
+      // create a new transaction
+      Transaction transaction =
+          new Transaction(transactionName, activity, hitCounts, outcome, runtime, stackTrace);
+      if (this.keepTransactions) {
+        this.spectrum.addTransaction(transaction);
       }
+      // and inform all listeners
+      this.listener.endTransaction(transaction);
+
+      this.statistics.transactionEnded(System.nanoTime() - start,
+          this.keepTransactions ? getNumberOfBytes(activity, hitCounts) : 0L);
     }
+  }
 
-    // create a new transaction
-    Transaction transaction = new Transaction(transactionName, activity, outcome, runtime, stackTrace);
-    this.spectrum.addTransaction(transaction);
-    // and inform all listeners
-    this.listener.endTransaction(transaction);
+  private static long getNumberOfBytes(final Map<Integer, HitVector> activity,
+      final Map<Integer, int[]> hitCounts) {
+    long bytes = 0L;
+    for (HitVector hitVector : activity.values()) {
+      bytes += hitVector.getNumberOfWords() * 8L;
+    }
+    for (int[] counts : hitCounts.values()) {
+      bytes += counts.length * 4L;
+    }
+    return bytes;
+  }
+
+  /**
+   * Discards all transactions kept so far, and the probes executed by the current transaction of
+   * the calling thread and by the shared hit arrays. Probes executed by transactions running in
+   * other threads are kept. Probe groups are kept, as instrumented classes still hold their hit
+   * arrays.
+   */
+  public void reset() {
+    Map<Integer, HitVector> activity = new LinkedHashMap<Integer, HitVector>();
+    Map<Integer, int[]> hitCounts = new LinkedHashMap<Integer, int[]>();
+    this.threadContexts.get().collectActivity(activity, hitCounts);
+    this.sharedContext.collectActivity(activity, hitCounts);
+
+    synchronized (this) {
+      this.spectrum.clearTransactions();
+      this.statistics.transactionsDiscarded();
+    }
+  }
+
+  /**
+   * Writes the current spectrum, i.e., all probe groups and the transactions kept so far, to the
+   * given output stream, which is closed afterwards.
+   * 
+   * @param output
+   * @throws IOException
+   */
+  public synchronized void dump(final OutputStream output) throws IOException {
+    new SpectrumWriter(output).writeSpectrum(this.spectrum);
   }
 
   /**
@@ -174,19 +310,71 @@ public class Collector {
    * 
    * @param args
    */
-  public synchronized void getHitArray(final Object[] args) {
-    assert args.length == 3;
+  public void getHitArray(final Object[] args) {
+    assert args.length >= 3;
 
     final String hash = (String) args[0];
     final String probeGroupName = (String) args[1];
     final Integer numberOfProbes = Integer.valueOf((String) args[2]);
+    // classes instrumented by older versions of GZoltar do not provide the 4th and 5th arguments
+    final boolean legacy = args.length == 3;
+    final boolean perThread = args.length > 3 && Boolean.parseBoolean((String) args[3]);
+    final boolean hitCounts = args.length > 4 && Boolean.parseBoolean((String) args[4]);
+
+    ProbeGroup probeGroup = this.probeGroups.get(hash);
+    if (probeGroup == null) {
+      // classes instrumented offline have not been registered by the JVM that runs them
+      probeGroup = this.addProbeGroup(new ProbeGroup(hash, probeGroupName), numberOfProbes);
+    }
+    final int id = probeGroup.getId();
+
+    if (perThread) {
+      PerThreadHitArray hitArray = this.perThreadHitArrays.get(id);
+      if (hitArray == null) {
+        PerThreadHitArray newHitArray = new PerThreadHitArray(id, numberOfProbes, hitCounts);
+        hitArray = this.perThreadHitArrays.putIfAbsent(id, newHitArray);
+        if (hitArray == null) {
+          hitArray = newHitArray;
+        }
+      }
+
+      args[0] = hitArray;
+      return;
+    }
+
+    if (legacy) {
+      // nor do they touch their probeGroup when they are executed, therefore their hit array is
+      // collected at the end of every transaction
+      this.sharedContext.scan(id);
+    }
+    args[0] = this.sharedContext.getHitArray(id, numberOfProbes, hitCounts);
+  }
+
+  /**
+   * Marks a probeGroup as executed in the current transaction, so that its hit array is collected
+   * (and reset) at the end of the transaction. Instrumented classes call it once per transaction,
+   * the first time any of their methods is executed.
+   * 
+   * @param args the probeGroup's hash and whether it records a per-thread hit array
+   */
+  public void touchProbeGroup(final Object[] args) {
+    assert args.length == 2;
 
-    if (!this.hitArrays.containsKey(hash)) {
-      this.hitArrays.put(hash,
-          new ImmutablePair<String, boolean[]>(probeGroupName, new boolean[numberOfProbes]));
+    // the probeGroup has been registered when the class requested its hit array, unless the
+    // collector has been restarted since then, in which case the hit array of the class does not
+    // belong to this collector and there is nothing to collect
+    final ProbeGroup probeGroup = this.probeGroups.get((String) args[0]);
+    if (probeGroup == null) {
+      return;
     }
+    final int id = probeGroup.getId();
+    final boolean perThread = Boolean.parseBoolean((String) args[1]);
 
-    args[0] = this.hitArrays.get(hash).getRight();
+    if (perThread) {
+      this.threadContexts.get().touch(id);
+    } else {
+      this.sharedContext.touch(id);
+    }
   }
 
   /**
@@ -199,8 +387,183 @@ public class Collector {
   @Override
   public boolean equals(final Object args) {
     if (args instanceof Object[]) {
-      this.getHitArray((Object[]) args);
+      Object[] arrayArgs = (Object[]) args;
+      if (arrayArgs.length == 2) {
+        this.touchProbeGroup(arrayArgs);
+      } else {
+        this.getHitArray(arrayArgs);
+      }
     }
     return super.equals(args);
   }
+
+  /**
+   * Hit array of a probeGroup per transaction context. Instrumented classes only see it as a
+   * {@link java.lang.ThreadLocal}, which is loaded by the bootstrap class loader and therefore
+   * accessible from any class.
+   * 
+   * The hit array is not inherited by child threads, each thread resolves it against its own
+   * transaction context (which may be the one of its parent), and resolves it again once it is
+   * bound to a different context.
+   */
+  private final class PerThreadHitArray extends ThreadLocal<Object> {
+
+    private final int id;
+
+    private final int numberOfProbes;
+
+    private final boolean hitCounts;
+
+    private PerThreadHitArray(final int id, final int numberOfProbes, final boolean hitCounts) {
+      this.id = id;
+      this.numberOfProbes = numberOfProbes;
+      this.hitCounts = hitCounts;
+    }
+
+    /**
+     * Returns the hit array of the current transaction context, which is created and registered the
+     * first time, so that it can be collected (and reset) at the end of the transaction.
+     */
+    @Override
+    public Object get() {
+      final TransactionContext context = threadContexts.get();
+      Binding binding = (Binding) super.get();
+      if (binding == null || binding.context != context) {
+        binding = new Binding(context,
+            context.getHitArray(this.id, this.numberOfProbes, this.hitCounts));
+        super.set(binding);
+      }
+      return binding.hitArray;
+    }
+  }
+
+  /**
+   * Hit array of a probeGroup resolved by a thread, and the transaction context it belongs to.
+   */
+  private static final class Binding {
+
+    private final TransactionContext context;
+
+    private final Object hitArray;
+
+    private Binding(final TransactionContext context, final Object hitArray) {
+      this.context = context;
+      this.hitArray = hitArray;
+    }
+  }
+
+  /**
+   * Hit arrays of a transaction context, and the ones that have been executed since the last
+   * transaction ended.
+   * 
+   * Each hit array has one more slot than the number of probes of its probeGroup. The last slot is
+   * set by the instrumented class itself the first time it is executed in a transaction, right
+   * before it calls {@link Collector#touchProbeGroup(Object[])}. Therefore, the cost of ending a
+   * transaction only depends on the number of probeGroups executed by it, and not on the number of
+   * probeGroups loaded so far.
+   * 
+   * As the last slot is only tested when a method is entered, a method that is still running when
+   * a transaction ends (e.g., a loop) may keep executing probes without touching its probeGroup
+   * again. Therefore, a probeGroup executed by a transaction is also collected at the end of the
+   * next one, and so on until a transaction ends without it having executed any probe.
+   * 
+   * Classes instrumented by older versions of GZoltar never touch their probeGroup, the hit arrays
+   * of those classes are collected at the end of every transaction instead.
+   */
+  private static final class TransactionContext {
+
+    /** Thread that created the context, any other thread using it has inherited it */
+    private final Thread owner = Thread.currentThread();
+
+    private final RuntimeStatistics statistics;
+
+    /** <ProbeGroup id, hitArray (boolean[]) or hitCounts (int[])> */
+    private final ConcurrentMap<Integer, Object> hitArrays =
+        new ConcurrentHashMap<Integer, Object>();
+
+    /**
+     * Identifiers of the probeGroups executed in the current transaction, or in the previous one
+     */
+    private final Queue<Integer> touched = new ConcurrentLinkedQueue<Integer>();
+
+    /**
+     * Identifiers of the probeGroups collected at the end of every transaction, as they are never
+     * touched
+     */
+    private final Set<Integer> scanned =
+        Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    private TransactionContext(final RuntimeStatistics statistics) {
+      this.statistics = statistics;
+    }
+
+    private Object getHitArray(final int id, final int numberOfProbes, final boolean hitCounts) {
+      Object hitArray = this.hitArrays.get(id);
+      if (hitArray == null) {
+        Object newHitArray =
+            hitCounts ? new int[numberOfProbes + 1] : new boolean[numberOfProbes + 1];
+        hitArray = this.hitArrays.putIfAbsent(id, newHitArray);
+        if (hitArray == null) {
+          hitArray = newHitArray;
+          this.statistics.hitArrayAllocated(hitCounts ? (numberOfProbes + 1) * 4L
+              : numberOfProbes + 1);
+        }
+      }
+      return hitArray;
+    }
+
+    private void touch(final int id) {
+      this.touched.add(id);
+    }
+
+    private void scan(final int id) {
+      this.scanned.add(id);
+    }
+
+    /**
+     * Only one thread at a time collects the activity of a transaction context, however,
+     * instrumented classes may keep registering and touching hit arrays meanwhile.
+     */
+    private synchronized void collectActivity(final Map<Integer, HitVector> activity,
+        final Map<Integer, int[]> hitCounts) {
+      // a probeGroup may have been touched again after it was kept from the previous transaction
+      Set<Integer> ids = new LinkedHashSet<Integer>(this.scanned);
+      Integer touchedId;
+      while ((touchedId = this.touched.poll()) != null) {
+        ids.add(touchedId);
+      }
+
+      for (Integer id : ids) {
+        Object array = this.hitArrays.get(id);
+        if (array == null) {
+          continue;
+        }
+
+        if (array instanceof int[]) {
+          int[] counts = (int[]) array;
+          int numberOfProbes = counts.length - 1;
+          HitVector hitVector = HitVector.valueOf(counts, numberOfProbes);
+          if (!hitVector.isEmpty()) {
+            activity.put(id, hitVector);
+            hitCounts.put(id, Arrays.copyOf(counts, numberOfProbes));
+            this.touched.add(id);
+          }
+
+          // reset counters and the executed flag
+          Arrays.fill(counts, 0);
+          continue;
+        }
+
+        boolean[] hitArray = (boolean[]) array;
+        HitVector hitVector = HitVector.valueOf(hitArray, hitArray.length - 1);
+        if (!hitVector.isEmpty()) {
+          activity.put(id, hitVector);
+          this.touched.add(id);
+        }
+
+        // reset probes and the executed flag
+        Arrays.fill(hitArray, false);
+      }
+    }
+  }
 }
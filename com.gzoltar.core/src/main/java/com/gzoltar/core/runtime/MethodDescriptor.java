@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.runtime;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * Immutable description of a method, a constructor, or a static constructor (class initialiser)
+ * of an instrumented class. It is captured once, when the class is instrumented, so that probes
+ * can be filtered and reported without keeping (or loading again) the bytecode of the class.
+ */
+public final class MethodDescriptor {
+
+  private static final String STATIC_INITIALIZER_NAME = "<clinit>";
+
+  private static final String[] NO_ANNOTATIONS = new String[0];
+
+  private final String name;
+
+  private final String descriptor;
+
+  private final int accessFlags;
+
+  private final String[] annotations;
+
+  /**
+   * Creates a new {@link com.gzoltar.core.runtime.MethodDescriptor} object.
+   * 
+   * @param name name of the method, e.g., <code>foo</code> or <code>&lt;clinit&gt;</code>
+   * @param descriptor JVM descriptor of the method, e.g., <code>(I)V</code>
+   * @param accessFlags access flags of the method, as in the class file
+   * @param annotations fully qualified names of the annotations of the method
+   */
+  public MethodDescriptor(final String name, final String descriptor, final int accessFlags,
+      final String[] annotations) {
+    this.name = name;
+    this.descriptor = descriptor;
+    this.accessFlags = accessFlags;
+    this.annotations = annotations == null || annotations.length == 0 ? NO_ANNOTATIONS
+        : annotations.clone();
+  }
+
+  /**
+   * Returns the name of the method.
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Returns the JVM descriptor of the method.
+   */
+  public String getDescriptor() {
+    return this.descriptor;
+  }
+
+  /**
+   * Returns the access flags of the method.
+   */
+  public int getAccessFlags() {
+    return this.accessFlags;
+  }
+
+  /**
+   * Returns the fully qualified names of the annotations of the method.
+   */
+  public String[] getAnnotations() {
+    return this.annotations.clone();
+  }
+
+  /**
+   * Returns true if the method is annotated with a specific annotation.
+   * 
+   * @param annotation fully qualified name of the annotation
+   */
+  public boolean hasAnnotation(final String annotation) {
+    for (String a : this.annotations) {
+      if (a.equals(annotation)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if all the given access flags are set.
+   * 
+   * @param mask access flags, e.g., {@link java.lang.reflect.Modifier#PUBLIC}
+   */
+  public boolean hasAccessFlags(final int mask) {
+    return (this.accessFlags & mask) == mask;
+  }
+
+  /**
+   * Returns true if it describes a class initialiser (static initialiser).
+   */
+  public boolean isStaticInitializer() {
+    return STATIC_INITIALIZER_NAME.equals(this.name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return this.name + this.descriptor;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    HashCodeBuilder builder = new HashCodeBuilder();
+    builder.append(this.name);
+    builder.append(this.descriptor);
+    builder.append(this.accessFlags);
+    builder.append(this.annotations);
+    return builder.toHashCode();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == null) {
+      return false;
+    }
+    if (!(obj instanceof MethodDescriptor)) {
+      return false;
+    }
+
+    MethodDescriptor methodDescriptor = (MethodDescriptor) obj;
+
+    EqualsBuilder builder = new EqualsBuilder();
+    builder.append(this.name, methodDescriptor.name);
+    builder.append(this.descriptor, methodDescriptor.descriptor);
+    builder.append(this.accessFlags, methodDescriptor.accessFlags);
+    builder.append(this.annotations, methodDescriptor.annotations);
+
+    return builder.isEquals();
+  }
+}
@@ -19,35 +19,61 @@ package com.gzoltar.core.runtime;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import com.gzoltar.core.model.Node;
-import javassist.CtBehavior;
 
 public final class Probe {
 
   private final int arrayIndex;
 
+  private final int hitArrayIndex;
+
   private final Node node;
 
-  private final CtBehavior ctBehavior;
+  private final MethodDescriptor method;
 
   /**
    * Creates a new {@link com.gzoltar.core.runtime.Probe} object.
    * 
    * @param arrayIndex
    * @param node
+   * @param method
    */
-  public Probe(final int arrayIndex, final Node node, final CtBehavior ctBehavior) {
+  public Probe(final int arrayIndex, final Node node, final MethodDescriptor method) {
+    this(arrayIndex, arrayIndex, node, method);
+  }
+
+  /**
+   * Creates a new {@link com.gzoltar.core.runtime.Probe} object whose coverage is recorded in a
+   * slot of the hit array of its class that may be shared with other probes.
+   * 
+   * @param arrayIndex
+   * @param hitArrayIndex
+   * @param node
+   * @param method
+   */
+  public Probe(final int arrayIndex, final int hitArrayIndex, final Node node,
+      final MethodDescriptor method) {
     this.arrayIndex = arrayIndex;
+    this.hitArrayIndex = hitArrayIndex;
     this.node = node;
-    this.ctBehavior = ctBehavior;
+    this.method = method;
   }
 
   /**
-   * Returns the array index.
+   * Returns the array index, i.e., the index of the probe in the hit vectors of a
+   * {@link com.gzoltar.core.model.Transaction}.
    */
   public int getArrayIndex() {
     return this.arrayIndex;
   }
 
+  /**
+   * Returns the index of the slot of the hit array of the instrumented class the probe is recorded
+   * in. Probes whose coverage is inferred from another probe share its slot.
+   */
+  public int getHitArrayIndex() {
+    return this.hitArrayIndex;
+  }
+
   /**
    * Returns the correspondent {@link com.gzoltar.core.model.Node} object.
    */
@@ -56,10 +82,11 @@ public final class Probe {
   }
 
   /**
-   * Returns the correspondent {@link javassist.CtBehavior} object of a probe.
+   * Returns the {@link com.gzoltar.core.runtime.MethodDescriptor} object of the method in which a
+   * probe has been injected, or null if it is unknown.
    */
-  public CtBehavior getCtBehavior() {
-    return this.ctBehavior;
+  public MethodDescriptor getMethod() {
+    return this.method;
   }
 
   /**
@@ -69,7 +96,7 @@ public final class Probe {
    *         otherwise.
    */
   public boolean isProbeInClassInitialiser() {
-    return this.ctBehavior.getMethodInfo2().isStaticInitializer();
+    return this.method != null && this.method.isStaticInitializer();
   }
 
   /**
@@ -81,6 +108,10 @@ public final class Probe {
     sb.append("[Probe] ");
     sb.append("[");
     sb.append(this.arrayIndex);
+    if (this.hitArrayIndex != this.arrayIndex) {
+      sb.append(" -> ");
+      sb.append(this.hitArrayIndex);
+    }
     sb.append("] ");
     sb.append(this.node.toString());
     return sb.toString();
@@ -93,6 +124,7 @@ public final class Probe {
   public int hashCode() {
     HashCodeBuilder builder = new HashCodeBuilder();
     builder.append(this.arrayIndex);
+    builder.append(this.hitArrayIndex);
     builder.append(this.node);
     return builder.toHashCode();
   }
@@ -113,6 +145,7 @@ public final class Probe {
 
     EqualsBuilder builder = new EqualsBuilder();
     builder.append(this.arrayIndex, probe.arrayIndex);
+    builder.append(this.hitArrayIndex, probe.hitArrayIndex);
     builder.append(this.node, probe.node);
 
     return builder.isEquals();
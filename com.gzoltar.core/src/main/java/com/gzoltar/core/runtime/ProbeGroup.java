@@ -20,60 +20,83 @@ import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import com.gzoltar.core.model.HitVector;
 import com.gzoltar.core.model.Node;
-import javassist.CtBehavior;
-import javassist.CtClass;
 
 public final class ProbeGroup {
 
+  /** Identifier of a probeGroup that has not been registered in any spectrum */
+  public static final int NO_ID = -1;
+
+  private int id = NO_ID;
+
   private final String hash;
 
-  private final CtClass ctClass;
+  private final String name;
 
   private final List<Probe> probes;
 
+  /** Number of slots of the hit array of the class */
+  private int hitArrayLength = 0;
+
   /**
-   * Constructs a new ProbeGroup.
+   * Constructs a new ProbeGroup, whose probes are registered afterwards (e.g., while its class is
+   * instrumented). Note that the probes of a class instrumented by a different JVM (e.g., a class
+   * instrumented offline) are unknown.
    * 
    * @param hash
-   * @param ctClass
+   * @param name
    */
-  public ProbeGroup(String hash, CtClass ctClass) {
-    this(hash, ctClass, new ArrayList<Probe>());
+  public ProbeGroup(String hash, String name) {
+    this(hash, name, new ArrayList<Probe>());
   }
 
   /**
-   * Constructs a new ProbeGroup.
+   * Constructs a new ProbeGroup whose probes are known (e.g., a class loaded from the
+   * instrumentation cache).
    * 
    * @param hash
-   * @param ctClass
+   * @param name
    * @param probes
    */
-  public ProbeGroup(String hash, CtClass ctClass, List<Probe> probes) {
+  public ProbeGroup(String hash, String name, List<Probe> probes) {
     this.hash = hash;
-    this.ctClass = ctClass;
+    this.name = name;
     this.probes = probes;
+    for (Probe probe : probes) {
+      this.hitArrayLength = Math.max(this.hitArrayLength, probe.getHitArrayIndex() + 1);
+    }
   }
 
   /**
-   * Returns the MD5 hash of the bytecode of the class under test.
+   * Returns the dense identifier assigned to a probeGroup by the first
+   * {@link com.gzoltar.core.spectrum.ISpectrum} it has been registered in, or {@link #NO_ID} if it
+   * has not been registered yet.
    */
-  public String getHash() {
-    return this.hash;
+  public int getId() {
+    return this.id;
   }
 
   /**
-   * Returns the correspondent {@link javassist.CtClass} object of a probeGroup.
+   * Sets the identifier of a probeGroup. Copies of a probeGroup (e.g., in a filtered spectrum) must
+   * keep the identifier of the original one, as transactions address probeGroups by it.
    */
-  public CtClass getCtClass() {
-    return this.ctClass;
+  public void setId(final int id) {
+    this.id = id;
+  }
+
+  /**
+   * Returns the MD5 hash of the bytecode of the class under test.
+   */
+  public String getHash() {
+    return this.hash;
   }
 
   /**
    * Returns the name of a probeGroup.
    */
   public String getName() {
-    return this.ctClass.getName();
+    return this.name;
   }
 
   // === Probes ===
@@ -81,15 +104,37 @@ public final class ProbeGroup {
   /**
    * Registers a new {@link com.gzoltar.core.runtime.Probe} object.
    */
-  public Probe registerProbe(final Node node, final CtBehavior ctBehavior) {
+  public Probe registerProbe(final Node node, final MethodDescriptor method) {
     Probe probe = this.findProbeByNode(node);
     if (probe == null) {
-      probe = new Probe(this.probes.size(), node, ctBehavior);
+      probe = new Probe(this.probes.size(), this.newHitArrayIndex(), node, method);
       this.probes.add(probe);
     }
     return probe;
   }
 
+  /**
+   * Registers a new {@link com.gzoltar.core.runtime.Probe} object recorded in a given slot of the
+   * hit array, e.g., a slot shared with the probe its coverage is inferred from.
+   */
+  public Probe registerProbe(final Node node, final MethodDescriptor method,
+      final int hitArrayIndex) {
+    Probe probe = this.findProbeByNode(node);
+    if (probe == null) {
+      probe = new Probe(this.probes.size(), hitArrayIndex, node, method);
+      this.probes.add(probe);
+      this.hitArrayLength = Math.max(this.hitArrayLength, hitArrayIndex + 1);
+    }
+    return probe;
+  }
+
+  /**
+   * Allocates a new slot of the hit array.
+   */
+  public int newHitArrayIndex() {
+    return this.hitArrayLength++;
+  }
+
   /**
    * Returns all {@link com.gzoltar.core.runtime.Probe} objects that have been registered.
    */
@@ -104,6 +149,92 @@ public final class ProbeGroup {
     return this.probes.size();
   }
 
+  /**
+   * Returns the number of slots of the hit array of the class, which is smaller than the number of
+   * {@link com.gzoltar.core.runtime.Probe} objects if the coverage of some of them is inferred.
+   */
+  public int getHitArrayLength() {
+    return this.hitArrayLength;
+  }
+
+  /**
+   * Expands a hit vector recorded by the hit array of the class into a hit vector with an entry per
+   * {@link com.gzoltar.core.runtime.Probe} object.
+   * 
+   * @param hitArrayVector hit vector with an entry per slot of the hit array
+   * @return a hit vector with an entry per probe
+   */
+  public HitVector expand(final HitVector hitArrayVector) {
+    if (this.hitArrayLength == this.probes.size()) {
+      return hitArrayVector;
+    }
+    HitVector hitVector = new HitVector(this.probes.size());
+    for (Probe probe : this.probes) {
+      if (hitArrayVector.get(probe.getHitArrayIndex())) {
+        hitVector.set(probe.getArrayIndex());
+      }
+    }
+    return hitVector;
+  }
+
+  /**
+   * Expands the hit counts recorded by the hit array of the class into hit counts with an entry per
+   * {@link com.gzoltar.core.runtime.Probe} object.
+   * 
+   * @param hitArrayCounts hit counts with an entry per slot of the hit array
+   * @return hit counts with an entry per probe
+   */
+  public int[] expand(final int[] hitArrayCounts) {
+    if (this.hitArrayLength == this.probes.size()) {
+      return hitArrayCounts;
+    }
+    int[] hitCounts = new int[this.probes.size()];
+    for (Probe probe : this.probes) {
+      hitCounts[probe.getArrayIndex()] = hitArrayCounts[probe.getHitArrayIndex()];
+    }
+    return hitCounts;
+  }
+
+  /**
+   * Compresses a hit vector with an entry per {@link com.gzoltar.core.runtime.Probe} object back
+   * into a hit vector with an entry per slot of the hit array of the class, i.e., the inverse of
+   * {@link #expand(HitVector)}.
+   * 
+   * @param hitVector hit vector with an entry per probe
+   * @return a hit vector with an entry per slot of the hit array
+   */
+  public HitVector compress(final HitVector hitVector) {
+    if (this.hitArrayLength == this.probes.size()) {
+      return hitVector;
+    }
+    HitVector hitArrayVector = new HitVector(this.hitArrayLength);
+    for (Probe probe : this.probes) {
+      if (hitVector.get(probe.getArrayIndex())) {
+        hitArrayVector.set(probe.getHitArrayIndex());
+      }
+    }
+    return hitArrayVector;
+  }
+
+  /**
+   * Compresses hit counts with an entry per {@link com.gzoltar.core.runtime.Probe} object back into
+   * hit counts with an entry per slot of the hit array of the class, i.e., the inverse of
+   * {@link #expand(int[])}.
+   * 
+   * @param hitCounts hit counts with an entry per probe
+   * @return hit counts with an entry per slot of the hit array
+   */
+  public int[] compress(final int[] hitCounts) {
+    if (this.hitArrayLength == this.probes.size()) {
+      return hitCounts;
+    }
+    int[] hitArrayCounts = new int[this.hitArrayLength];
+    for (Probe probe : this.probes) {
+      hitArrayCounts[probe.getHitArrayIndex()] = hitCounts[probe.getArrayIndex()];
+    }
+    return hitArrayCounts;
+  }
+
   /**
    * Returns true if a probeGroup does not contain any {@link com.gzoltar.core.runtime.Probe}
    * object.
@@ -160,6 +291,8 @@ public final class ProbeGroup {
   public String toString() {
     StringBuilder sb = new StringBuilder();
     sb.append("[ProbeGroup] ");
+    sb.append(this.id);
+    sb.append(" | ");
     sb.append(this.hash);
     sb.append(" | ");
     sb.append(this.getName());
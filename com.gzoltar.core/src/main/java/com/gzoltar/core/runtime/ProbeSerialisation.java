@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.runtime;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jacoco.core.internal.data.CompactDataInput;
+import org.jacoco.core.internal.data.CompactDataOutput;
+import com.gzoltar.core.model.Node;
+import com.gzoltar.core.model.NodeType;
+
+/**
+ * Serialisation of the probes of a {@link ProbeGroup}, i.e., everything that is known about a class
+ * once it has been instrumented, so that it does not have to be instrumented again (e.g., by the
+ * instrumentation cache, or by the fault localization report).
+ * 
+ * Strings shared by several probes (or probeGroups), i.e., names and descriptors of methods, their
+ * annotations, and the name of each node up to its line number, are written as references to a
+ * name dictionary. The dictionary is either written along with the probes, or (e.g., in spectrum
+ * data files) shared by all probeGroups.
+ */
+public final class ProbeSerialisation {
+
+  private ProbeSerialisation() {
+    // no instance
+  }
+
+  /**
+   * Returns the strings the probes of a probeGroup refer to, i.e., the entries of the name
+   * dictionary that {@link #write(CompactDataOutput, ProbeGroup, Map)} requires.
+   * 
+   * @param probeGroup
+   * @return
+   */
+  public static List<String> getNames(final ProbeGroup probeGroup) {
+    final Map<String, Boolean> names = new LinkedHashMap<String, Boolean>();
+    for (MethodDescriptor method : getMethods(probeGroup).keySet()) {
+      names.put(method.getName(), Boolean.TRUE);
+      names.put(method.getDescriptor(), Boolean.TRUE);
+      for (String annotation : method.getAnnotations()) {
+        names.put(annotation, Boolean.TRUE);
+      }
+    }
+    for (Probe probe : probeGroup.getProbes()) {
+      names.put(getPrefix(probe.getNode().getName()), Boolean.TRUE);
+    }
+    return new ArrayList<String>(names.keySet());
+  }
+
+  /**
+   * Writes the name dictionary, and the methods and probes of a probeGroup.
+   * 
+   * @param out
+   * @param probeGroup
+   * @throws IOException
+   */
+  public static void write(final CompactDataOutput out, final ProbeGroup probeGroup)
+      throws IOException {
+    final List<String> names = getNames(probeGroup);
+    final Map<String, Integer> indexes = new LinkedHashMap<String, Integer>();
+    out.writeVarInt(names.size());
+    for (String name : names) {
+      out.writeUTF(name);
+      indexes.put(name, indexes.size());
+    }
+    write(out, probeGroup, indexes);
+  }
+
+  /**
+   * Writes the methods and probes of a probeGroup.
+   * 
+   * @param out
+   * @param probeGroup
+   * @param names <name, index> of a name dictionary that holds all names returned by
+   *        {@link #getNames(ProbeGroup)}
+   * @throws IOException
+   */
+  public static void write(final CompactDataOutput out, final ProbeGroup probeGroup,
+      final Map<String, Integer> names) throws IOException {
+    // methods are shared by several probes, therefore they are written once
+    final Map<MethodDescriptor, Integer> methods = getMethods(probeGroup);
+    out.writeVarInt(methods.size());
+    for (MethodDescriptor method : methods.keySet()) {
+      out.writeVarInt(names.get(method.getName()));
+      out.writeVarInt(names.get(method.getDescriptor()));
+      out.writeVarInt(method.getAccessFlags());
+      final String[] annotations = method.getAnnotations();
+      out.writeVarInt(annotations.length);
+      for (String annotation : annotations) {
+        out.writeVarInt(names.get(annotation));
+      }
+    }
+
+    out.writeVarInt(probeGroup.getNumberOfProbes());
+    for (Probe probe : probeGroup.getProbes()) {
+      final Node node = probe.getNode();
+      final String prefix = getPrefix(node.getName());
+      out.writeVarInt(names.get(prefix));
+      out.writeUTF(node.getName().substring(prefix.length()));
+      // line numbers of nodes without one are negative
+      out.writeVarInt(node.getLineNumber() + 1);
+      out.writeByte(node.getNodeType().ordinal());
+      out.writeVarInt(probe.getHitArrayIndex());
+      out.writeVarInt(probe.getMethod() == null ? 0 : methods.get(probe.getMethod()) + 1);
+    }
+  }
+
+  /**
+   * Reads the probes written by {@link #write(CompactDataOutput, ProbeGroup)}.
+   * 
+   * @param in
+   * @return the probes of a probeGroup
+   * @throws IOException
+   */
+  public static List<Probe> read(final CompactDataInput in) throws IOException {
+    final int numberOfNames = in.readVarInt();
+    final List<String> names = new ArrayList<String>(numberOfNames);
+    for (int i = 0; i < numberOfNames; i++) {
+      names.add(in.readUTF());
+    }
+    return read(in, names);
+  }
+
+  /**
+   * Reads the probes written by {@link #write(CompactDataOutput, ProbeGroup, Map)}.
+   * 
+   * @param in
+   * @param names the name dictionary the probes refer to
+   * @return the probes of a probeGroup
+   * @throws IOException
+   */
+  public static List<Probe> read(final CompactDataInput in, final List<String> names)
+      throws IOException {
+    final MethodDescriptor[] methods = new MethodDescriptor[in.readVarInt()];
+    for (int i = 0; i < methods.length; i++) {
+      final String methodName = getName(names, in.readVarInt());
+      final String descriptor = getName(names, in.readVarInt());
+      final int accessFlags = in.readVarInt();
+      final String[] annotations = new String[in.readVarInt()];
+      for (int j = 0; j < annotations.length; j++) {
+        annotations[j] = getName(names, in.readVarInt());
+      }
+      methods[i] = new MethodDescriptor(methodName, descriptor, accessFlags, annotations);
+    }
+
+    final int numberOfProbes = in.readVarInt();
+    final List<Probe> probes = new ArrayList<Probe>(numberOfProbes);
+    for (int i = 0; i < numberOfProbes; i++) {
+      final String nodeName = getName(names, in.readVarInt()) + in.readUTF();
+      final int lineNumber = in.readVarInt() - 1;
+      final NodeType nodeType = NodeType.values()[in.readByte()];
+      final int hitArrayIndex = in.readVarInt();
+      final int methodIndex = in.readVarInt() - 1;
+      if (methodIndex < -1 || methodIndex >= methods.length) {
+        throw new IOException("Invalid reference to method " + methodIndex + ".");
+      }
+      probes.add(new Probe(i, hitArrayIndex, new Node(nodeName, lineNumber, nodeType),
+          methodIndex == -1 ? null : methods[methodIndex]));
+    }
+    return probes;
+  }
+
+  /**
+   * Returns <method, index> of the methods of a probeGroup, in the order they are first referred to
+   * by a probe.
+   */
+  private static Map<MethodDescriptor, Integer> getMethods(final ProbeGroup probeGroup) {
+    final Map<MethodDescriptor, Integer> methods = new LinkedHashMap<MethodDescriptor, Integer>();
+    for (Probe probe : probeGroup.getProbes()) {
+      if (probe.getMethod() != null && !methods.containsKey(probe.getMethod())) {
+        methods.put(probe.getMethod(), methods.size());
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Returns the name of a node up to its line number, which is shared by all nodes of a method.
+   */
+  private static String getPrefix(final String nodeName) {
+    return nodeName.substring(0, nodeName.lastIndexOf(NodeType.LINE.getSymbol()) + 1);
+  }
+
+  private static String getName(final List<String> names, final int index) throws IOException {
+    if (index < 0 || index >= names.size()) {
+      throw new IOException("Invalid reference to name " + index + ".");
+    }
+    return names.get(index);
+  }
+
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Statistics of the runtime of GZoltar, e.g., to size the heap of a JVM, or to find out which
+ * classes are expensive to instrument. All counters are updated without holding any lock.
+ */
+public final class RuntimeStatistics {
+
+  /** Number of classes reported by {@link #getMostExpensiveClassesToInstrument()} */
+  private static final int NUMBER_OF_EXPENSIVE_CLASSES = 10;
+
+  private final AtomicLong numberOfInstrumentedClasses = new AtomicLong();
+
+  private final AtomicLong numberOfProbes = new AtomicLong();
+
+  private final AtomicLong numberOfTransactions = new AtomicLong();
+
+  private final AtomicLong hitArrayBytes = new AtomicLong();
+
+  private final AtomicLong transactionBytes = new AtomicLong();
+
+  private final AtomicLong transformTime = new AtomicLong();
+
+  private final AtomicLong endTransactionTime = new AtomicLong();
+
+  /** Most expensive classes to instrument, in no particular order */
+  private final AtomicReferenceArray<ClassInstrumentation> expensiveClasses =
+      new AtomicReferenceArray<ClassInstrumentation>(NUMBER_OF_EXPENSIVE_CLASSES);
+
+  /**
+   * Time of the cheapest class in {@link #expensiveClasses}, so that most classes are discarded
+   * without looking at it. It only ever grows, and it may lag behind (i.e., be lower than) the
+   * array, which only costs a few extra scans
+   */
+  private final AtomicLong expensiveClassesThreshold = new AtomicLong();
+
+  // === Instrumentation ===
+
+  /**
+   * Registers a probeGroup, i.e., an instrumented class.
+   * 
+   * @param numberOfProbes
+   */
+  public void probeGroupRegistered(final int numberOfProbes) {
+    this.numberOfInstrumentedClasses.incrementAndGet();
+    this.numberOfProbes.addAndGet(numberOfProbes);
+  }
+
+  /**
+   * Registers the time spent instrumenting a class.
+   * 
+   * @param className
+   * @param nanos
+   */
+  public void classInstrumented(final String className, final long nanos) {
+    this.transformTime.addAndGet(nanos);
+
+    if (nanos <= this.expensiveClassesThreshold.get()) {
+      return;
+    }
+    ClassInstrumentation clazz = new ClassInstrumentation(className, nanos);
+    while (true) {
+      // replace the cheapest class (or an empty slot), unless it has become more expensive
+      int cheapest = 0;
+      ClassInstrumentation cheapestClass = this.expensiveClasses.get(0);
+      for (int i = 1; i < NUMBER_OF_EXPENSIVE_CLASSES && cheapestClass != null; i++) {
+        ClassInstrumentation other = this.expensiveClasses.get(i);
+        if (other == null || other.nanos < cheapestClass.nanos) {
+          cheapest = i;
+          cheapestClass = other;
+        }
+      }
+      if (cheapestClass != null && cheapestClass.nanos >= nanos) {
+        return;
+      }
+      if (this.expensiveClasses.compareAndSet(cheapest, cheapestClass, clazz)) {
+        break;
+      }
+    }
+
+    long threshold = Long.MAX_VALUE;
+    for (int i = 0; i < NUMBER_OF_EXPENSIVE_CLASSES; i++) {
+      ClassInstrumentation other = this.expensiveClasses.get(i);
+      threshold = Math.min(threshold, other == null ? 0L : other.nanos);
+    }
+    this.expensiveClassesThreshold.set(threshold);
+  }
+
+  /**
+   * Returns the number of instrumented classes.
+   */
+  public long getNumberOfInstrumentedClasses() {
+    return this.numberOfInstrumentedClasses.get();
+  }
+
+  /**
+   * Returns the number of probes of all instrumented classes.
+   */
+  public long getNumberOfProbes() {
+    return this.numberOfProbes.get();
+  }
+
+  /**
+   * Returns the time (in milliseconds) spent instrumenting classes.
+   */
+  public long getTransformTime() {
+    return TimeUnit.NANOSECONDS.toMillis(this.transformTime.get());
+  }
+
+  /**
+   * Returns the most expensive classes to instrument, the most expensive one first, as
+   * <code>className: time ms</code>.
+   */
+  public List<String> getMostExpensiveClassesToInstrument() {
+    List<ClassInstrumentation> classes = new ArrayList<ClassInstrumentation>();
+    for (int i = 0; i < NUMBER_OF_EXPENSIVE_CLASSES; i++) {
+      ClassInstrumentation clazz = this.expensiveClasses.get(i);
+      if (clazz != null) {
+        classes.add(clazz);
+      }
+    }
+    Collections.sort(classes, Collections.reverseOrder());
+
+    List<String> expensiveClasses = new ArrayList<String>();
+    for (ClassInstrumentation clazz : classes) {
+      expensiveClasses.add(
+          clazz.className + ": " + TimeUnit.NANOSECONDS.toMillis(clazz.nanos) + " ms");
+    }
+    return expensiveClasses;
+  }
+
+  // === Transactions ===
+
+  /**
+   * Registers the allocation of a hit array.
+   * 
+   * @param bytes
+   */
+  public void hitArrayAllocated(final long bytes) {
+    this.hitArrayBytes.addAndGet(bytes);
+  }
+
+  /**
+   * Registers the end of a transaction.
+   * 
+   * @param nanos time spent ending the transaction
+   * @param bytes bytes of coverage data kept in memory, or 0 if the transaction is not kept
+   */
+  public void transactionEnded(final long nanos, final long bytes) {
+    this.numberOfTransactions.incrementAndGet();
+    this.endTransactionTime.addAndGet(nanos);
+    this.transactionBytes.addAndGet(bytes);
+  }
+
+  /**
+   * Registers that all transactions kept in memory have been discarded.
+   */
+  public void transactionsDiscarded() {
+    this.transactionBytes.set(0);
+  }
+
+  /**
+   * Returns the number of transactions that have ended.
+   */
+  public long getNumberOfTransactions() {
+    return this.numberOfTransactions.get();
+  }
+
+  /**
+   * Returns an estimation of the number of bytes of coverage data kept in memory, i.e., hit arrays
+   * and transactions.
+   */
+  public long getBufferedBytes() {
+    return this.hitArrayBytes.get() + this.transactionBytes.get();
+  }
+
+  /**
+   * Returns the time (in milliseconds) spent ending transactions.
+   */
+  public long getEndTransactionTime() {
+    return TimeUnit.NANOSECONDS.toMillis(this.endTransactionTime.get());
+  }
+
+  private static final class ClassInstrumentation implements Comparable<ClassInstrumentation> {
+
+    private final String className;
+
+    private final long nanos;
+
+    private ClassInstrumentation(final String className, final long nanos) {
+      this.className = className;
+      this.nanos = nanos;
+    }
+
+    @Override
+    public int compareTo(final ClassInstrumentation other) {
+      return this.nanos < other.nanos ? -1 : (this.nanos == other.nanos ? 0 : 1);
+    }
+  }
+}
@@ -16,32 +16,33 @@
  */
 package com.gzoltar.core.spectrum;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import java.util.HashSet;
+import java.util.Set;
 import com.gzoltar.core.AgentConfigs;
-import com.gzoltar.core.instr.Outcome;
-import com.gzoltar.core.instr.actions.BlackList;
-import com.gzoltar.core.instr.actions.WhiteList;
-import com.gzoltar.core.instr.filter.Filter;
 import com.gzoltar.core.instr.granularity.GranularityLevel;
 import com.gzoltar.core.instr.matchers.ClassNameMatcher;
-import com.gzoltar.core.instr.matchers.MethodAnnotationMatcher;
-import com.gzoltar.core.instr.matchers.MethodModifierMatcher;
-import com.gzoltar.core.instr.matchers.MethodNameMatcher;
+import com.gzoltar.core.model.HitVector;
 import com.gzoltar.core.model.Node;
 import com.gzoltar.core.model.NodeType;
 import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.runtime.MethodDescriptor;
 import com.gzoltar.core.runtime.Probe;
 import com.gzoltar.core.runtime.ProbeGroup;
-import com.gzoltar.core.util.ArrayUtils;
 import javassist.Modifier;
 
 public class FilteredSpectrum {
 
   private final GranularityLevel granularity;
 
-  private final Filter classFilter;
+  private final ClassNameMatcher includeClasses;
 
-  private final Filter methodFilter = new Filter();
+  private final ClassNameMatcher excludeClasses;
+
+  private final boolean inclPublicMethods;
+
+  private final boolean inclStaticConstructors;
+
+  private final boolean inclDeprecatedMethods;
 
   /**
    * 
@@ -54,27 +55,45 @@ public class FilteredSpectrum {
     // === Class level filters ===
 
     // instrument some classes
-    WhiteList includeClasses = new WhiteList(new ClassNameMatcher(configs.getIncludes()));
+    this.includeClasses = new ClassNameMatcher(configs.getIncludes());
 
     // do not instrument some classes
-    BlackList excludeClasses = new BlackList(new ClassNameMatcher(configs.getExcludes()));
-
-    this.classFilter = new Filter(includeClasses, excludeClasses);
+    this.excludeClasses = new ClassNameMatcher(configs.getExcludes());
 
     // === Method level filters ===
 
-    if (!configs.getInclPublicMethods()) {
-      this.methodFilter.add(new BlackList(new MethodModifierMatcher(Modifier.PUBLIC)));
-    }
+    this.inclPublicMethods = configs.getInclPublicMethods();
+    this.inclStaticConstructors = configs.getInclStaticConstructors();
+    this.inclDeprecatedMethods = configs.getInclDeprecatedMethods();
+  }
 
-    if (!configs.getInclStaticConstructors()) {
-      this.methodFilter.add(new BlackList(new MethodNameMatcher("<clinit>*")));
-    }
+  /**
+   * Returns true if the probes of a class should be kept.
+   */
+  private boolean accept(final ProbeGroup probeGroup) {
+    return this.includeClasses.matches(probeGroup.getName())
+        && !this.excludeClasses.matches(probeGroup.getName());
+  }
 
-    if (!configs.getInclDeprecatedMethods()) {
-      this.methodFilter
-          .add(new BlackList(new MethodAnnotationMatcher(Deprecated.class.getCanonicalName())));
+  /**
+   * Returns true if the probes of a method should be kept. Probes of an unknown method are always
+   * kept.
+   */
+  private boolean accept(final MethodDescriptor method) {
+    if (method == null) {
+      return true;
+    }
+    if (!this.inclPublicMethods && method.hasAccessFlags(Modifier.PUBLIC)) {
+      return false;
+    }
+    if (!this.inclStaticConstructors && method.isStaticInitializer()) {
+      return false;
+    }
+    if (!this.inclDeprecatedMethods
+        && method.hasAnnotation(Deprecated.class.getCanonicalName())) {
+      return false;
     }
+    return true;
   }
 
   /**
@@ -95,36 +114,35 @@ public class FilteredSpectrum {
 
     for (ProbeGroup probeGroup : source.getProbeGroups()) {
       // does 'probeGroup' match any filter?
-      if (this.classFilter.filter(probeGroup.getCtClass()) == Outcome.REJECT) {
+      if (!this.accept(probeGroup)) {
         continue;
       }
 
-      ProbeGroup newProbeGroup = new ProbeGroup(probeGroup.getHash(), probeGroup.getCtClass());
+      ProbeGroup newProbeGroup = new ProbeGroup(probeGroup.getHash(), probeGroup.getName());
+      // transactions keep addressing the probeGroup by its original identifier
+      newProbeGroup.setId(probeGroup.getId());
 
-      Filter granularityMethodFilter = new Filter();
+      Set<String> methodsWithProbe = new HashSet<String>();
       for (Probe probe : probeGroup.getProbes()) {
         // does 'probe' match any filter?
-        if (this.methodFilter.filter(probe.getCtBehavior()) == Outcome.REJECT) {
+        if (!this.accept(probe.getMethod())) {
           continue;
         }
 
         // === Skip nodes according to a granularity level ===
 
-        if (granularityMethodFilter.filter(probe.getCtBehavior()) == Outcome.REJECT) {
+        Node node = probe.getNode();
+        String methodName =
+            node.getName().substring(node.getName().indexOf(NodeType.METHOD.getSymbol()) + 1,
+                node.getName().indexOf(NodeType.LINE.getSymbol()));
+        if (this.granularity == GranularityLevel.METHOD && !methodsWithProbe.add(methodName)) {
           continue;
         }
 
-        newProbeGroup.registerProbe(probe.getNode(), probe.getCtBehavior());
+        newProbeGroup.registerProbe(node, probe.getMethod());
 
         if (this.granularity == GranularityLevel.CLASS) {
           break;
-        } else if (this.granularity == GranularityLevel.METHOD) {
-          Node node = probe.getNode();
-          String methodName =
-              node.getName().substring(node.getName().indexOf(NodeType.METHOD.getSymbol()) + 1,
-                  node.getName().indexOf(NodeType.LINE.getSymbol()));
-
-          granularityMethodFilter.add(new BlackList(new MethodNameMatcher(methodName)));
         }
       }
 
@@ -140,19 +158,21 @@ public class FilteredSpectrum {
           new Transaction(transaction.getName(), transaction.getTransactionOutcome(),
               transaction.getRuntime(), transaction.getStackTrace());
 
-      for (String hash : transaction.getProbeGroupsHash()) {
-        if (!filteredSpectrum.containsProbeGroupByHash(hash)) {
+      for (Integer id : transaction.getProbeGroupsId()) {
+        ProbeGroup newProbeGroup = filteredSpectrum.getProbeGroupById(id);
+        if (newProbeGroup == null) {
           // probeGroup has been ignored, therefore it could also be ignore here
           continue;
         }
 
         // shrink hitArray
 
-        ProbeGroup probeGroup = source.getProbeGroupByHash(hash);
-        boolean[] hitArray = transaction.getHitArrayByProbeGroupHash(hash);
+        ProbeGroup probeGroup = source.getProbeGroupById(id);
+        HitVector hitVector = transaction.getHitVectorByProbeGroupId(id);
 
-        ProbeGroup newProbeGroup = filteredSpectrum.getProbeGroupByHash(hash);
-        boolean[] newHitArray = new boolean[newProbeGroup.getNumberOfProbes()];
+        HitVector newHitVector = new HitVector(newProbeGroup.getNumberOfProbes());
+        int[] hitCounts = transaction.getHitCountsByProbeGroupId(id);
+        int[] newHitCounts = hitCounts == null ? null : new int[newHitVector.length()];
 
         for (Probe probe : probeGroup.getProbes()) {
           Probe newProbe = newProbeGroup.findProbeByNode(probe.getNode());
@@ -161,12 +181,19 @@ public class FilteredSpectrum {
             continue;
           }
 
-          newHitArray[newProbe.getArrayIndex()] = hitArray[probe.getArrayIndex()];
+          if (hitVector.get(probe.getArrayIndex())) {
+            newHitVector.set(newProbe.getArrayIndex());
+          }
+          if (newHitCounts != null) {
+            newHitCounts[newProbe.getArrayIndex()] = hitCounts[probe.getArrayIndex()];
+          }
         }
 
-        if (ArrayUtils.containsValue(newHitArray, true)) {
-          newTransaction.addActivity(hash,
-              new ImmutablePair<String, boolean[]>(newProbeGroup.getName(), newHitArray));
+        if (!newHitVector.isEmpty()) {
+          newTransaction.addActivity(id, newHitVector);
+          if (newHitCounts != null) {
+            newTransaction.addHitCounts(id, newHitCounts);
+          }
         }
       }
 
@@ -18,6 +18,7 @@ package com.gzoltar.core.spectrum;
 
 import java.util.Collection;
 import java.util.List;
+import com.gzoltar.core.model.HitVector;
 import com.gzoltar.core.model.Node;
 import com.gzoltar.core.model.Transaction;
 import com.gzoltar.core.runtime.ProbeGroup;
@@ -27,7 +28,7 @@ public interface ISpectrum {
   // === ProbeGroups ===
 
   /**
-   * Register a new probe group.
+   * Register a new probe group. A probe group without an identifier gets the next available one.
    */
   public void addProbeGroup(final ProbeGroup probeGroup);
 
@@ -53,6 +54,12 @@ public interface ISpectrum {
    */
   public ProbeGroup getProbeGroupByHash(final String hash);
 
+  /**
+   * Returns the {@link com.gzoltar.core.runtime.ProbeGroup} with a given identifier, or null if
+   * there is not any.
+   */
+  public ProbeGroup getProbeGroupById(final int id);
+
   /**
    * Returns all {@link com.gzoltar.core.runtime.ProbeGroup} that have been registered.
    */
@@ -78,10 +85,19 @@ public interface ISpectrum {
    */
   public List<Node> getHitNodes(Transaction transaction);
 
+  /**
+   * Returns a {@link com.gzoltar.core.model.HitVector} with the probes of a
+   * {@link com.gzoltar.core.runtime.ProbeGroup} executed by at least one
+   * {@link com.gzoltar.core.model.Transaction}.
+   */
+  public HitVector getCoveredProbes(final ProbeGroup probeGroup);
+
   // === Transaction ===
 
   /**
-   * Registers a {@link com.gzoltar.core.model.Transaction}.
+   * Registers a {@link com.gzoltar.core.model.Transaction}. Its hit vectors are replaced by the ones
+   * of previous transactions with the same content, if any, therefore they must not be modified
+   * afterwards.
    */
   public void addTransaction(final Transaction transaction);
 
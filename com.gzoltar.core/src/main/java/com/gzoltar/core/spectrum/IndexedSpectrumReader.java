@@ -0,0 +1,297 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Collection;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.events.EmptyEventListener;
+import com.gzoltar.core.instr.pass.CoveragePass;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.spectrum.SpectrumIndex.Segment;
+import com.gzoltar.core.spectrum.SpectrumIndex.TransactionEntry;
+import com.gzoltar.core.util.SerialisationIdentifiers;
+
+/**
+ * Reads any transaction of a spectrum data file without reading the ones written before it, e.g.,
+ * to only read the failing transactions of a huge data file. The data file is memory-mapped, and
+ * its {@link SpectrumIndex} is built (once) the first time the data file is read.
+ * 
+ * A transaction only depends on the dictionary entries of its segment written before it (and on the
+ * probes of its probeGroups, which may have been written by a previous segment) and, if its
+ * activity is shared, on the transaction that has written that activity in full. Therefore, only
+ * those blocks (and the dictionary entries of previous segments) are read (once) besides the block
+ * of the transaction itself.
+ */
+public class IndexedSpectrumReader implements Closeable {
+
+  /** Maximum size of each mapped region of the data file */
+  private static final long REGION_SIZE = 1L << 30;
+
+  private final RandomAccessFile randomAccessFile;
+
+  private final FileChannel channel;
+
+  private final long length;
+
+  /** Mapped regions of the data file, which are mapped as they are needed */
+  private final MappedByteBuffer[] regions;
+
+  private final MappedInputStream in;
+
+  private final SpectrumReader reader;
+
+  private final SpectrumIndex index;
+
+  /** Segment whose header has been read last, or -1 if there is not any */
+  private int segment = -1;
+
+  /** Number of dictionary entries of the current segment that have been read */
+  private int numberOfDictionaryEntries = 0;
+
+  /**
+   * Number of (leading) segments whose dictionary entries have all been read, and therefore whose
+   * probeGroups are known by the reader
+   */
+  private int numberOfReadDictionaries = 0;
+
+  /**
+   * Opens a data file, and builds its index unless it has already been built.
+   * 
+   * @param buildLocation
+   * @param agentConfigs
+   * @param dataFile
+   * @throws Exception
+   */
+  public IndexedSpectrumReader(final String buildLocation, final AgentConfigs agentConfigs,
+      final File dataFile) throws Exception {
+    this.randomAccessFile = new RandomAccessFile(dataFile, "r");
+    this.channel = this.randomAccessFile.getChannel();
+    this.length = this.channel.size();
+    this.regions = new MappedByteBuffer[(int) ((this.length + REGION_SIZE - 1) / REGION_SIZE)];
+    this.in = new MappedInputStream();
+    // probeGroups are only kept by this reader
+    this.reader = new SpectrumReader(new CoveragePass(agentConfigs), buildLocation,
+        new Spectrum(), new EmptyEventListener(), this.in);
+
+    SpectrumIndex index = SpectrumIndex.read(dataFile);
+    if (index == null) {
+      index = this.buildIndex(dataFile);
+      index.write(dataFile);
+    }
+    this.index = index;
+  }
+
+  /**
+   * Reads all blocks of the data file in order, and records the offset of each one.
+   */
+  private SpectrumIndex buildIndex(final File dataFile) throws Exception {
+    SpectrumIndex index = new SpectrumIndex(this.length, dataFile.lastModified());
+    long offset;
+    while ((offset = this.in.position()) < this.length) {
+      byte type = this.in.peek();
+      Transaction transaction = this.reader.readBlock();
+      switch (type) {
+        case SerialisationIdentifiers.BLOCK_HEADER:
+          index.addSegment(offset);
+          break;
+        case SerialisationIdentifiers.BLOCK_PROBE_GROUP:
+        case SerialisationIdentifiers.BLOCK_NAME:
+          index.addDictionaryEntry(offset);
+          break;
+        default:
+          index.addTransaction(transaction.getName(), transaction.getTransactionOutcome(), offset,
+              this.reader.getActivityIndex());
+          break;
+      }
+    }
+
+    // all dictionary entries of all segments have been read
+    this.numberOfReadDictionaries = index.getNumberOfSegments();
+    this.segment = index.getNumberOfSegments() - 1;
+    if (this.segment >= 0) {
+      this.numberOfDictionaryEntries = index.getSegment(this.segment).dictionaryOffsets.size();
+    }
+    return index;
+  }
+
+  /**
+   * Returns the index of the data file, i.e., the name and outcome of each transaction.
+   */
+  public SpectrumIndex getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Returns the spectrum that holds the probeGroups read so far. Transactions are never added to
+   * it.
+   */
+  public Spectrum getSpectrum() {
+    return this.reader.getSpectrum();
+  }
+
+  /**
+   * Reads a transaction. The probeGroups it executes are available in {@link #getSpectrum()}.
+   * 
+   * @param transaction ordinal of the transaction in the data file
+   * @return
+   * @throws Exception
+   */
+  public Transaction readTransaction(final int transaction) throws Exception {
+    TransactionEntry entry = this.index.getTransaction(transaction);
+    Segment segment = this.index.getSegment(entry.segment);
+    if (entry.segment != this.segment) {
+      // the probes of a probeGroup are only written to the first segment that refers to it
+      while (this.numberOfReadDictionaries < entry.segment) {
+        this.readDictionary(this.index.getSegment(this.numberOfReadDictionaries));
+        this.numberOfReadDictionaries++;
+      }
+      // dictionary entries and activities of other segments are forgotten
+      this.readBlock(segment.offset);
+      this.segment = entry.segment;
+      this.numberOfDictionaryEntries = 0;
+    }
+
+    // dictionary entries the transaction (or the one that has written its activity) may refer to
+    while (this.numberOfDictionaryEntries < segment.dictionaryOffsets.size()
+        && segment.dictionaryOffsets.get(this.numberOfDictionaryEntries) < entry.offset) {
+      this.readBlock(segment.dictionaryOffsets.get(this.numberOfDictionaryEntries));
+      this.numberOfDictionaryEntries++;
+    }
+
+    if (entry.activityIndex > 0) {
+      long activityOffset = segment.activityOffsets.get(entry.activityIndex - 1);
+      if (activityOffset != entry.offset && !this.reader.hasActivity(entry.activityIndex)) {
+        this.reader.setNumberOfActivities(entry.activityIndex - 1);
+        this.readBlock(activityOffset);
+      }
+      // in case the transaction writes the activity in full
+      this.reader.setNumberOfActivities(entry.activityIndex - 1);
+    }
+    return this.readBlock(entry.offset);
+  }
+
+  /**
+   * Reads the header and all dictionary entries of a segment.
+   */
+  private void readDictionary(final Segment segment) throws Exception {
+    this.readBlock(segment.offset);
+    for (long offset : segment.dictionaryOffsets) {
+      this.readBlock(offset);
+    }
+  }
+
+  private Transaction readBlock(final long offset) throws Exception {
+    this.in.seek(offset);
+    return this.reader.readBlock();
+  }
+
+  /**
+   * Reads some transactions (e.g., all failing transactions and a few passing ones) into a new
+   * spectrum, which also holds the probeGroups they execute.
+   * 
+   * @param transactions ordinals of the transactions in the data file
+   * @return
+   * @throws Exception
+   */
+  public ISpectrum read(final Collection<Integer> transactions) throws Exception {
+    Spectrum spectrum = new Spectrum();
+    for (int transaction : transactions) {
+      Transaction t = this.readTransaction(transaction);
+      for (Integer probeGroupId : t.getActivity().keySet()) {
+        // probeGroups keep the identifier they have been given by this reader
+        spectrum.addProbeGroup(this.getSpectrum().getProbeGroupById(probeGroupId));
+      }
+      spectrum.addTransaction(t);
+    }
+    return spectrum;
+  }
+
+  /**
+   * Closes the data file. Mapped regions are only released once they are garbage collected.
+   */
+  @Override
+  public void close() throws IOException {
+    this.randomAccessFile.close();
+  }
+
+  private ByteBuffer getRegion(final long position) throws IOException {
+    int region = (int) (position / REGION_SIZE);
+    if (this.regions[region] == null) {
+      long offset = region * REGION_SIZE;
+      this.regions[region] = this.channel.map(MapMode.READ_ONLY, offset,
+          Math.min(REGION_SIZE, this.length - offset));
+    }
+    return this.regions[region];
+  }
+
+  /**
+   * Input stream over the mapped data file, which can be positioned at any offset.
+   */
+  private final class MappedInputStream extends InputStream {
+
+    private long position = 0;
+
+    private long position() {
+      return this.position;
+    }
+
+    private void seek(final long position) {
+      this.position = position;
+    }
+
+    private byte peek() throws IOException {
+      return getRegion(this.position).get((int) (this.position % REGION_SIZE));
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (this.position >= length) {
+        return -1;
+      }
+      int b = this.peek() & 0xff;
+      this.position++;
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (this.position >= length) {
+        return -1;
+      }
+      // a read does not go beyond the region of its first byte
+      int regionOffset = (int) (this.position % REGION_SIZE);
+      int n = (int) Math.min(len, Math.min(length - this.position, REGION_SIZE - regionOffset));
+      ByteBuffer region = getRegion(this.position).duplicate();
+      region.position(regionOffset);
+      region.get(b, off, n);
+      this.position += n;
+      return n;
+    }
+  }
+}
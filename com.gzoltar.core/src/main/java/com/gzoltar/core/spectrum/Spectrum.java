@@ -18,11 +18,12 @@ package com.gzoltar.core.spectrum;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import org.apache.commons.lang3.tuple.Pair;
+import com.gzoltar.core.model.HitVector;
 import com.gzoltar.core.model.Node;
 import com.gzoltar.core.model.Transaction;
 import com.gzoltar.core.runtime.Probe;
@@ -33,27 +34,47 @@ public class Spectrum implements ISpectrum {
   /** <ProbeGroup hash, ProbeGroup> */
   private final Map<String, ProbeGroup> probeGroups;
 
+  /** ProbeGroups indexed by their identifier */
+  private final List<ProbeGroup> probeGroupsById;
+
   private final List<Transaction> transactions;
 
+  /**
+   * Distinct hit vectors of all transactions, keyed by their content. Transactions that execute the
+   * same probes share the very same hit vector.
+   */
+  private final Map<HitVector, HitVector> hitVectors;
+
   /**
    * Constructs a new {@link com.gzoltar.core.spectrum.Spectrum}.
    */
   public Spectrum() {
     this.probeGroups = new LinkedHashMap<String, ProbeGroup>();
+    this.probeGroupsById = new ArrayList<ProbeGroup>();
     this.transactions = new ArrayList<Transaction>();
+    this.hitVectors = new HashMap<HitVector, HitVector>();
   }
 
   // === ProbeGroups ===
 
   /**
-   * Register a new probe group.
+   * Register a new probe group. A probe group without an identifier gets the next available one.
    */
   public void addProbeGroup(final ProbeGroup probeGroup) {
     // Mocking frameworks, application servers, or persistence frameworks may cause GZoltar to see
     // the same class several times
-    if (!this.probeGroups.containsKey(probeGroup.getHash())) {
-      this.probeGroups.put(probeGroup.getHash(), probeGroup);
+    if (this.probeGroups.containsKey(probeGroup.getHash())) {
+      return;
+    }
+
+    if (probeGroup.getId() == ProbeGroup.NO_ID) {
+      probeGroup.setId(this.probeGroupsById.size());
+    }
+    while (this.probeGroupsById.size() <= probeGroup.getId()) {
+      this.probeGroupsById.add(null);
     }
+    this.probeGroupsById.set(probeGroup.getId(), probeGroup);
+    this.probeGroups.put(probeGroup.getHash(), probeGroup);
   }
 
   /**
@@ -84,7 +105,15 @@ public class Spectrum implements ISpectrum {
    */
   public ProbeGroup getProbeGroupByHash(final String hash) {
     return this.containsProbeGroupByHash(hash) ? this.probeGroups.get(hash) : null;
-  } 
+  }
+
+  /**
+   * Returns the {@link com.gzoltar.core.runtime.ProbeGroup} with a given identifier, or null if
+   * there is not any.
+   */
+  public ProbeGroup getProbeGroupById(final int id) {
+    return id >= 0 && id < this.probeGroupsById.size() ? this.probeGroupsById.get(id) : null;
+  }
 
   /**
    * Returns all {@link com.gzoltar.core.runtime.ProbeGroup} that have been registered.
@@ -122,14 +151,13 @@ public class Spectrum implements ISpectrum {
   public List<Node> getHitNodes(Transaction transaction) {
     List<Node> nodes = new ArrayList<Node>();
 
-    for (Entry<String, Pair<String, boolean[]>> activity : transaction.getActivity().entrySet()) {
-      String probeGroupHash = activity.getKey();
-      ProbeGroup probeGroup = this.probeGroups.get(probeGroupHash);
-      boolean[] hitArray = activity.getValue().getRight();
-      assert hitArray.length == probeGroup.getNumberOfProbes();
+    for (Entry<Integer, HitVector> activity : transaction.getActivity().entrySet()) {
+      ProbeGroup probeGroup = this.getProbeGroupById(activity.getKey());
+      HitVector hitVector = activity.getValue();
+      assert hitVector.length() == probeGroup.getNumberOfProbes();
 
       for (Probe probe : probeGroup.getProbes()) {
-        if (hitArray[probe.getArrayIndex()]) {
+        if (hitVector.get(probe.getArrayIndex())) {
           nodes.add(probe.getNode());
         }
       }
@@ -138,17 +166,51 @@ public class Spectrum implements ISpectrum {
     return nodes;
   }
 
+  /**
+   * Returns a {@link com.gzoltar.core.model.HitVector} with the probes of a
+   * {@link com.gzoltar.core.runtime.ProbeGroup} executed by at least one
+   * {@link com.gzoltar.core.model.Transaction}.
+   */
+  public HitVector getCoveredProbes(final ProbeGroup probeGroup) {
+    HitVector coveredProbes = new HitVector(probeGroup.getNumberOfProbes());
+    for (Transaction transaction : this.transactions) {
+      HitVector hitVector = transaction.getHitVector(probeGroup);
+      if (hitVector != null) {
+        coveredProbes.or(hitVector);
+      }
+    }
+    return coveredProbes;
+  }
+
   // === Transactions ===
 
   /**
-   * Registers a {@link com.gzoltar.core.model.Transaction}.
+   * Registers a {@link com.gzoltar.core.model.Transaction}. Its hit vectors are replaced by the ones
+   * of previous transactions with the same content, if any, therefore they must not be modified
+   * afterwards.
    */
   public void addTransaction(final Transaction transaction) {
     if (transaction.hasActivations()) {
+      for (Entry<Integer, HitVector> activity : transaction.getActivity().entrySet()) {
+        HitVector hitVector = this.hitVectors.get(activity.getValue());
+        if (hitVector == null) {
+          this.hitVectors.put(activity.getValue(), activity.getValue());
+        } else {
+          activity.setValue(hitVector);
+        }
+      }
       this.transactions.add(transaction);
     }
   }
 
+  /**
+   * Discards all {@link com.gzoltar.core.model.Transaction} that have been registered.
+   */
+  public void clearTransactions() {
+    this.transactions.clear();
+    this.hitVectors.clear();
+  }
+
   /**
    * Returns all {@link com.gzoltar.core.model.Transaction} that have been registered.
    */
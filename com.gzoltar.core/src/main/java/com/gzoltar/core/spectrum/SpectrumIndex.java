@@ -0,0 +1,348 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.gzoltar.core.model.TransactionOutcome;
+
+/**
+ * Index of the blocks of a spectrum data file, which maps each transaction (by ordinal or by name)
+ * to the offset of its block, so that {@link IndexedSpectrumReader} reads a transaction without
+ * reading the ones written before it. The index is kept in a file next to the data file, and is
+ * built again whenever the data file changes, e.g., once another JVM appends a segment to it.
+ */
+public class SpectrumIndex {
+
+  /** Extension of index files */
+  public static final String EXTENSION = ".idx";
+
+  /** Version of the format of index files, to be increased whenever the format changes */
+  private static final int FORMAT_VERSION = 1;
+
+  /** Length of the data file when it was indexed */
+  private final long dataFileLength;
+
+  /** Last modification time of the data file when it was indexed */
+  private final long dataFileLastModified;
+
+  private final List<Segment> segments = new ArrayList<Segment>();
+
+  private final List<TransactionEntry> transactions = new ArrayList<TransactionEntry>();
+
+  /** <transaction name, ordinal of the first transaction with that name>, built lazily */
+  private Map<String, Integer> transactionsByName = null;
+
+  SpectrumIndex(final long dataFileLength, final long dataFileLastModified) {
+    this.dataFileLength = dataFileLength;
+    this.dataFileLastModified = dataFileLastModified;
+  }
+
+  /**
+   * Returns the index file of a data file.
+   * 
+   * @param dataFile
+   * @return
+   */
+  public static File getFile(final File dataFile) {
+    return new File(dataFile.getPath() + EXTENSION);
+  }
+
+  /**
+   * Returns the number of transactions of the data file.
+   */
+  public int getNumberOfTransactions() {
+    return this.transactions.size();
+  }
+
+  /**
+   * Returns the name of a transaction.
+   * 
+   * @param transaction ordinal of the transaction in the data file
+   * @return
+   */
+  public String getTransactionName(final int transaction) {
+    return this.transactions.get(transaction).name;
+  }
+
+  /**
+   * Returns the outcome of a transaction.
+   * 
+   * @param transaction ordinal of the transaction in the data file
+   * @return
+   */
+  public TransactionOutcome getTransactionOutcome(final int transaction) {
+    return this.transactions.get(transaction).outcome;
+  }
+
+  /**
+   * Returns the ordinal of the first transaction with a given name, or -1 if there is not any.
+   * 
+   * @param transactionName
+   * @return
+   */
+  public int indexOf(final String transactionName) {
+    if (this.transactionsByName == null) {
+      this.transactionsByName = new HashMap<String, Integer>();
+      for (int i = this.transactions.size() - 1; i >= 0; i--) {
+        this.transactionsByName.put(this.transactions.get(i).name, i);
+      }
+    }
+    Integer transaction = this.transactionsByName.get(transactionName);
+    return transaction == null ? -1 : transaction;
+  }
+
+  /**
+   * Returns the ordinals of all transactions with a given outcome, in the order they have been
+   * written.
+   * 
+   * @param outcome
+   * @return
+   */
+  public List<Integer> getTransactions(final TransactionOutcome outcome) {
+    List<Integer> transactions = new ArrayList<Integer>();
+    for (int i = 0; i < this.transactions.size(); i++) {
+      if (this.transactions.get(i).outcome == outcome) {
+        transactions.add(i);
+      }
+    }
+    return transactions;
+  }
+
+  // === Building ===
+
+  void addSegment(final long offset) {
+    this.segments.add(new Segment(offset));
+  }
+
+  void addDictionaryEntry(final long offset) {
+    this.getLastSegment().dictionaryOffsets.add(offset);
+  }
+
+  /**
+   * 
+   * @param name
+   * @param outcome
+   * @param offset offset of the block of the transaction
+   * @param activityIndex shared activity (starting at 1) the transaction has either written or
+   *        referred to, or 0 if its activity is not shared
+   */
+  void addTransaction(final String name, final TransactionOutcome outcome, final long offset,
+      final int activityIndex) {
+    Segment segment = this.getLastSegment();
+    if (activityIndex > segment.activityOffsets.size()) {
+      // the transaction has written the activity in full
+      segment.activityOffsets.add(offset);
+    }
+    this.transactions.add(new TransactionEntry(name, outcome, this.segments.size() - 1, offset,
+        activityIndex));
+    this.transactionsByName = null;
+  }
+
+  private Segment getLastSegment() {
+    return this.segments.get(this.segments.size() - 1);
+  }
+
+  // === Reading ===
+
+  Segment getSegment(final int segment) {
+    return this.segments.get(segment);
+  }
+
+  int getNumberOfSegments() {
+    return this.segments.size();
+  }
+
+  TransactionEntry getTransaction(final int transaction) {
+    return this.transactions.get(transaction);
+  }
+
+  // === Persistence ===
+
+  /**
+   * Reads the index of a data file, or returns null if it has not been written or if the data file
+   * has changed since then.
+   * 
+   * @param dataFile
+   * @return
+   */
+  static SpectrumIndex read(final File dataFile) {
+    try {
+      final File indexFile = getFile(dataFile);
+      if (!indexFile.isFile()) {
+        return null;
+      }
+
+      final DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      try {
+        if (in.readInt() != FORMAT_VERSION) {
+          return null;
+        }
+        final SpectrumIndex index = new SpectrumIndex(in.readLong(), in.readLong());
+        if (index.dataFileLength != dataFile.length()
+            || index.dataFileLastModified != dataFile.lastModified()) {
+          return null;
+        }
+
+        int numberOfSegments = in.readInt();
+        while (numberOfSegments-- > 0) {
+          Segment segment = new Segment(in.readLong());
+          readOffsets(in, segment.dictionaryOffsets);
+          readOffsets(in, segment.activityOffsets);
+          index.segments.add(segment);
+        }
+        int numberOfTransactions = in.readInt();
+        while (numberOfTransactions-- > 0) {
+          index.transactions.add(new TransactionEntry(in.readUTF(),
+              TransactionOutcome.valueOf(in.readUTF()), in.readInt(), in.readLong(),
+              in.readInt()));
+        }
+        return index;
+      } finally {
+        in.close();
+      }
+    } catch (Exception e) {
+      // e.g., a truncated index, which is built again
+      return null;
+    }
+  }
+
+  private static void readOffsets(final DataInputStream in, final List<Long> offsets)
+      throws Exception {
+    int numberOfOffsets = in.readInt();
+    while (numberOfOffsets-- > 0) {
+      offsets.add(in.readLong());
+    }
+  }
+
+  /**
+   * Writes the index next to its data file. The index is written to a temporary file which is then
+   * renamed, so that concurrent readers never read a partial index.
+   * 
+   * @param dataFile
+   */
+  void write(final File dataFile) {
+    File tmpFile = null;
+    try {
+      final File indexFile = getFile(dataFile);
+      tmpFile = File.createTempFile(indexFile.getName(), ".tmp",
+          indexFile.getAbsoluteFile().getParentFile());
+
+      final DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(this.dataFileLength);
+        out.writeLong(this.dataFileLastModified);
+
+        out.writeInt(this.segments.size());
+        for (Segment segment : this.segments) {
+          out.writeLong(segment.offset);
+          writeOffsets(out, segment.dictionaryOffsets);
+          writeOffsets(out, segment.activityOffsets);
+        }
+        out.writeInt(this.transactions.size());
+        for (TransactionEntry transaction : this.transactions) {
+          out.writeUTF(transaction.name);
+          out.writeUTF(transaction.outcome.name());
+          out.writeInt(transaction.segment);
+          out.writeLong(transaction.offset);
+          out.writeInt(transaction.activityIndex);
+        }
+      } finally {
+        out.close();
+      }
+
+      indexFile.delete();
+      if (tmpFile.renameTo(indexFile)) {
+        tmpFile = null;
+      }
+    } catch (Exception e) {
+      // the index is built again next time
+      e.printStackTrace();
+    } finally {
+      if (tmpFile != null) {
+        tmpFile.delete();
+      }
+    }
+  }
+
+  private static void writeOffsets(final DataOutputStream out, final List<Long> offsets)
+      throws Exception {
+    out.writeInt(offsets.size());
+    for (long offset : offsets) {
+      out.writeLong(offset);
+    }
+  }
+
+  /**
+   * A segment of a data file, i.e., a header followed by blocks that only refer to the dictionary
+   * entries and activities of the same segment.
+   */
+  static final class Segment {
+
+    /** Offset of the header of the segment */
+    final long offset;
+
+    /** Offsets of the dictionary entries (probeGroups and names) of the segment, in order */
+    final List<Long> dictionaryOffsets = new ArrayList<Long>();
+
+    /** Offsets of the transactions that have written each shared activity in full, in order */
+    final List<Long> activityOffsets = new ArrayList<Long>();
+
+    private Segment(final long offset) {
+      this.offset = offset;
+    }
+  }
+
+  /**
+   * A transaction of a data file.
+   */
+  static final class TransactionEntry {
+
+    final String name;
+
+    final TransactionOutcome outcome;
+
+    final int segment;
+
+    /** Offset of the block of the transaction */
+    final long offset;
+
+    /** Shared activity (starting at 1) of the transaction, or 0 if its activity is not shared */
+    final int activityIndex;
+
+    private TransactionEntry(final String name, final TransactionOutcome outcome,
+        final int segment, final long offset, final int activityIndex) {
+      this.name = name;
+      this.outcome = outcome;
+      this.segment = segment;
+      this.offset = offset;
+      this.activityIndex = activityIndex;
+    }
+  }
+}
@@ -0,0 +1,347 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.OverlappingFileLockException;
+import com.gzoltar.core.events.IEventListener;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.runtime.ProbeGroup;
+
+/**
+ * Records each transaction, as soon as it ends, in a memory-mapped file next to the output file.
+ * Once a transaction has been recorded, it is kept by the operating system even if the JVM is
+ * killed (e.g., by the OOM killer, or by a {@link System#exit(int)} that prevents shutdown hooks
+ * from running), and {@link SpectrumReader#recover(File)} is able to read it.
+ * 
+ * The journal starts with the number of bytes that have been committed, followed by a stream in the
+ * format of {@link SpectrumWriter}. The number of committed bytes is only updated once a
+ * transaction has been completely written, therefore a transaction that was being written when the
+ * JVM died is ignored. Only a window of the journal (right after the last committed byte) is mapped
+ * at a time, so that a journal may grow beyond the 2GB a single mapping is limited to.
+ * 
+ * A journal is locked for as long as its JVM is running, so that a journal that is still being
+ * written can be told apart from the one of a JVM that has been killed.
+ */
+public class SpectrumJournal implements IEventListener {
+
+  /** Extension of journal files */
+  public static final String EXTENSION = ".journal";
+
+  /** Number of bytes reserved at the beginning of a journal for the number of committed bytes */
+  private static final int HEADER_SIZE = 8;
+
+  /** Size of the first mapped window, each window doubles the size of the previous one */
+  private static final int INITIAL_CAPACITY = 1 << 20;
+
+  private static final int MAX_CAPACITY = 1 << 26;
+
+  private final File file;
+
+  private final RandomAccessFile randomAccessFile;
+
+  private final FileChannel channel;
+
+  /** Number of committed bytes */
+  private final MappedByteBuffer header;
+
+  /** Window of the journal being written */
+  private MappedByteBuffer buffer;
+
+  /** Position (in the journal) of the first byte of the window */
+  private long bufferStart = HEADER_SIZE;
+
+  /** Position (in the journal) right after the last byte that has been written */
+  private long position = HEADER_SIZE;
+
+  /** ProbeGroups reported so far */
+  private final ISpectrum probeGroups = new Spectrum();
+
+  private SpectrumWriter writer;
+
+  private boolean failed = false;
+
+  /**
+   * Creates a new journal of a data file, in the same directory.
+   * 
+   * @param dataFile
+   * @throws IOException if the journal can't be created
+   */
+  public SpectrumJournal(final File dataFile) throws IOException {
+    File folder = dataFile.getAbsoluteFile().getParentFile();
+    // each JVM writes its own journal
+    this.file = File.createTempFile(dataFile.getName() + ".", EXTENSION, folder);
+    this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+    this.channel = this.randomAccessFile.getChannel();
+    // released once the journal is deleted, or once the JVM dies
+    this.channel.lock();
+    this.header = this.channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+    this.header.putLong(0, 0L);
+    this.buffer = this.channel.map(MapMode.READ_WRITE, this.bufferStart, INITIAL_CAPACITY);
+  }
+
+  /**
+   * Returns the journal file.
+   */
+  public File getFile() {
+    return this.file;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void regiterProbeGroup(final ProbeGroup probeGroup) {
+    this.probeGroups.addProbeGroup(probeGroup);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void endTransaction(final Transaction transaction) {
+    if (this.failed || !transaction.hasActivations()) {
+      return;
+    }
+
+    try {
+      if (this.writer == null) {
+        this.writer = new SpectrumWriter(new MappedOutputStream());
+      }
+      this.writer.writeTransaction(this.probeGroups, transaction);
+      // commit
+      this.header.putLong(0, this.position - HEADER_SIZE);
+    } catch (IOException e) {
+      // any transaction committed so far can still be recovered, but no other one is recorded
+      this.failed = true;
+      System.err.println("Journal '" + this.file.getAbsolutePath() + "' stopped recording after "
+          + (this.header.getLong(0) + HEADER_SIZE) + " bytes: " + e.getMessage());
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void endSession() {
+    // NO-OP, transactions are committed as they end
+  }
+
+  /**
+   * Discards all transactions committed so far, e.g., once the transactions kept by the collector
+   * have been discarded, so that they are not recovered afterwards. Following transactions are
+   * written from the beginning of the journal again.
+   * 
+   * @throws IOException if the beginning of the journal can't be mapped
+   */
+  public synchronized void reset() throws IOException {
+    if (this.failed) {
+      return;
+    }
+    this.header.putLong(0, 0L);
+    // the dictionaries written so far have been discarded as well
+    this.writer = null;
+    this.position = HEADER_SIZE;
+    if (this.bufferStart != HEADER_SIZE) {
+      this.buffer = this.channel.map(MapMode.READ_WRITE, HEADER_SIZE, INITIAL_CAPACITY);
+      this.bufferStart = HEADER_SIZE;
+    }
+  }
+
+  /**
+   * Closes and deletes the journal, e.g., once all transactions have been written to the output
+   * file.
+   * 
+   * @throws IOException if the journal can't be closed
+   */
+  public synchronized void delete() throws IOException {
+    this.failed = true;
+    this.randomAccessFile.close();
+    if (!this.file.delete()) {
+      // the mapping of the file may prevent it from being deleted on some platforms
+      this.file.deleteOnExit();
+    }
+  }
+
+  /**
+   * Returns all journals of a data file.
+   * 
+   * @param dataFile
+   * @return
+   */
+  public static File[] findJournals(final File dataFile) {
+    final String prefix = dataFile.getName() + ".";
+    File folder = dataFile.getAbsoluteFile().getParentFile();
+    File[] journals = folder == null ? null : folder.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.startsWith(prefix) && name.endsWith(EXTENSION);
+      }
+    });
+    return journals == null ? new File[0] : journals;
+  }
+
+  /**
+   * Returns the committed content of a journal, in the format of {@link SpectrumWriter}.
+   * 
+   * @param journal
+   * @return
+   * @throws IOException if the journal can't be read
+   */
+  public static InputStream openCommitted(final File journal) throws IOException {
+    return openCommitted(journal, false);
+  }
+
+  /**
+   * Returns the committed content of a journal, in the format of {@link SpectrumWriter}, unless
+   * the journal is still being written by a running JVM. The journal is kept locked until the
+   * returned stream is closed.
+   * 
+   * @param journal
+   * @return the committed content, or <code>null</code> if the journal is still being written
+   * @throws IOException if the journal can't be read
+   */
+  public static InputStream openCommittedIfReleased(final File journal) throws IOException {
+    return openCommitted(journal, true);
+  }
+
+  private static InputStream openCommitted(final File journal, final boolean ifReleased)
+      throws IOException {
+    RandomAccessFile file = new RandomAccessFile(journal, "r");
+    try {
+      if (ifReleased && !tryLock(file.getChannel())) {
+        file.close();
+        return null;
+      }
+      long committed = 0L;
+      if (file.length() >= HEADER_SIZE) {
+        committed = file.readLong();
+        if (committed < 0 || committed > file.length() - HEADER_SIZE) {
+          throw new IOException("Invalid journal '" + journal.getAbsolutePath() + "'.");
+        }
+      }
+      return new BufferedInputStream(new CommittedInputStream(file, committed));
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Tries to take a shared lock of a journal, which fails if the journal is locked by the JVM that
+   * is writing it.
+   */
+  private static boolean tryLock(final FileChannel channel) throws IOException {
+    try {
+      return channel.tryLock(0L, Long.MAX_VALUE, true) != null;
+    } catch (OverlappingFileLockException e) {
+      // the journal is being written by this JVM
+      return false;
+    }
+  }
+
+  /**
+   * Writes to the mapped journal, and maps a larger region of it whenever needed.
+   */
+  private final class MappedOutputStream extends OutputStream {
+
+    @Override
+    public void write(final int b) throws IOException {
+      this.ensureCapacity(1);
+      buffer.put((int) (position - bufferStart), (byte) b);
+      position++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      this.ensureCapacity(len);
+      buffer.position((int) (position - bufferStart));
+      buffer.put(b, off, len);
+      position += len;
+    }
+
+    /**
+     * Maps the next window of the journal, starting at the current position, if the current one
+     * does not have room for the given number of bytes.
+     */
+    private void ensureCapacity(final int len) throws IOException {
+      if (position + len <= bufferStart + buffer.capacity()) {
+        return;
+      }
+      int capacity = Math.max(Math.min(buffer.capacity() * 2, MAX_CAPACITY), len);
+      buffer = channel.map(MapMode.READ_WRITE, position, capacity);
+      bufferStart = position;
+    }
+  }
+
+  /**
+   * Reads the committed bytes of a journal, and closes it once it is closed.
+   */
+  private static final class CommittedInputStream extends InputStream {
+
+    private final RandomAccessFile file;
+
+    private long remaining;
+
+    private CommittedInputStream(final RandomAccessFile file, final long committed) {
+      this.file = file;
+      this.remaining = committed;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (this.remaining == 0) {
+        return -1;
+      }
+      int b = this.file.read();
+      if (b != -1) {
+        this.remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (this.remaining == 0) {
+        return -1;
+      }
+      int n = this.file.read(b, off, (int) Math.min(len, this.remaining));
+      if (n > 0) {
+        this.remaining -= n;
+      }
+      return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.file.close();
+    }
+  }
+}
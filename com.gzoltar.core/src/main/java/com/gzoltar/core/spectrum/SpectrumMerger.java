@@ -0,0 +1,329 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.events.EmptyEventListener;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.ProbeGroup;
+
+/**
+ * Merges spectrum data files (e.g., written by several forked JVMs) into a single data file.
+ * ProbeGroups of different data files are unified by their hash. Data files are read concurrently
+ * and one transaction at a time, and transactions are written (in the order of the data files) as
+ * soon as they are read, therefore data files of any size can be merged.
+ */
+public class SpectrumMerger {
+
+  /** Number of transactions of each segment of the merged data file */
+  private static final int SEGMENT_SIZE = 1 << 14;
+
+  /** Maximum number of transactions read ahead from each data file */
+  private static final int QUEUE_CAPACITY = 1 << 10;
+
+  /** Marks the end of the transactions of a data file */
+  private static final Transaction END = new Transaction(null, TransactionOutcome.PASS, 0, null);
+
+  private int parallelism = 1;
+
+  /** ProbeGroups of the merged data file */
+  private Spectrum probeGroups;
+
+  /** <ProbeGroup id, number of hit array slots> of the merged data file */
+  private Map<Integer, Integer> lengths;
+
+  /**
+   * Sets the number of threads used to read data files concurrently. Default is <code>1</code>.
+   * 
+   * @param parallelism number of threads
+   */
+  public void setParallelism(final int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Merges some data files, and the journals of each one that are not being written anymore (see
+   * {@link SpectrumJournal}).
+   * 
+   * @param dataFiles
+   * @param output output stream to write the merged data file to, which is flushed but not closed
+   * @return number of transactions merged
+   * @throws Exception if a data file can't be read, or if the same probeGroup has a different
+   *         number of probes in different data files
+   */
+  public int merge(final List<File> dataFiles, final OutputStream output) throws Exception {
+    return this.merge(dataFiles, output, new ArrayList<File>());
+  }
+
+  /**
+   * Merges some data files, and the journals of each one that are not being written anymore.
+   * 
+   * @param dataFiles
+   * @param output output stream to write the merged data file to, which is flushed but not closed
+   * @param journals list the journals that have been merged are added to
+   * @return number of transactions merged
+   * @throws Exception if a data file can't be read, or if the same probeGroup has a different
+   *         number of probes in different data files
+   */
+  private synchronized int merge(final List<File> dataFiles, final OutputStream output,
+      final List<File> journals) throws Exception {
+    this.probeGroups = new Spectrum();
+    this.lengths = new HashMap<Integer, Integer>();
+
+    final List<Input> inputs = new ArrayList<Input>();
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(Math.max(1, Math.min(this.parallelism, dataFiles.size())));
+    try {
+      for (File dataFile : dataFiles) {
+        Input input = new Input(dataFile);
+        inputs.add(input);
+        executor.execute(input);
+      }
+
+      SpectrumWriter writer = new SpectrumWriter(output);
+      int numberOfTransactions = 0;
+      for (Input input : inputs) {
+        Transaction transaction;
+        while ((transaction = input.transactions.take()) != END) {
+          if (!transaction.hasActivations()) {
+            // which are not written
+            continue;
+          }
+          if (numberOfTransactions > 0 && numberOfTransactions % SEGMENT_SIZE == 0) {
+            writer.startSegment();
+          }
+          synchronized (this.probeGroups) {
+            writer.writeTransaction(this.probeGroups, transaction);
+          }
+          numberOfTransactions++;
+        }
+        if (input.failure != null) {
+          throw new IOException("Could not read " + input.dataFile + ".", input.failure);
+        }
+        journals.addAll(input.journals);
+      }
+      writer.flush();
+      return numberOfTransactions;
+    } finally {
+      // inputs that are still being read are not needed anymore
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Merges some data files, and the journals of each one (see {@link SpectrumJournal}), into a data
+   * file. The merged data file is written to a temporary file which then atomically replaces it,
+   * therefore the merged data file may be one of the data files to merge, e.g., to compact it.
+   * 
+   * The data file is locked (as agents do before appending to it) until it has been replaced, so
+   * that no transaction is appended in the meantime and then lost. Journals that are still being
+   * written by a running JVM are neither merged nor deleted, as their JVM eventually appends their
+   * transactions to the data file.
+   * 
+   * @param dataFiles
+   * @param destFile
+   * @return number of transactions merged
+   * @throws Exception if a data file can't be read, or if the same probeGroup has a different
+   *         number of probes in different data files
+   */
+  public int merge(final List<File> dataFiles, final File destFile) throws Exception {
+    final File folder = destFile.getAbsoluteFile().getParentFile();
+    folder.mkdirs();
+    final FileOutputStream lock = new FileOutputStream(destFile, true);
+    File tmpFile = null;
+    try {
+      lock.getChannel().lock();
+      tmpFile = File.createTempFile(destFile.getName(), ".tmp", folder);
+
+      final List<File> journals = new ArrayList<File>();
+      final OutputStream output = new BufferedOutputStream(new FileOutputStream(tmpFile));
+      final int numberOfTransactions;
+      try {
+        numberOfTransactions = this.merge(dataFiles, output, journals);
+      } finally {
+        output.close();
+      }
+
+      try {
+        Files.move(tmpFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        throw new IOException("Could not write " + destFile + ".", e);
+      }
+      tmpFile = null;
+      // agents that have opened the replaced data file, and are waiting for its lock, find it empty
+      // and open the merged one instead
+      lock.getChannel().truncate(0L);
+
+      // the journals of the data file that have been merged must not be recovered again
+      final List<File> journalsOfDestFile = Arrays.asList(SpectrumJournal.findJournals(destFile));
+      for (File journal : journals) {
+        if (journalsOfDestFile.contains(journal)) {
+          journal.delete();
+        }
+      }
+      return numberOfTransactions;
+    } finally {
+      lock.close();
+      if (tmpFile != null) {
+        tmpFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns a transaction that refers to the probeGroups of the merged data file rather than the
+   * ones of the spectrum it has been read into.
+   */
+  private Transaction unify(final ISpectrum spectrum, final Transaction transaction)
+      throws IOException {
+    Map<Integer, HitVector> activity = new LinkedHashMap<Integer, HitVector>();
+    Map<Integer, int[]> hitCounts = new LinkedHashMap<Integer, int[]>();
+    for (Entry<Integer, HitVector> entry : transaction.getActivity().entrySet()) {
+      ProbeGroup probeGroup = spectrum.getProbeGroupById(entry.getKey());
+      // as recorded by the hit array of the class, i.e., as the probeGroup is written
+      HitVector hitVector = probeGroup.compress(entry.getValue());
+      int probeGroupId = this.unify(probeGroup, hitVector.length());
+      activity.put(probeGroupId, hitVector);
+
+      int[] counts = transaction.getHitCountsByProbeGroupId(entry.getKey());
+      if (counts != null) {
+        hitCounts.put(probeGroupId, probeGroup.compress(counts));
+      }
+    }
+    return new Transaction(transaction.getName(), activity, hitCounts,
+        transaction.getTransactionOutcome(), transaction.getRuntime(),
+        transaction.getStackTrace());
+  }
+
+  /**
+   * Returns the identifier of a probeGroup in the merged data file, which is registered in case it
+   * has not been registered yet.
+   * 
+   * @param probeGroup
+   * @param length number of hit array slots of the probeGroup
+   * @return
+   * @throws IOException if the probeGroup has already been registered with a different number of
+   *         probes
+   */
+  private int unify(final ProbeGroup probeGroup, final int length) throws IOException {
+    synchronized (this.probeGroups) {
+      ProbeGroup mergedProbeGroup = this.probeGroups.getProbeGroupByHash(probeGroup.getHash());
+      if (mergedProbeGroup == null) {
+        // the identifier of the probeGroup has been given by the spectrum it has been read into
+        mergedProbeGroup =
+            new ProbeGroup(probeGroup.getHash(), probeGroup.getName(), probeGroup.getProbes());
+        this.probeGroups.addProbeGroup(mergedProbeGroup);
+        this.lengths.put(mergedProbeGroup.getId(), length);
+      } else if (this.lengths.get(mergedProbeGroup.getId()) != length || (!probeGroup.isEmpty()
+          && !mergedProbeGroup.isEmpty()
+          && probeGroup.getNumberOfProbes() != mergedProbeGroup.getNumberOfProbes())) {
+        // e.g., the class has been instrumented at a different granularity level
+        throw new IOException("ProbeGroup '" + probeGroup.getHash() + "' | '"
+            + probeGroup.getName() + "' has a different number of probes in different data files."
+            + " Were they instrumented with the same options?");
+      }
+      return mergedProbeGroup.getId();
+    }
+  }
+
+  /**
+   * Reads the transactions of a data file (and of its journals) into a queue.
+   */
+  private final class Input implements Runnable {
+
+    private final File dataFile;
+
+    private final BlockingQueue<Transaction> transactions =
+        new ArrayBlockingQueue<Transaction>(QUEUE_CAPACITY);
+
+    private volatile Exception failure = null;
+
+    /** Journals that have been read, which are only accessed once the data file has been read */
+    private final List<File> journals = new ArrayList<File>();
+
+    private Input(final File dataFile) {
+      this.dataFile = dataFile;
+    }
+
+    @Override
+    public void run() {
+      try {
+        this.read(new BufferedInputStream(new FileInputStream(this.dataFile)));
+        // transactions of JVMs that have been killed before writing the data file
+        for (File journal : SpectrumJournal.findJournals(this.dataFile)) {
+          InputStream committed = SpectrumJournal.openCommittedIfReleased(journal);
+          if (committed != null) {
+            this.read(committed);
+            this.journals.add(journal);
+          }
+        }
+      } catch (InterruptedException e) {
+        // the merge has been aborted
+        return;
+      } catch (Exception e) {
+        this.failure = e;
+      }
+
+      try {
+        this.transactions.put(END);
+      } catch (InterruptedException e) {
+        // the merge has been aborted
+      }
+    }
+
+    private void read(final InputStream input) throws Exception {
+      try {
+        // probeGroups whose probes have not been written are merged without them
+        SpectrumReader reader =
+            new SpectrumReader(null, new AgentConfigs(), input, new EmptyEventListener());
+        Transaction transaction;
+        while ((transaction = reader.readTransaction()) != null) {
+          this.transactions.put(unify(reader.getSpectrum(), transaction));
+        }
+      } finally {
+        input.close();
+      }
+    }
+  }
+}
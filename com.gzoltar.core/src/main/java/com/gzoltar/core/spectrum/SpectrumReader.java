@@ -17,37 +17,66 @@
 package com.gzoltar.core.spectrum;
 
 import static java.lang.String.format;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 import org.jacoco.core.internal.data.CompactDataInput;
 import com.gzoltar.core.AgentConfigs;
-import com.gzoltar.core.instr.Instrumenter;
+import com.gzoltar.core.events.IEventListener;
+import com.gzoltar.core.instr.BoundedClassPool;
+import com.gzoltar.core.instr.pass.CoveragePass;
+import com.gzoltar.core.model.HitVector;
 import com.gzoltar.core.model.Transaction;
 import com.gzoltar.core.model.TransactionOutcome;
 import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.runtime.ProbeSerialisation;
 import com.gzoltar.core.util.SerialisationIdentifiers;
 import javassist.ClassPool;
 import javassist.CtClass;
-import javassist.NotFoundException;
 
+/**
+ * Reads spectrum data files. Transactions are either collected into a spectrum, or handed one at a
+ * time to a {@link IEventListener} as soon as they are read, in which case a spectrum of any size
+ * can be processed (e.g., counted, merged, or written again) in a single pass and without keeping
+ * any transaction in memory.
+ */
 public class SpectrumReader {
 
+  /** ProbeGroups read so far, and all transactions read if there is not any listener */
   private final Spectrum spectrum;
 
+  /** Listener of the probeGroups and transactions read, or null if they are collected */
+  private final IEventListener listener;
+
   private final CompactDataInput in;
 
   private boolean firstBlock = true;
 
-  private Instrumenter instrumenter = null;
+  private boolean eof = false;
+
+  private final CoveragePass coveragePass;
+
+  /**
+   * Location of the classes to instrument, which is only required to read probeGroups whose probes
+   * have not been written (e.g., by older versions of GZoltar). If null, those probeGroups are read
+   * without any probe, and their hit vectors are not expanded.
+   */
+  private final String buildLocation;
+
+  private ClassPool classPool = null;
 
   private final TransactionDeserialize transactionDeserialize = new TransactionDeserialize();
 
   /**
-   * Creates a new reader based on the given input stream input. Depending on the nature of the
+   * Creates a new reader based on the given input stream input, which collects all probeGroups and
+   * transactions into the spectrum of the {@link Collector}. Depending on the nature of the
    * underlying stream input should be buffered as most data is read in single bytes.
    * 
    * @param buildLocation
@@ -56,46 +85,171 @@ public class SpectrumReader {
    */
   public SpectrumReader(final String buildLocation, final AgentConfigs agentConfigs,
       final InputStream input) {
-    this.spectrum = Collector.instance().getSpectrum();
-    this.in = new CompactDataInput(input);
-    this.instrumenter = new Instrumenter(agentConfigs);
+    this(new CoveragePass(agentConfigs), buildLocation, Collector.instance().getSpectrum(), null,
+        input);
+  }
 
-    try {
-      ClassPool.getDefault().appendClassPath(buildLocation);
-    } catch (NotFoundException e) {
-      throw new RuntimeException(e);
-    }
+  /**
+   * Creates a new reader based on the given input stream input, which does not depend on (nor
+   * modify) the {@link Collector}. Each probeGroup is handed to the listener before the first
+   * transaction that executes it, and each transaction as soon as it is read. Depending on the
+   * nature of the underlying stream input should be buffered as most data is read in single bytes.
+   * 
+   * @param buildLocation
+   * @param agentConfigs
+   * @param input input stream to read execution data from
+   * @param listener listener of the probeGroups and transactions read
+   */
+  public SpectrumReader(final String buildLocation, final AgentConfigs agentConfigs,
+      final InputStream input, final IEventListener listener) {
+    this(new CoveragePass(agentConfigs), buildLocation, new Spectrum(), listener, input);
   }
 
+  SpectrumReader(final CoveragePass coveragePass, final String buildLocation,
+      final Spectrum spectrum, final IEventListener listener, final InputStream input) {
+    this.spectrum = spectrum;
+    this.listener = listener;
+    this.in = new CompactDataInput(input);
+    this.coveragePass = coveragePass;
+    this.buildLocation = buildLocation;
+  }
+
+  /**
+   * Returns the spectrum that holds the probeGroups read so far. Transactions are only added to it
+   * by {@link #read()} if the reader has not been created with a listener.
+   */
   public Spectrum getSpectrum() {
     return this.spectrum;
   }
 
+  /**
+   * Reads all transactions of the input stream, and closes it.
+   * 
+   * @return false if the input stream is empty, true otherwise
+   * @throws Exception
+   */
   public boolean read() throws Exception {
-    byte type;
-    do {
-      int i = this.in.read();
-      if (i == -1) {
-        return false; // EOF
-      }
-      type = (byte) i;
-      if (this.firstBlock && type != SerialisationIdentifiers.BLOCK_HEADER) {
-        throw new IOException("Invalid spectrum data file.");
+    Transaction transaction;
+    while ((transaction = this.readTransaction()) != null) {
+      if (this.listener == null) {
+        this.spectrum.addTransaction(transaction);
+      } else {
+        this.listener.endTransaction(transaction);
       }
-      this.firstBlock = false;
-    } while (this.readBlock(type));
+    }
     this.in.close();
-    return true;
+    return !this.firstBlock;
   }
 
-  private boolean readBlock(final byte blocktype) throws Exception {
+  /**
+   * Reads the next transaction of the input stream. The probeGroups it executes are available in
+   * {@link #getSpectrum()}, and identified by the same identifiers as in its activity. The
+   * transaction is neither added to the spectrum nor handed to the listener.
+   * 
+   * @return the next transaction, or null if there is not any
+   * @throws Exception
+   */
+  public Transaction readTransaction() throws Exception {
+    Transaction transaction = null;
+    while (transaction == null && !this.eof) {
+      transaction = this.readBlock();
+    }
+    return transaction;
+  }
+
+  /**
+   * Reads the block at the current position of the input stream.
+   * 
+   * @return the transaction read, or null if the block is not a transaction or there is not any
+   *         block
+   * @throws Exception
+   */
+  Transaction readBlock() throws Exception {
+    int i = this.in.read();
+    if (i == -1) {
+      this.eof = true;
+      return null;
+    }
+    byte type = (byte) i;
+    if (this.firstBlock && type != SerialisationIdentifiers.BLOCK_HEADER) {
+      throw new IOException("Invalid spectrum data file.");
+    }
+    this.firstBlock = false;
+    return this.readBlock(type);
+  }
+
+  /**
+   * Returns the shared activity (starting at 1) the last transaction read has either written or
+   * referred to, or 0 if its activity is not shared.
+   */
+  int getActivityIndex() {
+    return this.transactionDeserialize.activityIndex;
+  }
+
+  /**
+   * Checks whether a shared activity (starting at 1) of the current segment has been read.
+   */
+  boolean hasActivity(final int activityIndex) {
+    return this.transactionDeserialize.activities.containsKey(activityIndex);
+  }
+
+  /**
+   * Sets the number of shared activities written so far in the current segment, so that the next
+   * activity written in full is numbered after them, e.g., when the blocks of a segment are not
+   * read in order.
+   */
+  void setNumberOfActivities(final int numberOfActivities) {
+    this.transactionDeserialize.numberOfActivities = numberOfActivities;
+  }
+
+  /**
+   * Recovers the transactions recorded in the journals of a data file (see
+   * {@link SpectrumJournal}) by JVMs that have been killed before writing the data file, and adds
+   * them to the spectrum (or hands them to the listener). Journals that are still locked by a
+   * running JVM are skipped, as their transactions are written to the data file once that JVM ends.
+   * 
+   * @param dataFile
+   * @return the number of journals that have been recovered
+   * @throws Exception
+   */
+  public int recover(final File dataFile) throws Exception {
+    int numberOfJournals = 0;
+    for (File journal : SpectrumJournal.findJournals(dataFile)) {
+      InputStream committed = SpectrumJournal.openCommittedIfReleased(journal);
+      if (committed == null) {
+        continue;
+      }
+      try {
+        new SpectrumReader(this.coveragePass, this.buildLocation, this.spectrum, this.listener,
+            committed).read();
+      } finally {
+        committed.close();
+      }
+      numberOfJournals++;
+    }
+    return numberOfJournals;
+  }
+
+  /**
+   * Reads a block.
+   * 
+   * @return the transaction read, or null if the block is not a transaction
+   */
+  private Transaction readBlock(final byte blocktype) throws Exception {
     switch (blocktype) {
       case SerialisationIdentifiers.BLOCK_HEADER:
         this.readHeader();
-        return true;
+        return null;
+      case SerialisationIdentifiers.BLOCK_PROBE_GROUP:
+        this.transactionDeserialize.readProbeGroup();
+        return null;
+      case SerialisationIdentifiers.BLOCK_NAME:
+        this.transactionDeserialize.names.add(this.in.readUTF());
+        return null;
       case SerialisationIdentifiers.BLOCK_TRANSACTION:
-        this.spectrum.addTransaction(this.transactionDeserialize.deserialize());
-        return true;
+      case SerialisationIdentifiers.BLOCK_TRANSACTION_HIT_COUNTS:
+      case SerialisationIdentifiers.BLOCK_TRANSACTION_SHARED_ACTIVITY:
+        return this.transactionDeserialize.deserialize(blocktype);
       default:
         throw new IOException(format("Unknown block type %x.", Byte.valueOf(blocktype)));
     }
@@ -106,9 +260,18 @@ public class SpectrumReader {
       throw new IOException("Invalid execution data file.");
     }
     final char version = this.in.readChar();
-    if (version != SerialisationIdentifiers.FORMAT_VERSION) {
+    if (version != SerialisationIdentifiers.FORMAT_VERSION
+        && version != SerialisationIdentifiers.FORMAT_VERSION_1) {
       throw new IncompatibleSpectrumVersionException(version);
     }
+    // each segment of a file (e.g., appended by a different JVM) may be written in a different
+    // version, and activities and dictionaries are only shared within the same segment
+    this.transactionDeserialize.version = version;
+    this.transactionDeserialize.activities.clear();
+    this.transactionDeserialize.numberOfActivities = 0;
+    this.transactionDeserialize.probeGroups.clear();
+    this.transactionDeserialize.numberOfProbes.clear();
+    this.transactionDeserialize.names.clear();
   }
 
   /**
@@ -116,49 +279,279 @@ public class SpectrumReader {
    */
   private final class TransactionDeserialize {
 
+    /** Format version of the current segment */
+    private char version = SerialisationIdentifiers.FORMAT_VERSION;
+
+    /**
+     * <index (starting at 1), activity> of the last
+     * {@link SerialisationIdentifiers#MAX_SHARED_ACTIVITIES} activities written in full, which are
+     * the only ones following transactions may refer to
+     */
+    private final Map<Integer, Map<Integer, HitVector>> activities =
+        new LinkedHashMap<Integer, Map<Integer, HitVector>>() {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(
+              final Map.Entry<Integer, Map<Integer, HitVector>> eldest) {
+            return this.size() > SerialisationIdentifiers.MAX_SHARED_ACTIVITIES;
+          }
+        };
+
+    /** Number of activities written in full so far */
+    private int numberOfActivities = 0;
+
+    /** Shared activity of the last transaction, or 0 if its activity is not shared */
+    private int activityIndex = 0;
+
+    /** ProbeGroups of the dictionary, in the order they have been written */
+    private final List<ProbeGroup> probeGroups = new ArrayList<ProbeGroup>();
+
+    /** Number of probes of each probeGroup of the dictionary */
+    private final List<Integer> numberOfProbes = new ArrayList<Integer>();
+
+    /** Names of the dictionary, in the order they have been written */
+    private final List<String> names = new ArrayList<String>();
+
+    /**
+     * Deserialises a probeGroup dictionary entry. The probeGroup is looked up (or rebuilt from its
+     * probes) once, rather than once per transaction that executes it.
+     * 
+     * @throws IOException
+     */
+    private void readProbeGroup() throws IOException {
+      String probeGroupHash = in.readUTF();
+      String probeGroupName = in.readUTF();
+      int length = in.readVarInt();
+      // probes are only written the first time a probeGroup is written to a file
+      List<Probe> probes = in.readBoolean() ? ProbeSerialisation.read(in, this.names)
+          : new ArrayList<Probe>();
+
+      ProbeGroup probeGroup = spectrum.getProbeGroupByHash(probeGroupHash);
+      if (probeGroup == null) {
+        if (probes.isEmpty()) {
+          // e.g., classes instrumented offline, whose probes are not known by the JVM that ran them
+          probeGroup = getProbeGroup(probeGroupHash, probeGroupName);
+        } else {
+          // no need to instrument the class, which may not even exist anymore
+          probeGroup = register(new ProbeGroup(probeGroupHash, probeGroupName, probes));
+        }
+      }
+      checkNumberOfProbes(probeGroup, length);
+      this.probeGroups.add(probeGroup);
+      this.numberOfProbes.add(length);
+    }
+
     /**
      * Deserialises and create an instance of {@link com.gzoltar.core.model.Transaction}.
      * 
+     * @param blockType type of the block the transaction has been serialised as
      * @return a {@link com.gzoltar.core.model.Transaction} object
      * @throws IOException
      */
-    public Transaction deserialize() throws IOException, CloneNotSupportedException {
-      String transactionName = in.readUTF();
+    public Transaction deserialize(final byte blockType) throws IOException {
+      String transactionName;
+      if (this.version == SerialisationIdentifiers.FORMAT_VERSION_1) {
+        transactionName = in.readUTF();
+      } else {
+        transactionName = this.get(this.names, in.readVarInt(), "name") + in.readUTF();
+      }
+
+      Map<Integer, HitVector> activity;
+      Map<Integer, int[]> hitCounts = new LinkedHashMap<Integer, int[]>();
+      this.activityIndex = 0;
+      if (blockType == SerialisationIdentifiers.BLOCK_TRANSACTION_SHARED_ACTIVITY) {
+        int index = in.readVarInt();
+        if (index == 0) {
+          activity = this.readActivity(null);
+          index = ++this.numberOfActivities;
+          this.activities.put(index, activity);
+        } else {
+          activity = this.activities.get(index);
+          if (activity == null) {
+            throw new IOException("Invalid reference to activity " + index + ".");
+          }
+        }
+        this.activityIndex = index;
+        // each transaction has its own activity, although hit vectors are shared
+        activity = new LinkedHashMap<Integer, HitVector>(activity);
+      } else if (blockType == SerialisationIdentifiers.BLOCK_TRANSACTION_HIT_COUNTS) {
+        activity = this.readActivity(hitCounts);
+      } else {
+        activity = this.readActivity(null);
+      }
 
-      Map<String, Pair<String, boolean[]>> activity = new LinkedHashMap<String, Pair<String, boolean[]>>();
+      TransactionOutcome transactionOutcome = TransactionOutcome.valueOf(in.readUTF());
+      long runtime = in.readLong();
+      String stackTrace = in.readUTF();
+
+      return new Transaction(transactionName, activity, hitCounts, transactionOutcome, runtime,
+          stackTrace);
+    }
+
+    /**
+     * Deserialises the activity of a transaction.
+     * 
+     * @param hitCounts map to which the hit counts of each probeGroup are added, or null if the
+     *        activity has been serialised without hit counts
+     * @return <ProbeGroup id, hitVector>
+     * @throws IOException
+     */
+    private Map<Integer, HitVector> readActivity(final Map<Integer, int[]> hitCounts)
+        throws IOException {
+      Map<Integer, HitVector> activity = new LinkedHashMap<Integer, HitVector>();
       int numberActivities = in.readVarInt();
       while (numberActivities > 0) {
-        String probeGroupHash = in.readUTF();
-        String probeGroupName = in.readUTF();
-        boolean[] hitArray = in.readBooleanArray();
-
-        // instrument probeGroup (in case it has been not been instrumented)
-        if (spectrum.getProbeGroupByHash(probeGroupHash) == null) {
-          // probeGroup has not been instrumented
-          try {
-            CtClass ctClass = ClassPool.getDefault().get(probeGroupName);
-            instrumenter.instrument(ctClass);
-          } catch (Exception e) {
-            throw new RuntimeException(e);
-          }
+        ProbeGroup probeGroup;
+        int length;
+        if (this.version == SerialisationIdentifiers.FORMAT_VERSION_1) {
+          probeGroup = getProbeGroup(in.readUTF(), in.readUTF());
+          length = in.readVarInt();
+          checkNumberOfProbes(probeGroup, length);
+        } else {
+          // the number of probes is known from the dictionary
+          int index = in.readVarInt();
+          probeGroup = this.get(this.probeGroups, index, "probeGroup");
+          length = this.numberOfProbes.get(index);
+        }
+
+        int[] counts = null;
+        HitVector hitVector;
+        if (hitCounts != null) {
+          counts = this.readHitCounts(length);
+          hitVector = HitVector.valueOf(counts, counts.length);
+        } else {
+          hitVector = readHitVectorBits(in, length);
+        }
 
-          // sanity check
-          if (spectrum.getProbeGroupByHash(probeGroupHash) == null) {
-            throw new RuntimeException("ProbeGroup '" + probeGroupHash + "' | '" + probeGroupName
-                + "' has not been added to the spectrum instance!");
+        if (!probeGroup.isEmpty()) {
+          // probes whose coverage has been inferred from others get their own entry
+          hitVector = probeGroup.expand(hitVector);
+          if (counts != null) {
+            counts = probeGroup.expand(counts);
           }
         }
 
-        activity.put(probeGroupHash, new ImmutablePair<String, boolean[]>(probeGroupName, hitArray));
+        int probeGroupId = probeGroup.getId();
+        activity.put(probeGroupId, hitVector);
+        if (counts != null) {
+          hitCounts.put(probeGroupId, counts);
+        }
         numberActivities--;
       }
+      return activity;
+    }
 
-      TransactionOutcome transactionOutcome = TransactionOutcome.valueOf(in.readUTF());
-      long runtime = in.readLong();
-      String stackTrace = in.readUTF();
+    private <T> T get(final List<T> dictionary, final int index, final String entryType)
+        throws IOException {
+      if (index < 0 || index >= dictionary.size()) {
+        throw new IOException("Invalid reference to " + entryType + " " + index + ".");
+      }
+      return dictionary.get(index);
+    }
+
+    private int[] readHitCounts(final int length) throws IOException {
+      int[] hitCounts = new int[length];
+      for (int i = 0; i < hitCounts.length; i++) {
+        hitCounts[i] = in.readVarInt();
+      }
+      return hitCounts;
+    }
+  }
+
+  /**
+   * Returns the probeGroup of a class, which is instrumented in case it has not been instrumented
+   * yet.
+   */
+  private ProbeGroup getProbeGroup(final String probeGroupHash, final String probeGroupName) {
+    ProbeGroup probeGroup = this.spectrum.getProbeGroupByHash(probeGroupHash);
+    if (probeGroup == null && this.buildLocation == null) {
+      // the probes of the class are not needed, e.g., to merge data files
+      probeGroup = this.register(new ProbeGroup(probeGroupHash, probeGroupName));
+      if (probeGroup == null) {
+        // the Collector does not register probeGroups without probes
+        throw new RuntimeException("ProbeGroup '" + probeGroupHash + "' | '" + probeGroupName
+            + "' requires a build location to be read!");
+      }
+    } else if (probeGroup == null) {
+      // probeGroup has not been instrumented
+      try {
+        if (this.classPool == null) {
+          this.classPool = new BoundedClassPool(BoundedClassPool.DEFAULT_CAPACITY);
+          this.classPool.appendSystemPath();
+          this.classPool.appendClassPath(this.buildLocation);
+        }
+        CtClass ctClass = this.classPool.get(probeGroupName);
+        probeGroup = this.register(this.coveragePass.instrument(ctClass));
+        ctClass.detach();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+
+      // sanity check
+      if (probeGroup == null || !probeGroup.getHash().equals(probeGroupHash)) {
+        throw new RuntimeException("ProbeGroup '" + probeGroupHash + "' | '" + probeGroupName
+            + "' has not been added to the spectrum instance!");
+      }
+    }
+    return probeGroup;
+  }
 
-      return new Transaction(transactionName, activity, transactionOutcome, runtime, stackTrace);
+  /**
+   * Registers a probeGroup that has not been read yet.
+   * 
+   * @return the registered probeGroup, or null if it could not be registered
+   */
+  private ProbeGroup register(final ProbeGroup probeGroup) {
+    if (this.listener == null) {
+      // the spectrum of the Collector only holds the probeGroups it has registered
+      Collector.instance().regiterProbeGroup(probeGroup);
+    } else if (!this.spectrum.containsProbeGroup(probeGroup)) {
+      this.spectrum.addProbeGroup(probeGroup);
+      this.listener.regiterProbeGroup(probeGroup);
+    }
+    return this.spectrum.getProbeGroupByHash(probeGroup.getHash());
+  }
+
+  private static void checkNumberOfProbes(final ProbeGroup probeGroup, final int length)
+      throws IOException {
+    if (!probeGroup.isEmpty() && length != probeGroup.getHitArrayLength()) {
+      // e.g., the class has been instrumented at a different granularity level
+      throw new IOException("ProbeGroup '" + probeGroup.getHash() + "' | '" + probeGroup.getName()
+          + "' has " + probeGroup.getHitArrayLength() + " probes, but " + length
+          + " have been recorded. Was it instrumented with the same options?");
+    }
+  }
+
+  /**
+   * Deserialises a hit vector written by
+   * {@link org.jacoco.core.internal.data.CompactDataOutput#writeBooleanArray(boolean[])}, without
+   * expanding it into a boolean array.
+   * 
+   * @param in binary stream to read bytes from
+   * @return a {@link com.gzoltar.core.model.HitVector} object
+   * @throws IOException
+   */
+  static HitVector readHitVector(final CompactDataInput in) throws IOException {
+    return readHitVectorBits(in, in.readVarInt());
+  }
+
+  /**
+   * Deserialises the bits of a hit vector whose length is already known.
+   * 
+   * @param in binary stream to read bytes from
+   * @param length number of bits of the hit vector
+   * @return a {@link com.gzoltar.core.model.HitVector} object
+   * @throws IOException
+   */
+  static HitVector readHitVectorBits(final CompactDataInput in, final int length)
+      throws IOException {
+    long[] words = new long[HitVector.getNumberOfWords(length)];
+    int numberOfBytes = (length + 7) >>> 3;
+    for (int i = 0; i < numberOfBytes; i++) {
+      words[i >>> 3] |= ((long) in.readUnsignedByte()) << ((i & 7) << 3);
     }
+    return HitVector.valueOf(length, words);
   }
 
   /**
@@ -18,11 +18,20 @@ package com.gzoltar.core.spectrum;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import org.apache.commons.lang3.tuple.Pair;
+import java.util.Set;
 import org.jacoco.core.internal.data.CompactDataOutput;
+import com.gzoltar.core.listeners.Listener;
+import com.gzoltar.core.model.HitVector;
 import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.runtime.ProbeSerialisation;
 import com.gzoltar.core.util.SerialisationIdentifiers;
 
 /**
@@ -32,6 +41,14 @@ public class SpectrumWriter {
 
   private final CompactDataOutput out;
 
+  private TransactionSerialize transactionSerialize = new TransactionSerialize();
+
+  /**
+   * Hashes of the probeGroups whose probes have been written so far. Probes are written once per
+   * file, dictionary entries of following segments refer to them by the hash of their probeGroup.
+   */
+  private final Set<String> probeGroupsWithProbes = new HashSet<String>();
+
   /**
    * Creates a new writer based on the given output stream. Depending on the nature of the
    * underlying stream output should be buffered as most data is written in single bytes.
@@ -64,41 +81,240 @@ public class SpectrumWriter {
    */
   public void writeSpectrum(final ISpectrum spectrum) throws IOException {
     for (final Transaction transaction : spectrum.getTransactions()) {
-      TransactionSerialize.serialize(this.out, transaction);
+      this.transactionSerialize.serialize(spectrum, transaction);
     }
     this.out.close();
   }
 
   /**
+   * Serializes a single transaction into binary streams, e.g., as soon as it ends. The stream is
+   * neither flushed nor closed.
+   * 
+   * @param spectrum spectrum that holds the probeGroups executed by the transaction
+   * @param transaction
+   * @throws IOException if the data can't be written
+   */
+  public void writeTransaction(final ISpectrum spectrum, final Transaction transaction)
+      throws IOException {
+    this.transactionSerialize.serialize(spectrum, transaction);
+  }
+
+  /**
+   * Starts a new segment, i.e., writes a new header and forgets the dictionary entries and the
+   * activities written so far, as transactions only refer to the ones of their own segment.
+   * 
+   * @throws IOException if the header can't be written
+   */
+  public void startSegment() throws IOException {
+    this.writeHeader();
+    this.transactionSerialize = new TransactionSerialize();
+  }
+
+  /**
+   * Flushes the underlying stream.
+   * 
+   * @throws IOException if the data can't be written
+   */
+  public void flush() throws IOException {
+    this.out.flush();
+  }
+
+  /**
+   * Serialises a hit vector in the same layout as
+   * {@link CompactDataOutput#writeBooleanArray(boolean[])}, i.e., its length followed by its bits
+   * packed in bytes (least significant bit first), without expanding it into a boolean array.
    * 
+   * @param out binary stream to write bytes to
+   * @param hitVector
+   * @throws IOException
    */
-  private static final class TransactionSerialize {
+  static void writeHitVector(final CompactDataOutput out, final HitVector hitVector)
+      throws IOException {
+    out.writeVarInt(hitVector.length());
+    writeHitVectorBits(out, hitVector);
+  }
+
+  /**
+   * Serialises the bits of a hit vector packed in bytes (least significant bit first), but not its
+   * length.
+   * 
+   * @param out binary stream to write bytes to
+   * @param hitVector
+   * @throws IOException
+   */
+  static void writeHitVectorBits(final CompactDataOutput out, final HitVector hitVector)
+      throws IOException {
+    int numberOfBytes = (hitVector.length() + 7) >>> 3;
+    for (int i = 0; i < numberOfBytes; i++) {
+      out.writeByte((int) (hitVector.getWord(i >>> 3) >>> ((i & 7) << 3)));
+    }
+  }
+
+  /**
+   * 
+   */
+  private final class TransactionSerialize {
+
+    /**
+     * <activity, index> of the last {@link SerialisationIdentifiers#MAX_SHARED_ACTIVITIES}
+     * activities written in full. Transactions without hit counts that have the same activity of one
+     * of them (e.g., parameterized test cases) just refer to it.
+     */
+    private final Map<Map<Integer, HitVector>, Integer> activities =
+        new LinkedHashMap<Map<Integer, HitVector>, Integer>() {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(
+              final Map.Entry<Map<Integer, HitVector>, Integer> eldest) {
+            return this.size() > SerialisationIdentifiers.MAX_SHARED_ACTIVITIES;
+          }
+        };
+
+    /** Number of activities written in full so far */
+    private int numberOfActivities = 0;
+
+    /**
+     * <ProbeGroup id, index> of the probeGroups written to the dictionary so far. Identifiers are
+     * only meaningful within a spectrum, therefore activities refer to the dictionary instead.
+     */
+    private final Map<Integer, Integer> probeGroups = new HashMap<Integer, Integer>();
+
+    /** Number of probes of each probeGroup written to the dictionary so far */
+    private final List<Integer> numberOfProbes = new ArrayList<Integer>();
+
+    /** <name, index> of the names written to the dictionary so far */
+    private final Map<String, Integer> names = new HashMap<String, Integer>();
 
     /**
      * Serialises an instance of {@link com.gzoltar.core.model.Transaction}.
      * 
-     * @param out binary stream to write bytes to
+     * @param spectrum spectrum that holds the probeGroups executed by the transaction
      * @param transaction
      * @throws IOException
      */
-    public static void serialize(final CompactDataOutput out, final Transaction transaction)
+    public void serialize(final ISpectrum spectrum, final Transaction transaction)
         throws IOException {
-      if (transaction.hasActivations()) {
-        out.writeByte(SerialisationIdentifiers.BLOCK_TRANSACTION);
-        out.writeUTF(transaction.getName());
+      if (!transaction.hasActivations()) {
+        return;
+      }
+
+      // dictionary entries are written before the first transaction that refers to them
+      String transactionName = transaction.getName();
+      int separator = transactionName.lastIndexOf(Listener.TEST_CLASS_NAME_SEPARATOR) + 1;
+      int nameIndex = this.writeName(transactionName.substring(0, separator));
+
+      if (transaction.hasHitCounts()) {
+        this.writeProbeGroups(spectrum, transaction);
+        out.writeByte(SerialisationIdentifiers.BLOCK_TRANSACTION_HIT_COUNTS);
+        this.writeName(nameIndex, transactionName.substring(separator));
+        this.writeActivity(transaction);
+      } else {
+        // 0 if the activity is written in full, otherwise the index (plus one) of a previous one
+        Integer index = this.activities.get(transaction.getActivity());
+        if (index == null) {
+          this.writeProbeGroups(spectrum, transaction);
+        }
+        out.writeByte(SerialisationIdentifiers.BLOCK_TRANSACTION_SHARED_ACTIVITY);
+        this.writeName(nameIndex, transactionName.substring(separator));
+        if (index == null) {
+          out.writeVarInt(0);
+          this.writeActivity(transaction);
+          this.activities.put(transaction.getActivity(), this.numberOfActivities++);
+        } else {
+          out.writeVarInt(index + 1);
+        }
+      }
+
+      out.writeUTF(transaction.getTransactionOutcome().name());
+      out.writeLong(transaction.getRuntime());
+      out.writeUTF(transaction.getStackTrace());
+    }
+
+    /**
+     * Writes a dictionary entry for a name, unless it has already been written.
+     * 
+     * @param name
+     * @return the index of the name in the dictionary
+     * @throws IOException
+     */
+    private int writeName(final String name) throws IOException {
+      Integer index = this.names.get(name);
+      if (index == null) {
+        out.writeByte(SerialisationIdentifiers.BLOCK_NAME);
+        out.writeUTF(name);
+        index = this.names.size();
+        this.names.put(name, index);
+      }
+      return index;
+    }
 
-        Map<String, Pair<String, boolean[]>> activity = transaction.getActivity();
-        out.writeVarInt(activity.size());
+    /**
+     * Writes the name of a transaction, i.e., a reference to the dictionary entry of its prefix
+     * (e.g., the name of a test class) followed by the rest of it (e.g., the name of a test case).
+     */
+    private void writeName(final int prefixIndex, final String suffix) throws IOException {
+      out.writeVarInt(prefixIndex);
+      out.writeUTF(suffix);
+    }
 
-        for (Entry<String, Pair<String, boolean[]>> entry : activity.entrySet()) {
-          out.writeUTF(entry.getKey()); // hash
-          out.writeUTF(entry.getValue().getLeft()); // name
-          out.writeBooleanArray(entry.getValue().getRight()); // hitArray
+    /**
+     * Writes a dictionary entry (i.e., hash, name, number of probes, and all probes unless they
+     * have been written in a previous segment) for each probeGroup executed by a transaction that
+     * has not been written yet. The names the probes refer to are written to the name dictionary
+     * beforehand.
+     */
+    private void writeProbeGroups(final ISpectrum spectrum, final Transaction transaction)
+        throws IOException {
+      for (Entry<Integer, HitVector> entry : transaction.getActivity().entrySet()) {
+        if (this.probeGroups.containsKey(entry.getKey())) {
+          continue;
+        }
+        ProbeGroup probeGroup = spectrum.getProbeGroupById(entry.getKey());
+        boolean writeProbes = probeGroupsWithProbes.add(probeGroup.getHash());
+        Map<String, Integer> names = new HashMap<String, Integer>();
+        if (writeProbes) {
+          for (String name : ProbeSerialisation.getNames(probeGroup)) {
+            names.put(name, this.writeName(name));
+          }
         }
 
-        out.writeUTF(transaction.getTransactionOutcome().name());
-        out.writeLong(transaction.getRuntime());
-        out.writeUTF(transaction.getStackTrace());
+        out.writeByte(SerialisationIdentifiers.BLOCK_PROBE_GROUP);
+        out.writeUTF(probeGroup.getHash());
+        out.writeUTF(probeGroup.getName());
+        // probeGroups of classes instrumented offline do not know their probes, but their hit
+        // vectors do
+        out.writeVarInt(entry.getValue().length());
+        // so that the probeGroup can be read without instrumenting its class again
+        out.writeBoolean(writeProbes);
+        if (writeProbes) {
+          ProbeSerialisation.write(out, probeGroup, names);
+        }
+        this.probeGroups.put(entry.getKey(), this.numberOfProbes.size());
+        this.numberOfProbes.add(entry.getValue().length());
+      }
+    }
+
+    private void writeActivity(final Transaction transaction) throws IOException {
+      Map<Integer, HitVector> activity = transaction.getActivity();
+      out.writeVarInt(activity.size());
+
+      for (Entry<Integer, HitVector> entry : activity.entrySet()) {
+        int index = this.probeGroups.get(entry.getKey());
+        if (entry.getValue().length() != this.numberOfProbes.get(index)) {
+          throw new IOException("ProbeGroup " + entry.getKey() + " has "
+              + this.numberOfProbes.get(index) + " probes, but " + entry.getValue().length()
+              + " have been recorded.");
+        }
+        out.writeVarInt(index);
+        // the number of probes is known from the dictionary
+        if (transaction.hasHitCounts()) {
+          for (int hitCount : transaction.getHitCountsByProbeGroupId(entry.getKey())) {
+            out.writeVarInt(hitCount);
+          }
+        } else {
+          writeHitVectorBits(out, entry.getValue());
+        }
       }
     }
   }
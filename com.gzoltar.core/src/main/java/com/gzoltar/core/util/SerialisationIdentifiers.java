@@ -23,9 +23,15 @@ public final class SerialisationIdentifiers {
 
   static {
     // Runtime initialise to ensure the compiler does not inline the value.
-    FORMAT_VERSION = 0x0001;
+    FORMAT_VERSION = 0x0002;
   }
 
+  /**
+   * First file format version, which can still be read. Each activity of each transaction refers to
+   * its probeGroup by the probeGroup's hash and name.
+   */
+  public static final char FORMAT_VERSION_1 = 0x0001;
+
   /** Magic number in header for file format identification. */
   public static final char MAGIC_NUMBER = 0xC0C0;
 
@@ -35,4 +41,37 @@ public final class SerialisationIdentifiers {
   /** Block identifier for transaction information. */
   public static final byte BLOCK_TRANSACTION = 0x10;
 
+  /** Block identifier for transaction information with hit counts. */
+  public static final byte BLOCK_TRANSACTION_HIT_COUNTS = 0x11;
+
+  /**
+   * Block identifier for transaction information whose activity is either written in full, or
+   * refers to the activity of a previous transaction in the same file segment (i.e., since the last
+   * header).
+   */
+  public static final byte BLOCK_TRANSACTION_SHARED_ACTIVITY = 0x12;
+
+  /**
+   * Maximum number of activities written in full that a transaction may refer to, i.e., a
+   * transaction only refers to one of the last {@value} activities written in full in the same file
+   * segment. Therefore, the memory needed to write and to read a segment is bounded, no matter its
+   * number of transactions.
+   */
+  public static final int MAX_SHARED_ACTIVITIES = 1 << 10;
+
+  /**
+   * Block identifier for probeGroup dictionary entries (i.e., the hash, name, and number of probes
+   * of a probeGroup, and its probes the first time the probeGroup is written to a file).
+   * Transactions refer to probeGroups by the order in which their entries have been written in the
+   * same file segment. Since {@link #FORMAT_VERSION} 2.
+   */
+  public static final byte BLOCK_PROBE_GROUP = 0x20;
+
+  /**
+   * Block identifier for name dictionary entries, e.g., the name of a test class. Transactions
+   * refer to the prefix of their names by the order in which their entries have been written in the
+   * same file segment. Since {@link #FORMAT_VERSION} 2.
+   */
+  public static final byte BLOCK_NAME = 0x21;
+
 }
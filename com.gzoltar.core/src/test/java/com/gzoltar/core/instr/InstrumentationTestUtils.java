@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.ProbeGroup;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.bytecode.ClassFile;
+
+/**
+ * Creates the classes instrumented by instrumentation tests, and collects the probeGroups they
+ * register.
+ */
+public final class InstrumentationTestUtils {
+
+  private static final String OFFLINE_CLASS_NAME = "com.gzoltar.internal.agent.rt.Offline";
+
+  private InstrumentationTestUtils() {
+    // empty
+  }
+
+  /**
+   * Creates a class with a single method.
+   * 
+   * @param className name of the class
+   * @return the bytecode of the class
+   * @throws Exception
+   */
+  public static byte[] createClass(final String className) throws Exception {
+    CtClass ctClass = new ClassPool(true).makeClass(className);
+    // a class file version known by the content type detector
+    ctClass.getClassFile().setMajorVersion(ClassFile.JAVA_6);
+    ctClass.addMethod(CtNewMethod.make("public int inc(int x) { return x + 1; }", ctClass));
+    return ctClass.toBytecode();
+  }
+
+  /**
+   * Makes a class that stands for the runtime of offline instrumented classes.
+   * 
+   * @param pool pool the offline instrumented classes are made in
+   * @return <class name, bytecode> of the runtime
+   * @throws Exception
+   */
+  public static Map<String, byte[]> makeOfflineRuntime(final ClassPool pool) throws Exception {
+    CtClass offline = pool.makeClass(OFFLINE_CLASS_NAME);
+    for (String method : new String[] {"getHitArray", "touchProbeGroup"}) {
+      offline.addMethod(CtNewMethod.make("public static void " + method + "(Object[] args) { "
+          + Collector.class.getName() + ".instance()." + method + "($1); }", offline));
+    }
+    Map<String, byte[]> classes = new HashMap<String, byte[]>();
+    classes.put(OFFLINE_CLASS_NAME, offline.toBytecode());
+    return classes;
+  }
+
+  /**
+   * Returns the nodes of the probeGroups registered in the {@link Collector} so far, by class name.
+   * 
+   * @return <class name, nodes of its probeGroup>
+   */
+  public static Map<String, String> getProbeGroups() {
+    Map<String, String> probeGroups = new LinkedHashMap<String, String>();
+    for (ProbeGroup probeGroup : Collector.instance().getSpectrum().getProbeGroups()) {
+      probeGroups.put(probeGroup.getName(), probeGroup.getNodes().toString());
+    }
+    return probeGroups;
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import javassist.CtClass;
+
+public class TestBoundedClassPool {
+
+  @Test
+  public void testLeastRecentlyUsedClassIsEvicted() throws Exception {
+    BoundedClassPool pool = new BoundedClassPool(2);
+    CtClass a = pool.makeClass("org.gzoltar.examples.A");
+    pool.makeClass("org.gzoltar.examples.B");
+
+    // 'A' is used more recently than 'B'
+    assertSame(a, pool.get("org.gzoltar.examples.A"));
+    pool.makeClass("org.gzoltar.examples.C");
+
+    assertEquals(2, pool.size());
+    assertSame(a, pool.getOrNull("org.gzoltar.examples.A"));
+    assertNotNull(pool.getOrNull("org.gzoltar.examples.C"));
+    // 'B' is not in the class path of the pool
+    assertNull(pool.getOrNull("org.gzoltar.examples.B"));
+  }
+
+  @Test
+  public void testPrimitiveTypesAreNotEvicted() throws Exception {
+    BoundedClassPool pool = new BoundedClassPool(1);
+    pool.makeClass("org.gzoltar.examples.A");
+    pool.makeClass("org.gzoltar.examples.B");
+
+    assertSame(CtClass.intType, pool.get("int"));
+    assertSame(CtClass.booleanType, pool.get("boolean"));
+  }
+
+  @Test
+  public void testDetachedClassIsNotKept() throws Exception {
+    BoundedClassPool pool = new BoundedClassPool(2);
+    pool.makeClass("org.gzoltar.examples.A").detach();
+
+    assertEquals(0, pool.size());
+    assertNull(pool.getOrNull("org.gzoltar.examples.A"));
+  }
+
+  @Test
+  public void testClassesOfSiblingPoolsAreNotShared() throws Exception {
+    BoundedClassPool parent = new BoundedClassPool(2);
+    CtClass a = parent.makeClass("org.gzoltar.examples.A");
+    BoundedClassPool first = new BoundedClassPool(parent, 2);
+    BoundedClassPool second = new BoundedClassPool(parent, 2);
+    CtClass b = first.makeClass("org.gzoltar.examples.B");
+
+    // classes of the parent pool are shared, while the ones of a pool are not seen by its siblings
+    assertSame(a, first.get("org.gzoltar.examples.A"));
+    assertSame(a, second.get("org.gzoltar.examples.A"));
+    assertSame(b, first.get("org.gzoltar.examples.B"));
+    assertNull(second.getOrNull("org.gzoltar.examples.B"));
+    assertNull(parent.getOrNull("org.gzoltar.examples.B"));
+    assertSame(CtClass.intType, first.get("int"));
+  }
+}
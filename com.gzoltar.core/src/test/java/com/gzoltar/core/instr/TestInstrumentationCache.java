@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gzoltar.examples.StraightLineCode;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.instr.InstrumentationCache.CachedClass;
+import com.gzoltar.core.model.Node;
+import com.gzoltar.core.model.NodeType;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.MethodDescriptor;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.bytecode.AccessFlag;
+
+public class TestInstrumentationCache {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private AgentConfigs agentConfigs;
+
+  @Before
+  public void beforeEachUnitTest() {
+    Collector.restart();
+    this.agentConfigs = new AgentConfigs();
+    this.agentConfigs.setInstrumentationLevel(InstrumentationLevel.OFFLINE);
+  }
+
+  private static ProbeGroup createProbeGroup(final String name) {
+    MethodDescriptor method = new MethodDescriptor("inc", "(I)I", AccessFlag.PUBLIC,
+        new String[] {Deprecated.class.getCanonicalName()});
+    List<Probe> probes = new ArrayList<Probe>();
+    probes.add(new Probe(0, new Node(name + "#inc(int):10", 10, NodeType.LINE), method));
+    probes.add(new Probe(1, new Node(name + "#inc(int):11", 11, NodeType.LINE), method));
+    return new ProbeGroup("c0c0", name, probes);
+  }
+
+  @Test
+  public void testGetAndPut() throws Exception {
+    InstrumentationCache cache =
+        new InstrumentationCache(this.folder.getRoot(), this.agentConfigs);
+    byte[] classfileBuffer =
+        InstrumentationTestUtils.createClass("org.gzoltar.examples.CachedClass0");
+    assertNull(cache.get(classfileBuffer));
+
+    ProbeGroup probeGroup = createProbeGroup("org.gzoltar.examples$CachedClass0");
+    cache.put(classfileBuffer, new byte[] {1, 2, 3}, probeGroup);
+
+    CachedClass cachedClass = cache.get(classfileBuffer);
+    assertArrayEquals(new byte[] {1, 2, 3}, cachedClass.getBytecode());
+    assertEquals(probeGroup, cachedClass.getProbeGroup());
+    for (Probe probe : cachedClass.getProbeGroup().getProbes()) {
+      assertEquals(probeGroup.getProbes().get(0).getMethod(), probe.getMethod());
+    }
+  }
+
+  @Test
+  public void testDifferentOptionsDoNotShareEntries() throws Exception {
+    byte[] classfileBuffer =
+        InstrumentationTestUtils.createClass("org.gzoltar.examples.CachedClass1");
+    new InstrumentationCache(this.folder.getRoot(), this.agentConfigs).put(classfileBuffer,
+        new byte[] {1, 2, 3}, createProbeGroup("org.gzoltar.examples$CachedClass1"));
+
+    this.agentConfigs.setHitCounts(true);
+    assertNull(new InstrumentationCache(this.folder.getRoot(), this.agentConfigs)
+        .get(classfileBuffer));
+  }
+
+  @Test
+  public void testInstrumenterRegistersCachedProbeGroup() throws Exception {
+    InstrumentationCache cache =
+        new InstrumentationCache(this.folder.getRoot(), this.agentConfigs);
+    byte[] classfileBuffer =
+        InstrumentationTestUtils.createClass("org.gzoltar.examples.CachedClass2");
+    ProbeGroup probeGroup = createProbeGroup("org.gzoltar.examples$CachedClass2");
+    cache.put(classfileBuffer, new byte[] {1, 2, 3}, probeGroup);
+
+    Instrumenter instrumenter = new Instrumenter(this.agentConfigs);
+    instrumenter.setCache(cache);
+    CtClass cc = ClassPool.getDefault().makeClassIfNew(new ByteArrayInputStream(classfileBuffer));
+
+    // the class is not instrumented, but loaded from the cache
+    assertArrayEquals(new byte[] {1, 2, 3}, instrumenter.instrument(classfileBuffer, cc));
+    assertEquals(probeGroup, Collector.instance().getProbeGroupByHash("c0c0"));
+  }
+
+  @Test
+  public void testInstrumenterCachesInstrumentedClass() throws Exception {
+    InstrumentationCache cache =
+        new InstrumentationCache(this.folder.getRoot(), this.agentConfigs);
+    byte[] classfileBuffer =
+        InstrumentationTestUtils.createClass("org.gzoltar.examples.CachedClass3");
+
+    Instrumenter instrumenter = new Instrumenter(this.agentConfigs);
+    instrumenter.setCache(cache);
+    byte[] bytecode = instrumenter.instrument(classfileBuffer);
+
+    CachedClass cachedClass = cache.get(classfileBuffer);
+    assertArrayEquals(bytecode, cachedClass.getBytecode());
+    assertEquals("org.gzoltar.examples.CachedClass3", cachedClass.getProbeGroup().getName());
+  }
+
+  @Test
+  public void testCachedProbeGroupKeepsTheSlotsOfInferredProbes() throws Exception {
+    InstrumentationCache cache =
+        new InstrumentationCache(this.folder.getRoot(), this.agentConfigs);
+    ClassPool pool = new ClassPool(true);
+    InstrumentationTestUtils.makeOfflineRuntime(pool);
+    CtClass cc = pool.get(StraightLineCode.class.getName());
+    byte[] classfileBuffer = cc.toBytecode();
+    cc.defrost();
+
+    Instrumenter instrumenter = new Instrumenter(this.agentConfigs);
+    instrumenter.setCache(cache);
+    instrumenter.instrumentAndCache(classfileBuffer, cc);
+
+    Map<Integer, Integer> slots = new HashMap<Integer, Integer>();
+    ProbeGroup probeGroup = cache.get(classfileBuffer).getProbeGroup();
+    for (Probe probe : probeGroup.getProbes()) {
+      slots.put(probe.getNode().getLineNumber(), probe.getHitArrayIndex());
+    }
+    // line 35 is always executed together with the entry of abs, i.e., line 34
+    assertEquals(slots.get(34), slots.get(35));
+    assertEquals(Collector.instance().getProbeGroupByHash(probeGroup.getHash()), probeGroup);
+  }
+}
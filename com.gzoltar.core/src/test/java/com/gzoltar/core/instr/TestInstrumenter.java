@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.runtime.Collector;
+
+public class TestInstrumenter {
+
+  private static final int NUMBER_OF_CLASSES = 32;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before
+  public void beforeEachUnitTest() {
+    Collector.restart();
+  }
+
+  private static byte[] createJar(final String prefix) throws Exception {
+    ByteArrayOutputStream jar = new ByteArrayOutputStream();
+    ZipOutputStream zip = new ZipOutputStream(jar);
+    zip.putNextEntry(new ZipEntry("META-INF/SIGNATURE.SF"));
+    zip.closeEntry();
+    for (int i = 0; i < NUMBER_OF_CLASSES; i++) {
+      String className = prefix + i;
+      zip.putNextEntry(new ZipEntry(className.replace('.', '/') + ".class"));
+      zip.write(InstrumentationTestUtils.createClass(className));
+      zip.closeEntry();
+      zip.putNextEntry(new ZipEntry("resource" + i + ".txt"));
+      zip.write(("resource " + i).getBytes("UTF-8"));
+      zip.closeEntry();
+    }
+    zip.close();
+    return jar.toByteArray();
+  }
+
+  private static List<String> getEntryNames(final byte[] jar) throws Exception {
+    List<String> entryNames = new ArrayList<String>();
+    ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(jar));
+    ZipEntry entry;
+    while ((entry = zip.getNextEntry()) != null) {
+      entryNames.add(entry.getName());
+    }
+    zip.close();
+    return entryNames;
+  }
+
+  private static byte[] getEntry(final byte[] jar, final String entryName) throws Exception {
+    ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(jar));
+    try {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        if (entry.getName().equals(entryName)) {
+          ByteArrayOutputStream content = new ByteArrayOutputStream();
+          byte[] buffer = new byte[1024];
+          int len;
+          while ((len = zip.read(buffer)) != -1) {
+            content.write(buffer, 0, len);
+          }
+          return content.toByteArray();
+        }
+      }
+      return null;
+    } finally {
+      zip.close();
+    }
+  }
+
+  private static byte[] instrumentJar(final byte[] jar, final int parallelism) throws Exception {
+    AgentConfigs agentConfigs = new AgentConfigs();
+    agentConfigs.setInstrumentationLevel(InstrumentationLevel.OFFLINE);
+    Instrumenter instrumenter = new Instrumenter(agentConfigs);
+    instrumenter.setParallelism(parallelism);
+
+    ByteArrayOutputStream instrumentedJar = new ByteArrayOutputStream();
+    assertEquals(NUMBER_OF_CLASSES,
+        instrumenter.instrumentToFile(new ByteArrayInputStream(jar), instrumentedJar));
+    return instrumentedJar.toByteArray();
+  }
+
+  @Test
+  public void testSequentialInstrumentationOfJar() throws Exception {
+    byte[] jar = createJar("org.gzoltar.examples.SequentialJarClass");
+    byte[] instrumentedJar = instrumentJar(jar, 1);
+
+    List<String> expectedEntryNames = getEntryNames(jar);
+    expectedEntryNames.remove("META-INF/SIGNATURE.SF");
+    assertEquals(expectedEntryNames, getEntryNames(instrumentedJar));
+  }
+
+  @Test
+  public void testConcurrentInstrumentationOfJarKeepsEntryOrder() throws Exception {
+    byte[] jar = createJar("org.gzoltar.examples.ConcurrentJarClass");
+    byte[] instrumentedJar = instrumentJar(jar, 4);
+
+    List<String> expectedEntryNames = getEntryNames(jar);
+    expectedEntryNames.remove("META-INF/SIGNATURE.SF");
+    assertEquals(expectedEntryNames, getEntryNames(instrumentedJar));
+
+    // signatures are removed, other resources are copied as they are
+    assertNull(getEntry(instrumentedJar, "META-INF/SIGNATURE.SF"));
+    for (int i = 0; i < NUMBER_OF_CLASSES; i++) {
+      assertArrayEquals(getEntry(jar, "resource" + i + ".txt"),
+          getEntry(instrumentedJar, "resource" + i + ".txt"));
+    }
+  }
+
+  @Test
+  public void testConcurrentInstrumentationOfJarsWithTheSameClasses() throws Exception {
+    // e.g., a library shaded into several jars of the same application
+    byte[] jar = createJar("org.gzoltar.examples.DuplicateJarClass");
+    File source = this.folder.newFolder("source");
+    for (String jarName : new String[] {"a.jar", "b.jar"}) {
+      Files.write(new File(source, jarName).toPath(), jar);
+    }
+
+    AgentConfigs agentConfigs = new AgentConfigs();
+    agentConfigs.setInstrumentationLevel(InstrumentationLevel.OFFLINE);
+    Instrumenter instrumenter = new Instrumenter(agentConfigs);
+    instrumenter.setParallelism(4);
+    File dest = this.folder.newFolder("dest");
+    assertEquals(2 * NUMBER_OF_CLASSES, instrumenter.instrumentRecursively(source, dest));
+
+    // each copy of a class is instrumented once, and both the same way
+    byte[] expectedJar = instrumentJar(jar, 1);
+    for (String jarName : new String[] {"a.jar", "b.jar"}) {
+      byte[] instrumentedJar = Files.readAllBytes(new File(dest, jarName).toPath());
+      for (int i = 0; i < NUMBER_OF_CLASSES; i++) {
+        String entryName = "org/gzoltar/examples/DuplicateJarClass" + i + ".class";
+        assertArrayEquals(getEntry(expectedJar, entryName), getEntry(instrumentedJar, entryName));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidParallelism() {
+    new Instrumenter(new AgentConfigs()).setParallelism(0);
+  }
+}
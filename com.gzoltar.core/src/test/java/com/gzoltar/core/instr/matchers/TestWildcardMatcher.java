@@ -82,4 +82,26 @@ public class TestWildcardMatcher {
         .matches("com.gzoltar.core.instr.matchers.AbstractWildcardMatcher$innerClass"));
   }
 
+  @Test
+  public void testInternalNames() {
+    assertTrue(new ClassNameMatcher("java.util.*").matches("java/util/Map$Entry"));
+    assertTrue(new ClassNameMatcher("java.util.Map$Entry").matches("java/util/Map$Entry"));
+    assertTrue(new ClassNameMatcher("*.Map$*").matches("java/util/Map$Entry"));
+    assertFalse(new ClassNameMatcher("java.util.*").matches("java/utilities/Map"));
+  }
+
+  @Test
+  public void testSharedPrefixes() {
+    ClassNameMatcher matcher =
+        new ClassNameMatcher("org.gzoltar:org.gzoltar.*Test:org.gzoltar.examples.*:org.junit.?");
+    assertTrue(matcher.matches("org.gzoltar"));
+    assertTrue(matcher.matches("org.gzoltar.core.UnitTest"));
+    assertTrue(matcher.matches("org.gzoltar.examples.AbstractClass"));
+    assertTrue(matcher.matches("org.junit.A"));
+    assertFalse(matcher.matches("org.gzoltar.core.UnitTests"));
+    assertFalse(matcher.matches("org.gzoltar."));
+    assertFalse(matcher.matches("org.junit.AB"));
+    assertFalse(matcher.matches("org"));
+  }
+
 }
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr.pass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.gzoltar.examples.AbstractClass;
+import org.gzoltar.examples.EnumClass;
+import org.gzoltar.examples.InnerClass;
+import org.gzoltar.examples.PrivateModifiers;
+import org.gzoltar.examples.ProtectedModifiers;
+import org.gzoltar.examples.PublicFinalModifiers;
+import org.gzoltar.examples.PublicModifiers;
+import org.gzoltar.examples.PublicStaticModifiers;
+import org.junit.Before;
+import org.junit.Test;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.instr.InstrumentationLevel;
+import com.gzoltar.core.instr.InstrumentationTestUtils;
+import com.gzoltar.core.runtime.Collector;
+import javassist.ClassPool;
+import javassist.CtClass;
+
+public class TestConcurrentInstrumentation {
+
+  private final static ClassPool pool = ClassPool.getDefault();
+
+  private static final List<String> CLASSES_UNDER_TEST = Arrays.asList(
+      AbstractClass.class.getName(), EnumClass.class.getName(), InnerClass.class.getName(),
+      PrivateModifiers.class.getName(), ProtectedModifiers.class.getName(),
+      PublicFinalModifiers.class.getName(), PublicModifiers.class.getName(),
+      PublicStaticModifiers.class.getName());
+
+  private static final int NUMBER_OF_THREADS = 8;
+
+  private CoveragePass pass;
+
+  @Before
+  public void beforeEachUnitTest() {
+    Collector.restart();
+
+    AgentConfigs configs = new AgentConfigs();
+    // classes are not modified, and therefore can be instrumented several times
+    configs.setInstrumentationLevel(InstrumentationLevel.NONE);
+    this.pass = new CoveragePass(configs);
+  }
+
+  @Test
+  public void testConcurrentTransformationOfClasses() throws Exception {
+    final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+    for (String classUnderTest : CLASSES_UNDER_TEST) {
+      CtClass ctClass = pool.get(classUnderTest);
+      classes.put(classUnderTest, ctClass.toBytecode());
+      ctClass.defrost();
+      this.pass.transform(ctClass);
+    }
+    Map<String, String> expected = InstrumentationTestUtils.getProbeGroups();
+    Collector.restart();
+
+    // each thread instruments all classes, each one in a different order
+    final CountDownLatch start = new CountDownLatch(1);
+    final Throwable[] failures = new Throwable[NUMBER_OF_THREADS];
+    Thread[] threads = new Thread[NUMBER_OF_THREADS];
+    for (int i = 0; i < threads.length; i++) {
+      final int offset = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int j = 0; j < CLASSES_UNDER_TEST.size(); j++) {
+              // as a class transformer does, each class is parsed into a pool of its own, as
+              // javassist does not allow the very same class to be modified concurrently
+              String classUnderTest =
+                  CLASSES_UNDER_TEST.get((j + offset) % CLASSES_UNDER_TEST.size());
+              CtClass ctClass = new ClassPool(pool)
+                  .makeClass(new ByteArrayInputStream(classes.get(classUnderTest)), false);
+              pass.transform(ctClass);
+            }
+          } catch (Throwable t) {
+            failures[offset] = t;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    for (Throwable failure : failures) {
+      assertNull(failure);
+    }
+    // probes of a class are not mixed with the ones of any other class
+    Map<String, String> actual = InstrumentationTestUtils.getProbeGroups();
+    assertEquals(expected.size(), actual.size());
+    for (Map.Entry<String, String> probeGroup : expected.entrySet()) {
+      assertEquals(probeGroup.getValue(), actual.get(probeGroup.getKey()));
+    }
+  }
+}
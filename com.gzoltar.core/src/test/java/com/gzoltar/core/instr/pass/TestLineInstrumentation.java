@@ -17,6 +17,7 @@
 package com.gzoltar.core.instr.pass;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.List;
@@ -38,8 +39,13 @@ import com.gzoltar.core.instr.InstrumentationLevel;
 import com.gzoltar.core.instr.granularity.GranularityLevel;
 import com.gzoltar.core.model.Node;
 import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.MethodDescriptor;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.spectrum.FilteredSpectrum;
 import com.gzoltar.core.spectrum.ISpectrum;
 import javassist.ClassPool;
+import javassist.Modifier;
 
 @SuppressWarnings("deprecation")
 public class TestLineInstrumentation {
@@ -52,8 +58,18 @@ public class TestLineInstrumentation {
   }
 
   private void test(List<String> classesUnderTest, List<Integer> lineNumbers) throws Exception {
+    this.test(classesUnderTest, lineNumbers, GranularityLevel.LINE);
+  }
+
+  private void test(List<String> classesUnderTest, List<Integer> lineNumbers,
+      GranularityLevel granularity) throws Exception {
     AgentConfigs configs = new AgentConfigs();
-    configs.setGranularity(GranularityLevel.LINE);
+    configs.setGranularity(granularity);
+    this.test(classesUnderTest, lineNumbers, configs);
+  }
+
+  private void test(List<String> classesUnderTest, List<Integer> lineNumbers,
+      AgentConfigs configs) throws Exception {
     configs.setInstrumentationLevel(InstrumentationLevel.NONE);
 
     Collector.instance().addListener(configs.getEventListener());
@@ -255,4 +271,75 @@ public class TestLineInstrumentation {
     this.test(classesUnderTest, lineNumbers);
   }
 
+  @Test
+  public void testProbesOfEnumClassWithoutStaticConstructors() throws Exception {
+    List<String> classesUnderTest = new ArrayList<String>();
+    classesUnderTest.add(EnumClass.class.getCanonicalName());
+
+    // enum constants are created by the static constructor
+    List<Integer> lineNumbers = new ArrayList<Integer>();
+    lineNumbers.add(19);
+
+    AgentConfigs configs = new AgentConfigs();
+    configs.setInclStaticConstructors(false);
+    this.test(classesUnderTest, lineNumbers, configs);
+  }
+
+  @Test
+  public void testProbesOfDeprecatedClassWithoutDeprecatedMethods() throws Exception {
+    List<String> classesUnderTest = new ArrayList<String>();
+    classesUnderTest.add(DeprecatedAnnotation.class.getCanonicalName());
+
+    List<Integer> lineNumbers = new ArrayList<Integer>();
+    lineNumbers.add(20);
+    lineNumbers.add(22);
+    lineNumbers.add(26);
+    lineNumbers.add(27);
+    lineNumbers.add(28);
+    lineNumbers.add(30);
+
+    AgentConfigs configs = new AgentConfigs();
+    configs.setInclDeprecatedMethods(false);
+    this.test(classesUnderTest, lineNumbers, configs);
+  }
+
+  @Test
+  public void testProbesOfDeprecatedClassAtMethodLevel() throws Exception {
+    List<String> classesUnderTest = new ArrayList<String>();
+    classesUnderTest.add(DeprecatedAnnotation.class.getCanonicalName());
+
+    // a single probe at the first line of each method
+    List<Integer> lineNumbers = new ArrayList<Integer>();
+    lineNumbers.add(20);
+    lineNumbers.add(26);
+    lineNumbers.add(35);
+
+    this.test(classesUnderTest, lineNumbers, GranularityLevel.METHOD);
+  }
+
+  @Test
+  public void testMethodDescriptorsOfDeprecatedClass() throws Exception {
+    AgentConfigs configs = new AgentConfigs();
+    configs.setInstrumentationLevel(InstrumentationLevel.NONE);
+    new CoveragePass(configs).transform(pool.get(DeprecatedAnnotation.class.getCanonicalName()));
+
+    ISpectrum spectrum = Collector.instance().getSpectrum();
+    ProbeGroup probeGroup = spectrum.getProbeGroups().iterator().next();
+    for (Probe probe : probeGroup.getProbes()) {
+      MethodDescriptor method = probe.getMethod();
+      assertTrue(method.hasAccessFlags(Modifier.PUBLIC));
+      assertFalse(probe.isProbeInClassInitialiser());
+      assertEquals(method.getName().equals("deprecatedMethod"),
+          method.hasAnnotation(Deprecated.class.getCanonicalName()));
+    }
+
+    // probes are filtered out without any access to the bytecode of the class
+    configs.setInclDeprecatedMethods(false);
+    ISpectrum filteredSpectrum = new FilteredSpectrum(configs).filter(spectrum);
+    assertEquals(6, filteredSpectrum.getNumberOfNodes());
+    for (Node node : filteredSpectrum.getNodes()) {
+      assertFalse(node.getName().contains("#deprecatedMethod("));
+    }
+  }
+
 }
@@ -0,0 +1,314 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.instr.pass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.Map;
+import org.gzoltar.examples.StraightLineCode;
+import org.junit.Before;
+import org.junit.Test;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.instr.InstrumentationLevel;
+import com.gzoltar.core.instr.InstrumentationTestUtils;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import javassist.ClassPool;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.Opcode;
+
+public class TestProbePlacement {
+
+  @Before
+  public void beforeEachUnitTest() {
+    Collector.restart();
+  }
+
+  private static ProbeGroup instrument(final ClassPool pool, final InstrumentationLevel level)
+      throws Exception {
+    return instrument(pool, level, false);
+  }
+
+  private static ProbeGroup instrument(final ClassPool pool, final InstrumentationLevel level,
+      final boolean perThread) throws Exception {
+    AgentConfigs configs = new AgentConfigs();
+    configs.setInstrumentationLevel(level);
+    configs.setPerThread(perThread);
+    new CoveragePass(configs).transform(pool.get(StraightLineCode.class.getName()));
+    return Collector.instance().getSpectrum().getProbeGroups().iterator().next();
+  }
+
+  private static Probe getProbe(final ProbeGroup probeGroup, final int lineNumber) {
+    for (Probe probe : probeGroup.getProbes()) {
+      if (probe.getNode().getLineNumber() == lineNumber) {
+        return probe;
+      }
+    }
+    throw new AssertionError("There is not any probe at line " + lineNumber);
+  }
+
+  @Test
+  public void testProbesOfStraightLineCodeAreInferred() throws Exception {
+    ProbeGroup probeGroup = instrument(new ClassPool(true), InstrumentationLevel.NONE);
+
+    // every line still has its own probe
+    assertEquals(10, probeGroup.getNumberOfProbes());
+    // constructor, sum:24, div:28, div:30, abs:34 (and abs:35), and abs:36
+    assertEquals(6, probeGroup.getHitArrayLength());
+
+    // lines that cannot throw are inferred from the last line of the block
+    int sum = getProbe(probeGroup, 24).getHitArrayIndex();
+    assertEquals(sum, getProbe(probeGroup, 22).getHitArrayIndex());
+    assertEquals(sum, getProbe(probeGroup, 23).getHitArrayIndex());
+
+    // a division may throw, therefore the next line may not be executed
+    assertNotEquals(getProbe(probeGroup, 28).getHitArrayIndex(),
+        getProbe(probeGroup, 29).getHitArrayIndex());
+    assertEquals(getProbe(probeGroup, 30).getHitArrayIndex(),
+        getProbe(probeGroup, 29).getHitArrayIndex());
+  }
+
+  @Test
+  public void testProbesOfTheEntryBlockShareTheSlotOfTheEntry() throws Exception {
+    ProbeGroup probeGroup = instrument(new ClassPool(true), InstrumentationLevel.NONE);
+
+    // the first line of the conditional expression is placed at several locations, therefore it is
+    // not inferred from the next one, but it is always executed together with the entry of the
+    // method
+    assertEquals(getProbe(probeGroup, 34).getHitArrayIndex(),
+        getProbe(probeGroup, 35).getHitArrayIndex());
+    // the last line is only executed after one of the branches
+    assertNotEquals(getProbe(probeGroup, 34).getHitArrayIndex(),
+        getProbe(probeGroup, 36).getHitArrayIndex());
+
+    // the division may throw
+    assertNotEquals(getProbe(probeGroup, 28).getHitArrayIndex(),
+        getProbe(probeGroup, 30).getHitArrayIndex());
+  }
+
+  @Test
+  public void testLinesAtSeveralLocationsKeepTheirSlotWithHitCounts() throws Exception {
+    AgentConfigs configs = new AgentConfigs();
+    configs.setInstrumentationLevel(InstrumentationLevel.NONE);
+    configs.setHitCounts(true);
+    new CoveragePass(configs).transform(new ClassPool(true).get(StraightLineCode.class.getName()));
+    ProbeGroup probeGroup = Collector.instance().getSpectrum().getProbeGroups().iterator().next();
+
+    // otherwise the executions of the other locations of line 35 would be counted as executions of
+    // line 34
+    assertNotEquals(getProbe(probeGroup, 34).getHitArrayIndex(),
+        getProbe(probeGroup, 35).getHitArrayIndex());
+  }
+
+  /**
+   * Loads an instance of the instrumented version of {@link StraightLineCode}.
+   */
+  private static Object newInstance(final ClassPool pool, final Map<String, byte[]> classes)
+      throws Exception {
+    classes.put(StraightLineCode.class.getName(),
+        pool.get(StraightLineCode.class.getName()).toBytecode());
+
+    ClassLoader loader = new ClassLoader(TestProbePlacement.class.getClassLoader()) {
+      @Override
+      protected synchronized Class<?> loadClass(final String name, final boolean resolve)
+          throws ClassNotFoundException {
+        byte[] bytecode = classes.get(name);
+        if (bytecode == null) {
+          return super.loadClass(name, resolve);
+        }
+        Class<?> clazz = this.findLoadedClass(name);
+        return clazz != null ? clazz : this.defineClass(name, bytecode, 0, bytecode.length);
+      }
+    };
+    return loader.loadClass(StraightLineCode.class.getName()).newInstance();
+  }
+
+  private static Object invoke(final Object instance, final String methodName, final int a)
+      throws Exception {
+    return instance.getClass().getMethod(methodName, int.class).invoke(instance, a);
+  }
+
+  private static Object invoke(final Object instance, final String methodName, final int a,
+      final int b) throws Exception {
+    return instance.getClass().getMethod(methodName, int.class, int.class).invoke(instance, a, b);
+  }
+
+  private static HitVector getCoverage(final ProbeGroup probeGroup) {
+    List<Transaction> transactions = Collector.instance().getSpectrum().getTransactions();
+    HitVector hitArrayVector = transactions.get(transactions.size() - 1)
+        .getHitVectorByProbeGroupId(probeGroup.getId());
+    assertEquals(probeGroup.getHitArrayLength(), hitArrayVector.length());
+    return probeGroup.expand(hitArrayVector);
+  }
+
+  /**
+   * Returns the number of method calls of a method, e.g., to look up the hit array of the current
+   * thread.
+   */
+  private static int getNumberOfCalls(final ClassPool pool, final String methodName)
+      throws Exception {
+    CodeIterator ci = pool.get(StraightLineCode.class.getName()).getDeclaredMethod(methodName)
+        .getMethodInfo().getCodeAttribute().iterator();
+    int numberOfCalls = 0;
+    while (ci.hasNext()) {
+      int opcode = ci.byteAt(ci.next());
+      if (opcode == Opcode.INVOKEVIRTUAL || opcode == Opcode.INVOKESTATIC
+          || opcode == Opcode.INVOKEINTERFACE || opcode == Opcode.INVOKESPECIAL) {
+        numberOfCalls++;
+      }
+    }
+    return numberOfCalls;
+  }
+
+  private static int getNumberOfProbes(final ClassPool pool, final String methodName)
+      throws Exception {
+    CodeIterator ci = pool.get(StraightLineCode.class.getName()).getDeclaredMethod(methodName)
+        .getMethodInfo().getCodeAttribute().iterator();
+    int numberOfProbes = 0;
+    while (ci.hasNext()) {
+      if (ci.byteAt(ci.next()) == Opcode.BASTORE) {
+        numberOfProbes++;
+      }
+    }
+    return numberOfProbes;
+  }
+
+  @Test
+  public void testCoverageOfInferredProbes() throws Exception {
+    ClassPool pool = new ClassPool(true);
+    Map<String, byte[]> classes = InstrumentationTestUtils.makeOfflineRuntime(pool);
+    ProbeGroup probeGroup = instrument(pool, InstrumentationLevel.OFFLINE);
+
+    Object instance = newInstance(pool, classes);
+    assertEquals(3, invoke(instance, "sum", 1, 2));
+    try {
+      invoke(instance, "div", 1, 0);
+      fail();
+    } catch (InvocationTargetException e) {
+      assertTrue(e.getCause() instanceof ArithmeticException);
+    }
+    Collector.instance().endTransaction("t0", TransactionOutcome.FAIL, 0, null);
+    assertEquals(1, Collector.instance().getSpectrum().getTransactions().size());
+
+    HitVector hitVector = getCoverage(probeGroup);
+    for (int line : new int[] {19, 22, 23, 24, 28}) {
+      assertTrue(hitVector.get(getProbe(probeGroup, line).getArrayIndex()));
+    }
+    // the division by zero has thrown an exception
+    for (int line : new int[] {29, 30}) {
+      assertFalse(hitVector.get(getProbe(probeGroup, line).getArrayIndex()));
+    }
+  }
+
+  @Test
+  public void testCoverageOfProbesEquivalentToTheEntry() throws Exception {
+    ClassPool pool = new ClassPool(true);
+    Map<String, byte[]> classes = InstrumentationTestUtils.makeOfflineRuntime(pool);
+    ProbeGroup probeGroup = instrument(pool, InstrumentationLevel.OFFLINE);
+    assertEquals(1, getNumberOfProbes(pool, "sum"));
+    assertEquals(2, getNumberOfProbes(pool, "div"));
+    // line 35 is placed at the beginning of the conditional expression and of each of its blocks,
+    // but it is covered whenever the method is entered
+    assertEquals(2, getNumberOfProbes(pool, "abs"));
+
+    Object instance = newInstance(pool, classes);
+    assertEquals(1, invoke(instance, "abs", -1));
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+    HitVector hitVector = getCoverage(probeGroup);
+    for (int line : new int[] {19, 34, 35, 36}) {
+      assertTrue(hitVector.get(getProbe(probeGroup, line).getArrayIndex()));
+    }
+    for (int line : new int[] {22, 23, 24, 28, 29, 30}) {
+      assertFalse(hitVector.get(getProbe(probeGroup, line).getArrayIndex()));
+    }
+
+    // a transaction that executes another method of the class does not execute them
+    try {
+      invoke(instance, "div", 1, 0);
+      fail();
+    } catch (InvocationTargetException e) {
+      assertTrue(e.getCause() instanceof ArithmeticException);
+    }
+    Collector.instance().endTransaction("t1", TransactionOutcome.FAIL, 0, null);
+
+    hitVector = getCoverage(probeGroup);
+    assertTrue(hitVector.get(getProbe(probeGroup, 28).getArrayIndex()));
+    for (int line : new int[] {29, 30, 34, 35, 36}) {
+      assertFalse(hitVector.get(getProbe(probeGroup, line).getArrayIndex()));
+    }
+  }
+
+  @Test
+  public void testPerThreadHitArrayIsLookedUpOncePerInvocation() throws Exception {
+    ClassPool pool = new ClassPool(true);
+    Map<String, byte[]> classes = InstrumentationTestUtils.makeOfflineRuntime(pool);
+    ProbeGroup probeGroup = instrument(pool, InstrumentationLevel.OFFLINE, true);
+
+    // the probes of a method store into a local variable, which holds the hit array returned by
+    // the init method, rather than calling ThreadLocal.get() each
+    assertEquals(2, getNumberOfProbes(pool, "div"));
+    assertEquals(1, getNumberOfCalls(pool, "div"));
+    assertEquals(1, getNumberOfCalls(pool, "sum"));
+
+    final Object instance = newInstance(pool, classes);
+    assertEquals(3, invoke(instance, "div", 4, 2));
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+    HitVector hitVector = getCoverage(probeGroup);
+    for (int line : new int[] {19, 28, 29, 30}) {
+      assertTrue(hitVector.get(getProbe(probeGroup, line).getArrayIndex()));
+    }
+    for (int line : new int[] {22, 23, 24}) {
+      assertFalse(hitVector.get(getProbe(probeGroup, line).getArrayIndex()));
+    }
+
+    // the hit array of a thread running another transaction is not shared
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Collector.instance().startTransaction();
+          invoke(instance, "div", 4, 2);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+    assertEquals(3, invoke(instance, "sum", 1, 2));
+    Collector.instance().endTransaction("t1", TransactionOutcome.PASS, 0, null);
+
+    hitVector = getCoverage(probeGroup);
+    for (int line : new int[] {22, 23, 24}) {
+      assertTrue(hitVector.get(getProbe(probeGroup, line).getArrayIndex()));
+    }
+    for (int line : new int[] {28, 29, 30}) {
+      assertFalse(hitVector.get(getProbe(probeGroup, line).getArrayIndex()));
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestHitVector {
+
+  @Test
+  public void testSetAndGetAcrossWords() {
+    HitVector hitVector = new HitVector(130);
+    assertEquals(3, hitVector.getNumberOfWords());
+    assertTrue(hitVector.isEmpty());
+
+    hitVector.set(0);
+    hitVector.set(63);
+    hitVector.set(64);
+    hitVector.set(129);
+
+    assertTrue(hitVector.get(0));
+    assertFalse(hitVector.get(1));
+    assertTrue(hitVector.get(63));
+    assertTrue(hitVector.get(64));
+    assertTrue(hitVector.get(129));
+    assertEquals(4, hitVector.cardinality());
+    assertFalse(hitVector.isEmpty());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testSetOutOfBounds() {
+    new HitVector(64).set(64);
+  }
+
+  @Test
+  public void testNextSetBit() {
+    HitVector hitVector = HitVector.valueOf(new boolean[] {false, true, false, true});
+    assertEquals(1, hitVector.nextSetBit(0));
+    assertEquals(3, hitVector.nextSetBit(2));
+    assertEquals(-1, hitVector.nextSetBit(4));
+
+    HitVector wide = new HitVector(200);
+    wide.set(150);
+    assertEquals(150, wide.nextSetBit(1));
+    assertEquals(-1, wide.nextSetBit(151));
+  }
+
+  @Test
+  public void testAndOr() {
+    HitVector a = HitVector.valueOf(new boolean[] {true, true, false, false});
+    HitVector b = HitVector.valueOf(new boolean[] {true, false, true, false});
+
+    assertEquals(1, a.andCardinality(b));
+
+    HitVector and = a.copy();
+    and.and(b);
+    assertArrayEquals(new boolean[] {true, false, false, false}, and.toBooleanArray());
+
+    HitVector or = a.copy();
+    or.or(b);
+    assertArrayEquals(new boolean[] {true, true, true, false}, or.toBooleanArray());
+
+    // operands are not modified by copies
+    assertArrayEquals(new boolean[] {true, true, false, false}, a.toBooleanArray());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOrOfDifferentLengths() {
+    new HitVector(3).or(new HitVector(4));
+  }
+
+  @Test
+  public void testValueOfHitCounts() {
+    HitVector hitVector = HitVector.valueOf(new int[] {0, 7, 0, 1, 1}, 4);
+    assertEquals(4, hitVector.length());
+    assertArrayEquals(new boolean[] {false, true, false, true}, hitVector.toBooleanArray());
+  }
+
+  @Test
+  public void testEqualsAndHashCode() {
+    HitVector a = HitVector.valueOf(new boolean[] {true, false, true});
+    HitVector b = HitVector.valueOf(new boolean[] {true, false, true});
+    HitVector c = HitVector.valueOf(new boolean[] {true, false, true, false});
+
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertFalse(a.equals(c));
+  }
+}
@@ -0,0 +1,429 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import org.junit.Before;
+import org.junit.Test;
+import com.gzoltar.core.events.EmptyEventListener;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+
+public class TestCollector {
+
+  private static final String HASH = "c0c0";
+
+  private static final int NUMBER_OF_PROBES = 2;
+
+  @Before
+  public void beforeEachUnitTest() {
+    Collector.restart();
+  }
+
+  private Object getHitArray(final boolean perThread) {
+    Object[] args =
+        new Object[] {HASH, "org.gzoltar.examples.Foo",
+        Integer.toString(NUMBER_OF_PROBES), Boolean.toString(perThread)};
+    Collector.instance().getHitArray(args);
+    return args[0];
+  }
+
+  /**
+   * Emulates an instrumented class executing one of its probes.
+   */
+  private static void hit(final boolean[] hitArray, final int probeIndex,
+      final boolean perThread) {
+    // executed flag
+    if (!hitArray[NUMBER_OF_PROBES]) {
+      hitArray[NUMBER_OF_PROBES] = true;
+      Collector.instance().touchProbeGroup(new Object[] {HASH, Boolean.toString(perThread)});
+    }
+    hitArray[probeIndex] = true;
+  }
+
+  private static int id() {
+    return Collector.instance().getProbeGroupByHash(HASH).getId();
+  }
+
+  private Transaction getTransaction(final String name) {
+    for (Transaction transaction : Collector.instance().getSpectrum().getTransactions()) {
+      if (transaction.getName().equals(name)) {
+        return transaction;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testSharedHitArray() {
+    boolean[] hitArray = (boolean[]) this.getHitArray(false);
+    hit(hitArray, 1, false);
+
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+    Transaction t0 = this.getTransaction("t0");
+    assertEquals(NUMBER_OF_PROBES, t0.getHitVectorByProbeGroupId(id()).length());
+    assertFalse(t0.getHitVectorByProbeGroupId(id()).get(0));
+    assertTrue(t0.getHitVectorByProbeGroupId(id()).get(1));
+    // probes and executed flag have been reset
+    assertFalse(hitArray[1]);
+    assertFalse(hitArray[NUMBER_OF_PROBES]);
+  }
+
+  @Test
+  public void testHitArrayOfUnregisteredProbeGroup() {
+    // e.g., a class instrumented offline
+    this.getHitArray(false);
+
+    ProbeGroup probeGroup = Collector.instance().getProbeGroupByHash(HASH);
+    assertEquals("org.gzoltar.examples.Foo", probeGroup.getName());
+    assertSame(probeGroup, Collector.instance().getSpectrum().getProbeGroupByHash(HASH));
+  }
+
+  @Test
+  public void testProbeGroupsHaveDenseIds() {
+    this.getHitArray(false);
+    Collector.instance().getHitArray(new Object[] {"c1c1", "org.gzoltar.examples.Bar",
+        Integer.toString(NUMBER_OF_PROBES), Boolean.FALSE.toString()});
+
+    ProbeGroup foo = Collector.instance().getProbeGroupByHash(HASH);
+    ProbeGroup bar = Collector.instance().getProbeGroupByHash("c1c1");
+    assertEquals(0, foo.getId());
+    assertEquals(1, bar.getId());
+    assertSame(bar, Collector.instance().getSpectrum().getProbeGroupById(1));
+
+    // the same class asks again for its hit array
+    this.getHitArray(false);
+    assertEquals(0, Collector.instance().getProbeGroupByHash(HASH).getId());
+  }
+
+  @Test
+  public void testOnlyExecutedProbeGroupsAreCollected() {
+    boolean[] hitArray = (boolean[]) this.getHitArray(false);
+    hit(hitArray, 0, false);
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+    // the probeGroup is not executed by t1
+    Collector.instance().endTransaction("t1", TransactionOutcome.PASS, 0, null);
+
+    hit(hitArray, 1, false);
+    Collector.instance().endTransaction("t2", TransactionOutcome.PASS, 0, null);
+
+    assertTrue(this.getTransaction("t0").getHitVectorByProbeGroupId(id()).get(0));
+    // transactions without any activation are discarded
+    assertNull(this.getTransaction("t1"));
+    HitVector t2 = this.getTransaction("t2").getHitVectorByProbeGroupId(id());
+    assertFalse(t2.get(0));
+    assertTrue(t2.get(1));
+  }
+
+  @Test
+  public void testProbesOfARunningMethodAreCollectedByLaterTransactions() {
+    boolean[] hitArray = (boolean[]) this.getHitArray(false);
+    // e.g., a loop entered by t0, whose method is still running when t0 ends
+    hit(hitArray, 0, false);
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+    // the loop keeps running during t1 without entering any method of the class
+    hitArray[1] = true;
+    Collector.instance().endTransaction("t1", TransactionOutcome.PASS, 0, null);
+
+    HitVector t0 = this.getTransaction("t0").getHitVectorByProbeGroupId(id());
+    assertTrue(t0.get(0));
+    assertFalse(t0.get(1));
+    HitVector t1 = this.getTransaction("t1").getHitVectorByProbeGroupId(id());
+    assertFalse(t1.get(0));
+    assertTrue(t1.get(1));
+
+    // a method of the class is entered again by t2, which is collected only once
+    hitArray[1] = true;
+    hit(hitArray, 0, false);
+    Collector.instance().endTransaction("t2", TransactionOutcome.PASS, 0, null);
+
+    HitVector t2 = this.getTransaction("t2").getHitVectorByProbeGroupId(id());
+    assertTrue(t2.get(0));
+    assertTrue(t2.get(1));
+    assertEquals(3, Collector.instance().getSpectrum().getNumberOfTransactions());
+  }
+
+  @Test
+  public void testHitArrayOfClassInstrumentedByAnOlderVersion() {
+    // classes instrumented by older versions of GZoltar do not provide whether they record a
+    // per-thread hit array, nor do they touch their probeGroup
+    Object[] args =
+        new Object[] {HASH, "org.gzoltar.examples.Foo", Integer.toString(NUMBER_OF_PROBES)};
+    Collector.instance().getHitArray(args);
+    boolean[] hitArray = (boolean[]) args[0];
+
+    hitArray[0] = true;
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+    Collector.instance().endTransaction("t1", TransactionOutcome.PASS, 0, null);
+    hitArray[1] = true;
+    Collector.instance().endTransaction("t2", TransactionOutcome.PASS, 0, null);
+
+    HitVector t0 = this.getTransaction("t0").getHitVectorByProbeGroupId(id());
+    assertTrue(t0.get(0));
+    assertFalse(t0.get(1));
+    assertNull(this.getTransaction("t1"));
+    HitVector t2 = this.getTransaction("t2").getHitVectorByProbeGroupId(id());
+    assertFalse(t2.get(0));
+    assertTrue(t2.get(1));
+  }
+
+  @Test
+  public void testTouchAfterRestart() {
+    boolean[] hitArray = (boolean[]) this.getHitArray(false);
+    Collector.restart();
+
+    // the class has already been initialised, therefore it does not request its hit array again
+    hit(hitArray, 0, false);
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+    assertNull(Collector.instance().getProbeGroupByHash(HASH));
+    assertNull(this.getTransaction("t0"));
+  }
+
+  @Test
+  public void testTransactionsAreNotKept() {
+    final List<Transaction> transactions = new ArrayList<Transaction>();
+    Collector.instance().addListener(new EmptyEventListener() {
+      @Override
+      public void endTransaction(final Transaction transaction) {
+        transactions.add(transaction);
+      }
+    });
+
+    Collector.instance().setKeepTransactions(false);
+    try {
+      boolean[] hitArray = (boolean[]) this.getHitArray(false);
+      hit(hitArray, 0, false);
+      Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+      // the transaction has only been handed to the listeners
+      assertEquals(0, Collector.instance().getSpectrum().getNumberOfTransactions());
+      assertEquals(1, transactions.size());
+      assertTrue(transactions.get(0).getHitVectorByProbeGroupId(id()).get(0));
+    } finally {
+      Collector.instance().setKeepTransactions(true);
+    }
+  }
+
+  @Test
+  public void testStatistics() {
+    boolean[] hitArray = (boolean[]) this.getHitArray(false);
+    hit(hitArray, 0, false);
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+    RuntimeStatistics statistics = Collector.instance().getStatistics();
+    assertEquals(1, statistics.getNumberOfInstrumentedClasses());
+    assertEquals(NUMBER_OF_PROBES, statistics.getNumberOfProbes());
+    assertEquals(1, statistics.getNumberOfTransactions());
+    // the hit array, and a one-word hit vector
+    assertEquals(NUMBER_OF_PROBES + 1 + 8, statistics.getBufferedBytes());
+  }
+
+  @Test
+  public void testReset() {
+    boolean[] hitArray = (boolean[]) this.getHitArray(false);
+    hit(hitArray, 0, false);
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+    hit(hitArray, 1, false);
+
+    Collector.instance().reset();
+
+    assertEquals(0, Collector.instance().getSpectrum().getNumberOfTransactions());
+    assertFalse(hitArray[1]);
+    assertFalse(hitArray[NUMBER_OF_PROBES]);
+    // the probeGroup is still registered, and its hit array still collected
+    hit(hitArray, 0, false);
+    Collector.instance().endTransaction("t1", TransactionOutcome.PASS, 0, null);
+    assertTrue(this.getTransaction("t1").getHitVectorByProbeGroupId(id()).get(0));
+  }
+
+  @Test
+  public void testConcurrentRegistrationOfHitArray() throws Exception {
+    final Object[] hitArrays = new Object[16];
+    final CountDownLatch start = new CountDownLatch(1);
+
+    Thread[] threads = new Thread[hitArrays.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          hitArrays[index] = getHitArray(false);
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // all threads get the very same hit array
+    for (Object hitArray : hitArrays) {
+      assertSame(hitArrays[0], hitArray);
+    }
+  }
+
+  @Test
+  public void testHitCounts() {
+    Object[] args = new Object[] {HASH, "org.gzoltar.examples.Foo",
+        Integer.toString(NUMBER_OF_PROBES), Boolean.FALSE.toString(), Boolean.TRUE.toString()};
+    Collector.instance().getHitArray(args);
+    int[] hitCounts = (int[]) args[0];
+    assertEquals(NUMBER_OF_PROBES + 1, hitCounts.length);
+
+    // executed flag
+    hitCounts[NUMBER_OF_PROBES] = 1;
+    Collector.instance().touchProbeGroup(new Object[] {HASH, Boolean.FALSE.toString()});
+    hitCounts[1] = 3;
+
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+    Transaction t0 = this.getTransaction("t0");
+    assertTrue(t0.hasHitCounts());
+    assertFalse(t0.getHitVectorByProbeGroupId(id()).get(0));
+    assertTrue(t0.getHitVectorByProbeGroupId(id()).get(1));
+    assertEquals(NUMBER_OF_PROBES, t0.getHitCountsByProbeGroupId(id()).length);
+    assertEquals(0, t0.getHitCountsByProbeGroupId(id())[0]);
+    assertEquals(3, t0.getHitCountsByProbeGroupId(id())[1]);
+    // counters and executed flag have been reset
+    assertEquals(0, hitCounts[1]);
+    assertEquals(0, hitCounts[NUMBER_OF_PROBES]);
+  }
+
+  @Test
+  public void testPerThreadHitArrays() throws Exception {
+    @SuppressWarnings("unchecked")
+    final ThreadLocal<boolean[]> hitArray = (ThreadLocal<boolean[]>) this.getHitArray(true);
+
+    Thread[] threads = new Thread[2];
+    for (int i = 0; i < threads.length; i++) {
+      final int probeIndex = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          hit(hitArray.get(), probeIndex, true);
+          Collector.instance().endTransaction("t" + probeIndex, TransactionOutcome.PASS, 0, null);
+        }
+      };
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(2, Collector.instance().getSpectrum().getNumberOfTransactions());
+
+    HitVector t0 = this.getTransaction("t0").getHitVectorByProbeGroupId(id());
+    assertTrue(t0.get(0));
+    assertFalse(t0.get(1));
+
+    HitVector t1 = this.getTransaction("t1").getHitVectorByProbeGroupId(id());
+    assertFalse(t1.get(0));
+    assertTrue(t1.get(1));
+  }
+
+  @Test
+  public void testPerThreadHitArraysOfThreadsStartedDuringATransaction() throws Exception {
+    @SuppressWarnings("unchecked")
+    final ThreadLocal<boolean[]> hitArray = (ThreadLocal<boolean[]>) this.getHitArray(true);
+
+    // e.g., a test runner that starts its workers while running a transaction itself
+    Collector.instance().startTransaction();
+    hitArray.get();
+
+    // both transactions execute their probe before any of them ends
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+
+    Thread[] threads = new Thread[2];
+    for (int i = 0; i < threads.length; i++) {
+      final int probeIndex = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          Collector.instance().startTransaction();
+          hit(hitArray.get(), probeIndex, true);
+          try {
+            barrier.await();
+          } catch (Exception e) {
+            return;
+          }
+          Collector.instance().endTransaction("t" + probeIndex, TransactionOutcome.PASS, 0, null);
+        }
+      };
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    HitVector t0 = this.getTransaction("t0").getHitVectorByProbeGroupId(id());
+    assertTrue(t0.get(0));
+    assertFalse(t0.get(1));
+
+    HitVector t1 = this.getTransaction("t1").getHitVectorByProbeGroupId(id());
+    assertFalse(t1.get(0));
+    assertTrue(t1.get(1));
+
+    // neither has leaked into the transaction of the parent thread, which has not executed anything
+    Collector.instance().endTransaction("parent", TransactionOutcome.PASS, 0, null);
+    assertNull(this.getTransaction("parent"));
+  }
+
+  @Test
+  public void testPerThreadHitArrayIsSharedWithChildThreads() throws Exception {
+    @SuppressWarnings("unchecked")
+    final ThreadLocal<boolean[]> hitArray = (ThreadLocal<boolean[]>) this.getHitArray(true);
+
+    Collector.instance().startTransaction();
+    Thread child = new Thread() {
+      @Override
+      public void run() {
+        hit(hitArray.get(), 1, true);
+      }
+    };
+    child.start();
+    child.join();
+
+    Collector.instance().endTransaction("t0", TransactionOutcome.PASS, 0, null);
+
+    HitVector t0 = this.getTransaction("t0").getHitVectorByProbeGroupId(id());
+    assertFalse(t0.get(0));
+    assertTrue(t0.get(1));
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TestRuntimeStatistics {
+
+  @Test
+  public void testMostExpensiveClassesToInstrument() {
+    RuntimeStatistics statistics = new RuntimeStatistics();
+    for (int i = 1; i <= 20; i++) {
+      // alternate cheap and expensive classes, so that some of the latter replace the former
+      int millis = i % 2 == 0 ? i / 2 : 21 - (i + 1) / 2;
+      statistics.classInstrumented("C" + millis, TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    List<String> expected = new ArrayList<String>();
+    for (int millis = 20; millis > 10; millis--) {
+      expected.add("C" + millis + ": " + millis + " ms");
+    }
+    assertEquals(expected, statistics.getMostExpensiveClassesToInstrument());
+    assertEquals(210, statistics.getTransformTime());
+  }
+
+  @Test
+  public void testMostExpensiveClassesToInstrumentConcurrently() throws InterruptedException {
+    final RuntimeStatistics statistics = new RuntimeStatistics();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      final int offset = t;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          for (int millis = 1 + offset; millis <= 100; millis += 4) {
+            statistics.classInstrumented("C" + millis, TimeUnit.MILLISECONDS.toNanos(millis));
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    List<String> expected = new ArrayList<String>();
+    for (int millis = 100; millis > 90; millis--) {
+      expected.add("C" + millis + ": " + millis + " ms");
+    }
+    assertEquals(expected, statistics.getMostExpensiveClassesToInstrument());
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Node;
+import com.gzoltar.core.model.NodeType;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.MethodDescriptor;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import javassist.Modifier;
+
+/**
+ * Registers the probeGroups of the transactions of spectrum tests in the {@link Collector}, and
+ * creates those transactions.
+ */
+public final class SpectrumTestUtils {
+
+  private SpectrumTestUtils() {
+    // empty
+  }
+
+  /**
+   * Registers the probeGroup of a class in package <code>org.gzoltar.examples</code> that does
+   * not know its probes (e.g., of a class instrumented offline), as its instrumented class does the
+   * first time it is executed.
+   * 
+   * @param hash hash of the probeGroup
+   * @param className simple name of the class
+   * @param numberOfProbes length of the hit array of the class
+   * @return the registered probeGroup
+   */
+  public static ProbeGroup registerProbeGroup(final String hash, final String className,
+      final int numberOfProbes) {
+    Collector.instance().getHitArray(new Object[] {hash, "org.gzoltar.examples." + className,
+        String.valueOf(numberOfProbes)});
+    return Collector.instance().getProbeGroupByHash(hash);
+  }
+
+  /**
+   * Registers the probeGroup (whose hash is the name of its class) of a class in package
+   * <code>org.gzoltar.examples</code> with a single method, with a probe per line. The coverage of
+   * some probes may be recorded in a slot of the hit array shared with the following ones.
+   * 
+   * @param className simple name of the class
+   * @param numberOfProbes number of lines of the method
+   * @param probesPerSlot number of consecutive probes that share a slot of the hit array
+   * @return the registered probeGroup
+   */
+  public static ProbeGroup registerProbeGroup(final String className, final int numberOfProbes,
+      final int probesPerSlot) {
+    MethodDescriptor method = new MethodDescriptor("foo", "()V", Modifier.PUBLIC, null);
+    List<Probe> probes = new ArrayList<Probe>();
+    for (int line = 0; line < numberOfProbes; line++) {
+      probes.add(new Probe(line, line / probesPerSlot, new Node("org.gzoltar.examples$"
+          + className + "#foo():" + line, line, NodeType.LINE), method));
+    }
+    Collector.instance()
+        .regiterProbeGroup(new ProbeGroup(className, "org.gzoltar.examples." + className, probes));
+    return Collector.instance().getProbeGroupByHash(className);
+  }
+
+  /**
+   * Creates a transaction that has executed the probes of a probeGroup set in the given hit array.
+   * The activity of any other probeGroup can be added to it afterwards.
+   * 
+   * @param name name of the transaction
+   * @param outcome outcome of the transaction
+   * @param probeGroup probeGroup executed by the transaction
+   * @param hitArray the probes of the probeGroup executed by the transaction
+   * @return a new transaction
+   */
+  public static Transaction newTransaction(final String name, final TransactionOutcome outcome,
+      final ProbeGroup probeGroup, final boolean... hitArray) {
+    Transaction transaction = new Transaction(name, outcome, 0, null);
+    transaction.addActivity(probeGroup.getId(), HitVector.valueOf(hitArray));
+    return transaction;
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.jacoco.core.internal.data.CompactDataInput;
+import org.jacoco.core.internal.data.CompactDataOutput;
+import org.junit.Test;
+import com.gzoltar.core.model.HitVector;
+
+public class TestHitVectorSerialisation {
+
+  private static boolean[] newHitArray(final int length) {
+    boolean[] hitArray = new boolean[length];
+    for (int i = 0; i < length; i++) {
+      hitArray[i] = i % 3 == 0 || i % 7 == 0;
+    }
+    return hitArray;
+  }
+
+  @Test
+  public void testHitVectorIsWrittenAsBooleanArray() throws IOException {
+    for (int length : new int[] {0, 1, 7, 8, 63, 64, 65, 130}) {
+      boolean[] hitArray = newHitArray(length);
+
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      new CompactDataOutput(expected).writeBooleanArray(hitArray);
+
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      SpectrumWriter.writeHitVector(new CompactDataOutput(actual), HitVector.valueOf(hitArray));
+
+      assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+  }
+
+  @Test
+  public void testBooleanArrayIsReadAsHitVector() throws IOException {
+    for (int length : new int[] {0, 1, 7, 8, 63, 64, 65, 130}) {
+      boolean[] hitArray = newHitArray(length);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new CompactDataOutput(out).writeBooleanArray(hitArray);
+
+      HitVector hitVector = SpectrumReader
+          .readHitVector(new CompactDataInput(new ByteArrayInputStream(out.toByteArray())));
+
+      assertEquals(HitVector.valueOf(hitArray), hitVector);
+    }
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.ProbeGroup;
+
+public class TestIndexedSpectrumReader {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File dataFile;
+
+  private ProbeGroup foo;
+
+  private final List<Transaction> transactions = new ArrayList<Transaction>();
+
+  @Before
+  public void beforeEachUnitTest() throws Exception {
+    Collector.restart();
+    this.dataFile = this.folder.newFile("gzoltar.ser");
+
+    // probeGroups 0 and 1, whose probes are written to the data file
+    this.foo = SpectrumTestUtils.registerProbeGroup("Foo", 2, 1);
+    ProbeGroup bar = SpectrumTestUtils.registerProbeGroup("Bar", 2, 1);
+
+    this.transactions.add(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, this.foo, true, false));
+    this.transactions.add(
+        SpectrumTestUtils.newTransaction("t1", TransactionOutcome.FAIL, this.foo, true, false));
+    Transaction t2 =
+        SpectrumTestUtils.newTransaction("t2", TransactionOutcome.PASS, this.foo, false, true);
+    t2.addActivity(bar.getId(), HitVector.valueOf(new boolean[] {true, true}));
+    this.transactions.add(t2);
+    Spectrum spectrum = Collector.instance().getSpectrum();
+    for (Transaction transaction : this.transactions) {
+      spectrum.addTransaction(transaction);
+    }
+    new SpectrumWriter(new FileOutputStream(this.dataFile)).writeSpectrum(spectrum);
+
+    // a segment appended by another JVM
+    this.appendSegment(
+        SpectrumTestUtils.newTransaction("t3", TransactionOutcome.FAIL, this.foo, true, false),
+        SpectrumTestUtils.newTransaction("t4", TransactionOutcome.PASS, this.foo, true, false));
+  }
+
+  private void appendSegment(final Transaction... transactions) throws Exception {
+    OutputStream out = new FileOutputStream(this.dataFile, true);
+    try {
+      SpectrumWriter writer = new SpectrumWriter(out);
+      for (Transaction transaction : transactions) {
+        writer.writeTransaction(Collector.instance().getSpectrum(), transaction);
+        this.transactions.add(transaction);
+      }
+      writer.flush();
+    } finally {
+      out.close();
+    }
+  }
+
+  private IndexedSpectrumReader open() throws Exception {
+    return new IndexedSpectrumReader(this.folder.getRoot().getAbsolutePath(), new AgentConfigs(),
+        this.dataFile);
+  }
+
+  @Test
+  public void testReadTransactionsInAnyOrder() throws Exception {
+    IndexedSpectrumReader reader = this.open();
+    try {
+      assertTrue(SpectrumIndex.getFile(this.dataFile).isFile());
+      SpectrumIndex index = reader.getIndex();
+      assertEquals(5, index.getNumberOfTransactions());
+      assertEquals("t3", index.getTransactionName(3));
+      assertEquals(3, index.indexOf("t3"));
+      assertEquals(-1, index.indexOf("t5"));
+      assertEquals(Arrays.asList(1, 3), index.getTransactions(TransactionOutcome.FAIL));
+
+      for (int transaction : new int[] {4, 3, 1, 0, 2, 4}) {
+        assertEquals(this.transactions.get(transaction), reader.readTransaction(transaction));
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testReadTransactionsWithIndexFile() throws Exception {
+    this.open().close();
+
+    IndexedSpectrumReader reader = this.open();
+    try {
+      // t1 refers to the activity written by t0, which has not been read
+      assertEquals(this.transactions.get(1), reader.readTransaction(1));
+
+      ISpectrum spectrum = reader.read(reader.getIndex().getTransactions(TransactionOutcome.FAIL));
+      assertEquals(Arrays.asList(this.transactions.get(1), this.transactions.get(3)),
+          spectrum.getTransactions());
+      // only the probeGroup executed by failing transactions
+      assertEquals(1, spectrum.getProbeGroups().size());
+      assertEquals("Foo", spectrum.getProbeGroupById(0).getHash());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testIndexIsBuiltAgainOnceDataFileChanges() throws Exception {
+    this.open().close();
+    this.appendSegment(
+        SpectrumTestUtils.newTransaction("t5", TransactionOutcome.FAIL, this.foo, false, true));
+
+    IndexedSpectrumReader reader = this.open();
+    try {
+      assertEquals(6, reader.getIndex().getNumberOfTransactions());
+      assertEquals(this.transactions.get(5), reader.readTransaction(5));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testReadSegmentWhoseProbesHaveBeenWrittenByAPreviousSegment() throws Exception {
+    // two segments written by the same writer, therefore probes are only written to the first one
+    Transaction t5 =
+        SpectrumTestUtils.newTransaction("t5", TransactionOutcome.PASS, this.foo, false, true);
+    Transaction t6 =
+        SpectrumTestUtils.newTransaction("t6", TransactionOutcome.FAIL, this.foo, true, true);
+    OutputStream out = new FileOutputStream(this.dataFile, true);
+    try {
+      SpectrumWriter writer = new SpectrumWriter(out);
+      writer.writeTransaction(Collector.instance().getSpectrum(), t5);
+      writer.startSegment();
+      writer.writeTransaction(Collector.instance().getSpectrum(), t6);
+      writer.flush();
+    } finally {
+      out.close();
+    }
+    this.open().close();
+
+    IndexedSpectrumReader reader = this.open();
+    try {
+      // the class of the probeGroup is not available, its probes are read from the first segment
+      assertEquals(t6, reader.readTransaction(6));
+      assertEquals(2, reader.getSpectrum().getProbeGroupByHash("Foo").getNumberOfProbes());
+      assertEquals(t5, reader.readTransaction(5));
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.ProbeGroup;
+
+public class TestSpectrumJournal {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File dataFile;
+
+  @Before
+  public void beforeEachUnitTest() throws Exception {
+    Collector.restart();
+    this.dataFile = this.folder.newFile("gzoltar.ser");
+  }
+
+  private static ProbeGroup registerProbeGroup(final SpectrumJournal journal) {
+    ProbeGroup probeGroup = SpectrumTestUtils.registerProbeGroup("c0c0", "Foo", 2);
+    if (journal != null) {
+      journal.regiterProbeGroup(probeGroup);
+    }
+    return probeGroup;
+  }
+
+  /**
+   * Emulates the JVM that writes a journal being killed, i.e., leaves a copy of the journal that is
+   * not locked anymore.
+   */
+  private void kill(final SpectrumJournal journal) throws IOException {
+    File killedJournal =
+        new File(this.folder.getRoot(), "gzoltar.ser.killed" + SpectrumJournal.EXTENSION);
+    Files.copy(journal.getFile().toPath(), killedJournal.toPath());
+    journal.delete();
+  }
+
+  @Test
+  public void testRecoverTransactionsOfKilledJVM() throws Exception {
+    SpectrumJournal journal = new SpectrumJournal(this.dataFile);
+    ProbeGroup probeGroup = registerProbeGroup(journal);
+
+    List<Transaction> transactions = new ArrayList<Transaction>();
+    transactions.add(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, probeGroup, true, false));
+    transactions.add(
+        SpectrumTestUtils.newTransaction("t1", TransactionOutcome.PASS, probeGroup, false, true));
+    for (Transaction transaction : transactions) {
+      journal.endTransaction(transaction);
+    }
+    // the JVM is killed before writing the data file, i.e., the journal is never deleted
+    this.kill(journal);
+
+    Collector.restart();
+    registerProbeGroup(null);
+    InputStream input = new FileInputStream(this.dataFile);
+    try {
+      SpectrumReader reader = new SpectrumReader(this.folder.getRoot().getAbsolutePath(),
+          new AgentConfigs(), input);
+      reader.read();
+      assertEquals(1, reader.recover(this.dataFile));
+      assertEquals(transactions, reader.getSpectrum().getTransactions());
+    } finally {
+      input.close();
+    }
+  }
+
+  @Test
+  public void testNothingIsCommittedUntilATransactionEnds() throws Exception {
+    SpectrumJournal journal = new SpectrumJournal(this.dataFile);
+    registerProbeGroup(journal);
+
+    InputStream committed = SpectrumJournal.openCommitted(journal.getFile());
+    try {
+      assertEquals(-1, committed.read());
+    } finally {
+      committed.close();
+    }
+  }
+
+  @Test
+  public void testRecoverTransactionsWrittenAcrossSeveralMappedWindows() throws Exception {
+    SpectrumJournal journal = new SpectrumJournal(this.dataFile);
+    registerProbeGroup(journal);
+
+    // large stack traces, so that transactions do not fit in the first window of the journal
+    StringBuilder stackTrace = new StringBuilder();
+    for (int i = 0; i < 1024; i++) {
+      stackTrace.append("at org.gzoltar.examples.Foo.foo(Foo.java:").append(i).append(")\n");
+    }
+    List<Transaction> transactions = new ArrayList<Transaction>();
+    for (int i = 0; i < 128; i++) {
+      Map<Integer, HitVector> activity = new LinkedHashMap<Integer, HitVector>();
+      activity.put(0, HitVector.valueOf(new boolean[] {i % 2 == 0, i % 2 == 1}));
+      Transaction transaction = new Transaction("t" + i, activity, TransactionOutcome.FAIL, i,
+          stackTrace.toString() + i);
+      transactions.add(transaction);
+      journal.endTransaction(transaction);
+    }
+    assertTrue(journal.getFile().length() > 4 * (1 << 20));
+    this.kill(journal);
+
+    Collector.restart();
+    registerProbeGroup(null);
+    SpectrumReader reader = new SpectrumReader(this.folder.getRoot().getAbsolutePath(),
+        new AgentConfigs(), new ByteArrayInputStream(new byte[0]));
+    assertEquals(1, reader.recover(this.dataFile));
+    assertEquals(transactions, reader.getSpectrum().getTransactions());
+  }
+
+  @Test
+  public void testResetDiscardsCommittedTransactions() throws Exception {
+    SpectrumJournal journal = new SpectrumJournal(this.dataFile);
+    ProbeGroup probeGroup = registerProbeGroup(journal);
+
+    // a large stack trace, so that the transaction does not fit in the first window of the journal
+    StringBuilder stackTrace = new StringBuilder();
+    for (int i = 0; i < 32 * 1024; i++) {
+      stackTrace.append("at org.gzoltar.examples.Foo.foo(Foo.java:").append(i).append(")\n");
+    }
+    Map<Integer, HitVector> activity = new LinkedHashMap<Integer, HitVector>();
+    activity.put(0, HitVector.valueOf(new boolean[] {true, true}));
+    journal.endTransaction(
+        new Transaction("t0", activity, TransactionOutcome.FAIL, 0, stackTrace.toString()));
+    journal.endTransaction(
+        SpectrumTestUtils.newTransaction("t1", TransactionOutcome.PASS, probeGroup, true, false));
+    assertTrue(journal.getFile().length() > (1 << 20));
+
+    // e.g., the collected coverage has been reset through JMX
+    journal.reset();
+    List<Transaction> transactions = new ArrayList<Transaction>();
+    transactions.add(
+        SpectrumTestUtils.newTransaction("t2", TransactionOutcome.PASS, probeGroup, false, true));
+    journal.endTransaction(transactions.get(0));
+    this.kill(journal);
+
+    Collector.restart();
+    registerProbeGroup(null);
+    SpectrumReader reader = new SpectrumReader(this.folder.getRoot().getAbsolutePath(),
+        new AgentConfigs(), new ByteArrayInputStream(new byte[0]));
+    assertEquals(1, reader.recover(this.dataFile));
+    assertEquals(transactions, reader.getSpectrum().getTransactions());
+  }
+
+  @Test
+  public void testJournalOfRunningJVMIsNotRecovered() throws Exception {
+    SpectrumJournal journal = new SpectrumJournal(this.dataFile);
+    ProbeGroup probeGroup = registerProbeGroup(journal);
+    journal.endTransaction(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, probeGroup, true, false));
+
+    // its transactions are written to the data file once the JVM ends
+    SpectrumReader reader = new SpectrumReader(this.folder.getRoot().getAbsolutePath(),
+        new AgentConfigs(), new ByteArrayInputStream(new byte[0]));
+    assertEquals(0, reader.recover(this.dataFile));
+    assertTrue(reader.getSpectrum().getTransactions().isEmpty());
+    journal.delete();
+  }
+
+  @Test
+  public void testDeletedJournal() throws Exception {
+    SpectrumJournal journal = new SpectrumJournal(this.dataFile);
+    ProbeGroup probeGroup = registerProbeGroup(journal);
+    journal.endTransaction(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, probeGroup, true, false));
+    assertEquals(1, SpectrumJournal.findJournals(this.dataFile).length);
+
+    journal.delete();
+    assertEquals(0, SpectrumJournal.findJournals(this.dataFile).length);
+  }
+}
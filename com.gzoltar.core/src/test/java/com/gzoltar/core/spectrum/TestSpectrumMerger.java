@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.ProbeGroup;
+
+public class TestSpectrumMerger {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before
+  public void beforeEachUnitTest() {
+    Collector.restart();
+  }
+
+  /**
+   * Writes the transactions of the Collector to a new data file.
+   */
+  private File writeDataFile(final String name) throws Exception {
+    File dataFile = this.folder.newFile(name);
+    new SpectrumWriter(new FileOutputStream(dataFile))
+        .writeSpectrum(Collector.instance().getSpectrum());
+    Collector.restart();
+    return dataFile;
+  }
+
+  /**
+   * Returns <transaction name, <probeGroup hash, hit vector>> of all transactions of a data file.
+   */
+  private static Map<String, Map<String, HitVector>> read(final byte[] bytes) throws Exception {
+    SpectrumListener listener = new SpectrumListener();
+    new SpectrumReader(null, new AgentConfigs(), new ByteArrayInputStream(bytes), listener).read();
+    Map<String, Map<String, HitVector>> transactions =
+        new LinkedHashMap<String, Map<String, HitVector>>();
+    for (Transaction transaction : listener.getSpectrum().getTransactions()) {
+      Map<String, HitVector> activity = new HashMap<String, HitVector>();
+      for (Entry<Integer, HitVector> entry : transaction.getActivity().entrySet()) {
+        activity.put(listener.getSpectrum().getProbeGroupById(entry.getKey()).getHash(),
+            entry.getValue());
+      }
+      transactions.put(transaction.getName(), activity);
+    }
+    return transactions;
+  }
+
+  @Test
+  public void testMergeDataFiles() throws Exception {
+    // probes at even lines are inferred from the next one
+    ProbeGroup foo = SpectrumTestUtils.registerProbeGroup("Foo", 3, 2);
+    Spectrum spectrum = Collector.instance().getSpectrum();
+    spectrum.addTransaction(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, foo, true, false));
+    spectrum.addTransaction(
+        SpectrumTestUtils.newTransaction("t1", TransactionOutcome.FAIL, foo, false, true));
+    File dataFile0 = this.writeDataFile("gzoltar-0.ser");
+
+    // probeGroups are registered in a different order, and one of them does not know its probes
+    ProbeGroup bar = SpectrumTestUtils.registerProbeGroup("Bar", 2, 2);
+    foo = SpectrumTestUtils.registerProbeGroup("Foo", 3, 2);
+    ProbeGroup baz = SpectrumTestUtils.registerProbeGroup("c0c0", "Baz", 2);
+    Transaction t2 = SpectrumTestUtils.newTransaction("t2", TransactionOutcome.PASS, bar, true);
+    t2.addActivity(foo.getId(), HitVector.valueOf(new boolean[] {true, true}));
+    t2.addActivity(baz.getId(), HitVector.valueOf(new boolean[] {false, true}));
+    Collector.instance().getSpectrum().addTransaction(t2);
+    File dataFile1 = this.writeDataFile("gzoltar-1.ser");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SpectrumMerger merger = new SpectrumMerger();
+    merger.setParallelism(2);
+    assertEquals(3, merger.merge(Arrays.asList(dataFile0, dataFile1), out));
+
+    Map<String, Map<String, HitVector>> expected = read(Files.readAllBytes(dataFile0.toPath()));
+    expected.putAll(read(Files.readAllBytes(dataFile1.toPath())));
+    Map<String, Map<String, HitVector>> merged = read(out.toByteArray());
+    assertEquals(expected, merged);
+    assertEquals(Arrays.asList("t0", "t1", "t2"), new ArrayList<String>(merged.keySet()));
+    // the coverage of inferred probes is expanded from the merged data file
+    assertEquals(HitVector.valueOf(new boolean[] {true, true, false}), merged.get("t0").get("Foo"));
+    assertEquals(HitVector.valueOf(new boolean[] {false, true}), merged.get("t2").get("c0c0"));
+  }
+
+  @Test
+  public void testProbeCountMismatch() throws Exception {
+    ProbeGroup probeGroup = SpectrumTestUtils.registerProbeGroup("Foo", 3, 2);
+    Collector.instance().getSpectrum().addTransaction(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, probeGroup, true, false));
+    File dataFile0 = this.writeDataFile("gzoltar-0.ser");
+
+    // e.g., instrumented at a different granularity level
+    probeGroup = SpectrumTestUtils.registerProbeGroup("Foo", 5, 2);
+    Collector.instance().getSpectrum().addTransaction(SpectrumTestUtils.newTransaction("t1",
+        TransactionOutcome.PASS, probeGroup, true, false, true));
+    File dataFile1 = this.writeDataFile("gzoltar-1.ser");
+
+    try {
+      new SpectrumMerger().merge(Arrays.asList(dataFile0, dataFile1), new ByteArrayOutputStream());
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getCause().getMessage().contains("different number of probes"));
+    }
+  }
+
+  @Test
+  public void testMergeDataFileWithItsJournals() throws Exception {
+    ProbeGroup probeGroup = SpectrumTestUtils.registerProbeGroup("Foo", 3, 2);
+    File dataFile = new File(this.folder.getRoot(), "gzoltar.ser");
+
+    // the journal of a JVM that has been killed, i.e., that is not locked anymore
+    SpectrumJournal journal = new SpectrumJournal(dataFile);
+    journal.regiterProbeGroup(probeGroup);
+    journal.endTransaction(
+        SpectrumTestUtils.newTransaction("t1", TransactionOutcome.PASS, probeGroup, false, true));
+    File killedJournal = new File(this.folder.getRoot(), "gzoltar.ser.killed.journal");
+    Files.copy(journal.getFile().toPath(), killedJournal.toPath());
+    journal.delete();
+
+    // the journal of a JVM that is still running
+    SpectrumJournal runningJournal = new SpectrumJournal(dataFile);
+    runningJournal.regiterProbeGroup(probeGroup);
+    runningJournal.endTransaction(
+        SpectrumTestUtils.newTransaction("t2", TransactionOutcome.PASS, probeGroup, true, true));
+
+    Collector.instance().getSpectrum().addTransaction(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, probeGroup, true, false));
+    this.writeDataFile(dataFile.getName());
+
+    try {
+      // e.g., to compact the data file
+      assertEquals(2, new SpectrumMerger().merge(Arrays.asList(dataFile), dataFile));
+      assertEquals(Arrays.asList("t0", "t1"),
+          new ArrayList<String>(read(Files.readAllBytes(dataFile.toPath())).keySet()));
+
+      // only the journal that has been merged is deleted
+      assertFalse(killedJournal.exists());
+      assertEquals(Arrays.asList(runningJournal.getFile()),
+          Arrays.asList(SpectrumJournal.findJournals(dataFile)));
+    } finally {
+      runningJournal.delete();
+    }
+  }
+}
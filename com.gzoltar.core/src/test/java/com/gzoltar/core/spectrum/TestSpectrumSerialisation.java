@@ -0,0 +1,418 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.core.spectrum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jacoco.core.internal.data.CompactDataOutput;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.events.EmptyEventListener;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Node;
+import com.gzoltar.core.model.NodeType;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.MethodDescriptor;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.util.SerialisationIdentifiers;
+import javassist.Modifier;
+
+public class TestSpectrumSerialisation {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before
+  public void beforeEachUnitTest() {
+    Collector.restart();
+  }
+
+  @Test
+  public void testTransactionsWithSameActivity() throws Exception {
+    ProbeGroup foo = SpectrumTestUtils.registerProbeGroup("c0c0", "Foo", 2);
+    ProbeGroup bar = SpectrumTestUtils.registerProbeGroup("c1c1", "Bar", 2);
+    Spectrum spectrum = Collector.instance().getSpectrum();
+    spectrum.addTransaction(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, foo, true, false));
+    spectrum.addTransaction(
+        SpectrumTestUtils.newTransaction("t1", TransactionOutcome.FAIL, foo, true, false));
+    Transaction t2 =
+        SpectrumTestUtils.newTransaction("t2", TransactionOutcome.PASS, foo, true, false);
+    t2.addActivity(bar.getId(), HitVector.valueOf(new boolean[] {false, true}));
+    spectrum.addTransaction(t2);
+
+    List<Transaction> transactions = spectrum.getTransactions();
+    // transactions share the very same hit vectors
+    assertSame(transactions.get(0).getHitVectorByProbeGroupId(0),
+        transactions.get(1).getHitVectorByProbeGroupId(0));
+    assertSame(transactions.get(0).getHitVectorByProbeGroupId(0),
+        transactions.get(2).getHitVectorByProbeGroupId(0));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SpectrumWriter(out).writeSpectrum(spectrum);
+
+    Collector.restart();
+    SpectrumTestUtils.registerProbeGroup("c0c0", "Foo", 2);
+    SpectrumTestUtils.registerProbeGroup("c1c1", "Bar", 2);
+    SpectrumReader reader = new SpectrumReader(this.folder.getRoot().getAbsolutePath(),
+        new AgentConfigs(), new ByteArrayInputStream(out.toByteArray()));
+    reader.read();
+
+    List<Transaction> readTransactions = reader.getSpectrum().getTransactions();
+    assertEquals(transactions, readTransactions);
+    assertSame(readTransactions.get(0).getHitVectorByProbeGroupId(0),
+        readTransactions.get(1).getHitVectorByProbeGroupId(0));
+  }
+
+  /**
+   * Returns a hit array whose probes are set in the binary representation of a given number.
+   */
+  private static boolean[] newHitArray(final int probes, final int numberOfProbes) {
+    boolean[] hitArray = new boolean[numberOfProbes];
+    for (int i = 0; i < numberOfProbes; i++) {
+      hitArray[i] = (probes & (1 << i)) != 0;
+    }
+    return hitArray;
+  }
+
+  @Test
+  public void testSharedActivitiesOfASingleSegmentAreBounded() throws Exception {
+    final int numberOfProbes = 16;
+    final int numberOfTransactions = 3 * SerialisationIdentifiers.MAX_SHARED_ACTIVITIES;
+    ProbeGroup probeGroup = SpectrumTestUtils.registerProbeGroup("c0c0", "Foo", numberOfProbes);
+    Spectrum spectrum = Collector.instance().getSpectrum();
+
+    // a single segment (as the one of a data file written at the end of a test suite) in which
+    // every transaction has a distinct activity, but the last two, which have the same activity of
+    // the first transaction and of the oldest transaction that may still be referred to
+    List<Transaction> transactions = new ArrayList<Transaction>();
+    for (int i = 1; i <= numberOfTransactions; i++) {
+      transactions.add(SpectrumTestUtils.newTransaction("t" + i, TransactionOutcome.PASS,
+          probeGroup, newHitArray(i, numberOfProbes)));
+    }
+    transactions.add(SpectrumTestUtils.newTransaction("first", TransactionOutcome.PASS,
+        probeGroup, newHitArray(1, numberOfProbes)));
+    int oldest = numberOfTransactions - SerialisationIdentifiers.MAX_SHARED_ACTIVITIES + 2;
+    transactions.add(SpectrumTestUtils.newTransaction("oldest", TransactionOutcome.PASS,
+        probeGroup, newHitArray(oldest, numberOfProbes)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SpectrumWriter writer = new SpectrumWriter(out);
+    for (Transaction transaction : transactions) {
+      writer.writeTransaction(spectrum, transaction);
+    }
+    writer.flush();
+    Collector.restart();
+
+    SpectrumReader reader = new SpectrumReader(null, new AgentConfigs(),
+        new ByteArrayInputStream(out.toByteArray()), new EmptyEventListener());
+    Transaction transaction = reader.readTransaction();
+    assertEquals(transactions.get(0), transaction);
+    WeakReference<HitVector> firstHitVector =
+        new WeakReference<HitVector>(transaction.getHitVectorByProbeGroupId(0));
+    transaction = null;
+
+    for (int i = 1; i < numberOfTransactions; i++) {
+      assertEquals(transactions.get(i), reader.readTransaction());
+    }
+    // the activity of the first transaction is no longer kept by the reader (nor the writer), and
+    // therefore it is written (and read) in full again
+    for (int i = 0; i < 10 && firstHitVector.get() != null; i++) {
+      System.gc();
+    }
+    assertNull(firstHitVector.get());
+    assertEquals(transactions.get(numberOfTransactions), reader.readTransaction());
+    assertEquals(numberOfTransactions + 1, reader.getActivityIndex());
+    assertEquals(transactions.get(numberOfTransactions + 1), reader.readTransaction());
+    assertEquals(oldest, reader.getActivityIndex());
+    assertNull(reader.readTransaction());
+  }
+
+  private static int count(final byte[] bytes, final String string) {
+    byte[] pattern = string.getBytes();
+    int count = 0;
+    for (int i = 0; i + pattern.length <= bytes.length; i++) {
+      int j = 0;
+      while (j < pattern.length && bytes[i + j] == pattern[j]) {
+        j++;
+      }
+      if (j == pattern.length) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testProbeGroupsAndNamesAreWrittenOnce() throws Exception {
+    ProbeGroup foo = SpectrumTestUtils.registerProbeGroup("c0c0", "Foo", 2);
+    ProbeGroup bar = SpectrumTestUtils.registerProbeGroup("c1c1", "Bar", 2);
+    Spectrum spectrum = Collector.instance().getSpectrum();
+    Transaction t0 = SpectrumTestUtils.newTransaction("org.gzoltar.tests.FooTest#t0",
+        TransactionOutcome.PASS, foo, true, false);
+    t0.addActivity(bar.getId(), HitVector.valueOf(new boolean[] {true, true}));
+    spectrum.addTransaction(t0);
+    Transaction t1 = SpectrumTestUtils.newTransaction("org.gzoltar.tests.FooTest#t1",
+        TransactionOutcome.FAIL, foo, false, true);
+    t1.addActivity(bar.getId(), HitVector.valueOf(new boolean[] {true, false}));
+    spectrum.addTransaction(t1);
+    spectrum.addTransaction(SpectrumTestUtils.newTransaction("org.gzoltar.tests.BarTest#t0",
+        TransactionOutcome.PASS, foo, true, true));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SpectrumWriter(out).writeSpectrum(spectrum);
+    byte[] bytes = out.toByteArray();
+    assertEquals(1, count(bytes, "c0c0"));
+    assertEquals(1, count(bytes, "org.gzoltar.examples.Foo"));
+    assertEquals(1, count(bytes, "c1c1"));
+    assertEquals(1, count(bytes, "org.gzoltar.tests.FooTest#"));
+    assertEquals(1, count(bytes, "org.gzoltar.tests.BarTest#"));
+
+    Collector.restart();
+    SpectrumTestUtils.registerProbeGroup("c0c0", "Foo", 2);
+    SpectrumTestUtils.registerProbeGroup("c1c1", "Bar", 2);
+    SpectrumReader reader = new SpectrumReader(this.folder.getRoot().getAbsolutePath(),
+        new AgentConfigs(), new ByteArrayInputStream(bytes));
+    reader.read();
+    assertEquals(spectrum.getTransactions(), reader.getSpectrum().getTransactions());
+  }
+
+  @Test
+  public void testMultiSegmentFileIsSmallerThanFormatVersion1() throws Exception {
+    // two classes of 3 methods of 20 lines each, whose probes are written to the data file
+    final int numberOfProbes = 60;
+    for (String className : new String[] {"Foo", "Bar"}) {
+      List<Probe> probes = new ArrayList<Probe>();
+      for (int m = 0; m < 3; m++) {
+        MethodDescriptor method = new MethodDescriptor("m" + m, "(Ljava/lang/String;I)V",
+            Modifier.PUBLIC, new String[] {Deprecated.class.getName()});
+        for (int line = 0; line < 20; line++) {
+          probes.add(new Probe(probes.size(), new Node("org.gzoltar.examples$" + className + "#m"
+              + m + "(java.lang.String,int):" + (100 + probes.size()), 100 + probes.size(),
+              NodeType.LINE), method));
+        }
+      }
+      Collector.instance().regiterProbeGroup(new ProbeGroup(
+          "0123456789abcdef0123456789ab" + className, "org.gzoltar.examples." + className, probes));
+    }
+    Spectrum spectrum = Collector.instance().getSpectrum();
+
+    // a segment every 10 transactions
+    ByteArrayOutputStream v2 = new ByteArrayOutputStream();
+    SpectrumWriter writer = new SpectrumWriter(v2);
+    ByteArrayOutputStream v1 = new ByteArrayOutputStream();
+    CompactDataOutput out = new CompactDataOutput(v1);
+    out.writeByte(SerialisationIdentifiers.BLOCK_HEADER);
+    out.writeChar(SerialisationIdentifiers.MAGIC_NUMBER);
+    out.writeChar(SerialisationIdentifiers.FORMAT_VERSION_1);
+    for (int i = 0; i < 100; i++) {
+      if (i > 0 && i % 10 == 0) {
+        writer.startSegment();
+      }
+      boolean[][] hitArrays = new boolean[i % 2 == 0 ? 2 : 1][numberOfProbes];
+      for (boolean[] hitArray : hitArrays) {
+        for (int probe = 0; probe < numberOfProbes; probe++) {
+          hitArray[probe] = (probe * 7 + i) % 5 == 0;
+        }
+      }
+      Transaction transaction =
+          new Transaction("org.gzoltar.tests.FooTest#test" + i, TransactionOutcome.PASS, 0, null);
+      for (int id = 0; id < hitArrays.length; id++) {
+        transaction.addActivity(id, HitVector.valueOf(hitArrays[id]));
+      }
+      writer.writeTransaction(spectrum, transaction);
+
+      // as written by format version 1
+      out.writeByte(SerialisationIdentifiers.BLOCK_TRANSACTION);
+      out.writeUTF(transaction.getName());
+      out.writeVarInt(hitArrays.length);
+      for (int id = 0; id < hitArrays.length; id++) {
+        out.writeUTF(spectrum.getProbeGroupById(id).getHash());
+        out.writeUTF(spectrum.getProbeGroupById(id).getName());
+        out.writeBooleanArray(hitArrays[id]);
+      }
+      out.writeUTF(transaction.getTransactionOutcome().name());
+      out.writeLong(transaction.getRuntime());
+      out.writeUTF(transaction.getStackTrace());
+    }
+    writer.flush();
+    out.flush();
+
+    byte[] bytes = v2.toByteArray();
+    // probes (and the names they refer to) are only written once per file
+    assertEquals(1, count(bytes, "org.gzoltar.examples$Foo#m0(java.lang.String,int):"));
+    assertEquals(1, count(bytes, "(Ljava/lang/String;I)V"));
+    assertTrue(bytes.length + " >= " + v1.size(), bytes.length < v1.size());
+
+    Collector.restart();
+    SpectrumReader reader = new SpectrumReader(null, new AgentConfigs(),
+        new ByteArrayInputStream(bytes), new EmptyEventListener());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("org.gzoltar.tests.FooTest#test" + i, reader.readTransaction().getName());
+    }
+    assertEquals(numberOfProbes, reader.getSpectrum()
+        .getProbeGroupByHash("0123456789abcdef0123456789abFoo").getNumberOfProbes());
+  }
+
+  @Test
+  public void testReadFormatVersion1() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CompactDataOutput out = new CompactDataOutput(bytes);
+    out.writeByte(SerialisationIdentifiers.BLOCK_HEADER);
+    out.writeChar(SerialisationIdentifiers.MAGIC_NUMBER);
+    out.writeChar(SerialisationIdentifiers.FORMAT_VERSION_1);
+    for (String transactionName : new String[] {"t0", "t1"}) {
+      out.writeByte(SerialisationIdentifiers.BLOCK_TRANSACTION_SHARED_ACTIVITY);
+      out.writeUTF(transactionName);
+      if (transactionName.equals("t0")) {
+        out.writeVarInt(0);
+        out.writeVarInt(1);
+        out.writeUTF("c1c1");
+        out.writeUTF("org.gzoltar.examples.Bar");
+        out.writeBooleanArray(new boolean[] {false, true});
+      } else {
+        // same activity of t0
+        out.writeVarInt(1);
+      }
+      out.writeUTF(TransactionOutcome.PASS.name());
+      out.writeLong(0L);
+      out.writeUTF("");
+    }
+    out.close();
+
+    SpectrumTestUtils.registerProbeGroup("c0c0", "Foo", 2);
+    ProbeGroup bar = SpectrumTestUtils.registerProbeGroup("c1c1", "Bar", 2);
+    SpectrumReader reader = new SpectrumReader(this.folder.getRoot().getAbsolutePath(),
+        new AgentConfigs(), new ByteArrayInputStream(bytes.toByteArray()));
+    reader.read();
+
+    List<Transaction> transactions = reader.getSpectrum().getTransactions();
+    assertEquals(2, transactions.size());
+    assertEquals(SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, bar, false, true),
+        transactions.get(0));
+    assertEquals("t1", transactions.get(1).getName());
+  }
+
+  /**
+   * Registers the probeGroup of a class that does not exist, with identifier 0.
+   */
+  private static ProbeGroup registerMissingProbeGroup() {
+    MethodDescriptor method = new MethodDescriptor("foo", "()V", Modifier.PUBLIC,
+        new String[] {Deprecated.class.getName()});
+    List<Probe> probes = new ArrayList<Probe>();
+    probes.add(new Probe(0, 0, new Node("org.gzoltar.examples$Missing#foo():10", 10,
+        NodeType.LINE), method));
+    probes.add(new Probe(1, 0, new Node("org.gzoltar.examples$Missing#foo():11", 11,
+        NodeType.LINE), method));
+    probes.add(new Probe(2, 1, new Node("org.gzoltar.examples$Missing#foo():12", 12,
+        NodeType.LINE), method));
+    ProbeGroup probeGroup = new ProbeGroup("d0d0", "org.gzoltar.examples.Missing", probes);
+    Collector.instance().regiterProbeGroup(probeGroup);
+    return probeGroup;
+  }
+
+  @Test
+  public void testProbeGroupsAreReadWithoutTheirClasses() throws Exception {
+    ProbeGroup probeGroup = registerMissingProbeGroup();
+    List<Probe> probes = probeGroup.getProbes();
+
+    Spectrum spectrum = Collector.instance().getSpectrum();
+    spectrum.addTransaction(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, probeGroup, true, false));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SpectrumWriter(out).writeSpectrum(spectrum);
+
+    // neither the class nor the build location exist
+    Collector.restart();
+    SpectrumReader reader =
+        new SpectrumReader(new File(this.folder.getRoot(), "classes").getAbsolutePath(),
+            new AgentConfigs(), new ByteArrayInputStream(out.toByteArray()));
+    reader.read();
+
+    ProbeGroup readProbeGroup = reader.getSpectrum().getProbeGroupByHash("d0d0");
+    assertEquals(probeGroup.getName(), readProbeGroup.getName());
+    assertEquals(probes, readProbeGroup.getProbes());
+    assertEquals(2, readProbeGroup.getHitArrayLength());
+
+    // the coverage of each probe has been expanded from its hit array slot
+    HitVector hitVector = reader.getSpectrum().getTransactions().get(0)
+        .getHitVectorByProbeGroupId(readProbeGroup.getId());
+    assertEquals(HitVector.valueOf(new boolean[] {true, true, false}), hitVector);
+  }
+
+  @Test
+  public void testReadersDoNotShareAnyState() throws Exception {
+    ProbeGroup probeGroup = registerMissingProbeGroup();
+    Spectrum spectrum = Collector.instance().getSpectrum();
+    spectrum.addTransaction(
+        SpectrumTestUtils.newTransaction("t0", TransactionOutcome.PASS, probeGroup, true, false));
+    spectrum.addTransaction(
+        SpectrumTestUtils.newTransaction("t1", TransactionOutcome.FAIL, probeGroup, false, true));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SpectrumWriter(out).writeSpectrum(spectrum);
+    Collector.restart();
+
+    final List<String> events = new ArrayList<String>();
+    SpectrumReader pushReader = new SpectrumReader(this.folder.getRoot().getAbsolutePath(),
+        new AgentConfigs(), new ByteArrayInputStream(out.toByteArray()), new EmptyEventListener() {
+          @Override
+          public void regiterProbeGroup(final ProbeGroup probeGroup) {
+            events.add(probeGroup.getHash());
+          }
+
+          @Override
+          public void endTransaction(final Transaction transaction) {
+            events.add(transaction.getName());
+          }
+        });
+    SpectrumReader pullReader = new SpectrumReader(this.folder.getRoot().getAbsolutePath(),
+        new AgentConfigs(), new ByteArrayInputStream(out.toByteArray()),
+        new EmptyEventListener());
+
+    // both readers are read at the same time
+    assertEquals("t0", pullReader.readTransaction().getName());
+    pushReader.read();
+    assertEquals("t1", pullReader.readTransaction().getName());
+    assertNull(pullReader.readTransaction());
+
+    // each probeGroup is handed to the listener before the first transaction that executes it
+    assertEquals(Arrays.asList("d0d0", "t0", "t1"), events);
+    // transactions are not kept
+    assertTrue(pushReader.getSpectrum().getTransactions().isEmpty());
+    assertEquals(1, pullReader.getSpectrum().getProbeGroups().size());
+    assertTrue(pushReader.getSpectrum().getProbeGroupByHash("d0d0") != pullReader.getSpectrum()
+        .getProbeGroupByHash("d0d0"));
+    // neither reader has touched the Collector
+    assertTrue(Collector.instance().getSpectrum().getProbeGroups().isEmpty());
+  }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package org.gzoltar.examples;
+
+public class StraightLineCode {
+
+  public int sum(int a, int b) {
+    int x = a;
+    int y = b;
+    return x + y;
+  }
+
+  public int div(int a, int b) {
+    int x = a / b;
+    int y = x + 1;
+    return y;
+  }
+
+  public int abs(int a) {
+    int x = a;
+    int y = x < 0 ? -x : x;
+    return y;
+  }
+
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import com.gzoltar.core.AgentConfigs;
 import com.gzoltar.core.spectrum.FilteredSpectrum;
 import com.gzoltar.core.spectrum.ISpectrum;
+import com.gzoltar.core.spectrum.SpectrumListener;
 import com.gzoltar.core.spectrum.SpectrumReader;
 import com.gzoltar.sfl.SFL;
 
@@ -55,9 +56,13 @@ public class FaultLocalization {
       final File dataFile) throws Exception {
     FileInputStream inStream = new FileInputStream(dataFile);
 
-    SpectrumReader spectrumReader = new SpectrumReader(buildLocation, agentConfigs, inStream);
+    SpectrumListener spectrumListener = new SpectrumListener();
+    SpectrumReader spectrumReader =
+        new SpectrumReader(buildLocation, agentConfigs, inStream, spectrumListener);
     spectrumReader.read();
-    ISpectrum spectrum = spectrumReader.getSpectrum();
+    // transactions of JVMs that have been killed before writing the data file
+    spectrumReader.recover(dataFile);
+    ISpectrum spectrum = spectrumListener.getSpectrum();
 
     // filter a spectrum object according to user's preferences
     FilteredSpectrum filter = new FilteredSpectrum(agentConfigs);
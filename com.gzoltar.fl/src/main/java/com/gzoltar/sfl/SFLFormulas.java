@@ -19,6 +19,7 @@ package com.gzoltar.sfl;
 import com.gzoltar.sfl.formulas.Anderberg;
 import com.gzoltar.sfl.formulas.Barinel;
 import com.gzoltar.sfl.formulas.DStar;
+import com.gzoltar.sfl.formulas.HitCountSFLFormula;
 import com.gzoltar.sfl.formulas.ISFLFormula;
 import com.gzoltar.sfl.formulas.Ideal;
 import com.gzoltar.sfl.formulas.Jaccard;
@@ -66,7 +67,15 @@ public enum SFLFormulas {
 
   IDEAL(new Ideal()),
 
-  NAISH1(new Naish1());
+  NAISH1(new Naish1()),
+
+  BARINEL_HIT_COUNT(new HitCountSFLFormula(new Barinel())),
+
+  DSTAR_HIT_COUNT(new HitCountSFLFormula(new DStar())),
+
+  OCHIAI_HIT_COUNT(new HitCountSFLFormula(new Ochiai())),
+
+  TARANTULA_HIT_COUNT(new HitCountSFLFormula(new Tarantula()));
 
   private final ISFLFormula formula;
 
@@ -16,6 +16,11 @@
  */
 package com.gzoltar.sfl.formulas;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.gzoltar.core.model.HitVector;
 import com.gzoltar.core.model.Transaction;
 import com.gzoltar.core.runtime.Probe;
 import com.gzoltar.core.runtime.ProbeGroup;
@@ -27,38 +32,108 @@ public abstract class AbstractSFLFormula implements ISFLFormula {
    * {@inheritDoc}
    */
   public void diagnose(final ISpectrum spectrum) {
-    int n00 = 0;
-    int n01 = 0;
-    int n10 = 0;
-    int n11 = 0;
+    // transactions with the very same coverage (e.g., parameterized test cases) are only visited
+    // once, weighted by the number of failing and passing transactions that share it
+    List<Coverage> coverages = this.getDistinctCoverages(spectrum);
+
+    int numberOfFailingTransactions = 0;
+    for (Coverage coverage : coverages) {
+      numberOfFailingTransactions += coverage.numberOfFailingTransactions;
+    }
+    int numberOfPassingTransactions =
+        spectrum.getNumberOfTransactions() - numberOfFailingTransactions;
 
     for (ProbeGroup probeGroup : spectrum.getProbeGroups()) {
-      for (Probe probe : probeGroup.getProbes()) {
-        n00 = n01 = n10 = n11 = 0;
-
-        for (Transaction transaction : spectrum.getTransactions()) {
-          boolean hasFailed = transaction.hasFailed();
-
-          if (transaction.isProbeActived(probeGroup, probe.getArrayIndex())) {
-            if (hasFailed) {
-              n11++;
-            } else {
-              n10++;
-            }
-          } else {
-            if (hasFailed) {
-              n01++;
-            } else {
-              n00++;
-            }
-          }
+      int numberOfProbes = probeGroup.getNumberOfProbes();
+
+      // contribution of the failing/passing transactions that execute each probe, and the largest
+      // contribution of a single transaction
+      double[] e11 = new double[numberOfProbes];
+      double[] e10 = new double[numberOfProbes];
+      double[] maxActivation = new double[numberOfProbes];
+
+      for (Coverage coverage : coverages) {
+        HitVector hitVector = coverage.transaction.getHitVector(probeGroup);
+        if (hitVector == null) {
+          continue;
         }
 
+        int failing = coverage.numberOfFailingTransactions;
+        int passing = coverage.numberOfPassingTransactions;
+        for (int i = hitVector.nextSetBit(0); i >= 0; i = hitVector.nextSetBit(i + 1)) {
+          double activation = this.getActivation(coverage.transaction, probeGroup, i);
+          e11[i] += activation * failing;
+          e10[i] += activation * passing;
+          maxActivation[i] = Math.max(maxActivation[i], activation);
+        }
+      }
+
+      for (Probe probe : probeGroup.getProbes()) {
+        int i = probe.getArrayIndex();
+        // activations are normalised by the largest one, so that a transaction that executes a
+        // probe counts as (at most) one transaction, and the rest of it counts as not executing the
+        // probe. therefore, n11 + n01 and n10 + n00 are still the number of failing and passing
+        // transactions
+        double scale = maxActivation[i] > 0.0 ? 1.0 / maxActivation[i] : 0.0;
+        double n11 = e11[i] * scale;
+        double n10 = e10[i] * scale;
+        double n01 = numberOfFailingTransactions - n11;
+        double n00 = numberOfPassingTransactions - n10;
         probe.getNode().addSuspiciousnessValue(this.getName(), this.compute(n00, n01, n10, n11));
       }
     }
   }
 
+  /**
+   * Groups the transactions of a spectrum by their coverage. Transactions with hit counts are never
+   * grouped, as they may have executed the same probes a different number of times.
+   * 
+   * @param spectrum
+   * @return the distinct coverages of a spectrum
+   */
+  private List<Coverage> getDistinctCoverages(final ISpectrum spectrum) {
+    List<Coverage> coverages = new ArrayList<Coverage>();
+    Map<Map<Integer, HitVector>, Coverage> coveragesByActivity =
+        new HashMap<Map<Integer, HitVector>, Coverage>();
+
+    for (Transaction transaction : spectrum.getTransactions()) {
+      Coverage coverage = null;
+      if (!transaction.hasHitCounts()) {
+        coverage = coveragesByActivity.get(transaction.getActivity());
+      }
+      if (coverage == null) {
+        coverage = new Coverage(transaction);
+        coverages.add(coverage);
+        if (!transaction.hasHitCounts()) {
+          coveragesByActivity.put(transaction.getActivity(), coverage);
+        }
+      }
+
+      if (transaction.hasFailed()) {
+        coverage.numberOfFailingTransactions++;
+      } else {
+        coverage.numberOfPassingTransactions++;
+      }
+    }
+
+    return coverages;
+  }
+
+  /**
+   * Returns how much a transaction that executes a probe contributes to the number of transactions
+   * that execute it, i.e., 1. Any positive value may be returned, as activations are normalised by
+   * the largest activation of the probe.
+   * 
+   * @param transaction
+   * @param probeGroup
+   * @param probeIndex
+   * @return
+   */
+  protected double getActivation(final Transaction transaction, final ProbeGroup probeGroup,
+      final int probeIndex) {
+    return 1.0;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -69,4 +144,21 @@ public abstract class AbstractSFLFormula implements ISFLFormula {
    */
   public abstract double compute(final double n00, final double n01, final double n10,
       final double n11);
+
+  /**
+   * Coverage shared by one or more transactions.
+   */
+  private static final class Coverage {
+
+    /** Any of the transactions with this coverage */
+    private final Transaction transaction;
+
+    private int numberOfFailingTransactions = 0;
+
+    private int numberOfPassingTransactions = 0;
+
+    private Coverage(final Transaction transaction) {
+      this.transaction = transaction;
+    }
+  }
 }
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.sfl.formulas;
+
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.runtime.ProbeGroup;
+
+/**
+ * Frequency-weighted variant of a SFL formula. Instead of counting the number of transactions that
+ * execute a probe, each transaction contributes <code>1 + log2(h)</code>, where <code>h</code> is
+ * the number of times it has executed the probe, relative to the transaction that has executed it
+ * the most. The rest of its contribution counts as not executing the probe, so that the counts of
+ * a probe still add up to the number of transactions. The logarithm keeps probes executed in tight
+ * loops from dominating the ranking. On spectra without hit counts, it behaves as the original
+ * formula.
+ */
+public final class HitCountSFLFormula extends AbstractSFLFormula {
+
+  private static final double LOG_2 = Math.log(2.0);
+
+  private final ISFLFormula formula;
+
+  public HitCountSFLFormula(final ISFLFormula formula) {
+    this.formula = formula;
+  }
+
+  @Override
+  protected double getActivation(final Transaction transaction, final ProbeGroup probeGroup,
+      final int probeIndex) {
+    return 1.0
+        + Math.log(Math.max(1, transaction.getProbeHitCount(probeGroup, probeIndex))) / LOG_2;
+  }
+
+  @Override
+  public String getName() {
+    return this.formula.getName() + "_HitCount";
+  }
+
+  @Override
+  public double compute(final double n00, final double n01, final double n10, final double n11) {
+    return this.formula.compute(n00, n01, n10, n11);
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.sfl.formulas;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Node;
+import com.gzoltar.core.model.NodeType;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.MethodDescriptor;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.spectrum.Spectrum;
+import javassist.Modifier;
+
+public class TestSFLFormulas {
+
+  private static final double DELTA = 1e-9;
+
+  private static final int NUMBER_OF_PROBES = 2;
+
+  private Spectrum spectrum;
+
+  private List<Node> nodes;
+
+  @Before
+  public void beforeEachUnitTest() {
+    MethodDescriptor method = new MethodDescriptor("foo", "()V", Modifier.PUBLIC, null);
+    List<Probe> probes = new ArrayList<Probe>();
+    this.nodes = new ArrayList<Node>();
+    for (int line = 0; line < NUMBER_OF_PROBES; line++) {
+      Node node = new Node("org.gzoltar.examples$Foo#foo():" + line, line, NodeType.LINE);
+      probes.add(new Probe(line, node, method));
+      this.nodes.add(node);
+    }
+
+    this.spectrum = new Spectrum();
+    this.spectrum.addProbeGroup(new ProbeGroup("Foo", "org.gzoltar.examples.Foo", probes));
+  }
+
+  /**
+   * Adds a transaction that has executed each probe the given number of times.
+   */
+  private void addTransaction(final String name, final TransactionOutcome outcome,
+      final int... counts) {
+    boolean[] hitArray = new boolean[counts.length];
+    for (int i = 0; i < counts.length; i++) {
+      hitArray[i] = counts[i] > 0;
+    }
+    Map<Integer, HitVector> activity = new LinkedHashMap<Integer, HitVector>();
+    activity.put(0, HitVector.valueOf(hitArray));
+    Map<Integer, int[]> hitCounts = new LinkedHashMap<Integer, int[]>();
+    hitCounts.put(0, counts);
+    this.spectrum.addTransaction(new Transaction(name, activity, hitCounts, outcome, 0, null));
+  }
+
+  private double getSuspiciousness(final ISFLFormula formula, final int probe) {
+    return this.nodes.get(probe).getSuspiciousnessValue(formula.getName());
+  }
+
+  /**
+   * Records the counts a formula is computed with, per probe.
+   */
+  private static final class CountsFormula extends AbstractSFLFormula {
+
+    private final List<double[]> counts = new ArrayList<double[]>();
+
+    @Override
+    public String getName() {
+      return "Counts";
+    }
+
+    @Override
+    public double compute(final double n00, final double n01, final double n10,
+        final double n11) {
+      this.counts.add(new double[] {n00, n01, n10, n11});
+      return 0.0;
+    }
+  }
+
+  @Test
+  public void testCountsOfTransactionsWithTheSameCoverage() {
+    this.addTransaction("t1", TransactionOutcome.FAIL, 1, 0);
+    this.addTransaction("t2", TransactionOutcome.FAIL, 1, 0);
+    this.addTransaction("t3", TransactionOutcome.PASS, 1, 1);
+
+    CountsFormula formula = new CountsFormula();
+    formula.diagnose(this.spectrum);
+    assertEquals(NUMBER_OF_PROBES, formula.counts.size());
+    assertArrayEquals(new double[] {0, 0, 1, 2}, formula.counts.get(0), DELTA);
+    assertArrayEquals(new double[] {0, 2, 1, 0}, formula.counts.get(1), DELTA);
+  }
+
+  @Test
+  public void testOchiai() {
+    this.addTransaction("t1", TransactionOutcome.FAIL, 1, 0);
+    this.addTransaction("t2", TransactionOutcome.PASS, 1, 1);
+    this.addTransaction("t3", TransactionOutcome.PASS, 0, 1);
+
+    ISFLFormula ochiai = new Ochiai();
+    ochiai.diagnose(this.spectrum);
+    assertEquals(1.0 / Math.sqrt(2.0), this.getSuspiciousness(ochiai, 0), DELTA);
+    assertEquals(0.0, this.getSuspiciousness(ochiai, 1), DELTA);
+  }
+
+  @Test
+  public void testHitCountsAreWeightedConsistently() {
+    // 1 + log2(8) = 4 for t1, and 1 for t2
+    this.addTransaction("t1", TransactionOutcome.FAIL, 8, 1);
+    this.addTransaction("t2", TransactionOutcome.PASS, 1, 1);
+    this.addTransaction("t3", TransactionOutcome.FAIL, 0, 1);
+
+    CountsFormula counts = new CountsFormula();
+    new HitCountSFLFormula(counts).diagnose(this.spectrum);
+    assertEquals(NUMBER_OF_PROBES, counts.counts.size());
+    // t1 executes the first probe the most, t2 a quarter of it, and the rest of t2 counts as not
+    // executing it
+    assertArrayEquals(new double[] {0.75, 1, 0.25, 1}, counts.counts.get(0), DELTA);
+    assertArrayEquals(new double[] {0, 0, 1, 2}, counts.counts.get(1), DELTA);
+    for (double[] n : counts.counts) {
+      // n01 + n11 failing, and n00 + n10 passing transactions
+      assertEquals(2.0, n[1] + n[3], DELTA);
+      assertEquals(1.0, n[0] + n[2], DELTA);
+    }
+  }
+
+  @Test
+  public void testHitCountFormulasAreWithinRange() {
+    this.addTransaction("t1", TransactionOutcome.FAIL, 1024, 1);
+    this.addTransaction("t2", TransactionOutcome.PASS, 1, 3);
+    this.addTransaction("t3", TransactionOutcome.FAIL, 0, 2);
+
+    for (ISFLFormula original : new ISFLFormula[] {new Ochiai(), new Tarantula()}) {
+      ISFLFormula formula = new HitCountSFLFormula(original);
+      formula.diagnose(this.spectrum);
+      for (int probe = 0; probe < NUMBER_OF_PROBES; probe++) {
+        double suspiciousness = this.getSuspiciousness(formula, probe);
+        assertTrue(formula.getName() + ": " + suspiciousness,
+            suspiciousness >= 0.0 && suspiciousness <= 1.0);
+      }
+    }
+  }
+
+  @Test
+  public void testHitCountFormulaWithTheSameHitCountsIsTheOriginalFormula() {
+    this.addTransaction("t1", TransactionOutcome.FAIL, 5, 5);
+    this.addTransaction("t2", TransactionOutcome.PASS, 5, 0);
+    this.addTransaction("t3", TransactionOutcome.PASS, 0, 5);
+
+    ISFLFormula ochiai = new Ochiai();
+    ochiai.diagnose(this.spectrum);
+    ISFLFormula hitCountOchiai = new HitCountSFLFormula(ochiai);
+    hitCountOchiai.diagnose(this.spectrum);
+    for (int probe = 0; probe < NUMBER_OF_PROBES; probe++) {
+      assertEquals(this.getSuspiciousness(ochiai, probe),
+          this.getSuspiciousness(hitCountOchiai, probe), DELTA);
+    }
+  }
+}
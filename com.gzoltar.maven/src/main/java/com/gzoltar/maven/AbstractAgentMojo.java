@@ -69,6 +69,7 @@ public abstract class AbstractAgentMojo extends AbstractGZoltarMojo {
    * Output method to use for writing coverage data. Valid options are:
    * <ul>
    * <li>file: At VM termination execution data is written to a file (default).</li>
+   * <li>stream: Execution data of each test case is appended to a file as soon as it ends.</li>
    * <li>console: At VM termination execution data is written to the stdout.</li>
    * <li>none: Do not produce any output.</li>
    * </ul>
@@ -76,6 +77,72 @@ public abstract class AbstractAgentMojo extends AbstractGZoltarMojo {
   @Parameter(property = "gzoltar.output", defaultValue = "FILE")
   private String output;
 
+  /**
+   * Specifies whether probes should be recorded per thread. It should be enabled whenever test
+   * cases are executed in parallel in the same JVM, e.g., by a parallel JUnit runner or by TestNG.
+   */
+  @Parameter(property = "gzoltar.perThread", defaultValue = "false")
+  private Boolean perThread;
+
+  /**
+   * Specifies whether probes should count the number of times they have been executed, instead of
+   * only recording whether they have been executed.
+   */
+  @Parameter(property = "gzoltar.hitCounts", defaultValue = "false")
+  private Boolean hitCounts;
+
+  /**
+   * Specifies whether each test case should also be recorded in a memory-mapped journal next to the
+   * output file as soon as it ends, so that it can be recovered if the JVM is killed before writing
+   * the output file. Only applies to the file output.
+   */
+  @Parameter(property = "gzoltar.journal", defaultValue = "false")
+  private Boolean journal;
+
+  /**
+   * Specifies whether the agent should expose runtime statistics, and operations to dump or reset
+   * the collected coverage, through JMX.
+   */
+  @Parameter(property = "gzoltar.jmx", defaultValue = "false")
+  private Boolean jmx;
+
+  /**
+   * Directory in which instrumented classes are cached, so that test JVMs do not instrument
+   * unchanged classes again.
+   */
+  @Parameter(property = "gzoltar.cacheDir")
+  private File cacheDir;
+
+  /**
+   * Specifies the granularity level at which probes are placed. Valid options are: line (default),
+   * method, basicblock, and class. The same property configures the fault localization report,
+   * which must use the same granularity level.
+   */
+  @Parameter(property = "gzoltar.granularity", defaultValue = "LINE")
+  private String granularity;
+
+  /**
+   * Specifies whether public methods of each class under test should be instrumented. The same
+   * property configures the fault localization report. Default is <code>true</code>.
+   */
+  @Parameter(property = "gzoltar.inclPublicMethods", defaultValue = "true")
+  private Boolean inclPublicMethods;
+
+  /**
+   * Specifies whether public static constructors of each class under test should be instrumented.
+   * The same property configures the fault localization report. Default is <code>false</code>.
+   */
+  @Parameter(property = "gzoltar.inclStaticConstructors", defaultValue = "false")
+  private Boolean inclStaticConstructors;
+
+  /**
+   * Specifies whether methods annotated with @deprecated of each class under test should be
+   * instrumented. The same property configures the fault localization report. Default is
+   * <code>true</code>.
+   */
+  @Parameter(property = "gzoltar.inclDeprecatedMethods", defaultValue = "true")
+  private Boolean inclDeprecatedMethods;
+
   @Override
   public void executeMojo() throws MojoExecutionException, MojoFailureException {
     final Properties projectProperties = this.getProject().getProperties();
@@ -122,6 +189,42 @@ public abstract class AbstractAgentMojo extends AbstractGZoltarMojo {
       agentConfigs.setOutput(this.output);
     }
 
+    if (this.perThread != null) {
+      agentConfigs.setPerThread(this.perThread.booleanValue());
+    }
+
+    if (this.hitCounts != null) {
+      agentConfigs.setHitCounts(this.hitCounts.booleanValue());
+    }
+
+    if (this.journal != null) {
+      agentConfigs.setJournal(this.journal.booleanValue());
+    }
+
+    if (this.jmx != null) {
+      agentConfigs.setJmx(this.jmx.booleanValue());
+    }
+
+    if (this.cacheDir != null) {
+      agentConfigs.setCacheDir(this.cacheDir.getAbsolutePath());
+    }
+
+    if (this.granularity != null) {
+      agentConfigs.setGranularity(this.granularity);
+    }
+
+    if (this.inclPublicMethods != null) {
+      agentConfigs.setInclPublicMethods(this.inclPublicMethods);
+    }
+
+    if (this.inclStaticConstructors != null) {
+      agentConfigs.setInclStaticConstructors(this.inclStaticConstructors);
+    }
+
+    if (this.inclDeprecatedMethods != null) {
+      agentConfigs.setInclDeprecatedMethods(this.inclDeprecatedMethods);
+    }
+
     return agentConfigs;
   }
 
@@ -23,6 +23,7 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import com.gzoltar.core.AgentConfigs;
 import com.gzoltar.core.instr.InstrumentationLevel;
 import com.gzoltar.core.instr.Instrumenter;
@@ -30,6 +31,12 @@ import com.gzoltar.core.instr.Instrumenter;
 @Mojo(name = "instrument", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true)
 public class InstrumentMojo extends AbstractAgentMojo {
 
+  /**
+   * Number of threads used to instrument class files concurrently.
+   */
+  @Parameter(property = "gzoltar.threads", defaultValue = "1")
+  private int threads;
+
   /**
    * {@inheritDoc}
    */
@@ -50,6 +57,16 @@ public class InstrumentMojo extends AbstractAgentMojo {
       return;
     }
 
+    // configure instrumentation
+    AgentConfigs agentConfigs = this.createAgentConfigurations();
+    agentConfigs.setInstrumentationLevel(InstrumentationLevel.OFFLINE);
+    Instrumenter instrumenter = new Instrumenter(agentConfigs);
+    try {
+      instrumenter.setParallelism(this.threads);
+    } catch (IllegalArgumentException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+
     final File backupDir =
         new File(getProject().getBuild().getDirectory(), "gzoltar-backup-classes");
     backupDir.mkdirs();
@@ -61,14 +78,14 @@ public class InstrumentMojo extends AbstractAgentMojo {
       throw new MojoExecutionException(e.getMessage(), e);
     }
 
-    // configure instrumentation
-    AgentConfigs agentConfigs = this.createAgentConfigurations();
-    agentConfigs.setInstrumentationLevel(InstrumentationLevel.OFFLINE);
-    Instrumenter instrumenter = new Instrumenter(agentConfigs);
-
     // instrument recursively
     try {
-      instrumenter.instrumentRecursively(backupDir, projectClassesDir);
+      final long start = System.currentTimeMillis();
+      final int numInstrumentedClasses =
+          instrumenter.instrumentRecursively(backupDir, projectClassesDir);
+      final long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+      getLog().info(numInstrumentedClasses + " classes instrumented in " + elapsed + " ms ("
+          + (numInstrumentedClasses * 1000L / elapsed) + " classes/s)");
     } catch (Exception e) {
       throw new MojoExecutionException(e.getMessage(), e);
     }
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.model.FileSet;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+import com.gzoltar.core.spectrum.SpectrumMerger;
+
+/**
+ * Merges multiple spectrum data files (e.g., written by forked JVMs), and their journals, into one.
+ */
+@Mojo(name = "merge", defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST, threadSafe = true)
+public class MergeMojo extends AbstractGZoltarMojo {
+
+  /**
+   * Path to the merged spectrum data file, which may also be one of the data files to merge.
+   */
+  @Parameter(property = "gzoltar.destFile",
+      defaultValue = "${project.build.directory}/gzoltar.ser")
+  private File destFile;
+
+  /**
+   * Spectrum data files to merge. When not specified, all <code>*.ser</code> files in
+   * <code>${project.build.directory}</code> are merged.
+   */
+  @Parameter
+  private List<FileSet> fileSets;
+
+  /**
+   * Number of threads used to read data files concurrently.
+   */
+  @Parameter(property = "gzoltar.threads", defaultValue = "1")
+  private int threads;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void executeMojo() throws MojoExecutionException, MojoFailureException {
+    final List<File> dataFiles = this.getDataFiles();
+    if (dataFiles.isEmpty()) {
+      getLog().info("Skipping GZoltar execution due to missing spectrum data files");
+      return;
+    }
+
+    SpectrumMerger merger = new SpectrumMerger();
+    try {
+      merger.setParallelism(this.threads);
+    } catch (IllegalArgumentException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+    try {
+      final long start = System.currentTimeMillis();
+      final int numberOfTransactions = merger.merge(dataFiles, this.destFile);
+      final long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+      getLog().info(numberOfTransactions + " transactions of " + dataFiles.size()
+          + " files merged to " + this.destFile + " in " + elapsed + " ms");
+    } catch (Exception e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  private List<File> getDataFiles() {
+    List<FileSet> fileSets = this.fileSets;
+    if (fileSets == null || fileSets.isEmpty()) {
+      FileSet fileSet = new FileSet();
+      fileSet.setDirectory(getProject().getBuild().getDirectory());
+      fileSet.addInclude("*.ser");
+      fileSets = new ArrayList<FileSet>();
+      fileSets.add(fileSet);
+    }
+
+    final List<File> dataFiles = new ArrayList<File>();
+    for (FileSet fileSet : fileSets) {
+      final File directory = new File(fileSet.getDirectory());
+      if (!directory.isDirectory()) {
+        continue;
+      }
+      final DirectoryScanner scanner = new DirectoryScanner();
+      scanner.setBasedir(directory);
+      scanner.setIncludes(fileSet.getIncludes().toArray(new String[0]));
+      scanner.setExcludes(fileSet.getExcludes().toArray(new String[0]));
+      scanner.scan();
+      for (String dataFile : scanner.getIncludedFiles()) {
+        dataFiles.add(new File(directory, dataFile));
+      }
+    }
+    return dataFiles;
+  }
+
+}
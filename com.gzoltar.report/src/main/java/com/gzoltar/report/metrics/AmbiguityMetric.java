@@ -19,6 +19,7 @@ package com.gzoltar.report.metrics;
 import java.util.BitSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import com.gzoltar.core.model.HitVector;
 import com.gzoltar.core.model.Transaction;
 import com.gzoltar.core.runtime.Probe;
 import com.gzoltar.core.runtime.ProbeGroup;
@@ -34,18 +35,25 @@ public class AmbiguityMetric extends AbstractMetric {
 
     Set<Integer> ambiguityGroups = new LinkedHashSet<Integer>();
     for (ProbeGroup probeGroup : spectrum.getProbeGroups()) {
-      for (Probe probe : probeGroup.getProbes()) {
-        BitSet bs = new BitSet();
+      // transactions that execute each probe
+      BitSet[] bs = new BitSet[probeGroup.getNumberOfProbes()];
+      for (int i = 0; i < bs.length; i++) {
+        bs[i] = new BitSet();
+      }
 
-        int t = 0;
-        for (Transaction transaction : spectrum.getTransactions()) {
-          if (transaction.isProbeActived(probeGroup, probe.getArrayIndex())) {
-            bs.set(t);
+      int t = 0;
+      for (Transaction transaction : spectrum.getTransactions()) {
+        HitVector hitVector = transaction.getHitVector(probeGroup);
+        if (hitVector != null) {
+          for (int i = hitVector.nextSetBit(0); i >= 0; i = hitVector.nextSetBit(i + 1)) {
+            bs[i].set(t);
           }
-          t++;
         }
- 
-        ambiguityGroups.add(bs.hashCode());
+        t++;
+      }
+
+      for (Probe probe : probeGroup.getProbes()) {
+        ambiguityGroups.add(bs[probe.getArrayIndex()].hashCode());
       }
     }
 
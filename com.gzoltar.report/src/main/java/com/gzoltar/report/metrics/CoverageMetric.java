@@ -16,8 +16,6 @@
  */
 package com.gzoltar.report.metrics;
 
-import com.gzoltar.core.model.Transaction;
-import com.gzoltar.core.runtime.Probe;
 import com.gzoltar.core.runtime.ProbeGroup;
 import com.gzoltar.core.spectrum.ISpectrum;
 
@@ -33,14 +31,7 @@ public class CoverageMetric extends AbstractMetric {
     int activations = 0;
 
     for (ProbeGroup probeGroup : spectrum.getProbeGroups()) {
-      probeBreak: for (Probe probe : probeGroup.getProbes()) {
-        for (Transaction transaction : spectrum.getTransactions()) {
-          if (transaction.isProbeActived(probeGroup, probe.getArrayIndex())) {
-            activations += 1;
-            break probeBreak;
-          }
-        }
-      }
+      activations += spectrum.getCoveredProbes(probeGroup).cardinality();
     }
 
     double coverage = (double) activations / (double) components;
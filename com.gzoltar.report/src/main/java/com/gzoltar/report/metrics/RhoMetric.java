@@ -17,8 +17,6 @@
 package com.gzoltar.report.metrics;
 
 import com.gzoltar.core.model.Transaction;
-import com.gzoltar.core.runtime.Probe;
-import com.gzoltar.core.runtime.ProbeGroup;
 import com.gzoltar.core.spectrum.ISpectrum;
 
 public class RhoMetric extends AbstractMetric {
@@ -34,13 +32,7 @@ public class RhoMetric extends AbstractMetric {
 
     int activity_counter = 0;
     for (Transaction transaction : spectrum.getTransactions()) {
-      for (ProbeGroup probeGroup : spectrum.getProbeGroups()) {
-        for (Probe probe : probeGroup.getProbes()) {
-          if (transaction.isProbeActived(probeGroup, probe.getArrayIndex())) {
-            activity_counter++;
-          }
-        }
-      }
+      activity_counter += transaction.getNumberOfActivatedProbes();
     }
 
     double rho = (double) activity_counter / (((double) components) * ((double) transactions));
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.report.metrics;
+
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import com.gzoltar.core.model.Node;
+import com.gzoltar.core.model.NodeType;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.MethodDescriptor;
+import com.gzoltar.core.runtime.Probe;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.spectrum.Spectrum;
+import com.gzoltar.core.spectrum.SpectrumTestUtils;
+import com.gzoltar.report.metrics.experimental.DistinctTransactionsRho;
+import javassist.Modifier;
+
+public class TestMetrics {
+
+  private static final double DELTA = 1e-9;
+
+  private Spectrum spectrum;
+
+  /**
+   * A class with 4 lines, where t1 and t2 execute the first two lines (each one with its own hit
+   * vector), and t3 executes the third line.
+   */
+  @Before
+  public void beforeEachUnitTest() {
+    MethodDescriptor method = new MethodDescriptor("foo", "()V", Modifier.PUBLIC, null);
+    List<Probe> probes = new ArrayList<Probe>();
+    for (int line = 0; line < 4; line++) {
+      probes.add(new Probe(line,
+          new Node("org.gzoltar.examples$Foo#foo():" + line, line, NodeType.LINE), method));
+    }
+
+    ProbeGroup probeGroup = new ProbeGroup("Foo", "org.gzoltar.examples.Foo", probes);
+    this.spectrum = new Spectrum();
+    this.spectrum.addProbeGroup(probeGroup);
+    this.spectrum.addTransaction(SpectrumTestUtils.newTransaction("t1", TransactionOutcome.PASS,
+        probeGroup, true, true, false, false));
+    this.spectrum.addTransaction(SpectrumTestUtils.newTransaction("t2", TransactionOutcome.FAIL,
+        probeGroup, true, true, false, false));
+    this.spectrum.addTransaction(SpectrumTestUtils.newTransaction("t3", TransactionOutcome.PASS,
+        probeGroup, false, false, true, false));
+  }
+
+  @Test
+  public void testCoverageCountsAllCoveredProbesOfAClass() {
+    // 3 out of 4 lines are covered, not only the first covered line of the class
+    assertEquals(0.75, new CoverageMetric().calculate(this.spectrum), DELTA);
+  }
+
+  @Test
+  public void testSimpsonGroupsTransactionsByTheContentOfTheirActivity() {
+    // species {t1, t2} and {t3}: (2 * 1 + 1 * 0) / (3 * 2)
+    assertEquals(1.0 / 3.0, new SimpsonMetric().calculate(this.spectrum), DELTA);
+  }
+
+  @Test
+  public void testDistinctTransactionsRhoGroupsTransactionsByTheContentOfTheirActivity() {
+    // distinct activities {line 0, line 1} and {line 2}: 3 / (4 * 2)
+    assertEquals(3.0 / 8.0, new DistinctTransactionsRho().calculate(this.spectrum), DELTA);
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.agent.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.instr.InstrumentationCache;
+import com.gzoltar.core.instr.InstrumentationLevel;
+import com.gzoltar.core.instr.InstrumentationTestUtils;
+import com.gzoltar.core.instr.pass.AbstractInitMethodPass;
+import com.gzoltar.core.instr.pass.CoveragePass;
+import com.gzoltar.core.instr.pass.InitMethodPass;
+import com.gzoltar.core.instr.pass.OfflineInitMethodPass;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.runtime.Collector;
+import com.gzoltar.core.runtime.ProbeGroup;
+
+/**
+ * Unit tests for {@link com.gzoltar.agent.rt.CoverageTransformer}
+ */
+public class TestCoverageTransformer {
+
+  /** Classes under test, some of which are the superclass of others */
+  private static final List<Class<?>> CLASSES_UNDER_TEST =
+      Arrays.<Class<?>>asList(AbstractInitMethodPass.class, InitMethodPass.class,
+          OfflineInitMethodPass.class, CoveragePass.class, HitVector.class, Transaction.class);
+
+  private static final int NUMBER_OF_LOADERS = 4;
+
+  private static final int NUMBER_OF_THREADS = 8;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private CoverageTransformer transformer;
+
+  @Before
+  public void beforeEachUnitTest() throws Exception {
+    Collector.restart();
+
+    AgentConfigs configs = new AgentConfigs();
+    configs.setInclNoLocationClasses(true);
+    // classes are parsed and analysed as usual, but no probe is actually injected, as that would
+    // require GZoltar's runtime
+    configs.setInstrumentationLevel(InstrumentationLevel.NONE);
+    this.transformer = new CoverageTransformer(configs);
+  }
+
+  private static byte[] getBytecode(final Class<?> clazz) throws Exception {
+    InputStream in = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class");
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentTransformationOfClassesOfSeveralClassLoaders() throws Exception {
+    final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+    for (Class<?> classUnderTest : CLASSES_UNDER_TEST) {
+      classes.put(classUnderTest.getName().replace('.', '/'), getBytecode(classUnderTest));
+    }
+    final ClassLoader[] loaders = new ClassLoader[NUMBER_OF_LOADERS];
+    for (int i = 0; i < loaders.length; i++) {
+      loaders[i] = new URLClassLoader(new URL[0], TestCoverageTransformer.class.getClassLoader());
+    }
+
+    for (Map.Entry<String, byte[]> clazz : classes.entrySet()) {
+      assertNotNull(this.transformer.transform(loaders[0], clazz.getKey(), null, null,
+          clazz.getValue()));
+    }
+    Map<String, String> expected = InstrumentationTestUtils.getProbeGroups();
+    assertEquals(CLASSES_UNDER_TEST.size(), expected.size());
+    Collector.restart();
+
+    // each thread transforms all classes, of the same class loader as another thread, each one in
+    // a different order
+    final List<String> classNames = Arrays.asList(classes.keySet().toArray(new String[0]));
+    final CountDownLatch start = new CountDownLatch(1);
+    final Throwable[] failures = new Throwable[NUMBER_OF_THREADS];
+    Thread[] threads = new Thread[NUMBER_OF_THREADS];
+    for (int i = 0; i < threads.length; i++) {
+      final int offset = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int j = 0; j < classNames.size(); j++) {
+              String className = classNames.get((j + offset) % classNames.size());
+              assertNotNull(transformer.transform(loaders[offset % loaders.length], className,
+                  null, null, classes.get(className)));
+            }
+          } catch (Throwable t) {
+            failures[offset] = t;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    for (Throwable failure : failures) {
+      assertNull(failure);
+    }
+    // probes of a class are not mixed with the ones of any other class
+    Map<String, String> actual = InstrumentationTestUtils.getProbeGroups();
+    assertEquals(expected.size(), actual.size());
+    for (Map.Entry<String, String> probeGroup : expected.entrySet()) {
+      assertEquals(probeGroup.getValue(), actual.get(probeGroup.getKey()));
+    }
+  }
+
+  @Test
+  public void testCachedClassIsNotParsed() throws Exception {
+    AgentConfigs configs = new AgentConfigs();
+    configs.setInclNoLocationClasses(true);
+    configs.setInstrumentationLevel(InstrumentationLevel.NONE);
+    configs.setCacheDir(this.folder.getRoot().getAbsolutePath());
+    CoverageTransformer transformer = new CoverageTransformer(configs);
+
+    // not a valid class file, i.e., it could not be parsed
+    byte[] classfileBuffer = new byte[] {(byte) 0xCA, (byte) 0xFE, 0x00, 0x00};
+    byte[] bytecode = new byte[] {1, 2, 3};
+    new InstrumentationCache(this.folder.getRoot(), configs).put(classfileBuffer, bytecode,
+        new ProbeGroup("c0c0", "org.gzoltar.examples.Foo"));
+
+    ClassLoader loader = TestCoverageTransformer.class.getClassLoader();
+    assertTrue(Arrays.equals(bytecode,
+        transformer.transform(loader, "org/gzoltar/examples/Foo", null, null, classfileBuffer)));
+  }
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2018 GZoltar contributors.
+ * 
+ * This file is part of GZoltar.
+ * 
+ * GZoltar is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * GZoltar is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with GZoltar. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+package com.gzoltar.agent.rt.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.jacoco.core.internal.data.CompactDataInput;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.gzoltar.core.AgentConfigs;
+import com.gzoltar.core.events.EmptyEventListener;
+import com.gzoltar.core.model.HitVector;
+import com.gzoltar.core.model.Node;
+import com.gzoltar.core.model.NodeType;
+import com.gzoltar.core.model.Transaction;
+import com.gzoltar.core.model.TransactionOutcome;
+import com.gzoltar.core.runtime.MethodDescriptor;
+import com.gzoltar.core.runtime.ProbeGroup;
+import com.gzoltar.core.spectrum.Spectrum;
+import com.gzoltar.core.spectrum.SpectrumReader;
+import com.gzoltar.core.spectrum.SpectrumWriter;
+import com.gzoltar.core.util.SerialisationIdentifiers;
+
+/**
+ * Unit tests for {@link com.gzoltar.agent.rt.output.StreamOutput}
+ */
+public class TestStreamOutput {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Transaction createTransaction(final String name, final int probeGroupId) {
+    Map<Integer, HitVector> activity = new LinkedHashMap<Integer, HitVector>();
+    activity.put(probeGroupId, HitVector.valueOf(new boolean[] {true, false}));
+    return new Transaction(name, activity, TransactionOutcome.PASS, 0, null);
+  }
+
+  /**
+   * Checks a transaction, and returns whether its activity has been written in full or it refers to
+   * the one of a previous transaction.
+   */
+  private static boolean assertTransaction(final CompactDataInput in, final String name)
+      throws IOException {
+    // the prefix of the name (i.e., the first entry of the name dictionary) and the rest of it
+    assertEquals(0, in.readVarInt());
+    assertEquals(name, in.readUTF());
+    int activity = in.readVarInt();
+    if (activity == 0) {
+      assertActivity(in);
+    } else {
+      // 't0' and 't2' have the same activity
+      assertEquals(1, activity);
+    }
+    assertEquals(TransactionOutcome.PASS.name(), in.readUTF());
+    assertEquals(0, in.readLong());
+    assertEquals("", in.readUTF());
+    return activity == 0;
+  }
+
+  private static void assertActivity(final CompactDataInput in) throws IOException {
+    assertEquals(1, in.readVarInt());
+    // the first entry of the probeGroup dictionary
+    assertEquals(0, in.readVarInt());
+    assertEquals(0x01, in.readUnsignedByte());
+  }
+
+  /**
+   * Waits until the writer thread has appended a batch to the output file.
+   */
+  private static void waitForBatch(final File destFile, final long length) throws Exception {
+    long timeout = System.currentTimeMillis() + 10000L;
+    while (destFile.length() == length && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10L);
+    }
+    assertTrue(destFile.length() > length);
+  }
+
+  /**
+   * Checks the transactions 't0' and 't2' written to the output file, and returns the number of
+   * segments of the file.
+   */
+  private static int assertOutputFile(final File destFile) throws IOException {
+    CompactDataInput in = new CompactDataInput(new FileInputStream(destFile));
+    try {
+      int numberOfSegments = 0;
+      int numberOfTransactions = 0;
+      boolean segmentHasActivity = false;
+      int type;
+      while ((type = in.read()) != -1) {
+        if (type == SerialisationIdentifiers.BLOCK_HEADER) {
+          assertEquals(SerialisationIdentifiers.MAGIC_NUMBER, in.readChar());
+          assertEquals(SerialisationIdentifiers.FORMAT_VERSION, in.readChar());
+          segmentHasActivity = false;
+          numberOfSegments++;
+          continue;
+        }
+        if (type == SerialisationIdentifiers.BLOCK_NAME) {
+          // transactions without any test class name
+          assertFalse(segmentHasActivity);
+          assertEquals("", in.readUTF());
+          continue;
+        }
+        if (type == SerialisationIdentifiers.BLOCK_PROBE_GROUP) {
+          // written once per segment, before the first transaction that executes it
+          assertFalse(segmentHasActivity);
+          assertEquals("c0c0", in.readUTF());
+          assertEquals("org.gzoltar.examples.Foo", in.readUTF());
+          assertEquals(2, in.readVarInt());
+          // probes are only written to the first segment
+          assertEquals(numberOfSegments == 1, in.readBoolean());
+          if (numberOfSegments == 1) {
+            // neither methods nor probes are known
+            assertEquals(0, in.readVarInt());
+            assertEquals(0, in.readVarInt());
+          }
+          continue;
+        }
+        assertEquals(SerialisationIdentifiers.BLOCK_TRANSACTION_SHARED_ACTIVITY, type);
+        // an activity is only written in full once per segment
+        boolean inFull = assertTransaction(in, numberOfTransactions == 0 ? "t0" : "t2");
+        assertEquals(!segmentHasActivity, inFull);
+        segmentHasActivity = true;
+        numberOfTransactions++;
+      }
+      assertEquals(2, numberOfTransactions);
+      return numberOfSegments;
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testTransactionsAreAppendedAsTheyEnd() throws Exception {
+    File destFile = new File(this.folder.getRoot(), "gzoltar.ser");
+    AgentConfigs agentConfigs = new AgentConfigs();
+    agentConfigs.setDestfile(destFile.getAbsolutePath());
+
+    StreamOutput output = new StreamOutput(agentConfigs);
+    ProbeGroup probeGroup = new ProbeGroup("c0c0", "org.gzoltar.examples.Foo");
+    probeGroup.setId(3);
+    output.regiterProbeGroup(probeGroup);
+    output.endTransaction(createTransaction("t0", 3));
+    // transactions without any activation are not written
+    output.endTransaction(
+        new Transaction("t1", new LinkedHashMap<Integer, HitVector>(), TransactionOutcome.PASS,
+            0, null));
+    waitForBatch(destFile, 0L);
+    output.endTransaction(createTransaction("t2", 3));
+    output.writeSpectrum(null);
+
+    // although 't0' and 't2' have been written in different batches, they belong to the same
+    // segment
+    assertEquals(1, assertOutputFile(destFile));
+  }
+
+  @Test
+  public void testSegmentIsNotContinuedAfterAnotherAgentHasAppended() throws Exception {
+    File destFile = new File(this.folder.getRoot(), "gzoltar.ser");
+    AgentConfigs agentConfigs = new AgentConfigs();
+    agentConfigs.setDestfile(destFile.getAbsolutePath());
+
+    StreamOutput output = new StreamOutput(agentConfigs);
+    ProbeGroup probeGroup = new ProbeGroup("c0c0", "org.gzoltar.examples.Foo");
+    probeGroup.setId(3);
+    output.regiterProbeGroup(probeGroup);
+    output.endTransaction(createTransaction("t0", 3));
+    waitForBatch(destFile, 0L);
+
+    // another agent appends an (empty) segment of its own
+    new SpectrumWriter(new FileOutputStream(destFile, true)).writeSpectrum(new Spectrum());
+
+    output.endTransaction(createTransaction("t2", 3));
+    output.writeSpectrum(null);
+
+    // 't2' starts a new segment, in which dictionary entries and its activity are written again
+    assertEquals(3, assertOutputFile(destFile));
+  }
+
+  @Test
+  public void testWriterThreadKeepsWritingAfterAFailure() throws Exception {
+    File destFile = new File(this.folder.getRoot(), "gzoltar.ser");
+    AgentConfigs agentConfigs = new AgentConfigs();
+    agentConfigs.setDestfile(destFile.getAbsolutePath());
+
+    final StreamOutput output = new StreamOutput(agentConfigs);
+    ProbeGroup probeGroup = new ProbeGroup("c0c0", "org.gzoltar.examples.Foo");
+    probeGroup.setId(3);
+    output.regiterProbeGroup(probeGroup);
+    output.endTransaction(createTransaction("t0", 3));
+    waitForBatch(destFile, 0L);
+
+    // a transaction that cannot be written
+    output.endTransaction(new Transaction("t1", createTransaction("t1", 3).getActivity(),
+        TransactionOutcome.PASS, 0, null) {
+      @Override
+      public String getName() {
+        throw new IllegalStateException("t1 cannot be written");
+      }
+    });
+
+    // more transactions than the writer thread can keep pending, which would block forever if the
+    // writer thread had stopped
+    final Throwable[] failure = new Throwable[1];
+    Thread testCases = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < (1 << 13); i++) {
+            output.endTransaction(createTransaction("t2", 3));
+          }
+          output.writeSpectrum(null);
+        } catch (Throwable t) {
+          failure[0] = t;
+        }
+      }
+    };
+    testCases.setDaemon(true);
+    testCases.start();
+    testCases.join(30000L);
+
+    assertFalse(testCases.isAlive());
+    assertNull(failure[0]);
+  }
+
+  @Test
+  public void testFailedBatchIsTruncated() throws Exception {
+    File destFile = new File(this.folder.getRoot(), "gzoltar.ser");
+    AgentConfigs agentConfigs = new AgentConfigs();
+    agentConfigs.setDestfile(destFile.getAbsolutePath());
+
+    StreamOutput output = new StreamOutput(agentConfigs);
+    ProbeGroup foo = new ProbeGroup("c0c0", "org.gzoltar.examples.Foo");
+    foo.setId(3);
+    output.regiterProbeGroup(foo);
+    output.endTransaction(createTransaction("t0", 3));
+    waitForBatch(destFile, 0L);
+    final long length = destFile.length();
+
+    // a probeGroup whose probes are known, and first written by a batch that fails
+    ProbeGroup bar = new ProbeGroup("c1c1", "org.gzoltar.examples.Bar");
+    MethodDescriptor method = new MethodDescriptor("bar", "()V", 0, null);
+    for (int line = 0; line < 2; line++) {
+      bar.registerProbe(
+          new Node("org.gzoltar.examples$Bar#bar():" + line, line, NodeType.LINE), method);
+    }
+    bar.setId(4);
+    output.regiterProbeGroup(bar);
+
+    // a transaction that fails once its dictionary entries and activity have been written
+    final CountDownLatch failure = new CountDownLatch(1);
+    output.endTransaction(new Transaction("t1", createTransaction("t1", 4).getActivity(),
+        TransactionOutcome.PASS, 0, null) {
+      @Override
+      public TransactionOutcome getTransactionOutcome() {
+        failure.countDown();
+        throw new IllegalStateException("t1 cannot be written");
+      }
+    });
+    assertTrue(failure.await(10, TimeUnit.SECONDS));
+
+    output.endTransaction(createTransaction("t2", 4));
+    output.writeSpectrum(null);
+    assertTrue(destFile.length() > length);
+
+    // every block of the file can be read, and the probes of 'Bar' have been written again
+    final List<String> transactions = new ArrayList<String>();
+    SpectrumReader reader = new SpectrumReader(null, agentConfigs, new FileInputStream(destFile),
+        new EmptyEventListener() {
+          @Override
+          public void endTransaction(final Transaction transaction) {
+            transactions.add(transaction.getName());
+          }
+        });
+    reader.read();
+    assertEquals(2, transactions.size());
+    assertEquals("t0", transactions.get(0));
+    assertEquals("t2", transactions.get(1));
+    assertEquals(2, reader.getSpectrum().getProbeGroupByHash("c1c1").getNumberOfProbes());
+  }
+}